@@ -1,7 +1,11 @@
 package com.helpdeskai.config;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.scheduling.annotation.AsyncConfigurer;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
@@ -11,14 +15,36 @@ import java.util.concurrent.Executor;
 /**
  * Configuration for asynchronous task execution.
  * Enables @Async annotation and configures thread pool for async operations.
+ *
+ * With spring.threads.virtual.enabled=true (requires a Java 21 runtime) Spring Boot runs Tomcat
+ * request handling on virtual threads, and the executors below switch to one virtual thread per
+ * task instead of fixed platform thread pools.
  */
 @Configuration
 @EnableAsync
 @Slf4j
 public class AsyncConfig implements AsyncConfigurer {
 
+    // Same parallelism as the platform pool: document processing is bounded by OpenAI rate limits
+    private static final int ASYNC_CONCURRENCY_LIMIT = 10;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
     @Override
     public Executor getAsyncExecutor() {
+        if (virtualThreads) {
+            // Submitters beyond the limit park (cheap on virtual threads) instead of queueing
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("Async-");
+            executor.setVirtualThreads(true);
+            executor.setConcurrencyLimit(ASYNC_CONCURRENCY_LIMIT);
+            executor.setTaskTerminationTimeout(30_000);
+
+            log.info("Async executor configured: virtual threads, concurrencyLimit={}", ASYNC_CONCURRENCY_LIMIT);
+
+            return executor;
+        }
+
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
 
         // Core pool size (minimum threads)
@@ -49,4 +75,67 @@ public class AsyncConfig implements AsyncConfigurer {
 
         return executor;
     }
+
+    /**
+     * Executor for the lexical branch of hybrid retrieval (runs while the vector branch
+     * executes on the request thread). Kept separate so chat latency does not queue
+     * behind document processing tasks.
+     */
+    @Bean(name = "retrievalExecutor")
+    public AsyncTaskExecutor retrievalExecutor() {
+        if (virtualThreads) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("Retrieval-");
+            executor.setVirtualThreads(true);
+            return executor;
+        }
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(4);
+        executor.setMaxPoolSize(8);
+        executor.setQueueCapacity(200);
+        executor.setThreadNamePrefix("Retrieval-");
+
+        // If saturated, the request thread runs the lexical branch itself (sequential, still correct)
+        executor.setRejectedExecutionHandler(new java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Executor for embedding sub-batches (EmbeddingService.generateEmbeddings splits large
+     * batches by the provider's input and token limits and sends them concurrently).
+     * Each call bounds its own in-flight requests; this pool bounds them across ingestion workers.
+     */
+    @Bean(name = "embeddingExecutor")
+    public AsyncTaskExecutor embeddingExecutor() {
+        if (virtualThreads) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("Embedding-");
+            executor.setVirtualThreads(true);
+            return executor;
+        }
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(4);
+        executor.setMaxPoolSize(8);
+        executor.setQueueCapacity(100);
+        executor.setThreadNamePrefix("Embedding-");
+
+        // If saturated, the ingestion worker sends the sub-batch itself
+        executor.setRejectedExecutionHandler(new java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Threads for the embedding and persistence stages of the ingestion pipeline
+     * (two per document being processed, so bounded by the ingestion worker count).
+     * Thread-per-task on purpose: a stage blocks on its queue for the whole document,
+     * and a bounded pool with caller-runs could run a stage on the thread that feeds it.
+     */
+    @Bean(name = "ingestionPipelineExecutor")
+    public AsyncTaskExecutor ingestionPipelineExecutor() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("Pipeline-");
+        executor.setVirtualThreads(virtualThreads);
+        return executor;
+    }
 }
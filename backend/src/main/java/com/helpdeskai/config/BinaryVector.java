@@ -0,0 +1,80 @@
+package com.helpdeskai.config;
+
+import com.pgvector.PGvector;
+import org.postgresql.util.PGBinaryObject;
+import org.postgresql.util.PGobject;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * JDBC representation of a pgvector {@code vector} that is sent and received
+ * in PostgreSQL binary format (see PgVectorCodec).
+ *
+ * Registered per connection by BinaryVectorDataSource. The text methods are kept only
+ * as a fallback for statements the driver still executes in text mode.
+ */
+public class BinaryVector extends PGobject implements PGBinaryObject {
+
+    private float[] vector;
+
+    public BinaryVector() {
+        setType(PgVectorCodec.TYPE_NAME);
+    }
+
+    public BinaryVector(float[] vector) {
+        this();
+        this.vector = vector;
+    }
+
+    public float[] toArray() {
+        return vector;
+    }
+
+    @Override
+    public void setByteValue(byte[] value, int offset) {
+        vector = PgVectorCodec.decode(value, offset);
+    }
+
+    @Override
+    public int lengthInBytes() {
+        return vector != null ? PgVectorCodec.encodedLength(vector.length) : 0;
+    }
+
+    @Override
+    public void toBytes(byte[] bytes, int offset) {
+        PgVectorCodec.encode(vector, bytes, offset);
+    }
+
+    @Override
+    public void setValue(String value) throws SQLException {
+        vector = value != null ? new PGvector(value).toArray() : null;
+    }
+
+    @Override
+    public String getValue() {
+        return vector != null ? new PGvector(vector).getValue() : null;
+    }
+
+    @Override
+    public boolean isNull() {
+        return vector == null;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof BinaryVector other && Arrays.equals(vector, other.vector);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(vector);
+    }
+
+    @Override
+    public Object clone() throws CloneNotSupportedException {
+        BinaryVector copy = (BinaryVector) super.clone();
+        copy.vector = vector != null ? vector.clone() : null;
+        return copy;
+    }
+}
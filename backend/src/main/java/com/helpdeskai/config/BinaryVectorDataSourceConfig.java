@@ -0,0 +1,66 @@
+package com.helpdeskai.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Configuration for binary transfer of pgvector values.
+ * Wraps the application DataSource so every connection handed out (to Hibernate,
+ * JdbcTemplate and the repositories) has BinaryVector registered for the vector type.
+ */
+@Configuration
+@Slf4j
+public class BinaryVectorDataSourceConfig {
+
+    @Bean
+    static BeanPostProcessor binaryVectorDataSourcePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof BinaryVectorDataSource)) {
+                    log.info("Enabling binary vector transfer on DataSource '{}'", beanName);
+                    return new BinaryVectorDataSource(dataSource);
+                }
+                return bean;
+            }
+        };
+    }
+
+    /**
+     * DataSource that registers the binary vector codec on each connection it returns.
+     * Registration is a few map lookups; the vector OID is cached by the driver.
+     */
+    static class BinaryVectorDataSource extends DelegatingDataSource {
+
+        BinaryVectorDataSource(DataSource targetDataSource) {
+            super(targetDataSource);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return register(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return register(super.getConnection(username, password));
+        }
+
+        private Connection register(Connection connection) throws SQLException {
+            try {
+                PgVectorCodec.registerBinaryVector(connection);
+                return connection;
+            } catch (SQLException | RuntimeException e) {
+                connection.close();
+                throw e;
+            }
+        }
+    }
+}
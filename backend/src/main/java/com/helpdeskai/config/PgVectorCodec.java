@@ -0,0 +1,136 @@
+package com.helpdeskai.config;
+
+import com.pgvector.PGvector;
+import org.postgresql.PGStatement;
+import org.postgresql.core.BaseConnection;
+import org.postgresql.core.Oid;
+import org.postgresql.core.QueryExecutor;
+import org.postgresql.util.PGobject;
+
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Binary codec for the pgvector {@code vector} type.
+ *
+ * Wire format (vector_send / vector_recv), big-endian:
+ * int16 dimensions, int16 unused (0), then one float4 per dimension.
+ *
+ * Avoids formatting and parsing the decimal text representation
+ * ("[0.0123,-0.0456,...]") when binding query embeddings and reading stored ones.
+ */
+public final class PgVectorCodec {
+
+    public static final String TYPE_NAME = "vector";
+
+    private static final int HEADER_BYTES = 4;
+
+    private PgVectorCodec() {
+    }
+
+    /**
+     * Number of bytes needed to encode a vector with the given dimensions.
+     */
+    public static int encodedLength(int dimensions) {
+        return HEADER_BYTES + dimensions * Float.BYTES;
+    }
+
+    /**
+     * Encodes a vector into a new byte array.
+     */
+    public static byte[] encode(float[] vector) {
+        byte[] bytes = new byte[encodedLength(vector.length)];
+        encode(vector, bytes, 0);
+        return bytes;
+    }
+
+    /**
+     * Encodes a vector into {@code target} starting at {@code offset}.
+     */
+    public static void encode(float[] vector, byte[] target, int offset) {
+        if (vector.length > 0xFFFF) {
+            throw new IllegalArgumentException("Vector has too many dimensions: " + vector.length);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(target, offset, encodedLength(vector.length));
+        buffer.putShort((short) vector.length);
+        buffer.putShort((short) 0);
+        for (float value : vector) {
+            buffer.putFloat(value);
+        }
+    }
+
+    /**
+     * Decodes a vector from {@code bytes} starting at {@code offset}.
+     */
+    public static float[] decode(byte[] bytes, int offset) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, bytes.length - offset);
+        int dimensions = Short.toUnsignedInt(buffer.getShort());
+        buffer.getShort(); // unused
+        float[] vector = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = buffer.getFloat();
+        }
+        return vector;
+    }
+
+    /**
+     * Converts a value read from JDBC into a float array.
+     * BinaryVector is the normal path; the others are fallbacks for connections
+     * where the binary type was not registered.
+     */
+    public static float[] toArray(Object value) throws SQLException {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof BinaryVector binaryVector) {
+            return binaryVector.toArray();
+        }
+        if (value instanceof PGvector pgVector) {
+            return pgVector.toArray();
+        }
+        if (value instanceof PGobject pgObject) {
+            return pgObject.getValue() != null ? new PGvector(pgObject.getValue()).toArray() : null;
+        }
+        if (value instanceof String text) {
+            return new PGvector(text).toArray();
+        }
+        throw new IllegalArgumentException("Cannot convert " + value.getClass() + " to vector");
+    }
+
+    /**
+     * Registers BinaryVector for the {@code vector} type on a PostgreSQL connection and
+     * enables binary transfer for its OID in both directions.
+     * The registration lives on the physical connection, so pooled connections keep it.
+     *
+     * @return false if the connection is not PostgreSQL or the extension is not installed
+     */
+    public static boolean registerBinaryVector(Connection connection) throws SQLException {
+        if (!connection.isWrapperFor(BaseConnection.class)) {
+            return false;
+        }
+        BaseConnection pgConnection = connection.unwrap(BaseConnection.class);
+
+        int oid = pgConnection.getTypeInfo().getPGType(TYPE_NAME);
+        if (oid == Oid.UNSPECIFIED) {
+            return false;
+        }
+
+        pgConnection.addDataType(TYPE_NAME, BinaryVector.class);
+        QueryExecutor queryExecutor = pgConnection.getQueryExecutor();
+        queryExecutor.addBinarySendOid(oid);
+        queryExecutor.addBinaryReceiveOid(oid);
+        return true;
+    }
+
+    /**
+     * Makes the driver use binary transfer from the first execution of the statement.
+     * By default pgjdbc only switches to binary after prepareThreshold executions.
+     */
+    public static void forceBinaryTransfer(Statement statement) throws SQLException {
+        if (statement.isWrapperFor(PGStatement.class)) {
+            statement.unwrap(PGStatement.class).setPrepareThreshold(-1);
+        }
+    }
+}
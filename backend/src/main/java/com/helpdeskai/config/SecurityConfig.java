@@ -1,6 +1,7 @@
 package com.helpdeskai.config;
 
 import com.helpdeskai.security.JwtAuthenticationFilter;
+import jakarta.servlet.DispatcherType;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -67,6 +68,9 @@ public class SecurityConfig {
                     "/actuator/info"          // Info endpoint
                 ).permitAll()
 
+                // Async dispatch of SSE responses (/api/chat/stream): the request was already authorized
+                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+
                 // All other endpoints require authentication
                 .anyRequest().authenticated()
             )
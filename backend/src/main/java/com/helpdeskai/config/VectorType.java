@@ -13,6 +13,7 @@ import java.sql.Types;
 /**
  * Custom Hibernate UserType for pgvector.
  * Handles conversion between PGvector and PostgreSQL vector type.
+ * Values are bound and read in PostgreSQL binary format (see PgVectorCodec).
  */
 public class VectorType implements UserType<PGvector> {
 
@@ -39,22 +40,9 @@ public class VectorType implements UserType<PGvector> {
     @Override
     public PGvector nullSafeGet(ResultSet rs, int position, SharedSessionContractImplementor session, Object owner)
             throws SQLException {
-        Object value = rs.getObject(position);
-        if (value == null) {
-            return null;
-        }
-        if (value instanceof PGvector) {
-            return (PGvector) value;
-        }
-        // If it's a String representation, parse it
-        if (value instanceof String) {
-            try {
-                return new PGvector((String) value);
-            } catch (SQLException e) {
-                throw new SQLException("Error parsing PGvector from string: " + value, e);
-            }
-        }
-        throw new IllegalArgumentException("Cannot convert " + value.getClass() + " to PGvector");
+        // BinaryVector when the connection has the binary codec registered (see PgVectorCodec)
+        float[] vector = PgVectorCodec.toArray(rs.getObject(position));
+        return vector != null ? new PGvector(vector) : null;
     }
 
     @Override
@@ -63,7 +51,8 @@ public class VectorType implements UserType<PGvector> {
         if (value == null) {
             st.setNull(index, Types.OTHER);
         } else {
-            st.setObject(index, value);
+            // Sent in binary format instead of the decimal text representation
+            st.setObject(index, new BinaryVector(value.toArray()));
         }
     }
 
@@ -83,19 +72,13 @@ public class VectorType implements UserType<PGvector> {
 
     @Override
     public Serializable disassemble(PGvector value) {
-        return value != null ? value.toString() : null;
+        // Cached as float[] to avoid formatting/parsing the text representation
+        return value != null ? value.toArray().clone() : null;
     }
 
     @Override
     public PGvector assemble(Serializable cached, Object owner) {
-        if (cached == null) {
-            return null;
-        }
-        try {
-            return new PGvector((String) cached);
-        } catch (SQLException e) {
-            throw new RuntimeException("Error creating PGvector from cached value", e);
-        }
+        return cached != null ? new PGvector(((float[]) cached).clone()) : null;
     }
 
     @Override
@@ -8,15 +8,21 @@ import com.helpdeskai.entity.User;
 import com.helpdeskai.repository.ConversationRepository;
 import com.helpdeskai.repository.MessageRepository;
 import com.helpdeskai.service.ChatService;
+import com.helpdeskai.service.ChatStreamListener;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.Disposable;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -34,6 +40,9 @@ public class ChatController {
     private final ConversationRepository conversationRepository;
     private final MessageRepository messageRepository;
 
+    @Value("${helpdesk.chat.stream-timeout-ms:120000}")
+    private long streamTimeoutMs = 120_000;
+
     public ChatController(ChatService chatService,
                          ConversationRepository conversationRepository,
                          MessageRepository messageRepository) {
@@ -65,6 +74,35 @@ public class ChatController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Send a chat message and stream the answer as Server-Sent Events.
+     * Events: "citations" (sources used as context), "delta" (answer text as it is generated),
+     * then "done" (persisted message ID) or "error".
+     *
+     * @param request Chat message and optional conversation ID
+     * @param user Authenticated user
+     * @return Event stream
+     */
+    @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Send chat message (streaming)",
+               description = "Same as POST /api/chat, but streams citations and answer tokens as Server-Sent Events")
+    public SseEmitter chatStream(
+            @Valid @RequestBody ChatRequest request,
+            @AuthenticationPrincipal User user) {
+
+        log.info("Streaming chat request from user ID {}: '{}'", user.getId(), request.getMessage());
+
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        Disposable subscription = chatService.streamChat(request, user, new SseChatStreamListener(emitter));
+
+        // Client went away or timed out: stop consuming tokens from the LLM
+        emitter.onTimeout(subscription::dispose);
+        emitter.onError(error -> subscription.dispose());
+        emitter.onCompletion(subscription::dispose);
+
+        return emitter;
+    }
+
     /**
      * Get all conversations for authenticated user.
      *
@@ -167,6 +205,63 @@ public class ChatController {
         return ResponseEntity.noContent().build();
     }
 
+    /**
+     * Writes chat stream events to an SSE connection.
+     */
+    private static class SseChatStreamListener implements ChatStreamListener {
+
+        private final SseEmitter emitter;
+
+        SseChatStreamListener(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        @Override
+        public void onCitations(Long conversationId, List<ChatResponse.CitationDTO> citations) {
+            send("citations", new CitationsEvent(conversationId, citations));
+        }
+
+        @Override
+        public void onDelta(String delta) {
+            send("delta", new DeltaEvent(delta));
+        }
+
+        @Override
+        public void onComplete(Long conversationId, Long messageId) {
+            send("done", new DoneEvent(conversationId, messageId));
+            emitter.complete();
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            try {
+                emitter.send(SseEmitter.event().name("error")
+                        .data(new ErrorEvent(error.getMessage()), MediaType.APPLICATION_JSON));
+                emitter.complete();
+            } catch (IOException | IllegalStateException e) {
+                // Connection already closed, nothing left to notify
+                log.debug("Could not send chat stream error: {}", e.getMessage());
+            }
+        }
+
+        private void send(String name, Object data) {
+            try {
+                emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+            } catch (IOException e) {
+                // Propagates to the stream subscriber, which cancels the LLM call
+                throw new IllegalStateException("Chat stream client disconnected", e);
+            }
+        }
+    }
+
+    private record CitationsEvent(Long conversationId, List<ChatResponse.CitationDTO> citations) {}
+
+    private record DeltaEvent(String text) {}
+
+    private record DoneEvent(Long conversationId, Long messageId) {}
+
+    private record ErrorEvent(String message) {}
+
     /**
      * DTO for conversation list response.
      */
@@ -2,6 +2,7 @@ package com.helpdeskai.controller;
 
 import com.helpdeskai.dto.DocumentDTO;
 import com.helpdeskai.dto.DocumentUploadResponse;
+import com.helpdeskai.dto.IngestionJobDTO;
 import com.helpdeskai.entity.User;
 import com.helpdeskai.service.DocumentService;
 import io.swagger.v3.oas.annotations.Operation;
@@ -43,7 +44,8 @@ public class DocumentController {
      */
     @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     @Operation(summary = "Upload PDF document",
-               description = "Uploads a PDF file, extracts text, generates embeddings, and stores in vector database")
+               description = "Stores a PDF file and queues its ingestion (text extraction, embeddings, vector storage). "
+                             + "Track progress with GET /api/documents/{documentId}/ingestion")
     public ResponseEntity<DocumentUploadResponse> uploadDocument(
             @RequestParam("file") MultipartFile file,
             @AuthenticationPrincipal User user) {
@@ -52,8 +54,8 @@ public class DocumentController {
 
         DocumentUploadResponse response = documentService.uploadDocument(file, user);
 
-        log.info("Document uploaded successfully. ID: {}, Status: {}",
-                 response.getDocumentId(), response.getStatus());
+        log.info("Document uploaded successfully. ID: {}, Status: {}, Job ID: {}",
+                 response.getDocumentId(), response.getStatus(), response.getJobId());
 
         return ResponseEntity.status(HttpStatus.CREATED).body(response);
     }
@@ -108,6 +110,74 @@ public class DocumentController {
         return ResponseEntity.ok(document);
     }
 
+    /**
+     * Get ingestion progress for a document.
+     *
+     * @param documentId Document ID
+     * @param user Authenticated user
+     * @return Latest ingestion job with per-stage progress
+     */
+    @GetMapping("/{documentId}/ingestion")
+    @Operation(summary = "Get ingestion progress",
+               description = "Returns the status, current stage, attempts and chunk counters of the document's ingestion job")
+    public ResponseEntity<IngestionJobDTO> getIngestionStatus(
+            @PathVariable Long documentId,
+            @AuthenticationPrincipal User user) {
+
+        log.debug("Fetching ingestion status of document ID {} for user ID {}", documentId, user.getId());
+
+        return ResponseEntity.ok(documentService.getIngestionStatus(documentId, user.getId()));
+    }
+
+    /**
+     * Replace a document with a new version of the file.
+     *
+     * @param documentId Document ID to update
+     * @param file New version of the PDF
+     * @param user Authenticated user
+     * @return Update response; jobId is null when the content did not change
+     */
+    @PutMapping(value = "/{documentId}", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(summary = "Update PDF document",
+               description = "Uploads a new version of a document and queues an incremental re-index: "
+                             + "only chunks whose content changed are embedded and stored again. "
+                             + "The previous version stays searchable until the re-index completes")
+    public ResponseEntity<DocumentUploadResponse> updateDocument(
+            @PathVariable Long documentId,
+            @RequestParam("file") MultipartFile file,
+            @AuthenticationPrincipal User user) {
+
+        log.info("Document update request for document ID {} from user ID {}: {}",
+                 documentId, user.getId(), file.getOriginalFilename());
+
+        DocumentUploadResponse response = documentService.updateDocument(documentId, file, user);
+
+        if (response.getJobId() == null) {
+            return ResponseEntity.ok(response);
+        }
+        return ResponseEntity.accepted().body(response);
+    }
+
+    /**
+     * Retry the ingestion of a document that failed permanently.
+     *
+     * @param documentId Document ID (status FAILED)
+     * @param user Authenticated user
+     * @return Re-queued ingestion job, resuming from its last checkpoint
+     */
+    @PostMapping("/{documentId}/retry")
+    @Operation(summary = "Retry failed document",
+               description = "Re-queues the ingestion of a FAILED document with fresh attempts. "
+                             + "Processing resumes from the last persisted batch instead of starting over")
+    public ResponseEntity<IngestionJobDTO> retryDocument(
+            @PathVariable Long documentId,
+            @AuthenticationPrincipal User user) {
+
+        log.info("Retry request for document ID {} from user ID {}", documentId, user.getId());
+
+        return ResponseEntity.accepted().body(documentService.retryDocument(documentId, user.getId()));
+    }
+
     /**
      * Delete a document.
      *
@@ -17,6 +17,7 @@ import java.time.LocalDateTime;
 public class DocumentUploadResponse {
 
     private Long documentId;
+    private Long jobId;
     private String filename;
     private Long fileSize;
     private String mimeType;
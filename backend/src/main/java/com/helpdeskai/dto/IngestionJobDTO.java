@@ -0,0 +1,33 @@
+package com.helpdeskai.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * DTO para o progresso da ingestão de um documento
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class IngestionJobDTO {
+
+    private Long jobId;
+    private Long documentId;
+    private String status;        // QUEUED, RUNNING, COMPLETED, FAILED
+    private String stage;         // QUEUED, EXTRACTING, CHUNKING, EMBEDDING, INDEXING, DONE
+    private Integer attempts;
+    private Integer chunksTotal;
+    private Integer chunksEmbedded;
+    private Integer chunksIndexed;
+    private Integer checkpointChunkIndex; // próximo chunk a processar em uma nova tentativa
+    private String lastError;
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private LocalDateTime updatedAt;
+}
@@ -31,6 +31,13 @@ public class Chunk {
     @JoinColumn(name = "document_id", nullable = false)
     private Document document;
 
+    /**
+     * Dono do chunk (desnormalizado de documents.user_id)
+     * Permite que a busca vetorial fique restrita ao corpus do tenant
+     */
+    @Column(name = "user_id")
+    private Long userId;
+
     @Column(columnDefinition = "TEXT", nullable = false)
     private String content;
 
@@ -42,6 +49,21 @@ public class Chunk {
     @Type(VectorType.class)
     private PGvector embedding;
 
+    /**
+     * Prefixo Matryoshka do embedding (256 dimensões, re-normalizado)
+     * Usado no primeiro estágio da busca ANN em tenants grandes
+     */
+    @Column(name = "embedding_short", columnDefinition = "vector(256)")
+    @Type(VectorType.class)
+    private PGvector embeddingShort;
+
+    /**
+     * SHA-256 (hex) do content
+     * Chunks com texto idêntico reaproveitam o embedding já calculado em vez de chamar o modelo
+     */
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
     @Column(name = "chunk_index")
     private Integer chunkIndex;
 
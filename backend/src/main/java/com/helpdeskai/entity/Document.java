@@ -37,6 +37,12 @@ public class Document {
     @Column(name = "total_chunks")
     private Integer totalChunks;
 
+    /**
+     * SHA-256 (hex) do arquivo original, calculado durante o upload
+     */
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
     @Column(length = 50)
     @Enumerated(EnumType.STRING)
     private DocumentStatus status;
@@ -0,0 +1,127 @@
+package com.helpdeskai.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.DynamicUpdate;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entidade IngestionJob - Processamento pendente de um documento (fila persistente).
+ *
+ * Workers de qualquer nó reivindicam jobs com SELECT ... FOR UPDATE SKIP LOCKED; locked_at
+ * funciona como heartbeat, e jobs RUNNING sem heartbeat recente (nó reiniciado ou morto)
+ * voltam a ser reivindicáveis.
+ *
+ * Os estágios do pipeline atualizam o job em transações independentes (progresso, checkpoint):
+ * com @DynamicUpdate cada UPDATE grava só as colunas alteradas, sem sobrescrever as demais
+ * com valores lidos antes.
+ */
+@Entity
+@Table(name = "ingestion_jobs")
+@DynamicUpdate
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class IngestionJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "document_id", nullable = false)
+    private Long documentId;
+
+    @Column(name = "user_id")
+    private Long userId;
+
+    /**
+     * Chave do arquivo original no DocumentStorage
+     */
+    @Column(name = "storage_key", nullable = false)
+    private String storageKey;
+
+    @Column(length = 20, nullable = false)
+    @Enumerated(EnumType.STRING)
+    private JobStatus status;
+
+    @Column(length = 20, nullable = false)
+    @Enumerated(EnumType.STRING)
+    private Stage stage;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "chunks_total")
+    private Integer chunksTotal;
+
+    @Column(name = "chunks_embedded")
+    private Integer chunksEmbedded;
+
+    @Column(name = "chunks_indexed")
+    private Integer chunksIndexed;
+
+    /**
+     * Checkpoint: próximo chunk_index a processar. Os chunks anteriores já estão gravados (cada lote
+     * grava chunks e checkpoint na mesma transação); uma nova tentativa continua a partir daqui
+     */
+    @Column(name = "checkpoint_chunk_index", nullable = false)
+    private int checkpointChunkIndex;
+
+    @Column(name = "last_error", columnDefinition = "TEXT")
+    private String lastError;
+
+    @Column(name = "locked_by")
+    private String lockedBy;
+
+    @Column(name = "locked_at")
+    private LocalDateTime lockedAt;
+
+    @Column(name = "created_at", updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        updatedAt = createdAt;
+        if (status == null) {
+            status = JobStatus.QUEUED;
+        }
+        if (stage == null) {
+            stage = Stage.QUEUED;
+        }
+    }
+
+    /**
+     * Enum para status do job
+     */
+    public enum JobStatus {
+        QUEUED,     // Aguardando um worker
+        RUNNING,    // Reivindicado por um worker
+        COMPLETED,  // Documento indexado
+        FAILED      // Tentativas esgotadas
+    }
+
+    /**
+     * Etapa atual do processamento
+     */
+    public enum Stage {
+        QUEUED,
+        EXTRACTING,  // Extração de texto (Tika)
+        CHUNKING,    // Divisão em chunks
+        EMBEDDING,   // Geração de embeddings (OpenAI)
+        INDEXING,    // Gravação dos chunks
+        DONE
+    }
+}
@@ -1,66 +1,70 @@
 package com.helpdeskai.repository;
 
 import com.helpdeskai.entity.Chunk;
-import com.pgvector.PGvector;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
  * Repository para Chunk com suporte a busca vetorial (pgvector)
+ * A busca top-K fica em ChunkRepositoryCustom (embedding em formato binário)
  */
 @Repository
-public interface ChunkRepository extends JpaRepository<Chunk, Long> {
+public interface ChunkRepository extends JpaRepository<Chunk, Long>, ChunkRepositoryCustom {
 
     /**
-     * Busca chunks por similaridade vetorial usando cosine similarity
+     * Configura a sessão da busca vetorial para a transação corrente:
+     * - hnsw.iterative_scan (pgvector 0.8+): o índice continua varrendo o grafo quando o filtro
+     *   de tenant descarta candidatos, em vez de devolver menos que K resultados
+     * - plan_cache_mode = force_custom_plan: o planner enxerga o user_id como constante e
+     *   consegue usar o índice HNSW parcial do tenant mesmo com prepared statements
      *
-     * O operador <=> do pgvector calcula a distância de cosine
-     * Menor distância = maior similaridade
-     * Score de similaridade = 1 - distância
-     *
-     * @param queryEmbedding Embedding da pergunta do usuário
-     * @param topK Número de chunks mais similares a retornar
-     * @param threshold Score mínimo de similaridade (0.0 a 1.0)
-     * @return Lista de chunks ordenados por similaridade (maior primeiro)
+     * @param iterativeScanMode off, strict_order ou relaxed_order
+     * @return Valores aplicados
      */
     @Query(value = """
-        SELECT c.*,
-               1 - (c.embedding <=> CAST(:queryEmbedding AS vector)) AS similarity_score
-        FROM chunks c
-        WHERE 1 - (c.embedding <=> CAST(:queryEmbedding AS vector)) >= :threshold
-        ORDER BY c.embedding <=> CAST(:queryEmbedding AS vector)
-        LIMIT :topK
+        SELECT set_config('hnsw.iterative_scan', :mode, true)
+               || ',' || set_config('plan_cache_mode', 'force_custom_plan', true)
         """, nativeQuery = true)
-    List<Object[]> findSimilarChunks(
-        @Param("queryEmbedding") String queryEmbedding,
-        @Param("topK") int topK,
-        @Param("threshold") double threshold
-    );
+    String configureVectorSearch(@Param("mode") String iterativeScanMode);
+
+    /**
+     * Para tenants sem índice HNSW parcial: desliga index scans na transação corrente. A busca só
+     * pode usar idx_chunks_user_id (bitmap scan) + ordenação exata, nunca o HNSW global com
+     * pós-filtro por user_id, cujo custo cresce com a tabela inteira e não com o corpus do tenant.
+     *
+     * @return Valor aplicado
+     */
+    @Query(value = "SELECT set_config('enable_indexscan', 'off', true)", nativeQuery = true)
+    String forceExactTenantSearch();
 
     /**
-     * Busca simplificada de chunks similares (usando parâmetros padrão)
-     * Retorna apenas ID, conteúdo e metadata (sem embedding para evitar erros de conversão)
+     * Carrega chunks pelos IDs devolvidos pela busca vetorial (findTopKSimilarChunkIds ou o índice
+     * local), em lote. A ordem não é garantida: quem chama reordena pela distância da busca.
      *
-     * @param queryEmbedding Embedding da pergunta
-     * @param topK Número de resultados
+     * @param ids IDs dos chunks
      * @return Lista de arrays com [id, content, metadata, chunk_index, document_id, created_at, document_filename]
      */
     @Query(value = """
         SELECT c.id, c.content, c.metadata, c.chunk_index, c.document_id, c.created_at, d.filename
         FROM chunks c
         JOIN documents d ON c.document_id = d.id
-        ORDER BY c.embedding <=> CAST(:queryEmbedding AS vector)
-        LIMIT :topK
+        WHERE c.id IN (:ids)
         """, nativeQuery = true)
-    List<Object[]> findTopKSimilarChunks(
-        @Param("queryEmbedding") String queryEmbedding,
-        @Param("topK") int topK
-    );
+    List<Object[]> findChunkRowsByIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Conta chunks de um tenant
+     *
+     * @param userId ID do usuário
+     * @return Número de chunks
+     */
+    long countByUserId(Long userId);
 
     /**
      * Busca todos os chunks de um documento específico
@@ -71,6 +75,40 @@ public interface ChunkRepository extends JpaRepository<Chunk, Long> {
     @Query("SELECT c FROM Chunk c WHERE c.document.id = :documentId ORDER BY c.chunkIndex")
     List<Chunk> findByDocumentId(@Param("documentId") Long documentId);
 
+    /**
+     * Copia os chunks (conteúdo, embeddings e metadata) de um documento para outro, no próprio banco.
+     * Usado quando um upload idêntico a um documento já indexado dispensa extração e embeddings.
+     *
+     * @param sourceDocumentId Documento de origem
+     * @param targetDocumentId Documento de destino
+     * @param userId Dono do documento de destino
+     * @return Número de chunks copiados
+     */
+    @Modifying
+    @Query(value = """
+        INSERT INTO chunks (document_id, user_id, content, embedding, embedding_short, content_hash, chunk_index, metadata, created_at)
+        SELECT :targetDocumentId, :userId, content, embedding, embedding_short, content_hash, chunk_index, metadata, now()
+        FROM chunks
+        WHERE document_id = :sourceDocumentId
+        ORDER BY chunk_index
+        """, nativeQuery = true)
+    int cloneChunks(@Param("sourceDocumentId") Long sourceDocumentId,
+                    @Param("targetDocumentId") Long targetDocumentId,
+                    @Param("userId") Long userId);
+
+    /**
+     * Torna pesquisáveis os chunks de uma reindexação incremental, gravados com user_id nulo
+     * (a busca vetorial, a lexical e o índice local filtram por user_id). Roda na mesma transação
+     * que remove os chunks da versão anterior, então a troca de versão é atômica.
+     *
+     * @param documentId ID do documento
+     * @param userId Dono do documento
+     * @return Número de chunks publicados
+     */
+    @Modifying
+    @Query("UPDATE Chunk c SET c.userId = :userId WHERE c.document.id = :documentId AND c.userId IS NULL")
+    int publishChunks(@Param("documentId") Long documentId, @Param("userId") Long userId);
+
     /**
      * Conta chunks de um documento
      *
@@ -89,6 +127,18 @@ public interface ChunkRepository extends JpaRepository<Chunk, Long> {
     @Query("DELETE FROM Chunk c WHERE c.document.id = :documentId")
     void deleteByDocumentId(@Param("documentId") Long documentId);
 
+    /**
+     * Deleta os chunks de um documento a partir de um chunk_index.
+     * Usado ao retomar uma ingestão: os chunks antes do checkpoint são mantidos
+     *
+     * @param documentId ID do documento
+     * @param fromChunkIndex Primeiro chunk_index removido
+     */
+    @Modifying
+    @Query("DELETE FROM Chunk c WHERE c.document.id = :documentId AND c.chunkIndex >= :fromChunkIndex")
+    void deleteByDocumentIdFromChunkIndex(@Param("documentId") Long documentId,
+                                          @Param("fromChunkIndex") int fromChunkIndex);
+
     /**
      * Verifica se existe algum chunk com embedding nulo
      * Útil para debug
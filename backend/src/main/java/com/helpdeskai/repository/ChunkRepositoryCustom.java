@@ -0,0 +1,107 @@
+package com.helpdeskai.repository;
+
+import com.helpdeskai.entity.Chunk;
+import com.pgvector.PGvector;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Consultas vetoriais de Chunk executadas via JDBC, com o embedding trafegando
+ * em formato binário (ver PgVectorCodec) em vez do literal texto de 1536 floats.
+ */
+public interface ChunkRepositoryCustom {
+
+    /**
+     * Busca os ids dos top-K chunks mais similares do tenant, aplicando o corte de similaridade na própria query.
+     * Primeira fase do retrieval: o conteúdo dos chunks é carregado em lote depois, só para o resultado
+     * final (findChunkRowsByIds via ChunkContentCache), então a ANN não arrasta content/metadata.
+     *
+     * O operador <=> do pgvector calcula a distância de cosine
+     * Menor distância = maior similaridade
+     * Score de similaridade = 1 - distância
+     *
+     * A busca ANN fica isolada em uma CTE materializada (ORDER BY + LIMIT usam o índice HNSW)
+     * e o corte por distância é aplicado fora dela, como recomendado pelo pgvector: assim o
+     * filtro nunca transforma a busca em um scan sequencial e o resultado é idêntico a
+     * "filtrar e depois pegar os K primeiros".
+     *
+     * O predicado user_id fica dentro da CTE: tenants pequenos usam idx_chunks_user_id + ordenação
+     * exata, e tenants grandes usam o índice HNSW parcial do próprio tenant (ver TenantIndexService).
+     * Em ambos os casos o custo cresce com o corpus do tenant, não com a tabela inteira.
+     *
+     * @param queryEmbedding Embedding da pergunta (enviado em formato binário)
+     * @param userId Dono dos documentos (tenant)
+     * @param topK Número máximo de resultados
+     * @param maxDistance Distância de cosine máxima aceita (1 - similarity-threshold)
+     * @return Lista de arrays com [id, distance], em ordem de distância
+     */
+    List<Object[]> findTopKSimilarChunkIds(PGvector queryEmbedding, Long userId, int topK, double maxDistance);
+
+    /**
+     * Mesma busca, com a representação da ANN explícita em vez da configurada
+     * (usado pelo benchmark de recall da quantização).
+     *
+     * Nos modos quantizados a ANN roda sobre o índice compacto buscando
+     * topK * helpdesk.retrieval.quantization.candidate-multiplier candidatos, que são
+     * re-ranqueados pela distância exata do vector float32.
+     */
+    List<Object[]> findTopKSimilarChunkIds(PGvector queryEmbedding, Long userId, int topK,
+                                           double maxDistance, VectorQuantization quantization);
+
+    /**
+     * Busca full-text (tsvector) nos chunks do tenant, para termos exatos como códigos de erro e SKUs
+     * que embeddings aproximam mal.
+     *
+     * Usa o índice GIN idx_chunks_content_fts (to_tsvector('simple', content)). A configuração
+     * 'simple' não aplica stemming nem stopwords, preservando códigos como "ERR-1042".
+     * Os termos da pergunta são combinados com OR e ordenados por ts_rank_cd.
+     *
+     * @param queryText Pergunta do usuário
+     * @param userId Dono dos documentos (tenant)
+     * @param topK Número máximo de resultados
+     * @return Lista de arrays com [id, content, metadata, chunk_index, document_id, created_at, document_filename, rank]
+     */
+    List<Object[]> findTopKLexicalChunks(String queryText, Long userId, int topK);
+
+    /**
+     * Embeddings já calculados para chunks com o mesmo conteúdo, usados pela ingestão para enviar
+     * ao modelo apenas os textos inéditos. O hash inclui o modelo de embedding
+     * (DocumentService.contentHash), então só vetores do modelo atual são encontrados; quando
+     * vários chunks têm o mesmo hash, qualquer um serve.
+     *
+     * O reaproveitamento fica restrito ao tenant, como a deduplicação de documentos: a latência da
+     * ingestão não revela se outro cliente já indexou o mesmo texto. Usa idx_chunks_user_content_hash.
+     *
+     * @param userId ID do usuário (tenant)
+     * @param contentHashes SHA-256 (hex) de modelo + texto dos chunks
+     * @return Mapa hash → embedding, só com os hashes encontrados
+     */
+    Map<String, PGvector> findEmbeddingsByContentHash(Long userId, Collection<String> contentHashes);
+
+    /**
+     * Grava chunks novos em lote com COPY ... FROM STDIN (FORMAT binary), embeddings incluídos.
+     *
+     * Caminho da ingestão: com GenerationType.IDENTITY o Hibernate não agrupa inserts, e cada
+     * save vira um round trip. O COPY envia o lote inteiro em um único comando, com os vetores
+     * no formato binário do pgvector. Os ids ficam com a sequence e não voltam para as entidades;
+     * quem precisa deles relê os chunks do documento (ver listeners de DocumentIndexedEvent).
+     *
+     * Precisa rodar dentro de uma transação, para o COPY usar a conexão dela.
+     *
+     * @param chunks Chunks sem id, com document e userId preenchidos
+     * @return Número de linhas gravadas
+     */
+    int copyChunks(List<Chunk> chunks);
+
+    /**
+     * Atualiza chunk_index e metadata (posições no texto) de chunks mantidos por uma reindexação
+     * incremental, em um único batch. Nenhuma das duas colunas é indexada: com o fillfactor da
+     * tabela chunks o PostgreSQL faz HOT update e não mexe no índice HNSW nem nos demais índices.
+     *
+     * @param chunks Chunks com id, chunkIndex e metadata novos
+     * @return Número de linhas atualizadas
+     */
+    int updateChunkPositions(List<Chunk> chunks);
+}
@@ -0,0 +1,346 @@
+package com.helpdeskai.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.helpdeskai.config.BinaryVector;
+import com.helpdeskai.config.PgVectorCodec;
+import com.helpdeskai.entity.Chunk;
+import com.pgvector.PGvector;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Implementação JDBC de ChunkRepositoryCustom.
+ * Roda na mesma transação/conexão do JPA (JpaTransactionManager expõe a conexão ao JdbcTemplate),
+ * então enxerga os set_config de ChunkRepository.configureVectorSearch.
+ */
+class ChunkRepositoryCustomImpl implements ChunkRepositoryCustom {
+
+    /**
+     * Só id + distância: conteúdo, metadata e filename ficam fora do scan do índice e da ordenação
+     * e são carregados depois apenas para os top-K finais (ver ChunkContentCache).
+     */
+    private static final String TOP_K_SIMILAR_SQL = """
+        WITH nearest AS MATERIALIZED (
+            SELECT c.id, c.embedding <=> ? AS distance
+            FROM chunks c
+            WHERE c.user_id = ?
+            ORDER BY c.embedding <=> ?
+            LIMIT ?
+        )
+        SELECT id, distance
+        FROM nearest
+        WHERE distance <= ?
+        ORDER BY distance
+        """;
+
+    /**
+     * Busca em dois estágios para os modos quantizados: a ANN sobre a representação compacta
+     * (índice de expressão halfvec/bit) traz topK * candidate-multiplier candidatos, e a distância
+     * exata contra o vector float32 escolhe os topK finais. %s = expressão de ordenação quantizada.
+     */
+    private static final String TOP_K_QUANTIZED_SQL_TEMPLATE = """
+        WITH candidates AS MATERIALIZED (
+            SELECT c.id, c.embedding
+            FROM chunks c
+            WHERE c.user_id = ?
+            ORDER BY %s
+            LIMIT ?
+        ),
+        nearest AS MATERIALIZED (
+            SELECT id, embedding <=> ? AS distance
+            FROM candidates
+            ORDER BY distance
+            LIMIT ?
+        )
+        SELECT id, distance
+        FROM nearest
+        WHERE distance <= ?
+        ORDER BY distance
+        """;
+
+    /**
+     * Query OR montada a partir dos lexemas de to_tsvector (já normalizados pela configuração
+     * 'simple'): cada lexema vira um literal de tsquery entre aspas, com aspas e barras invertidas
+     * dobradas, então nenhum caractere da pergunta é interpretado como operador. Pergunta sem
+     * lexemas resulta em query NULL (nenhuma linha).
+     */
+    private static final String TOP_K_LEXICAL_SQL = """
+        SELECT c.id, c.content, c.metadata, c.chunk_index, c.document_id, c.created_at, d.filename,
+               ts_rank_cd(to_tsvector('simple', c.content), q.query) AS rank
+        FROM (SELECT string_agg('''' || replace(replace(lexeme, '\\', '\\\\'), '''', '''''') || '''', ' | ')::tsquery AS query
+              FROM unnest(to_tsvector('simple', ?))) q
+        JOIN chunks c ON to_tsvector('simple', c.content) @@ q.query
+        JOIN documents d ON c.document_id = d.id
+        WHERE c.user_id = ?
+        ORDER BY rank DESC
+        LIMIT ?
+        """;
+
+    private static final String EMBEDDINGS_BY_CONTENT_HASH_SQL = """
+        SELECT DISTINCT ON (content_hash) content_hash, embedding
+        FROM chunks
+        WHERE user_id = ? AND content_hash = ANY(?) AND embedding IS NOT NULL
+        """;
+
+    private static final String COPY_CHUNKS_SQL = """
+        COPY chunks (document_id, user_id, content, embedding, embedding_short, content_hash,
+                     chunk_index, metadata, created_at)
+        FROM STDIN (FORMAT binary)
+        """;
+
+    private static final String UPDATE_CHUNK_POSITION_SQL =
+            "UPDATE chunks SET chunk_index = ?, metadata = ?::jsonb WHERE id = ?";
+
+    /**
+     * Cabeçalho do formato binário do COPY: assinatura, flags (int32) e tamanho da extensão (int32).
+     */
+    private static final byte[] COPY_BINARY_HEADER = {
+            'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0,
+            0, 0, 0, 0,
+            0, 0, 0, 0
+    };
+
+    private static final short COPY_CHUNK_COLUMNS = 9;
+
+    /**
+     * timestamp em binário: microssegundos desde 2000-01-01 00:00 (época do PostgreSQL).
+     */
+    private static final LocalDateTime POSTGRES_EPOCH = LocalDateTime.of(2000, 1, 1, 0, 0);
+
+    // Versão do formato binário do jsonb (seguida do JSON em texto)
+    private static final int JSONB_VERSION = 1;
+
+    // [id, content, metadata, chunk_index, document_id, created_at, document_filename, rank]
+    private static final RowMapper<Object[]> CHUNK_ROW_MAPPER = (rs, rowNum) -> new Object[]{
+            rs.getLong(1),
+            rs.getString(2),
+            rs.getObject(3),
+            rs.getInt(4),
+            rs.getLong(5),
+            rs.getTimestamp(6),
+            rs.getString(7),
+            rs.getDouble(8)
+    };
+
+    // [id, distance]
+    private static final RowMapper<Object[]> CHUNK_DISTANCE_ROW_MAPPER = (rs, rowNum) -> new Object[]{
+            rs.getLong(1),
+            rs.getDouble(2)
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final VectorQuantization quantization;
+    private final int candidateMultiplier;
+
+    ChunkRepositoryCustomImpl(JdbcTemplate jdbcTemplate,
+                              ObjectMapper objectMapper,
+                              @Value("${helpdesk.retrieval.quantization.mode:none}") String quantizationMode,
+                              @Value("${helpdesk.retrieval.quantization.candidate-multiplier:4}") int candidateMultiplier) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.quantization = VectorQuantization.fromConfig(quantizationMode);
+        this.candidateMultiplier = candidateMultiplier;
+    }
+
+    @Override
+    public List<Object[]> findTopKSimilarChunkIds(PGvector queryEmbedding, Long userId, int topK, double maxDistance) {
+        return findTopKSimilarChunkIds(queryEmbedding, userId, topK, maxDistance, quantization);
+    }
+
+    @Override
+    public List<Object[]> findTopKSimilarChunkIds(PGvector queryEmbedding, Long userId, int topK,
+                                                  double maxDistance, VectorQuantization quantization) {
+        BinaryVector embedding = new BinaryVector(queryEmbedding.toArray());
+
+        if (quantization != VectorQuantization.NONE) {
+            String sql = TOP_K_QUANTIZED_SQL_TEMPLATE.formatted(quantization.orderByExpression("c.embedding"));
+            return jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(sql);
+                PgVectorCodec.forceBinaryTransfer(ps);
+                ps.setLong(1, userId);
+                ps.setObject(2, embedding);
+                ps.setInt(3, topK * candidateMultiplier);
+                ps.setObject(4, embedding);
+                ps.setInt(5, topK);
+                ps.setDouble(6, maxDistance);
+                return ps;
+            }, CHUNK_DISTANCE_ROW_MAPPER);
+        }
+
+        return jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(TOP_K_SIMILAR_SQL);
+            // Binário já na primeira execução (sem esperar o prepareThreshold do driver)
+            PgVectorCodec.forceBinaryTransfer(ps);
+            ps.setObject(1, embedding);
+            ps.setLong(2, userId);
+            ps.setObject(3, embedding);
+            ps.setInt(4, topK);
+            ps.setDouble(5, maxDistance);
+            return ps;
+        }, CHUNK_DISTANCE_ROW_MAPPER);
+    }
+
+    @Override
+    public List<Object[]> findTopKLexicalChunks(String queryText, Long userId, int topK) {
+        return jdbcTemplate.query(TOP_K_LEXICAL_SQL, CHUNK_ROW_MAPPER, queryText, userId, topK);
+    }
+
+    @Override
+    public Map<String, PGvector> findEmbeddingsByContentHash(Long userId, Collection<String> contentHashes) {
+        Map<String, PGvector> embeddings = new HashMap<>();
+        if (contentHashes.isEmpty()) {
+            return embeddings;
+        }
+
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(EMBEDDINGS_BY_CONTENT_HASH_SQL);
+            // Embeddings voltam em formato binário, não como literal texto
+            PgVectorCodec.forceBinaryTransfer(ps);
+            ps.setLong(1, userId);
+            ps.setArray(2, con.createArrayOf("varchar", contentHashes.toArray()));
+            return ps;
+        }, rs -> {
+            embeddings.put(rs.getString(1), new PGvector(PgVectorCodec.toArray(rs.getObject(2))));
+        });
+        return embeddings;
+    }
+
+    @Override
+    public int copyChunks(List<Chunk> chunks) {
+        if (chunks.isEmpty()) {
+            return 0;
+        }
+
+        Long rows = jdbcTemplate.execute((ConnectionCallback<Long>) con -> {
+            CopyIn copyIn = con.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_CHUNKS_SQL);
+            try {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(buffer);
+
+                out.write(COPY_BINARY_HEADER);
+                // Uma linha por vez: o buffer nunca guarda o lote inteiro
+                for (Chunk chunk : chunks) {
+                    writeRow(out, chunk);
+                    copyIn.writeToCopy(buffer.toByteArray(), 0, buffer.size());
+                    buffer.reset();
+                }
+                out.writeShort(-1);
+                copyIn.writeToCopy(buffer.toByteArray(), 0, buffer.size());
+
+                return copyIn.endCopy();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+            }
+        });
+        return rows != null ? rows.intValue() : 0;
+    }
+
+    @Override
+    public int updateChunkPositions(List<Chunk> chunks) {
+        if (chunks.isEmpty()) {
+            return 0;
+        }
+
+        int[][] counts = jdbcTemplate.batchUpdate(UPDATE_CHUNK_POSITION_SQL, chunks, chunks.size(), (ps, chunk) -> {
+            ps.setInt(1, chunk.getChunkIndex());
+            byte[] json = toJson(chunk.getMetadata());
+            ps.setString(2, json != null ? new String(json, StandardCharsets.UTF_8) : null);
+            ps.setLong(3, chunk.getId());
+        });
+        return Arrays.stream(counts).flatMapToInt(Arrays::stream).sum();
+    }
+
+    private void writeRow(DataOutputStream out, Chunk chunk) throws IOException {
+        out.writeShort(COPY_CHUNK_COLUMNS);
+        writeLong(out, chunk.getDocument().getId());
+        writeLong(out, chunk.getUserId());
+        writeText(out, chunk.getContent());
+        writeVector(out, chunk.getEmbedding());
+        writeVector(out, chunk.getEmbeddingShort());
+        writeText(out, chunk.getContentHash());
+        if (chunk.getChunkIndex() == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(Integer.BYTES);
+            out.writeInt(chunk.getChunkIndex());
+        }
+        writeJsonb(out, chunk.getMetadata());
+        LocalDateTime createdAt = chunk.getCreatedAt() != null ? chunk.getCreatedAt() : LocalDateTime.now();
+        writeLong(out, ChronoUnit.MICROS.between(POSTGRES_EPOCH, createdAt));
+    }
+
+    private static void writeLong(DataOutputStream out, Long value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(Long.BYTES);
+        out.writeLong(value);
+    }
+
+    private static void writeText(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeVector(DataOutputStream out, PGvector value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = PgVectorCodec.encode(value.toArray());
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeJsonb(DataOutputStream out, Chunk.ChunkMetadata metadata) throws IOException {
+        byte[] json = toJson(metadata);
+        if (json == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(1 + json.length);
+        out.writeByte(JSONB_VERSION);
+        out.write(json);
+    }
+
+    private byte[] toJson(Chunk.ChunkMetadata metadata) {
+        if (metadata == null) {
+            return null;
+        }
+        try {
+            return objectMapper.writeValueAsBytes(metadata);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Metadata do chunk não serializável", e);
+        }
+    }
+}
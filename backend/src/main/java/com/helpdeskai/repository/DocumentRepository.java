@@ -2,12 +2,15 @@ package com.helpdeskai.repository;
 
 import com.helpdeskai.entity.Document;
 import com.helpdeskai.entity.Document.DocumentStatus;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Repository para Document
@@ -40,6 +43,21 @@ public interface DocumentRepository extends JpaRepository<Document, Long> {
      */
     List<Document> findByUserIdAndStatus(Long userId, DocumentStatus status);
 
+    /**
+     * Documento do mesmo usuário com o mesmo conteúdo (SHA-256) em um status específico,
+     * excluindo o próprio documento
+     *
+     * @param userId ID do usuário (a deduplicação não cruza tenants)
+     * @param contentHash SHA-256 do arquivo
+     * @param status Status do documento
+     * @param id ID do documento a excluir da busca
+     * @return Documento mais antigo encontrado
+     */
+    Optional<Document> findFirstByUserIdAndContentHashAndStatusAndIdNotOrderByIdAsc(Long userId,
+                                                                                  String contentHash,
+                                                                                  DocumentStatus status,
+                                                                                  Long id);
+
     /**
      * Conta documentos de um usuário
      *
@@ -56,4 +74,16 @@ public interface DocumentRepository extends JpaRepository<Document, Long> {
      */
     @Query("SELECT d FROM Document d WHERE d.user.id = :userId AND d.status = 'COMPLETED' ORDER BY d.uploadedAt DESC")
     List<Document> findCompletedDocumentsByUserId(@Param("userId") Long userId);
+
+    /**
+     * Busca um documento com SELECT ... FOR UPDATE (precisa de transação ativa).
+     * Serializa atualizações concorrentes do mesmo documento: a segunda espera o commit da
+     * primeira e enxerga o status PROCESSING.
+     *
+     * @param id ID do documento
+     * @return Documento bloqueado até o fim da transação
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT d FROM Document d WHERE d.id = :id")
+    Optional<Document> findByIdForUpdate(@Param("id") Long id);
 }
@@ -0,0 +1,51 @@
+package com.helpdeskai.repository;
+
+import com.helpdeskai.entity.IngestionJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository para IngestionJob
+ */
+@Repository
+public interface IngestionJobRepository extends JpaRepository<IngestionJob, Long> {
+
+    /**
+     * Próximo job disponível, bloqueado até o fim da transação. Jobs já bloqueados por
+     * outro worker são pulados (SKIP LOCKED), então workers concorrentes nunca pegam o mesmo job.
+     *
+     * @param staleBefore Jobs RUNNING com heartbeat anterior a este instante são reivindicáveis
+     * @return ID do job
+     */
+    @Query(value = """
+            SELECT id FROM ingestion_jobs
+            WHERE status = 'QUEUED'
+               OR (status = 'RUNNING' AND locked_at < :staleBefore)
+            ORDER BY id
+            LIMIT 1
+            FOR UPDATE SKIP LOCKED
+            """, nativeQuery = true)
+    Optional<Long> findNextClaimableId(@Param("staleBefore") LocalDateTime staleBefore);
+
+    /**
+     * Job mais recente de um documento
+     *
+     * @param documentId ID do documento
+     * @return Job
+     */
+    Optional<IngestionJob> findFirstByDocumentIdOrderByIdDesc(Long documentId);
+
+    /**
+     * Busca jobs de um documento
+     *
+     * @param documentId ID do documento
+     * @return Lista de jobs
+     */
+    List<IngestionJob> findByDocumentId(Long documentId);
+}
@@ -0,0 +1,76 @@
+package com.helpdeskai.repository;
+
+/**
+ * Representação do embedding usada na busca ANN (helpdesk.retrieval.quantization.mode).
+ *
+ * - NONE: vector(1536) float32, ~6 KB por chunk no índice HNSW
+ * - HALFVEC: halfvec(1536) float16, índice 2x menor
+ * - BINARY: bit(1536) via binary_quantize (1 bit por dimensão, distância de Hamming), índice 32x menor
+ * - MATRYOSHKA: prefixo de 256 dimensões em chunks.embedding_short (ver EmbeddingService.toShortEmbedding),
+ *   índice 6x menor e com construção/distâncias proporcionalmente mais baratas
+ *
+ * HALFVEC e BINARY usam índices de expressão sobre a coluna embedding (não há coluna extra
+ * para manter em sincronia); MATRYOSHKA usa a coluna própria embedding_short.
+ * Todos os modos reduzidos passam por um re-rank exato contra o vetor float32 completo.
+ */
+public enum VectorQuantization {
+
+    NONE("%s", "?", "<=>", "vector_cosine_ops", "chunks_embedding_idx"),
+    HALFVEC("(%s)::halfvec(1536)", "CAST(? AS halfvec(1536))", "<=>", "halfvec_cosine_ops", "chunks_embedding_halfvec_idx"),
+    BINARY("binary_quantize(%s)::bit(1536)", "binary_quantize(?)::bit(1536)", "<~>", "bit_hamming_ops", "chunks_embedding_bit_idx"),
+    // O prefixo da query é calculado no servidor a partir do embedding completo
+    MATRYOSHKA("%s_short", "l2_normalize(subvector(?, 1, 256))", "<=>", "vector_cosine_ops", "chunks_embedding_short_idx");
+
+    private final String columnTemplate;
+    private final String parameterExpression;
+    private final String distanceOperator;
+    private final String operatorClass;
+    private final String indexName;
+
+    VectorQuantization(String columnTemplate, String parameterExpression, String distanceOperator,
+                       String operatorClass, String indexName) {
+        this.columnTemplate = columnTemplate;
+        this.parameterExpression = parameterExpression;
+        this.distanceOperator = distanceOperator;
+        this.operatorClass = operatorClass;
+        this.indexName = indexName;
+    }
+
+    /**
+     * Expressão indexada para a coluna (deve ser idêntica na query e no índice).
+     */
+    public String columnExpression(String column) {
+        return String.format(columnTemplate, column);
+    }
+
+    /**
+     * Expressão de ordenação da busca ANN com o embedding da query como parâmetro JDBC.
+     */
+    public String orderByExpression(String column) {
+        return columnExpression(column) + " " + distanceOperator + " " + parameterExpression;
+    }
+
+    /**
+     * Definição HNSW (USING hnsw (...)) usada em CREATE INDEX.
+     */
+    public String hnswDefinition() {
+        if (this == NONE || this == MATRYOSHKA) {
+            return "USING hnsw (" + columnExpression("embedding") + " " + operatorClass + ")";
+        }
+        return "USING hnsw ((" + columnExpression("embedding") + ") " + operatorClass + ")";
+    }
+
+    public String indexName() {
+        return indexName;
+    }
+
+    /**
+     * Converte o valor de configuração (none, halfvec, binary, matryoshka), sem diferenciar maiúsculas.
+     */
+    public static VectorQuantization fromConfig(String value) {
+        if (value == null || value.isBlank()) {
+            return NONE;
+        }
+        return valueOf(value.trim().toUpperCase());
+    }
+}
@@ -9,54 +9,77 @@ import com.helpdeskai.entity.Message.MessageRole;
 import com.helpdeskai.entity.User;
 import com.helpdeskai.exception.ChatException;
 import com.helpdeskai.exception.ResourceNotFoundException;
-import com.helpdeskai.repository.ChunkRepository;
 import com.helpdeskai.repository.ConversationRepository;
 import com.helpdeskai.repository.MessageRepository;
+import com.helpdeskai.service.RetrievalService.ScoredChunk;
 import com.pgvector.PGvector;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.messages.SystemMessage;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.prompt.Prompt;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
  * Serviço responsável pelo pipeline RAG (Retrieval-Augmented Generation).
  * Implementa busca vetorial + geração de resposta com LLM.
+ * O contexto passa pelo ContextPacker (vizinhos fundidos + MMR) antes de ir ao prompt, e
+ * perguntas equivalentes a uma já respondida são atendidas pelo SemanticAnswerCache.
+ * Perguntas idênticas simultâneas do mesmo usuário compartilham uma execução (ChatSingleFlight).
+ * streamChat entrega a mesma resposta em streaming (citações, deltas do LLM e mensagem gravada).
+ *
+ * Nenhuma transação atravessa as chamadas remotas (embedding e LLM, segundos cada): o pipeline
+ * é dividido em passos transacionais curtos — gravar a pergunta, buscar chunks (somente leitura),
+ * gravar a resposta — e a conexão volta ao pool entre eles.
  */
 @Service
 @Slf4j
 public class ChatService {
 
+    private static final String NO_CONTEXT_RESPONSE = "Desculpe, não encontrei informações relevantes " +
+            "nos documentos disponíveis para responder sua pergunta.";
+
     private final ConversationRepository conversationRepository;
     private final MessageRepository messageRepository;
-    private final ChunkRepository chunkRepository;
+    private final RetrievalService retrievalService;
     private final EmbeddingService embeddingService;
+    private final ContextPacker contextPacker;
+    private final SemanticAnswerCache answerCache;
+    private final ChatSingleFlight singleFlight;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransactionTemplate;
     private final ChatClient chatClient;
 
-    @Value("${helpdesk.retrieval.top-k:5}")
-    private int topK;
-
-    @Value("${helpdesk.retrieval.similarity-threshold:0.7}")
-    private double similarityThreshold;
-
     public ChatService(ConversationRepository conversationRepository,
                       MessageRepository messageRepository,
-                      ChunkRepository chunkRepository,
+                      RetrievalService retrievalService,
                       EmbeddingService embeddingService,
+                      ContextPacker contextPacker,
+                      SemanticAnswerCache answerCache,
+                      ChatSingleFlight singleFlight,
+                      TransactionTemplate transactionTemplate,
                       ChatClient.Builder chatClientBuilder) {
         this.conversationRepository = conversationRepository;
         this.messageRepository = messageRepository;
-        this.chunkRepository = chunkRepository;
+        this.retrievalService = retrievalService;
         this.embeddingService = embeddingService;
+        this.contextPacker = contextPacker;
+        this.answerCache = answerCache;
+        this.singleFlight = singleFlight;
+        this.transactionTemplate = transactionTemplate;
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readOnlyTransactionTemplate.setReadOnly(true);
         this.chatClient = chatClientBuilder.build();
     }
 
@@ -67,57 +90,228 @@ public class ChatService {
      * @param user Usuário que enviou a mensagem
      * @return Resposta do assistente com citações
      */
-    @Transactional
     public com.helpdeskai.dto.ChatResponse chat(ChatRequest request, User user) {
         try {
             log.info("Processando chat para usuário ID {}: '{}'",
                      user.getId(), request.getMessage());
 
-            // 1. Carregar ou criar conversa
-            Conversation conversation = getOrCreateConversation(request.getConversationId(), user);
-
-            // 2. Salvar mensagem do usuário
-            Message userMessage = saveUserMessage(conversation, request.getMessage());
+            // 1-2. Carregar ou criar conversa e salvar mensagem do usuário
+            Conversation conversation = startTurn(request, user);
 
-            // 3. Gerar embedding da query
-            PGvector queryEmbedding = embeddingService.generateEmbedding(request.getMessage());
+            // 3-7. Embedding, retrieval, contexto e LLM: perguntas idênticas simultâneas no mesmo
+            //      corpus compartilham uma única execução
+            GeneratedAnswer answer = singleFlight.execute(
+                    ChatSingleFlight.key(user.getId(), request.getMessage()),
+                    () -> generateAnswer(request.getMessage(), user));
 
-            // 4. Busca vetorial de chunks relevantes
-            List<ChunkWithScore> relevantChunks = retrieveRelevantChunks(queryEmbedding);
+            // 8. Salvar mensagem do assistente (uma por requisição, mesmo quando a resposta é compartilhada)
+            Message assistantMessage = transactionTemplate.execute(
+                    status -> saveAssistantMessage(conversation, answer.content(), answer.copyCitations()));
 
-            if (relevantChunks.isEmpty()) {
-                log.warn("Nenhum chunk relevante encontrado para a query");
-                String noContextResponse = "Desculpe, não encontrei informações relevantes " +
-                        "nos documentos disponíveis para responder sua pergunta.";
+            // 9. Retornar resposta
+            return buildChatResponse(conversation, assistantMessage);
 
-                Message assistantMessage = saveAssistantMessage(
-                        conversation, noContextResponse, new ArrayList<>());
+        } catch (Exception e) {
+            log.error("Erro ao processar chat: {}", e.getMessage(), e);
+            throw new ChatException("Erro ao processar mensagem de chat", e);
+        }
+    }
 
-                return buildChatResponse(conversation, assistantMessage);
-            }
+    /**
+     * Versão em streaming do chat: as citações saem assim que o contexto está montado e o texto
+     * do LLM é repassado token a token, em vez de esperar a resposta inteira.
+     *
+     * Conversa, mensagem do usuário e contexto seguem os mesmos passos do chat normal e terminam
+     * antes do streaming começar; a mensagem do assistente é gravada em outra transação quando o
+     * LLM termina. Nenhuma conexão do banco fica presa enquanto os tokens chegam.
+     *
+     * @param request Requisição de chat
+     * @param user Usuário que enviou a mensagem
+     * @param listener Destino dos eventos (citações, deltas, conclusão ou erro)
+     * @return Assinatura do streaming, para cancelar a chamada ao LLM se o cliente desconectar
+     */
+    public Disposable streamChat(ChatRequest request, User user, ChatStreamListener listener) {
+        log.info("Processando chat em streaming para usuário ID {}: '{}'",
+                 user.getId(), request.getMessage());
 
-            log.info("Encontrados {} chunks relevantes", relevantChunks.size());
+        Conversation conversation;
+        RetrievedContext context;
+        try {
+            conversation = startTurn(request, user);
+            context = retrieveContext(request.getMessage(), user);
+        } catch (Exception e) {
+            log.error("Erro ao processar chat: {}", e.getMessage(), e);
+            listener.onError(new ChatException("Erro ao processar mensagem de chat", e));
+            return Disposables.disposed();
+        }
 
-            // 5. Construir prompt com contexto
-            String systemPrompt = buildSystemPrompt();
-            String contextPrompt = buildContextPrompt(relevantChunks, request.getMessage());
+        // Resposta pronta (sem contexto ou cache): um único delta com o texto completo
+        if (context.relevantChunks().isEmpty()) {
+            replyAtOnce(conversation, NO_CONTEXT_RESPONSE, new ArrayList<>(), listener);
+            return Disposables.disposed();
+        }
+        Optional<SemanticAnswerCache.CachedAnswer> cached =
+                answerCache.lookup(user.getId(), context.queryEmbedding(), context.chunkIds());
+        if (cached.isPresent()) {
+            replyAtOnce(conversation, cached.get().answer(), cached.get().copyCitations(), listener);
+            return Disposables.disposed();
+        }
 
-            // 6. Chamar LLM
-            String assistantResponse = callLLM(systemPrompt, contextPrompt);
+        List<Citation> citations = buildCitations(context.relevantChunks());
+        listener.onCitations(conversation.getId(), toCitationDTOs(citations));
+
+        Prompt prompt = buildPrompt(context.systemPrompt(),
+                buildContextPrompt(context.relevantChunks(), request.getMessage()));
+        StringBuilder answer = new StringBuilder();
+        long llmStart = System.nanoTime();
+
+        return chatClient.prompt(prompt).stream().content()
+                .subscribe(
+                        delta -> {
+                            answer.append(delta);
+                            listener.onDelta(delta);
+                        },
+                        error -> {
+                            log.error("Erro no streaming do LLM: {}", error.getMessage(), error);
+                            listener.onError(new ChatException(
+                                    conversation.getId(), "Erro ao gerar resposta com LLM", error));
+                        },
+                        () -> completeStream(user, conversation, context, answer.toString(), citations,
+                                System.nanoTime() - llmStart, listener));
+    }
 
-            // 7. Criar citações
-            List<Citation> citations = buildCitations(relevantChunks);
+    /**
+     * Grava a resposta completa do streaming e avisa o listener.
+     */
+    private void completeStream(User user,
+                                Conversation conversation,
+                                RetrievedContext context,
+                                String assistantResponse,
+                                List<Citation> citations,
+                                long llmNanos,
+                                ChatStreamListener listener) {
+        if (assistantResponse.isEmpty()) {
+            listener.onError(new ChatException(conversation.getId(), "Resposta vazia do LLM"));
+            return;
+        }
 
-            // 8. Salvar mensagem do assistente
-            Message assistantMessage = saveAssistantMessage(conversation, assistantResponse, citations);
+        try {
+            Message assistantMessage = transactionTemplate.execute(
+                    status -> saveAssistantMessage(conversation, assistantResponse, citations));
+            cacheAnswer(user, context, assistantResponse, citations, llmNanos);
 
-            // 9. Retornar resposta
-            return buildChatResponse(conversation, assistantMessage);
+            log.debug("Streaming concluído: {} caracteres na conversa ID {}",
+                      assistantResponse.length(), conversation.getId());
+            listener.onComplete(conversation.getId(), assistantMessage.getId());
+        } catch (Exception e) {
+            log.error("Erro ao salvar resposta do streaming: {}", e.getMessage(), e);
+            listener.onError(new ChatException(conversation.getId(), "Erro ao salvar resposta", e));
+        }
+    }
 
+    /**
+     * Grava uma resposta que não depende do LLM e a entrega ao listener de uma vez.
+     */
+    private void replyAtOnce(Conversation conversation,
+                             String content,
+                             List<Citation> citations,
+                             ChatStreamListener listener) {
+        Message reply;
+        try {
+            reply = transactionTemplate.execute(status -> saveAssistantMessage(conversation, content, citations));
         } catch (Exception e) {
-            log.error("Erro ao processar chat: {}", e.getMessage(), e);
-            throw new ChatException("Erro ao processar mensagem de chat", e);
+            log.error("Erro ao salvar resposta: {}", e.getMessage(), e);
+            listener.onError(new ChatException(conversation.getId(), "Erro ao salvar resposta", e));
+            return;
+        }
+
+        listener.onCitations(conversation.getId(), toCitationDTOs(reply.getCitations()));
+        listener.onDelta(reply.getContent());
+        listener.onComplete(conversation.getId(), reply.getId());
+    }
+
+    /**
+     * Carrega ou cria a conversa e grava a pergunta, em uma transação curta.
+     */
+    private Conversation startTurn(ChatRequest request, User user) {
+        return transactionTemplate.execute(status -> {
+            Conversation conversation = getOrCreateConversation(request.getConversationId(), user);
+            saveUserMessage(conversation, request.getMessage());
+            return conversation;
+        });
+    }
+
+    /**
+     * Gera a resposta para a pergunta sem gravar nada: é a parte compartilhada entre
+     * requisições idênticas simultâneas (ChatSingleFlight).
+     * Sem contexto relevante ou com resposta em cache, o LLM não é chamado.
+     */
+    private GeneratedAnswer generateAnswer(String question, User user) {
+        RetrievedContext context = retrieveContext(question, user);
+
+        // Nenhum chunk passou no threshold: responde sem chamar o LLM
+        if (context.relevantChunks().isEmpty()) {
+            return new GeneratedAnswer(NO_CONTEXT_RESPONSE, List.of());
+        }
+
+        // Pergunta equivalente já respondida com os mesmos chunks: reusa a resposta
+        Optional<SemanticAnswerCache.CachedAnswer> cached =
+                answerCache.lookup(user.getId(), context.queryEmbedding(), context.chunkIds());
+        if (cached.isPresent()) {
+            return new GeneratedAnswer(cached.get().answer(), cached.get().citations());
+        }
+
+        // 5. Construir prompt com contexto
+        String contextPrompt = buildContextPrompt(context.relevantChunks(), question);
+
+        // 6. Chamar LLM
+        long llmStart = System.nanoTime();
+        String assistantResponse = callLLM(context.systemPrompt(), contextPrompt);
+        long llmNanos = System.nanoTime() - llmStart;
+
+        // 7. Criar citações
+        List<Citation> citations = buildCitations(context.relevantChunks());
+        cacheAnswer(user, context, assistantResponse, citations, llmNanos);
+
+        return new GeneratedAnswer(assistantResponse, citations);
+    }
+
+    /**
+     * Embedding da pergunta, busca no corpus do usuário e montagem do contexto.
+     * O embedding é gerado fora de transação; a busca usa uma transação somente leitura curta.
+     */
+    private RetrievedContext retrieveContext(String question, User user) {
+        // 3. Gerar embedding da query (chamada remota, sem conexão do banco)
+        PGvector queryEmbedding = embeddingService.generateEmbedding(question);
+
+        // 4. Busca de chunks relevantes (apenas no corpus do usuário): candidatos extras
+        //    para o ContextPacker fundir vizinhos, descartar redundância e caber no orçamento de tokens
+        int topK = retrievalService.getTopK();
+        List<ScoredChunk> candidates = readOnlyTransactionTemplate.execute(status -> retrievalService.retrieve(
+                question, queryEmbedding, user.getId(), contextPacker.candidateLimit(topK)));
+        String systemPrompt = buildSystemPrompt();
+        ContextPacker.PackedContext packedContext = contextPacker.pack(candidates, systemPrompt, question);
+        List<ScoredChunk> relevantChunks = packedContext.chunks();
+
+        if (relevantChunks.isEmpty()) {
+            log.warn("Nenhum chunk relevante encontrado para a query (threshold {})",
+                     retrievalService.getSimilarityThreshold());
+        } else {
+            log.info("Encontrados {} chunks relevantes (~{} tokens de prompt)",
+                     relevantChunks.size(), packedContext.promptTokens());
         }
+
+        return new RetrievedContext(queryEmbedding, relevantChunks,
+                SemanticAnswerCache.chunkIds(relevantChunks), systemPrompt);
+    }
+
+    private void cacheAnswer(User user,
+                             RetrievedContext context,
+                             String assistantResponse,
+                             List<Citation> citations,
+                             long llmNanos) {
+        answerCache.put(user.getId(), context.queryEmbedding(), context.chunkIds(),
+                SemanticAnswerCache.documentIds(context.relevantChunks()), assistantResponse, citations, llmNanos);
     }
 
     /**
@@ -170,47 +364,6 @@ public class ChatService {
         return messageRepository.save(message);
     }
 
-    /**
-     * Recupera chunks relevantes usando busca vetorial.
-     */
-    private List<ChunkWithScore> retrieveRelevantChunks(PGvector queryEmbedding) {
-        // Usar método que retorna dados dos chunks ordenados por similaridade
-        String embeddingStr = queryEmbedding.toString();
-        List<Object[]> results = chunkRepository.findTopKSimilarChunks(embeddingStr, topK);
-
-        List<ChunkWithScore> chunksWithScore = new ArrayList<>();
-
-        for (Object[] row : results) {
-            // Mapear resultados: [id, content, metadata, chunk_index, document_id, created_at, document_filename]
-            Long chunkId = ((Number) row[0]).longValue();
-            String content = (String) row[1];
-            Long documentId = ((Number) row[4]).longValue();
-            String documentFilename = (String) row[6];
-
-            // Criar um chunk simplificado com as informações necessárias
-            Chunk chunk = new Chunk();
-            chunk.setId(chunkId);
-            chunk.setContent(content);
-
-            // Criar um Document simplificado para as citações
-            com.helpdeskai.entity.Document doc = new com.helpdeskai.entity.Document();
-            doc.setId(documentId);
-            doc.setFilename(documentFilename);
-            chunk.setDocument(doc);
-
-            // Score dummy de 0.8 - como os chunks já vêm ordenados por similaridade,
-            // todos os top-K são considerados relevantes
-            double score = 0.8;
-
-            // Apenas adicionar chunks que passam no threshold
-            if (score >= similarityThreshold) {
-                chunksWithScore.add(new ChunkWithScore(chunk, score));
-            }
-        }
-
-        return chunksWithScore;
-    }
-
     /**
      * Constrói prompt de sistema.
      */
@@ -231,16 +384,16 @@ public class ChatService {
     /**
      * Constrói prompt com contexto dos chunks.
      */
-    private String buildContextPrompt(List<ChunkWithScore> chunks, String userQuestion) {
+    private String buildContextPrompt(List<ScoredChunk> chunks, String userQuestion) {
         StringBuilder context = new StringBuilder();
         context.append("DOCUMENTOS RELEVANTES:\n\n");
 
         for (int i = 0; i < chunks.size(); i++) {
-            ChunkWithScore chunkWithScore = chunks.get(i);
-            Chunk chunk = chunkWithScore.chunk;
+            ScoredChunk scoredChunk = chunks.get(i);
+            Chunk chunk = scoredChunk.getChunk();
 
             context.append(String.format("[DOCUMENTO %d] (Relevância: %.2f)\n",
-                    i + 1, chunkWithScore.score));
+                    i + 1, scoredChunk.getScore()));
             context.append(chunk.getContent());
             context.append("\n\n");
         }
@@ -258,10 +411,7 @@ public class ChatService {
         try {
             log.debug("Chamando LLM com contexto de {} caracteres", contextPrompt.length());
 
-            Prompt prompt = new Prompt(List.of(
-                    new SystemMessage(systemPrompt),
-                    new UserMessage(contextPrompt)
-            ));
+            Prompt prompt = buildPrompt(systemPrompt, contextPrompt);
 
             org.springframework.ai.chat.model.ChatResponse response = chatClient.prompt(prompt).call().chatResponse();
 
@@ -281,13 +431,20 @@ public class ChatService {
         }
     }
 
+    private Prompt buildPrompt(String systemPrompt, String contextPrompt) {
+        return new Prompt(List.of(
+                new SystemMessage(systemPrompt),
+                new UserMessage(contextPrompt)
+        ));
+    }
+
     /**
      * Constrói lista de citações a partir dos chunks.
      */
-    private List<Citation> buildCitations(List<ChunkWithScore> chunks) {
+    private List<Citation> buildCitations(List<ScoredChunk> chunks) {
         return chunks.stream()
-                .map(chunkWithScore -> {
-                    Chunk chunk = chunkWithScore.chunk;
+                .map(scoredChunk -> {
+                    Chunk chunk = scoredChunk.getChunk();
 
                     // Criar metadata de citação
                     Message.ChunkMetadataDTO metadata = new Message.ChunkMetadataDTO();
@@ -303,7 +460,7 @@ public class ChatService {
                     Citation citation = new Citation();
                     citation.setChunkId(chunk.getId());
                     citation.setContent(truncateContent(chunk.getContent(), 200));
-                    citation.setSimilarityScore(chunkWithScore.score);
+                    citation.setSimilarityScore(scoredChunk.getScore());
                     citation.setMetadata(metadata);
 
                     return citation;
@@ -316,37 +473,39 @@ public class ChatService {
      */
     private com.helpdeskai.dto.ChatResponse buildChatResponse(Conversation conversation,
                                                               Message assistantMessage) {
-        List<com.helpdeskai.dto.ChatResponse.CitationDTO> citationDTOs = new ArrayList<>();
-
-        if (assistantMessage.getCitations() != null) {
-            citationDTOs = assistantMessage.getCitations().stream()
-                    .map(citation -> {
-                        com.helpdeskai.dto.ChatResponse.MetadataDTO metaDTO =
-                                com.helpdeskai.dto.ChatResponse.MetadataDTO.builder()
-                                        .documentId(citation.getMetadata().getDocumentId())
-                                        .documentName(citation.getMetadata().getDocumentName())
-                                        .page(citation.getMetadata().getPage())
-                                        .section(citation.getMetadata().getSection())
-                                        .build();
-
-                        return com.helpdeskai.dto.ChatResponse.CitationDTO.builder()
-                                .chunkId(citation.getChunkId())
-                                .content(citation.getContent())
-                                .similarityScore(citation.getSimilarityScore())
-                                .metadata(metaDTO)
-                                .build();
-                    })
-                    .collect(Collectors.toList());
-        }
-
         return com.helpdeskai.dto.ChatResponse.builder()
                 .message(assistantMessage.getContent())
                 .conversationId(conversation.getId())
-                .citations(citationDTOs)
+                .citations(toCitationDTOs(assistantMessage.getCitations()))
                 .timestamp(assistantMessage.getCreatedAt())
                 .build();
     }
 
+    private List<com.helpdeskai.dto.ChatResponse.CitationDTO> toCitationDTOs(List<Citation> citations) {
+        if (citations == null) {
+            return new ArrayList<>();
+        }
+
+        return citations.stream()
+                .map(citation -> {
+                    com.helpdeskai.dto.ChatResponse.MetadataDTO metaDTO =
+                            com.helpdeskai.dto.ChatResponse.MetadataDTO.builder()
+                                    .documentId(citation.getMetadata().getDocumentId())
+                                    .documentName(citation.getMetadata().getDocumentName())
+                                    .page(citation.getMetadata().getPage())
+                                    .section(citation.getMetadata().getSection())
+                                    .build();
+
+                    return com.helpdeskai.dto.ChatResponse.CitationDTO.builder()
+                            .chunkId(citation.getChunkId())
+                            .content(citation.getContent())
+                            .similarityScore(citation.getSimilarityScore())
+                            .metadata(metaDTO)
+                            .build();
+                })
+                .collect(Collectors.toList());
+    }
+
     /**
      * Trunca conteúdo para exibição resumida.
      */
@@ -358,15 +517,22 @@ public class ChatService {
     }
 
     /**
-     * Classe interna para armazenar chunk com score de similaridade.
+     * Contexto recuperado para uma pergunta.
+     */
+    private record RetrievedContext(PGvector queryEmbedding,
+                                    List<ScoredChunk> relevantChunks,
+                                    Set<Long> chunkIds,
+                                    String systemPrompt) {
+    }
+
+    /**
+     * Resposta gerada (ou reaproveitada), ainda não gravada. Compartilhada entre requisições
+     * coalescidas: cada mensagem recebe a sua cópia da lista de citações.
      */
-    private static class ChunkWithScore {
-        private final Chunk chunk;
-        private final Double score;
+    private record GeneratedAnswer(String content, List<Citation> citations) {
 
-        public ChunkWithScore(Chunk chunk, Double score) {
-            this.chunk = chunk;
-            this.score = score;
+        List<Citation> copyCitations() {
+            return new ArrayList<>(citations);
         }
     }
 }
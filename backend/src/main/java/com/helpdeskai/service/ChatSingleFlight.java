@@ -0,0 +1,122 @@
+package com.helpdeskai.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicação de perguntas idênticas em andamento (single-flight).
+ *
+ * Em incidentes centenas de usuários fazem a mesma pergunta no mesmo minuto. A primeira requisição
+ * executa embedding, retrieval e LLM; as que chegam com a mesma chave enquanto ela roda esperam o
+ * mesmo resultado em vez de repetir as chamadas à OpenAI. A entrada sai do mapa assim que a
+ * execução termina — respostas já concluídas ficam a cargo do SemanticAnswerCache.
+ *
+ * Chave: corpus do usuário (o retrieval é isolado por tenant) + pergunta normalizada
+ * (Unicode NFC, espaços colapsados, como no EmbeddingCache).
+ *
+ * Quem aguarda espera no máximo helpdesk.chat.single-flight.wait-timeout-ms (padrão: o timeout
+ * do chat): se a execução compartilhada travar, cada requisição segue com sua própria execução
+ * em vez de ficar presa ao leader.
+ *
+ * Métricas: helpdesk.chat.singleflight.requests{result=leader|coalesced|timeout}.
+ */
+@Component
+@Slf4j
+public class ChatSingleFlight {
+
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final Counter leaderCounter;
+    private final Counter coalescedCounter;
+    private final Counter timeoutCounter;
+
+    @Value("${helpdesk.chat.single-flight.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${helpdesk.chat.single-flight.wait-timeout-ms:${helpdesk.chat.stream-timeout-ms:120000}}")
+    private long waitTimeoutMs = 120_000;
+
+    public ChatSingleFlight(MeterRegistry meterRegistry) {
+        this.leaderCounter = Counter.builder("helpdesk.chat.singleflight.requests")
+                .description("Perguntas executadas (leader) ou que aguardaram uma execução idêntica (coalesced)")
+                .tag("result", "leader")
+                .register(meterRegistry);
+        this.coalescedCounter = Counter.builder("helpdesk.chat.singleflight.requests")
+                .description("Perguntas executadas (leader) ou que aguardaram uma execução idêntica (coalesced)")
+                .tag("result", "coalesced")
+                .register(meterRegistry);
+        this.timeoutCounter = Counter.builder("helpdesk.chat.singleflight.requests")
+                .description("Perguntas que desistiram de aguardar a execução idêntica e executaram sozinhas")
+                .tag("result", "timeout")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Executa work, ou aguarda a execução já em andamento para a mesma chave.
+     * Exceções de work chegam a todas as requisições que aguardavam; quem esperou além de
+     * waitTimeoutMs executa work por conta própria.
+     *
+     * O resultado é compartilhado entre as requisições e não deve ser alterado.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Supplier<T> work) {
+        if (!enabled) {
+            return work.get();
+        }
+
+        CompletableFuture<Object> created = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, created);
+        if (running != null) {
+            coalescedCounter.increment();
+            log.debug("Pergunta idêntica em andamento; aguardando o resultado compartilhado");
+            try {
+                return (T) running.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                timeoutCounter.increment();
+                log.warn("Execução compartilhada não terminou em {} ms; executando a pergunta sem aguardar", waitTimeoutMs);
+                return work.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw new IllegalStateException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrompido aguardando a execução compartilhada", e);
+            }
+        }
+
+        leaderCounter.increment();
+        try {
+            T result = work.get();
+            created.complete(result);
+            return result;
+        } catch (Throwable e) {
+            // Inclui Error: sem completar o future, quem já aguardava só sairia pelo timeout
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, created);
+        }
+    }
+
+    static String key(Long userId, String question) {
+        return userId + ":" + EmbeddingCache.normalize(question);
+    }
+
+    int inFlightCount() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,31 @@
+package com.helpdeskai.service;
+
+import com.helpdeskai.dto.ChatResponse;
+
+import java.util.List;
+
+/**
+ * Recebe os eventos de uma resposta de chat em streaming (ChatService.streamChat).
+ *
+ * Ordem garantida: onCitations uma vez, zero ou mais onDelta e, por fim, onComplete ou onError.
+ * onDelta e onComplete podem ser chamados em threads do cliente HTTP do LLM.
+ */
+public interface ChatStreamListener {
+
+    /**
+     * Citações do contexto usado na resposta, enviadas antes do primeiro token.
+     */
+    void onCitations(Long conversationId, List<ChatResponse.CitationDTO> citations);
+
+    /**
+     * Trecho de texto gerado pelo LLM.
+     */
+    void onDelta(String delta);
+
+    /**
+     * Resposta completa e mensagem do assistente já persistida.
+     */
+    void onComplete(Long conversationId, Long messageId);
+
+    void onError(Throwable error);
+}
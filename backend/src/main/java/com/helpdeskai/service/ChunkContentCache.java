@@ -0,0 +1,81 @@
+package com.helpdeskai.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.helpdeskai.repository.ChunkRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Segunda fase do retrieval: hidrata (content, metadata, filename) os ids devolvidos pela busca vetorial.
+ *
+ * As mesmas FAQs são recuperadas o tempo todo, então as linhas ficam em um cache LRU pequeno
+ * (Caffeine, limitado por quantidade) e só os ids ausentes vão ao banco, em uma única query IN.
+ * Entradas de um documento são descartadas quando ele é deletado ou reprocessado.
+ *
+ * Métricas no MeterRegistry com cache=chunks.
+ */
+@Component
+@Slf4j
+public class ChunkContentCache {
+
+    static final String CACHE_NAME = "chunks";
+
+    private final ChunkRepository chunkRepository;
+    private final Cache<Long, Object[]> cache;
+
+    public ChunkContentCache(ChunkRepository chunkRepository,
+                             MeterRegistry meterRegistry,
+                             @Value("${helpdesk.retrieval.content-cache.max-size:2000}") long maxSize) {
+        this.chunkRepository = chunkRepository;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Linhas dos chunks pedidos, no formato de ChunkRepository.findChunkRowsByIds
+     * ([id, content, metadata, chunk_index, document_id, created_at, document_filename]).
+     * Ids que não existem mais no banco ficam fora do mapa.
+     */
+    public Map<Long, Object[]> getAll(Collection<Long> ids) {
+        return cache.getAll(ids, this::load);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onDocumentIndexed(DocumentService.DocumentIndexedEvent event) {
+        invalidateDocument(event.documentId());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onDocumentDeleted(DocumentService.DocumentDeletedEvent event) {
+        invalidateDocument(event.documentId());
+    }
+
+    void invalidateDocument(Long documentId) {
+        if (cache.asMap().values().removeIf(row -> documentId.equals(((Number) row[4]).longValue()))) {
+            log.debug("Cache de chunks invalidado para documento ID {}", documentId);
+        }
+    }
+
+    private Map<Long, Object[]> load(Collection<? extends Long> missingIds) {
+        List<Long> ids = List.copyOf(missingIds);
+        Map<Long, Object[]> rowsById = new HashMap<>();
+        for (Object[] row : chunkRepository.findChunkRowsByIds(ids)) {
+            rowsById.put(((Number) row[0]).longValue(), row);
+        }
+        return rowsById;
+    }
+}
@@ -4,14 +4,23 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.Writer;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * Serviço responsável por dividir texto em chunks semânticos com sobreposição.
  * Utiliza estratégia baseada em tokens com detecção de fronteiras de sentenças.
+ *
+ * As fronteiras são definidas pelo conteúdo (content-defined chunking): um chunk termina no primeiro
+ * fim de sentença, depois do tamanho mínimo, cujo texto passa em um teste de hash. Como o teste só
+ * olha para a própria sentença, uma edição local muda apenas os chunks ao redor dela; os seguintes
+ * voltam a ter as mesmas fronteiras (e o mesmo content_hash), o que permite reindexar um documento
+ * atualizado embedando só os chunks que mudaram.
  */
 @Service
 @Slf4j
@@ -50,94 +59,219 @@ public class ChunkingService {
             return new ArrayList<>();
         }
 
-        text = text.trim();
+        log.debug("Iniciando chunking de texto. Tamanho: {} chars, tipo: {}",
+                  text.length(), documentType);
+
         List<ChunkMetadata> chunks = new ArrayList<>();
+        IncrementalChunker chunker = newChunker(documentType, chunks::add);
+        chunker.appendText(text, 0, text.length());
+        chunker.finish();
 
-        int textLength = text.length();
-        int estimatedChars = defaultChunkSize * tokensPerChar;
-        int overlapChars = overlapSize * tokensPerChar;
+        return chunks;
+    }
 
-        int startPos = 0;
-        int chunkIndex = 0;
+    /**
+     * Cria um chunker incremental: o texto chega aos pedaços (é um Writer, então pode receber
+     * direto a saída do handler SAX do Tika) e cada chunk é entregue ao sink assim que a fronteira
+     * é conhecida. Gera exatamente os mesmos chunks que chunkText para o mesmo texto.
+     *
+     * @param documentType Tipo do documento (para logging)
+     * @param sink Recebe os chunks em ordem
+     * @return Chunker; chamar finish() depois do último trecho
+     */
+    public IncrementalChunker newChunker(String documentType, Consumer<ChunkMetadata> sink) {
+        return new IncrementalChunker(documentType, sink);
+    }
 
-        log.debug("Iniciando chunking de texto. Tamanho: {} chars, tipo: {}",
-                  textLength, documentType);
+    /**
+     * Chunker incremental. Só guarda o trecho ainda não emitido mais a janela de busca de fronteira
+     * (helpdesk.chunking.max-size), nunca o texto completo.
+     *
+     * As posições (startChar/endChar) são relativas ao texto sem os espaços iniciais, como em chunkText.
+     * Não é thread-safe.
+     */
+    public class IncrementalChunker extends Writer {
+
+        private final String documentType;
+        private final Consumer<ChunkMetadata> sink;
+        private final int estimatedChars = defaultChunkSize * tokensPerChar;
+        private final int minChars = Math.min(minChunkSize * tokensPerChar, estimatedChars);
+        private final int maxChars = Math.max(maxChunkSize * tokensPerChar, estimatedChars);
+        private final int overlapChars = overlapSize * tokensPerChar;
+        // Cada caractere tem chance 1/boundarySpacing de encerrar o chunk: média perto de estimatedChars
+        private final int boundarySpacing = Math.max(1, estimatedChars - minChars);
+
+        private final StringBuilder buffer = new StringBuilder();
+        private int bufferStart;       // Posição de buffer[0] no texto
+        private int length;            // Chars recebidos (sem os espaços iniciais)
+        private int lastNonBlank = -1; // Posição do último char que não é espaço (fim do texto após trim)
+        private int startPos;
+        private int chunkIndex;
+        private boolean exhausted;
+        private boolean finished;
+
+        private IncrementalChunker(String documentType, Consumer<ChunkMetadata> sink) {
+            this.documentType = documentType;
+            this.sink = sink;
+        }
 
-        while (startPos < textLength) {
-            int endPos = Math.min(startPos + estimatedChars, textLength);
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            appendText(CharBuffer.wrap(cbuf), off, off + len);
+        }
 
-            // Se não é o último chunk, tenta encontrar fim de sentença
-            if (endPos < textLength) {
-                int sentenceEndPos = findSentenceEnd(text, endPos, estimatedChars / 2);
-                if (sentenceEndPos > startPos) {
-                    endPos = sentenceEndPos;
-                }
-            }
+        @Override
+        public void write(String str, int off, int len) {
+            appendText(str, off, off + len);
+        }
 
-            // Extrai o chunk
-            String chunkContent = text.substring(startPos, endPos).trim();
+        @Override
+        public void flush() {
+            // Chunks já são emitidos assim que possível
+        }
 
-            // Valida tamanho mínimo (pula chunks muito pequenos exceto o último)
-            int estimatedTokens = chunkContent.length() / tokensPerChar;
-            if (!chunkContent.isEmpty() &&
-                (estimatedTokens >= minChunkSize || endPos >= textLength)) {
+        @Override
+        public void close() {
+            finish();
+        }
+
+        /**
+         * Emite os chunks restantes. Chamadas seguintes não fazem nada.
+         */
+        public void finish() {
+            if (finished) {
+                return;
+            }
+            drain(true);
+            finished = true;
+            buffer.setLength(0);
 
-                ChunkMetadata chunk = new ChunkMetadata(
-                    chunkContent,
-                    chunkIndex++,
-                    startPos,
-                    endPos
-                );
+            log.info("Chunking concluído. Total de chunks: {}, documento: {}", chunkIndex, documentType);
+        }
 
-                chunks.add(chunk);
-                log.trace("Chunk {} criado: {} chars, posição {}-{}",
-                          chunkIndex - 1, chunkContent.length(), startPos, endPos);
+        void appendText(CharSequence text, int from, int to) {
+            if (finished) {
+                throw new IllegalStateException("Chunker já finalizado");
             }
 
-            // Move para o próximo chunk com overlap
-            startPos = Math.max(startPos + estimatedChars - overlapChars, endPos);
+            int begin = from;
+            if (length == 0) {
+                // trim() inicial
+                while (begin < to && text.charAt(begin) <= ' ') {
+                    begin++;
+                }
+            }
+            if (begin >= to) {
+                return;
+            }
 
-            // Previne loop infinito
-            if (startPos <= 0 || (startPos >= textLength && endPos >= textLength)) {
-                break;
+            for (int i = to - 1; i >= begin; i--) {
+                if (text.charAt(i) > ' ') {
+                    lastNonBlank = length + (i - begin);
+                    break;
+                }
             }
+            buffer.append(text, begin, to);
+            length += to - begin;
+
+            drain(false);
         }
 
-        log.info("Chunking concluído. Total de chunks: {}, documento: {}",
-                 chunks.size(), documentType);
+        /**
+         * Mesmo laço de chunkText. Enquanto o fim do texto não é conhecido, um chunk só é decidido
+         * quando toda a janela de busca (maxChars) já chegou, então o resultado não depende de como
+         * o texto foi fatiado.
+         */
+        private void drain(boolean endOfText) {
+            int textLength = endOfText ? lastNonBlank + 1 : Integer.MAX_VALUE;
+
+            while (!exhausted && startPos < textLength) {
+                if (!endOfText && lastNonBlank < startPos + maxChars) {
+                    return;
+                }
 
-        return chunks;
-    }
+                // O restante cabe em um chunk: último chunk
+                int endPos = textLength - startPos <= estimatedChars ? textLength : findBoundary(textLength);
 
-    /**
-     * Encontra o fim de uma sentença próximo à posição target.
-     *
-     * @param text Texto completo
-     * @param targetPos Posição alvo
-     * @param searchWindow Janela de busca (chars antes e depois)
-     * @return Posição do fim da sentença ou -1 se não encontrado
-     */
-    private int findSentenceEnd(String text, int targetPos, int searchWindow) {
-        int start = Math.max(0, targetPos - searchWindow);
-        int end = Math.min(text.length(), targetPos + searchWindow);
+                // Extrai o chunk (fronteiras já respeitam o tamanho mínimo, exceto no último)
+                String chunkContent = buffer.substring(startPos - bufferStart, endPos - bufferStart).trim();
+                if (!chunkContent.isEmpty()) {
+                    log.trace("Chunk {} criado: {} chars, posição {}-{}",
+                              chunkIndex, chunkContent.length(), startPos, endPos);
+                    sink.accept(new ChunkMetadata(chunkContent, chunkIndex++, startPos, endPos));
+                }
 
-        String searchText = text.substring(start, end);
-        Matcher matcher = SENTENCE_END_PATTERN.matcher(searchText);
+                if (endPos >= textLength) {
+                    exhausted = true;
+                } else {
+                    // Próximo chunk com overlap, medido a partir da fronteira (também definida pelo conteúdo)
+                    int nextStart = endPos - overlapChars;
+                    startPos = nextStart > startPos ? nextStart : endPos;
+                }
 
-        int bestPos = -1;
-        int bestDistance = Integer.MAX_VALUE;
+                discardConsumed();
+            }
+        }
 
-        while (matcher.find()) {
-            int absPos = start + matcher.end();
-            int distance = Math.abs(absPos - targetPos);
+        /**
+         * Fronteira do chunk que começa em startPos: o primeiro fim de sentença depois de minChars
+         * cuja sentença passa em isContentBoundary. Se nenhuma passa até maxChars, usa o fim de
+         * sentença mais próximo de estimatedChars; sem fim de sentença, corta em estimatedChars.
+         *
+         * @return Posição (exclusiva) do fim do chunk
+         */
+        private int findBoundary(int textLength) {
+            int limit = Math.min(startPos + maxChars, textLength);
+            int target = startPos + estimatedChars;
+
+            Matcher matcher = SENTENCE_END_PATTERN.matcher(
+                    buffer.subSequence(startPos - bufferStart, limit - bufferStart));
+
+            int sentenceStart = startPos;
+            int fallback = -1;
+            int bestDistance = Integer.MAX_VALUE;
+
+            while (matcher.find()) {
+                int sentenceEnd = startPos + matcher.end();
+                if (sentenceEnd - startPos >= minChars) {
+                    if (isContentBoundary(sentenceStart, sentenceEnd)) {
+                        return sentenceEnd;
+                    }
+                    int distance = Math.abs(sentenceEnd - target);
+                    if (distance < bestDistance) {
+                        bestDistance = distance;
+                        fallback = sentenceEnd;
+                    }
+                }
+                sentenceStart = sentenceEnd;
+            }
+
+            return fallback != -1 ? fallback : target;
+        }
 
-            if (distance < bestDistance) {
-                bestDistance = distance;
-                bestPos = absPos;
+        /**
+         * Teste de fronteira que só depende do texto da sentença [from, to): passa com probabilidade
+         * proporcional ao tamanho dela (1/boundarySpacing por caractere).
+         */
+        private boolean isContentBoundary(int from, int to) {
+            int hash = 0;
+            for (int i = from - bufferStart; i < to - bufferStart; i++) {
+                hash = 31 * hash + buffer.charAt(i);
             }
+            // Espalha os bits antes do módulo
+            hash *= 0x9E3779B9;
+            hash ^= hash >>> 16;
+            return Math.floorMod(hash, boundarySpacing) < to - from;
         }
 
-        return bestPos;
+        private void discardConsumed() {
+            int consumed = Math.min(startPos, length) - bufferStart;
+            // Compacta só quando metade do buffer já foi consumida (custo amortizado linear)
+            if (consumed > 0 && consumed >= buffer.length() / 2) {
+                buffer.delete(0, consumed);
+                bufferStart += consumed;
+            }
+        }
     }
 
     /**
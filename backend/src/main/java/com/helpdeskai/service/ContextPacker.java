@@ -0,0 +1,318 @@
+package com.helpdeskai.service;
+
+import com.helpdeskai.entity.Chunk;
+import com.helpdeskai.service.RetrievalService.ScoredChunk;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Etapa pós-retrieval que monta o contexto do prompt sem texto redundante e dentro de um
+ * orçamento de tokens.
+ *
+ * 1. Chunks vizinhos (chunk_index consecutivo no mesmo documento) viram um único trecho,
+ *    com a sobreposição do ChunkingService removida.
+ * 2. Maximal Marginal Relevance ordena os trechos candidatos (o retrieval busca
+ *    topK * candidate-multiplier): score = lambda * relevância - (1 - lambda) * redundância,
+ *    onde redundância é a maior similaridade (Jaccard de palavras) com um trecho já escolhido.
+ * 3. Os trechos entram no contexto nessa ordem enquanto couberem em helpdesk.prompt.token-budget
+ *    (tokens reais do tokenizer do modelo, descontados prompt de sistema e pergunta).
+ *
+ * A redundância usa o texto em vez dos embeddings dos chunks: a busca vetorial devolve só
+ * ids + distâncias, e trechos repetidos são justamente os que compartilham palavras.
+ *
+ * Tokens por etapa vão para o DistributionSummary helpdesk.prompt.tokens
+ * (stage=system, question, retrieved, merged, context).
+ */
+@Component
+@Slf4j
+public class ContextPacker {
+
+    private static final Pattern WORD_PATTERN = Pattern.compile("[\\p{L}\\p{N}]+");
+
+    // Prefixo do próximo chunk procurado no anterior para detectar a sobreposição
+    private static final int OVERLAP_PROBE_CHARS = 32;
+
+    // Cabeçalho "[DOCUMENTO n] (Relevância: x)" e quebras de linha de cada trecho no prompt
+    static final int PASSAGE_OVERHEAD_TOKENS = 16;
+
+    private final TokenCounter tokenCounter;
+
+    // Um summary por etapa, registrados uma vez (o builder faria lookup no registry a cada chamada)
+    private final DistributionSummary systemTokensSummary;
+    private final DistributionSummary questionTokensSummary;
+    private final DistributionSummary retrievedTokensSummary;
+    private final DistributionSummary mergedTokensSummary;
+    private final DistributionSummary contextTokensSummary;
+
+    @Value("${helpdesk.retrieval.packing.candidate-multiplier:3}")
+    private int candidateMultiplier = 3;
+
+    @Value("${helpdesk.retrieval.packing.mmr-lambda:0.7}")
+    private double mmrLambda = 0.7;
+
+    @Value("${helpdesk.prompt.token-budget:3000}")
+    private int tokenBudget = 3000;
+
+    public ContextPacker(TokenCounter tokenCounter, MeterRegistry meterRegistry) {
+        this.tokenCounter = tokenCounter;
+        this.systemTokensSummary = tokenSummary(meterRegistry, "system");
+        this.questionTokensSummary = tokenSummary(meterRegistry, "question");
+        this.retrievedTokensSummary = tokenSummary(meterRegistry, "retrieved");
+        this.mergedTokensSummary = tokenSummary(meterRegistry, "merged");
+        this.contextTokensSummary = tokenSummary(meterRegistry, "context");
+    }
+
+    /**
+     * Quantos candidatos o retrieval deve trazer para a montagem do contexto.
+     */
+    public int candidateLimit(int topK) {
+        return topK * Math.max(1, candidateMultiplier);
+    }
+
+    /**
+     * Monta o contexto: funde vizinhos, ordena por MMR e preenche o orçamento de tokens.
+     *
+     * @param candidates Chunks recuperados, em ordem de relevância
+     * @param systemPrompt Prompt de sistema (desconta do orçamento)
+     * @param question Pergunta do usuário (desconta do orçamento)
+     * @return Trechos escolhidos e o total estimado de tokens do prompt
+     */
+    public PackedContext pack(List<ScoredChunk> candidates, String systemPrompt, String question) {
+        int systemTokens = tokenCounter.count(systemPrompt);
+        int questionTokens = tokenCounter.count(question) + PASSAGE_OVERHEAD_TOKENS;
+        int contextBudget = Math.max(0, tokenBudget - systemTokens - questionTokens);
+
+        int retrievedTokens = 0;
+        for (ScoredChunk candidate : candidates) {
+            retrievedTokens += passageTokens(candidate);
+        }
+
+        List<ScoredChunk> ranked = select(candidates, candidates.size());
+        List<ScoredChunk> packed = new ArrayList<>();
+        int mergedTokens = 0;
+        int contextTokens = 0;
+        for (ScoredChunk span : ranked) {
+            int tokens = passageTokens(span);
+            mergedTokens += tokens;
+            if (contextTokens + tokens <= contextBudget) {
+                packed.add(span);
+                contextTokens += tokens;
+            }
+        }
+
+        // O trecho mais relevante sozinho estoura o orçamento: vai cortado em vez de ficar de fora
+        if (packed.isEmpty() && !ranked.isEmpty() && contextBudget > PASSAGE_OVERHEAD_TOKENS) {
+            ScoredChunk truncated = truncate(ranked.get(0), contextBudget - PASSAGE_OVERHEAD_TOKENS);
+            packed.add(truncated);
+            contextTokens = passageTokens(truncated);
+        }
+
+        systemTokensSummary.record(systemTokens);
+        questionTokensSummary.record(questionTokens);
+        retrievedTokensSummary.record(retrievedTokens);
+        mergedTokensSummary.record(mergedTokens);
+        contextTokensSummary.record(contextTokens);
+
+        log.info("Contexto: {} tokens em {} trechos (recuperados {} tokens, após fusão {}, orçamento {})",
+                 contextTokens, packed.size(), retrievedTokens, mergedTokens, contextBudget);
+
+        return new PackedContext(packed, systemTokens + questionTokens + contextTokens);
+    }
+
+    /**
+     * Funde vizinhos e seleciona até limit trechos por MMR.
+     *
+     * @param candidates Chunks recuperados, em ordem de relevância
+     * @param limit Número máximo de trechos
+     * @return Trechos em ordem de seleção (o primeiro é sempre o mais relevante)
+     */
+    List<ScoredChunk> select(List<ScoredChunk> candidates, int limit) {
+        if (candidates.isEmpty()) {
+            return candidates;
+        }
+        return selectByMmr(mergeAdjacent(candidates), limit);
+    }
+
+    /**
+     * Agrupa chunks consecutivos do mesmo documento em um trecho só.
+     * O trecho herda o id (citação) e o score do chunk mais relevante do grupo.
+     */
+    static List<ScoredChunk> mergeAdjacent(List<ScoredChunk> candidates) {
+        Map<Long, List<ScoredChunk>> byDocument = new LinkedHashMap<>();
+        for (ScoredChunk candidate : candidates) {
+            Chunk chunk = candidate.getChunk();
+            if (chunk.getDocument() == null || chunk.getChunkIndex() == null) {
+                // Sem posição no documento não há como saber quem é vizinho
+                byDocument.computeIfAbsent(-chunk.getId(), key -> new ArrayList<>()).add(candidate);
+                continue;
+            }
+            byDocument.computeIfAbsent(chunk.getDocument().getId(), key -> new ArrayList<>()).add(candidate);
+        }
+
+        List<ScoredChunk> spans = new ArrayList<>();
+        for (List<ScoredChunk> documentChunks : byDocument.values()) {
+            documentChunks.sort(Comparator.comparing(scored -> scored.getChunk().getChunkIndex(),
+                    Comparator.nullsLast(Comparator.naturalOrder())));
+
+            List<ScoredChunk> run = new ArrayList<>();
+            for (ScoredChunk scored : documentChunks) {
+                if (!run.isEmpty() && !isNextIndex(run.get(run.size() - 1), scored)) {
+                    spans.add(mergeRun(run));
+                    run = new ArrayList<>();
+                }
+                run.add(scored);
+            }
+            spans.add(mergeRun(run));
+        }
+
+        spans.sort(Comparator.comparingDouble(ScoredChunk::getScore).reversed());
+        return spans;
+    }
+
+    /**
+     * MMR guloso: a cada passo escolhe o trecho com maior lambda * score - (1 - lambda) * redundância.
+     */
+    List<ScoredChunk> selectByMmr(List<ScoredChunk> spans, int limit) {
+        List<ScoredChunk> remaining = new ArrayList<>(spans);
+        List<Set<String>> remainingWords = new ArrayList<>();
+        for (ScoredChunk span : spans) {
+            remainingWords.add(words(span.getChunk().getContent()));
+        }
+
+        List<ScoredChunk> selected = new ArrayList<>();
+        List<Set<String>> selectedWords = new ArrayList<>();
+
+        while (!remaining.isEmpty() && selected.size() < limit) {
+            int bestIndex = 0;
+            double bestValue = Double.NEGATIVE_INFINITY;
+
+            for (int i = 0; i < remaining.size(); i++) {
+                double redundancy = 0;
+                for (Set<String> other : selectedWords) {
+                    redundancy = Math.max(redundancy, jaccard(remainingWords.get(i), other));
+                }
+
+                double value = mmrLambda * remaining.get(i).getScore() - (1 - mmrLambda) * redundancy;
+                if (value > bestValue) {
+                    bestValue = value;
+                    bestIndex = i;
+                }
+            }
+
+            selected.add(remaining.remove(bestIndex));
+            selectedWords.add(remainingWords.remove(bestIndex));
+        }
+
+        return selected;
+    }
+
+    /**
+     * Concatena o texto b ao a sem repetir o trecho em que o fim de a coincide com o início de b.
+     */
+    static String mergeOverlapping(String a, String b) {
+        String probe = b.substring(0, Math.min(OVERLAP_PROBE_CHARS, b.length()));
+        int position = a.indexOf(probe);
+        while (position >= 0) {
+            if (b.startsWith(a.substring(position))) {
+                return a + b.substring(a.length() - position);
+            }
+            position = a.indexOf(probe, position + 1);
+        }
+        return a + "\n" + b;
+    }
+
+    private static boolean isNextIndex(ScoredChunk previous, ScoredChunk next) {
+        Integer previousIndex = previous.getChunk().getChunkIndex();
+        Integer nextIndex = next.getChunk().getChunkIndex();
+        return previousIndex != null && nextIndex != null && nextIndex == previousIndex + 1;
+    }
+
+    private static ScoredChunk mergeRun(List<ScoredChunk> run) {
+        if (run.size() == 1) {
+            return run.get(0);
+        }
+
+        ScoredChunk best = run.stream().max(Comparator.comparingDouble(ScoredChunk::getScore)).orElseThrow();
+        String content = run.get(0).getChunk().getContent();
+        for (int i = 1; i < run.size(); i++) {
+            content = mergeOverlapping(content, run.get(i).getChunk().getContent());
+        }
+
+        Chunk span = new Chunk();
+        span.setId(best.getChunk().getId());
+        span.setDocument(best.getChunk().getDocument());
+        span.setMetadata(best.getChunk().getMetadata());
+        span.setChunkIndex(run.get(0).getChunk().getChunkIndex());
+        span.setContent(content);
+
+        return new ScoredChunk(span, best.getScore());
+    }
+
+    private int passageTokens(ScoredChunk scored) {
+        return tokenCounter.count(scored.getChunk().getContent()) + PASSAGE_OVERHEAD_TOKENS;
+    }
+
+    private ScoredChunk truncate(ScoredChunk scored, int maxTokens) {
+        Chunk original = scored.getChunk();
+        Chunk chunk = new Chunk();
+        chunk.setId(original.getId());
+        chunk.setDocument(original.getDocument());
+        chunk.setMetadata(original.getMetadata());
+        chunk.setChunkIndex(original.getChunkIndex());
+        chunk.setContent(tokenCounter.truncate(original.getContent(), maxTokens));
+        return new ScoredChunk(chunk, scored.getScore());
+    }
+
+    private static DistributionSummary tokenSummary(MeterRegistry meterRegistry, String stage) {
+        return DistributionSummary.builder("helpdesk.prompt.tokens")
+                .description("Tokens do prompt por etapa da montagem do contexto")
+                .baseUnit("tokens")
+                .tag("stage", stage)
+                .register(meterRegistry);
+    }
+
+    private static Set<String> words(String content) {
+        Set<String> words = new HashSet<>();
+        if (content == null) {
+            return words;
+        }
+        Matcher matcher = WORD_PATTERN.matcher(content.toLowerCase(Locale.ROOT));
+        while (matcher.find()) {
+            words.add(matcher.group());
+        }
+        return words;
+    }
+
+    private static double jaccard(Set<String> a, Set<String> b) {
+        if (a.isEmpty() && b.isEmpty()) {
+            return 0;
+        }
+        int intersection = 0;
+        for (String word : a) {
+            if (b.contains(word)) {
+                intersection++;
+            }
+        }
+        return (double) intersection / (a.size() + b.size() - intersection);
+    }
+
+    /**
+     * Trechos que entram no prompt e a estimativa de tokens do prompt completo.
+     */
+    public record PackedContext(List<ScoredChunk> chunks, int promptTokens) {
+    }
+}
@@ -3,9 +3,12 @@ package com.helpdeskai.service;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.helpdeskai.dto.DocumentDTO;
 import com.helpdeskai.dto.DocumentUploadResponse;
+import com.helpdeskai.dto.IngestionJobDTO;
 import com.helpdeskai.entity.Chunk;
 import com.helpdeskai.entity.Document;
 import com.helpdeskai.entity.Document.DocumentStatus;
+import com.helpdeskai.entity.IngestionJob;
+import com.helpdeskai.entity.IngestionJob.Stage;
 import com.helpdeskai.entity.User;
 import com.helpdeskai.exception.DocumentProcessingException;
 import com.helpdeskai.exception.ResourceNotFoundException;
@@ -18,17 +21,43 @@ import org.apache.tika.parser.ParseContext;
 import org.apache.tika.parser.Parser;
 import org.apache.tika.sax.BodyContentHandler;
 import com.pgvector.PGvector;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -38,10 +67,35 @@ import java.util.stream.Collectors;
 @Slf4j
 public class DocumentService {
 
+    // Intervalo em que estágios bloqueados em uma fila conferem se outro estágio falhou
+    private static final long STAGE_POLL_MS = 200;
+
     private final DocumentRepository documentRepository;
     private final ChunkRepository chunkRepository;
     private final ChunkingService chunkingService;
     private final EmbeddingService embeddingService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final DocumentStorage documentStorage;
+    private final IngestionJobService ingestionJobService;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter dedupHitCounter;
+    private final Counter dedupMissCounter;
+    private final Counter dedupChunksCounter;
+    private final Counter embeddingReuseHitCounter;
+    private final Counter embeddingReuseMissCounter;
+    private final Timer persistTimer;
+    private final Counter persistedChunksCounter;
+    private final Executor pipelineExecutor;
+    private final Counter chunkedCounter;
+    private final Counter embeddedCounter;
+    private final Timer embeddingTimer;
+    private final Timer firstSearchableTimer;
+    private final Counter resumeSkippedCounter;
+    private final Counter reindexKeptCounter;
+    private final Counter reindexAddedCounter;
+    private final Counter reindexRemovedCounter;
+    private final AtomicInteger toEmbedDepth = new AtomicInteger();
+    private final AtomicInteger toPersistDepth = new AtomicInteger();
 
     @Value("${helpdesk.upload.max-file-size-mb:50}")
     private int maxFileSizeMb;
@@ -49,6 +103,16 @@ public class DocumentService {
     @Value("${helpdesk.upload.allowed-mime-types:application/pdf}")
     private String allowedMimeTypesStr;
 
+    @Value("${helpdesk.ingestion.batch-size:100}")
+    private int batchSize = 100;
+
+    @Value("${helpdesk.ingestion.pipeline.queue-capacity:2}")
+    private int queueCapacity = 2;
+
+    // Entra no content_hash dos chunks: vetores de outro modelo nunca são reaproveitados
+    @Value("${spring.ai.openai.embedding.options.model:text-embedding-3-small}")
+    private String embeddingModel = "text-embedding-3-small";
+
     private List<String> getAllowedMimeTypes() {
         return List.of(allowedMimeTypesStr.split(","));
     }
@@ -56,156 +120,855 @@ public class DocumentService {
     public DocumentService(DocumentRepository documentRepository,
                           ChunkRepository chunkRepository,
                           ChunkingService chunkingService,
-                          EmbeddingService embeddingService) {
+                          EmbeddingService embeddingService,
+                          ApplicationEventPublisher eventPublisher,
+                          DocumentStorage documentStorage,
+                          IngestionJobService ingestionJobService,
+                          TransactionTemplate transactionTemplate,
+                          MeterRegistry meterRegistry,
+                          @Qualifier("ingestionPipelineExecutor") Executor pipelineExecutor) {
         this.documentRepository = documentRepository;
         this.chunkRepository = chunkRepository;
         this.chunkingService = chunkingService;
         this.embeddingService = embeddingService;
+        this.eventPublisher = eventPublisher;
+        this.documentStorage = documentStorage;
+        this.ingestionJobService = ingestionJobService;
+        this.transactionTemplate = transactionTemplate;
+        this.pipelineExecutor = pipelineExecutor;
+        this.dedupHitCounter = Counter.builder("helpdesk.ingestion.dedup.requests")
+                .description("Uploads idênticos a um documento já indexado (hit) ou processados do zero (miss)")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.dedupMissCounter = Counter.builder("helpdesk.ingestion.dedup.requests")
+                .description("Uploads idênticos a um documento já indexado (hit) ou processados do zero (miss)")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.dedupChunksCounter = Counter.builder("helpdesk.ingestion.dedup.chunks")
+                .description("Chunks copiados de documentos idênticos em vez de embedados")
+                .register(meterRegistry);
+        this.embeddingReuseHitCounter = Counter.builder("helpdesk.ingestion.embedding.reuse")
+                .description("Chunks com embedding reaproveitado de um chunk idêntico (hit) ou gerado pelo modelo (miss)")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.embeddingReuseMissCounter = Counter.builder("helpdesk.ingestion.embedding.reuse")
+                .description("Chunks com embedding reaproveitado de um chunk idêntico (hit) ou gerado pelo modelo (miss)")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.persistTimer = Timer.builder("helpdesk.ingestion.persist")
+                .description("Tempo de gravação de cada lote de chunks (COPY)")
+                .register(meterRegistry);
+        this.persistedChunksCounter = Counter.builder("helpdesk.ingestion.persist.rows")
+                .description("Chunks gravados pela ingestão (a taxa em linhas/s sai deste contador)")
+                .register(meterRegistry);
+        this.chunkedCounter = Counter.builder("helpdesk.ingestion.pipeline.chunks")
+                .description("Chunks que passaram por cada estágio do pipeline de ingestão")
+                .tag("stage", "chunking")
+                .register(meterRegistry);
+        this.embeddedCounter = Counter.builder("helpdesk.ingestion.pipeline.chunks")
+                .description("Chunks que passaram por cada estágio do pipeline de ingestão")
+                .tag("stage", "embedding")
+                .register(meterRegistry);
+        this.embeddingTimer = Timer.builder("helpdesk.ingestion.embedding")
+                .description("Tempo de embedding de cada lote de chunks")
+                .register(meterRegistry);
+        this.firstSearchableTimer = Timer.builder("helpdesk.ingestion.first-searchable")
+                .description("Tempo do início do processamento até o primeiro lote de chunks gravado")
+                .register(meterRegistry);
+        this.resumeSkippedCounter = Counter.builder("helpdesk.ingestion.resume.skipped")
+                .description("Chunks já gravados antes do checkpoint, pulados ao retomar uma ingestão")
+                .register(meterRegistry);
+        this.reindexKeptCounter = Counter.builder("helpdesk.ingestion.reindex.chunks")
+                .description("Chunks mantidos, adicionados ou removidos por reindexações incrementais")
+                .tag("result", "kept")
+                .register(meterRegistry);
+        this.reindexAddedCounter = Counter.builder("helpdesk.ingestion.reindex.chunks")
+                .description("Chunks mantidos, adicionados ou removidos por reindexações incrementais")
+                .tag("result", "added")
+                .register(meterRegistry);
+        this.reindexRemovedCounter = Counter.builder("helpdesk.ingestion.reindex.chunks")
+                .description("Chunks mantidos, adicionados ou removidos por reindexações incrementais")
+                .tag("result", "removed")
+                .register(meterRegistry);
+        Gauge.builder("helpdesk.ingestion.pipeline.queue.depth", toEmbedDepth, AtomicInteger::get)
+                .description("Lotes aguardando o estágio seguinte do pipeline de ingestão")
+                .tag("queue", "embedding")
+                .register(meterRegistry);
+        Gauge.builder("helpdesk.ingestion.pipeline.queue.depth", toPersistDepth, AtomicInteger::get)
+                .description("Lotes aguardando o estágio seguinte do pipeline de ingestão")
+                .tag("queue", "persistence")
+                .register(meterRegistry);
     }
 
     /**
-     * Faz upload de um documento PDF e inicia o processamento assíncrono.
+     * Faz upload de um documento PDF e enfileira o processamento.
+     *
+     * O arquivo vai para o DocumentStorage e o documento (PROCESSING) é salvo junto com o job de
+     * ingestão; extração, chunking e embeddings ficam com o IngestionWorker.
      *
      * @param file Arquivo enviado
      * @param user Usuário que fez o upload
-     * @return Resposta com informações do documento
+     * @return Resposta com informações do documento e do job
      */
-    @Transactional
     public DocumentUploadResponse uploadDocument(MultipartFile file, User user) {
         // Validações
         validateFile(file);
 
+        DocumentStorage.StoredFile stored = documentStorage.store(file);
+        String storageKey = stored.key();
+
         try {
-            // Extrair texto com Apache Tika
-            log.info("Extraindo texto do PDF: {}", file.getOriginalFilename());
-            String extractedText = extractTextFromPdf(file);
+            return transactionTemplate.execute(status -> {
+                Document document = Document.builder()
+                        .user(user)
+                        .filename(file.getOriginalFilename())
+                        .fileSize(file.getSize())
+                        .mimeType(file.getContentType())
+                        .contentHash(stored.contentHash())
+                        .status(DocumentStatus.PROCESSING)
+                        .totalChunks(0)
+                        .uploadedAt(LocalDateTime.now())
+                        .build();
 
-            if (extractedText == null || extractedText.trim().isEmpty()) {
-                throw new DocumentProcessingException("Nenhum texto extraído do PDF");
-            }
+                document = documentRepository.save(document);
+                IngestionJob job = ingestionJobService.enqueue(document, storageKey);
+                log.info("Document ID {} salvo com status PROCESSING (job ID {})", document.getId(), job.getId());
 
-            // Criar entidade Document
-            Document document = Document.builder()
-                    .user(user)
-                    .filename(file.getOriginalFilename())
-                    .fileSize(file.getSize())
-                    .mimeType(file.getContentType())
-                    .status(DocumentStatus.PROCESSING)
-                    .totalChunks(0)
-                    .uploadedAt(LocalDateTime.now())
-                    .build();
+                // Retornar resposta imediata
+                return DocumentUploadResponse.builder()
+                        .documentId(document.getId())
+                        .jobId(job.getId())
+                        .filename(document.getFilename())
+                        .fileSize(document.getFileSize())
+                        .mimeType(document.getMimeType())
+                        .status(document.getStatus().name())
+                        .totalChunks(0)
+                        .uploadedAt(document.getUploadedAt())
+                        .message("Documento enviado com sucesso. Processamento enfileirado.")
+                        .build();
+            });
 
-            document = documentRepository.save(document);
-            log.info("Document ID {} salvo com status PROCESSING", document.getId());
+        } catch (Exception e) {
+            documentStorage.delete(storageKey);
+            log.error("Erro ao fazer upload do documento: {}", e.getMessage(), e);
+            throw new DocumentProcessingException("Erro ao processar upload: " + e.getMessage(), e);
+        }
+    }
 
-            // Armazenar texto temporariamente (em produção, poderia usar cache Redis)
-            // Por simplicidade, vamos processar diretamente de forma assíncrona
-            final Long documentId = document.getId();
-            final String textToProcess = extractedText;
+    /**
+     * Substitui o arquivo de um documento e enfileira a reindexação incremental.
+     *
+     * O documento mantém o ID (conversas e citações continuam apontando para ele) e os chunks da
+     * versão anterior continuam pesquisáveis até a reindexação terminar: o worker só embeda e grava
+     * os chunks cujo conteúdo mudou (ver processDocument). Um arquivo idêntico ao já indexado não
+     * gera job.
+     *
+     * @param documentId ID do documento
+     * @param file Nova versão do arquivo
+     * @param user Usuário que fez o upload (precisa ser o dono)
+     * @return Resposta com informações do documento e do job (jobId nulo se nada mudou)
+     */
+    public DocumentUploadResponse updateDocument(Long documentId, MultipartFile file, User user) {
+        validateFile(file);
 
-            // Processar assincronamente
-            processDocumentAsync(documentId, textToProcess);
+        Document current = documentRepository.findById(documentId)
+                .orElseThrow(() -> new ResourceNotFoundException("Document", documentId));
 
-            // Retornar resposta imediata
+        // Verificar propriedade
+        if (!current.getUser().getId().equals(user.getId())) {
+            throw new DocumentProcessingException(documentId,
+                    "Usuário não tem permissão para atualizar este documento");
+        }
+
+        if (current.getStatus() == DocumentStatus.PROCESSING) {
+            throw new DocumentProcessingException(documentId,
+                    "Documento ainda está em processamento; aguarde a conclusão para atualizá-lo");
+        }
+
+        DocumentStorage.StoredFile stored = documentStorage.store(file);
+        String storageKey = stored.key();
+
+        if (current.getStatus() == DocumentStatus.COMPLETED
+                && stored.contentHash().equals(current.getContentHash())) {
+            documentStorage.delete(storageKey);
+            log.info("Documento ID {}: nova versão idêntica à indexada, nada a reindexar", documentId);
             return DocumentUploadResponse.builder()
-                    .documentId(document.getId())
-                    .filename(document.getFilename())
-                    .fileSize(document.getFileSize())
-                    .mimeType(document.getMimeType())
-                    .status(document.getStatus().name())
-                    .totalChunks(0)
-                    .uploadedAt(document.getUploadedAt())
-                    .message("Documento enviado com sucesso. Processamento iniciado.")
+                    .documentId(current.getId())
+                    .filename(current.getFilename())
+                    .fileSize(current.getFileSize())
+                    .mimeType(current.getMimeType())
+                    .status(current.getStatus().name())
+                    .totalChunks(current.getTotalChunks())
+                    .uploadedAt(current.getUploadedAt())
+                    .message("Conteúdo idêntico à versão indexada. Nenhuma reindexação necessária.")
                     .build();
+        }
+
+        // Arquivo de uma ingestão anterior que falhou: só é apagado depois do commit, porque com
+        // rollback o job anterior continua sendo o mais recente e ainda aponta para ele
+        AtomicReference<String> previousStorageKey = new AtomicReference<>();
+        DocumentUploadResponse response;
+        try {
+            response = transactionTemplate.execute(status -> {
+                // Lock na linha: PUTs simultâneos do mesmo documento passam um de cada vez por aqui
+                Document document = documentRepository.findByIdForUpdate(documentId)
+                        .orElseThrow(() -> new ResourceNotFoundException("Document", documentId));
+                if (document.getStatus() == DocumentStatus.PROCESSING) {
+                    // Outra atualização chegou primeiro
+                    throw new DocumentProcessingException(documentId, "Documento ainda está em processamento");
+                }
+
+                ingestionJobService.findLatest(documentId)
+                        .ifPresent(job -> previousStorageKey.set(job.getStorageKey()));
+
+                document.setFilename(file.getOriginalFilename());
+                document.setFileSize(file.getSize());
+                document.setMimeType(file.getContentType());
+                document.setContentHash(stored.contentHash());
+                document.setStatus(DocumentStatus.PROCESSING);
+                document = documentRepository.save(document);
+
+                IngestionJob job = ingestionJobService.enqueue(document, storageKey);
+                log.info("Documento ID {} atualizado, reindexação incremental enfileirada (job ID {})",
+                         document.getId(), job.getId());
+
+                return DocumentUploadResponse.builder()
+                        .documentId(document.getId())
+                        .jobId(job.getId())
+                        .filename(document.getFilename())
+                        .fileSize(document.getFileSize())
+                        .mimeType(document.getMimeType())
+                        .status(document.getStatus().name())
+                        .totalChunks(document.getTotalChunks())
+                        .uploadedAt(document.getUploadedAt())
+                        .message("Documento atualizado. Reindexação incremental enfileirada.")
+                        .build();
+            });
 
         } catch (Exception e) {
-            log.error("Erro ao fazer upload do documento: {}", e.getMessage(), e);
-            throw new DocumentProcessingException("Erro ao processar upload: " + e.getMessage(), e);
+            documentStorage.delete(storageKey);
+            log.error("Erro ao atualizar o documento ID {}: {}", documentId, e.getMessage(), e);
+            throw new DocumentProcessingException(documentId, "Erro ao processar atualização: " + e.getMessage(), e);
         }
+
+        documentStorage.delete(previousStorageKey.get());
+        return response;
     }
 
     /**
-     * Processa documento de forma assíncrona: chunking + embeddings + salvar.
+     * Processa um job de ingestão reivindicado pelo IngestionWorker:
+     * extração + chunking + embeddings + salvar, em streaming.
      *
-     * @param documentId ID do documento
-     * @param extractedText Texto extraído do PDF
+     * O texto extraído pelo Tika vai direto para o chunker incremental, e os chunks são embedados e
+     * gravados em lotes de helpdesk.ingestion.batch-size por estágios concorrentes (IngestionPipeline):
+     * a memória usada não depende do tamanho do documento. O documento só fica COMPLETED (e o job
+     * concluído) na transação final.
+     *
+     * Cada lote gravado avança o checkpoint do job na mesma transação. Uma nova tentativa (worker
+     * reiniciado, falha transitória ou retry manual) refaz a extração e o chunking, que são
+     * determinísticos, mas pula os chunks antes do checkpoint: só os lotes restantes voltam à OpenAI.
+     *
+     * Um documento que já tem chunks sem checkpoint (nova versão enviada por updateDocument) é
+     * reindexado de forma incremental: como as fronteiras dos chunks dependem só do conteúdo, o
+     * texto que não mudou gera chunks com o mesmo content_hash, que são mantidos (só chunk_index e
+     * posições são atualizados). Apenas os chunks novos são embedados e gravados, com user_id nulo
+     * para ficarem fora da busca enquanto a versão anterior está no ar; a transação final os publica
+     * (ChunkRepository.publishChunks), remove os que sumiram e conclui o documento, então a busca
+     * nunca vê as duas versões ao mesmo tempo. Não há checkpoint nesse modo: uma nova tentativa
+     * compara de novo com o que já está gravado (incluindo chunks ocultos de uma tentativa anterior).
+     *
+     * @param job Job reivindicado (status RUNNING)
      */
-    @Async
-    @Transactional
-    public void processDocumentAsync(Long documentId, String extractedText) {
+    public void processDocument(IngestionJob job) {
+        Long documentId = job.getDocumentId();
+
         try {
-            log.info("Iniciando processamento assíncrono do documento ID {}", documentId);
+            log.info("Iniciando processamento do documento ID {} (job ID {})", documentId, job.getId());
 
             Document document = documentRepository.findById(documentId)
                     .orElseThrow(() -> new ResourceNotFoundException("Document", documentId));
 
-            // 1. Chunking
-            List<ChunkingService.ChunkMetadata> chunkMetadataList =
-                    chunkingService.chunkText(extractedText, document.getFilename());
+            if (completeFromDuplicate(job, document)) {
+                return;
+            }
 
-            log.info("Documento ID {} dividido em {} chunks", documentId, chunkMetadataList.size());
+            int resumeFrom = job.getCheckpointChunkIndex();
+            ingestionJobService.updateProgress(job, Stage.EXTRACTING, null, resumeFrom, resumeFrom);
 
-            if (chunkMetadataList.isEmpty()) {
-                document.setStatus(DocumentStatus.FAILED);
-                documentRepository.save(document);
-                log.error("Nenhum chunk gerado para documento ID {}", documentId);
+            // Chunks da versão anterior, por hash (vazio em um documento novo)
+            Map<String, Deque<IndexedChunk>> previous =
+                    resumeFrom == 0 ? indexedChunksByHash(documentId) : new HashMap<>();
+            if (resumeFrom > 0) {
+                log.info("Documento ID {}: retomando a ingestão a partir do chunk {}", documentId, resumeFrom);
+            } else if (!previous.isEmpty()) {
+                log.info("Documento ID {}: reindexação incremental", documentId);
+            }
+
+            if (previous.isEmpty()) {
+                // Chunks gravados depois do checkpoint (lote interrompido) não ficam duplicados
+                transactionTemplate.executeWithoutResult(status ->
+                        chunkRepository.deleteByDocumentIdFromChunkIndex(documentId, resumeFrom));
+            }
+
+            // Extração + chunking nesta thread; embeddings e gravação em estágios concorrentes
+            int totalChunks;
+            long persistNanos;
+            boolean incremental;
+            List<Chunk> moved;
+            List<Long> removed;
+            try (IngestionPipeline pipeline = new IngestionPipeline(job, document, resumeFrom, previous)) {
+                ChunkingService.IncrementalChunker chunker =
+                        chunkingService.newChunker(document.getFilename(), pipeline);
+                try (InputStream stream = documentStorage.open(job.getStorageKey())) {
+                    extractText(stream, chunker);
+                }
+                chunker.finish();
+                pipeline.finish();
+                totalChunks = pipeline.indexed + pipeline.kept.get();
+                persistNanos = pipeline.persistNanos;
+                incremental = pipeline.incremental;
+                moved = pipeline.moved;
+                removed = pipeline.unclaimedChunkIds();
+
+                if (pipeline.incremental) {
+                    reindexKeptCounter.increment(pipeline.kept.get());
+                    reindexAddedCounter.increment(pipeline.indexed);
+                    reindexRemovedCounter.increment(removed.size());
+                    log.info("Documento ID {}: {} chunks mantidos ({} renumerados), {} novos, {} removidos",
+                             documentId, pipeline.kept.get(), moved.size(), pipeline.indexed, removed.size());
+                }
+            }
+
+            if (totalChunks == 0) {
+                throw new DocumentProcessingException(documentId, "Nenhum texto extraído do PDF");
+            }
+
+            // Troca de versão atômica: publicação dos chunks novos, renumeração, remoção dos
+            // chunks antigos e conclusão
+            transactionTemplate.executeWithoutResult(status -> {
+                if (incremental) {
+                    chunkRepository.publishChunks(documentId, job.getUserId());
+                }
+                if (!moved.isEmpty()) {
+                    chunkRepository.updateChunkPositions(moved);
+                }
+                if (!removed.isEmpty()) {
+                    chunkRepository.deleteAllByIdInBatch(removed);
+                }
+                completeDocument(job, totalChunks);
+            });
+
+            documentStorage.delete(job.getStorageKey());
+
+            log.info("Documento ID {} processado com sucesso. Total chunks: {} (gravação: {} linhas/s)",
+                     documentId, totalChunks, rowsPerSecond(totalChunks, persistNanos));
+
+        } catch (DocumentProcessingException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new DocumentProcessingException(documentId, "Erro no processamento", e);
+        }
+    }
+
+    /**
+     * Upload idêntico (mesmo SHA-256) a um documento já indexado: copia chunks e embeddings no
+     * próprio banco, sem Tika nem OpenAI. Os chunks são copiados (não compartilhados), então
+     * apagar qualquer um dos documentos não afeta o outro.
+     *
+     * A busca fica restrita ao tenant do job: um hit entre tenants revelaria (pela latência e pelo
+     * status imediato) que outro cliente já enviou o mesmo arquivo.
+     *
+     * @return true se o documento foi concluído pela cópia
+     */
+    private boolean completeFromDuplicate(IngestionJob job, Document document) {
+        if (document.getContentHash() == null) {
+            return false;
+        }
+
+        Optional<Document> source = documentRepository.findFirstByUserIdAndContentHashAndStatusAndIdNotOrderByIdAsc(
+                job.getUserId(), document.getContentHash(), DocumentStatus.COMPLETED, document.getId());
+        if (source.isEmpty()) {
+            dedupMissCounter.increment();
+            return false;
+        }
+
+        Long sourceId = source.get().getId();
+        ingestionJobService.updateProgress(job, Stage.INDEXING, null, null, null);
+        Integer copied = transactionTemplate.execute(status -> {
+            chunkRepository.deleteByDocumentId(document.getId());
+            int count = chunkRepository.cloneChunks(sourceId, document.getId(), job.getUserId());
+            if (count > 0) {
+                completeDocument(job, count);
+            }
+            return count;
+        });
+
+        if (copied == null || copied == 0) {
+            // Origem removida ou sem chunks: processa normalmente
+            dedupMissCounter.increment();
+            return false;
+        }
+
+        dedupHitCounter.increment();
+        dedupChunksCounter.increment(copied);
+        documentStorage.delete(job.getStorageKey());
+
+        log.info("Documento ID {} idêntico ao documento ID {}: {} chunks copiados sem extração nem embeddings",
+                 document.getId(), sourceId, copied);
+        return true;
+    }
+
+    /**
+     * Chunks já gravados do documento, agrupados por content_hash na ordem de chunk_index
+     * (conteúdos repetidos no documento ficam na mesma fila).
+     */
+    private Map<String, Deque<IndexedChunk>> indexedChunksByHash(Long documentId) {
+        Map<String, Deque<IndexedChunk>> byHash = new HashMap<>();
+        for (Chunk chunk : chunkRepository.findByDocumentId(documentId)) {
+            // Chunks anteriores ao backfill de content_hash
+            String hash = chunk.getContentHash() != null ? chunk.getContentHash() : contentHash(chunk.getContent());
+            byHash.computeIfAbsent(hash, key -> new ArrayDeque<>())
+                    .add(new IndexedChunk(chunk.getId(), chunk.getChunkIndex(), chunk.getMetadata()));
+        }
+        return byHash;
+    }
+
+    /**
+     * Chunk já gravado de um documento, candidato a ser mantido em uma reindexação incremental.
+     */
+    private record IndexedChunk(Long id, Integer chunkIndex, Chunk.ChunkMetadata metadata) {}
+
+    /**
+     * Conclui o documento e o job. Roda dentro de uma transação.
+     */
+    private void completeDocument(IngestionJob job, int totalChunks) {
+        Long documentId = job.getDocumentId();
+        Document document = documentRepository.findById(documentId)
+                .orElseThrow(() -> new ResourceNotFoundException("Document", documentId));
+
+        // Atualizar status do documento
+        document.setTotalChunks(totalChunks);
+        document.setStatus(DocumentStatus.COMPLETED);
+        documentRepository.save(document);
+
+        ingestionJobService.markCompleted(job, totalChunks);
+
+        eventPublisher.publishEvent(new DocumentIndexedEvent(documentId, job.getUserId(), totalChunks));
+    }
+
+    /**
+     * Pipeline de ingestão de um documento: extração + chunking (thread do worker), embeddings e
+     * gravação rodam como estágios concorrentes ligados por filas limitadas
+     * (helpdesk.ingestion.pipeline.queue-capacity lotes). Enquanto um lote é embedado, o anterior é
+     * gravado e o Tika segue extraindo o próximo; fila cheia bloqueia o estágio anterior
+     * (backpressure), então a memória continua limitada. Cada lote fica pesquisável ao ser gravado,
+     * junto com o checkpoint do job. Chunks antes de resumeFrom já estão gravados e são descartados.
+     *
+     * Em uma reindexação incremental (previous não vazio), chunks com o mesmo conteúdo de um chunk já
+     * gravado não são embedados nem gravados: ficam em moved quando a posição mudou, e os chunks
+     * gravados que nenhum chunk novo reaproveitou sobram em unclaimedChunkIds().
+     *
+     * Uma falha em qualquer estágio interrompe os demais e é relançada por finish().
+     */
+    private class IngestionPipeline implements Consumer<ChunkingService.ChunkMetadata>, AutoCloseable {
+
+        // Marcadores de fim de fila (comparados por identidade)
+        private static final List<ChunkingService.ChunkMetadata> END_OF_CHUNKS = List.of();
+        private static final List<Chunk> END_OF_EMBEDDINGS = List.of();
+
+        private final IngestionJob job;
+        private final Document document;
+        private final int resumeFrom;
+        private final Map<String, Deque<IndexedChunk>> previous;
+        private final boolean incremental;
+        private final List<Chunk> moved = new ArrayList<>();
+        private final AtomicInteger kept = new AtomicInteger();
+        private final long startNanos = System.nanoTime();
+        private final BlockingQueue<List<ChunkingService.ChunkMetadata>> toEmbed;
+        private final BlockingQueue<List<Chunk>> toPersist;
+        private final CompletableFuture<Void> embeddingStage;
+        private final CompletableFuture<Void> persistenceStage;
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        private List<ChunkingService.ChunkMetadata> batch = new ArrayList<>();
+        private volatile boolean extracting = true;
+        private volatile boolean embedding = true;
+        private int embedded;
+        private int indexed;
+        private boolean searchable;
+        private long persistNanos;
+
+        IngestionPipeline(IngestionJob job, Document document, int resumeFrom,
+                          Map<String, Deque<IndexedChunk>> previous) {
+            this.job = job;
+            this.document = document;
+            this.resumeFrom = resumeFrom;
+            this.previous = previous;
+            this.incremental = !previous.isEmpty();
+            this.embedded = resumeFrom;
+            this.indexed = resumeFrom;
+            this.toEmbed = new ArrayBlockingQueue<>(queueCapacity);
+            this.toPersist = new ArrayBlockingQueue<>(queueCapacity);
+            this.embeddingStage = CompletableFuture.runAsync(() -> runStage(this::embedBatches), pipelineExecutor);
+            this.persistenceStage = CompletableFuture.runAsync(() -> runStage(this::persistBatches), pipelineExecutor);
+        }
+
+        @Override
+        public void accept(ChunkingService.ChunkMetadata chunk) {
+            chunkedCounter.increment();
+            if (chunk.getChunkIndex() < resumeFrom) {
+                resumeSkippedCounter.increment();
                 return;
             }
+            batch.add(chunk);
+            if (batch.size() >= batchSize) {
+                put(toEmbed, batch, toEmbedDepth);
+                batch = new ArrayList<>();
+            }
+        }
+
+        /**
+         * Fim da extração: envia o último lote, espera os estágios terminarem e relança a falha, se houver.
+         */
+        void finish() {
+            if (!batch.isEmpty()) {
+                put(toEmbed, batch, toEmbedDepth);
+            }
+            put(toEmbed, END_OF_CHUNKS, toEmbedDepth);
+            extracting = false;
+            progress(null, null);
+
+            CompletableFuture.allOf(embeddingStage, persistenceStage).join();
+            rethrowFailure();
+        }
+
+        /**
+         * Interrompe os estágios (extração falhou) e espera as threads saírem.
+         */
+        @Override
+        public void close() {
+            failure.compareAndSet(null, new CancellationException("Ingestão interrompida"));
+            CompletableFuture.allOf(embeddingStage, persistenceStage).exceptionally(error -> null).join();
+
+            // Lotes descartados por uma falha não contam mais na profundidade das filas
+            toEmbedDepth.addAndGet(-toEmbed.size());
+            toPersistDepth.addAndGet(-toPersist.size());
+        }
+
+        private void embedBatches() {
+            while (true) {
+                List<ChunkingService.ChunkMetadata> next = take(toEmbed, toEmbedDepth);
+                if (next == END_OF_CHUNKS) {
+                    break;
+                }
+                List<ChunkingService.ChunkMetadata> changed = incremental ? keepUnchanged(next) : next;
+                if (changed.isEmpty()) {
+                    progress(embedded + kept.get(), null);
+                    continue;
+                }
+                long start = System.nanoTime();
+                List<Chunk> chunks = embed(changed);
+                embeddingTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                embeddedCounter.increment(chunks.size());
+                embedded += chunks.size();
+                progress(embedded + kept.get(), null);
+                put(toPersist, chunks, toPersistDepth);
+            }
+            embedding = false;
+            progress(null, null);
+            put(toPersist, END_OF_EMBEDDINGS, toPersistDepth);
+        }
+
+        private void persistBatches() {
+            while (true) {
+                List<Chunk> chunks = take(toPersist, toPersistDepth);
+                if (chunks == END_OF_EMBEDDINGS) {
+                    break;
+                }
+
+                // Gravação em lote (COPY binário): um comando por lote em vez de um INSERT por chunk.
+                // O checkpoint avança na mesma transação: lote gravado e checkpoint nunca divergem
+                int nextChunkIndex = chunks.get(chunks.size() - 1).getChunkIndex() + 1;
+                long start = System.nanoTime();
+                Integer copied = transactionTemplate.execute(status -> {
+                    int count = chunkRepository.copyChunks(chunks);
+                    if (!incremental) {
+                        checkpoint(nextChunkIndex);
+                    }
+                    return count;
+                });
+                long elapsed = System.nanoTime() - start;
+                persistTimer.record(elapsed, TimeUnit.NANOSECONDS);
+                persistedChunksCounter.increment(copied != null ? copied : 0);
+                persistNanos += elapsed;
+
+                // Na reindexação incremental nada fica pesquisável antes da transação final
+                if (!searchable && !incremental) {
+                    firstSearchableTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+                    searchable = true;
+                }
+                indexed += chunks.size();
+                if (incremental) {
+                    progress(null, indexed + kept.get());
+                }
+                log.debug("Documento ID {}: {} chunks gravados em {} ms ({} linhas/s), {} indexados até agora",
+                          job.getDocumentId(), chunks.size(), elapsed / 1_000_000,
+                          rowsPerSecond(chunks.size(), elapsed), indexed);
+            }
+        }
+
+        /**
+         * Reindexação incremental: cada chunk com o mesmo conteúdo de um chunk já gravado fica com
+         * ele (registrado em moved se a posição mudou).
+         *
+         * @return Chunks que mudaram, a embedar e gravar
+         */
+        private List<ChunkingService.ChunkMetadata> keepUnchanged(List<ChunkingService.ChunkMetadata> batch) {
+            List<ChunkingService.ChunkMetadata> changed = new ArrayList<>();
+            for (ChunkingService.ChunkMetadata chunk : batch) {
+                Deque<IndexedChunk> candidates = previous.get(contentHash(chunk.getContent()));
+                IndexedChunk match = candidates != null ? candidates.poll() : null;
+                if (match == null) {
+                    changed.add(chunk);
+                    continue;
+                }
+
+                kept.incrementAndGet();
+                Chunk.ChunkMetadata metadata = toChunkMetadata(chunk);
+                if (!Objects.equals(match.chunkIndex(), chunk.getChunkIndex())
+                        || !Objects.equals(match.metadata(), metadata)) {
+                    moved.add(Chunk.builder()
+                            .id(match.id())
+                            .chunkIndex(chunk.getChunkIndex())
+                            .metadata(metadata)
+                            .build());
+                }
+            }
+            return changed;
+        }
 
-            // 2. Gerar embeddings em batch
-            List<String> chunkTexts = chunkMetadataList.stream()
-                    .map(ChunkingService.ChunkMetadata::getContent)
+        /**
+         * Chunks da versão anterior que não foram reaproveitados. Chamar depois de finish().
+         */
+        List<Long> unclaimedChunkIds() {
+            return previous.values().stream()
+                    .flatMap(Deque::stream)
+                    .map(IndexedChunk::id)
                     .collect(Collectors.toList());
+        }
 
-            List<PGvector> embeddings = embeddingService.generateEmbeddings(chunkTexts);
+        /**
+         * Embeddings do lote: textos já embedados (mesmo hash) reaproveitam o vetor salvo.
+         */
+        private List<Chunk> embed(List<ChunkingService.ChunkMetadata> batch) {
+            List<String> hashes = batch.stream()
+                    .map(chunk -> contentHash(chunk.getContent()))
+                    .collect(Collectors.toList());
+            Map<String, PGvector> known = new HashMap<>(chunkRepository.findEmbeddingsByContentHash(job.getUserId(), hashes));
 
-            if (embeddings.size() != chunkMetadataList.size()) {
-                throw new DocumentProcessingException(documentId,
-                        "Número de embeddings não corresponde ao número de chunks");
+            // Textos inéditos, sem repetição dentro do próprio lote
+            Map<String, String> misses = new LinkedHashMap<>();
+            for (int i = 0; i < batch.size(); i++) {
+                if (!known.containsKey(hashes.get(i))) {
+                    misses.putIfAbsent(hashes.get(i), batch.get(i).getContent());
+                }
             }
 
-            // 3. Criar e salvar entidades Chunk
-            for (int i = 0; i < chunkMetadataList.size(); i++) {
-                ChunkingService.ChunkMetadata metadata = chunkMetadataList.get(i);
-                PGvector embedding = embeddings.get(i);
-
-                // Criar metadata JSON
-                Chunk.ChunkMetadata chunkMeta = new Chunk.ChunkMetadata();
-                chunkMeta.setStartChar(metadata.getStartChar());
-                chunkMeta.setEndChar(metadata.getEndChar());
-                chunkMeta.setDocumentType("PDF");
-
-                Chunk chunk = Chunk.builder()
-                        .document(document)
-                        .content(metadata.getContent())
-                        .embedding(embedding)
-                        .chunkIndex(metadata.getChunkIndex())
-                        .metadata(chunkMeta)
-                        .createdAt(LocalDateTime.now())
-                        .build();
+            if (!misses.isEmpty()) {
+                List<PGvector> generated = embeddingService.generateEmbeddings(new ArrayList<>(misses.values()));
+                if (generated.size() != misses.size()) {
+                    throw new DocumentProcessingException(job.getDocumentId(),
+                            "Número de embeddings não corresponde ao número de chunks");
+                }
+                int next = 0;
+                for (String hash : misses.keySet()) {
+                    known.put(hash, generated.get(next++));
+                }
+            }
+            embeddingReuseHitCounter.increment(batch.size() - misses.size());
+            embeddingReuseMissCounter.increment(misses.size());
 
-                chunkRepository.save(chunk);
+            // Chunks de uma reindexação incremental ficam ocultos (user_id nulo) até a troca de versão
+            Long userId = incremental ? null : job.getUserId();
+            List<Chunk> chunks = new ArrayList<>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                chunks.add(toChunk(userId, document, batch.get(i), hashes.get(i), known.get(hashes.get(i))));
             }
+            return chunks;
+        }
 
-            // 4. Atualizar status do documento
-            document.setTotalChunks(chunkMetadataList.size());
-            document.setStatus(DocumentStatus.COMPLETED);
-            documentRepository.save(document);
+        /**
+         * Etapa reportada: a mais adiantada ainda em andamento. Serializado entre os estágios
+         * para que as atualizações do job (load + save) não se sobrescrevam.
+         */
+        private synchronized void progress(Integer chunksEmbedded, Integer chunksIndexed) {
+            Stage stage = extracting ? Stage.EXTRACTING : embedding ? Stage.EMBEDDING : Stage.INDEXING;
+            ingestionJobService.updateProgress(job, stage, null, chunksEmbedded, chunksIndexed);
+        }
 
-            log.info("Documento ID {} processado com sucesso. Total chunks: {}",
-                     documentId, chunkMetadataList.size());
+        // Também conta como progresso (chunks_indexed): serializado com progress()
+        private synchronized void checkpoint(int nextChunkIndex) {
+            ingestionJobService.checkpoint(job, nextChunkIndex);
+        }
 
-        } catch (Exception e) {
-            log.error("Erro ao processar documento ID {}: {}", documentId, e.getMessage(), e);
+        private void runStage(Runnable stage) {
+            try {
+                stage.run();
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        }
 
-            // Atualizar status para FAILED
-            documentRepository.findById(documentId).ifPresent(doc -> {
-                doc.setStatus(DocumentStatus.FAILED);
-                documentRepository.save(doc);
-            });
+        private <T> void put(BlockingQueue<T> queue, T item, AtomicInteger depth) {
+            try {
+                while (!queue.offer(item, STAGE_POLL_MS, TimeUnit.MILLISECONDS)) {
+                    rethrowFailure();
+                }
+                depth.incrementAndGet();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DocumentProcessingException(job.getDocumentId(), "Ingestão interrompida", e);
+            }
+            rethrowFailure();
+        }
 
-            throw new DocumentProcessingException(documentId, "Erro no processamento", e);
+        private <T> T take(BlockingQueue<T> queue, AtomicInteger depth) {
+            try {
+                T item;
+                while ((item = queue.poll(STAGE_POLL_MS, TimeUnit.MILLISECONDS)) == null) {
+                    rethrowFailure();
+                }
+                depth.decrementAndGet();
+                return item;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DocumentProcessingException(job.getDocumentId(), "Ingestão interrompida", e);
+            }
+        }
+
+        private void rethrowFailure() {
+            Throwable error = failure.get();
+            if (error == null) {
+                return;
+            }
+            if (error instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (error instanceof Error fatal) {
+                throw fatal;
+            }
+            throw new DocumentProcessingException(job.getDocumentId(), "Erro no processamento", error);
+        }
+    }
+
+    private static Chunk toChunk(Long userId, Document document, ChunkingService.ChunkMetadata metadata,
+                                 String contentHash, PGvector embedding) {
+        Chunk.ChunkMetadata chunkMeta = toChunkMetadata(metadata);
+
+        return Chunk.builder()
+                .document(document)
+                .userId(userId)
+                .content(metadata.getContent())
+                .embedding(embedding)
+                .embeddingShort(EmbeddingService.toShortEmbedding(embedding))
+                .contentHash(contentHash)
+                .chunkIndex(metadata.getChunkIndex())
+                .metadata(chunkMeta)
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+
+    // Metadata JSON do chunk
+    private static Chunk.ChunkMetadata toChunkMetadata(ChunkingService.ChunkMetadata metadata) {
+        Chunk.ChunkMetadata chunkMeta = new Chunk.ChunkMetadata();
+        chunkMeta.setStartChar(metadata.getStartChar());
+        chunkMeta.setEndChar(metadata.getEndChar());
+        chunkMeta.setDocumentType("PDF");
+        return chunkMeta;
+    }
+
+    private static long rowsPerSecond(int rows, long nanos) {
+        return nanos > 0 ? Math.round(rows * 1_000_000_000.0 / nanos) : 0;
+    }
+
+    private String contentHash(String content) {
+        return contentHash(embeddingModel, content);
+    }
+
+    /**
+     * SHA-256 (hex) de "modelo:texto" do chunk, o mesmo calculado pelo backfill em init-db.sql.
+     * Com o modelo na chave, trocar de modelo de embedding faz todo chunk contar como inédito
+     * (reaproveitamento e reindexação incremental geram vetores novos).
+     */
+    static String contentHash(String embeddingModel, String content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest((embeddingModel + ":" + content).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponível", e);
+        }
+    }
+
+    /**
+     * Progresso da ingestão de um documento do usuário.
+     *
+     * @param documentId ID do documento
+     * @param userId ID do usuário (para verificar propriedade)
+     * @return DTO do job mais recente
+     */
+    public IngestionJobDTO getIngestionStatus(Long documentId, Long userId) {
+        IngestionJob job = ingestionJobService.findLatest(documentId)
+                .filter(found -> userId.equals(found.getUserId()))
+                .orElseThrow(() -> new ResourceNotFoundException("IngestionJob", "documentId", documentId));
+
+        return toDTO(job);
+    }
+
+    /**
+     * Reprocessa um documento cuja ingestão falhou definitivamente. O job volta para a fila com as
+     * tentativas zeradas e continua do último checkpoint, sem refazer embeddings já gravados.
+     *
+     * @param documentId ID do documento (status FAILED)
+     * @param userId ID do usuário (para verificar propriedade)
+     * @return DTO do job reenfileirado
+     */
+    @Transactional
+    public IngestionJobDTO retryDocument(Long documentId, Long userId) {
+        Document document = documentRepository.findById(documentId)
+                .orElseThrow(() -> new ResourceNotFoundException("Document", documentId));
+
+        // Verificar propriedade
+        if (!document.getUser().getId().equals(userId)) {
+            throw new DocumentProcessingException(documentId,
+                    "Usuário não tem permissão para reprocessar este documento");
+        }
+
+        if (document.getStatus() != DocumentStatus.FAILED) {
+            throw new DocumentProcessingException(documentId,
+                    "Apenas documentos com falha podem ser reprocessados (status atual: " + document.getStatus() + ")");
         }
+
+        return toDTO(ingestionJobService.retry(documentId));
+    }
+
+    private static IngestionJobDTO toDTO(IngestionJob job) {
+        return IngestionJobDTO.builder()
+                .jobId(job.getId())
+                .documentId(job.getDocumentId())
+                .status(job.getStatus().name())
+                .stage(job.getStage().name())
+                .attempts(job.getAttempts())
+                .chunksTotal(job.getChunksTotal())
+                .chunksEmbedded(job.getChunksEmbedded())
+                .chunksIndexed(job.getChunksIndexed())
+                .checkpointChunkIndex(job.getCheckpointChunkIndex())
+                .lastError(job.getLastError())
+                .createdAt(job.getCreatedAt())
+                .startedAt(job.getStartedAt())
+                .finishedAt(job.getFinishedAt())
+                .updatedAt(job.getUpdatedAt())
+                .build();
     }
 
     /**
@@ -239,6 +1002,13 @@ public class DocumentService {
                     "Usuário não tem permissão para deletar este documento");
         }
 
+        // Deletar jobs pendentes; o arquivo ainda não processado só é apagado depois do commit
+        // (DocumentStorage.onDocumentDeleted), porque com rollback o job continua apontando para ele
+        String storageKey = ingestionJobService.findLatest(documentId)
+                .map(IngestionJob::getStorageKey)
+                .orElse(null);
+        ingestionJobService.deleteByDocument(documentId);
+
         // Deletar chunks (cascade)
         chunkRepository.deleteByDocumentId(documentId);
         log.info("Chunks do documento ID {} deletados", documentId);
@@ -246,25 +1016,29 @@ public class DocumentService {
         // Deletar documento
         documentRepository.delete(document);
         log.info("Documento ID {} deletado com sucesso", documentId);
+
+        eventPublisher.publishEvent(new DocumentDeletedEvent(documentId, userId, storageKey));
     }
 
     /**
-     * Extrai texto de um PDF usando Apache Tika.
+     * Extrai texto de um PDF usando Apache Tika, em streaming: o handler SAX repassa o texto ao
+     * writer conforme o parser avança, sem acumular o documento inteiro.
      *
-     * @param file Arquivo PDF
-     * @return Texto extraído
+     * @param stream Conteúdo do PDF
+     * @param out Destino do texto (o chunker incremental)
      */
-    private String extractTextFromPdf(MultipartFile file) {
-        try (InputStream stream = file.getInputStream()) {
+    void extractText(InputStream stream, Writer out) {
+        try {
             Parser parser = new AutoDetectParser();
-            BodyContentHandler handler = new BodyContentHandler(-1); // Sem limite de tamanho
+            BodyContentHandler handler = new BodyContentHandler(out);
             Metadata metadata = new Metadata();
             ParseContext context = new ParseContext();
 
             parser.parse(stream, handler, metadata, context);
 
-            return handler.toString();
-
+        } catch (RuntimeException e) {
+            // Falha de quem consome o texto (embeddings, gravação): não é erro do Tika
+            throw e;
         } catch (Exception e) {
             log.error("Erro ao extrair texto do PDF: {}", e.getMessage(), e);
             throw new DocumentProcessingException("Erro na extração de texto com Tika", e);
@@ -318,4 +1092,15 @@ public class DocumentService {
                 .uploadedAt(document.getUploadedAt())
                 .build();
     }
+
+    /**
+     * Evento publicado quando os chunks de um documento foram persistidos.
+     */
+    public record DocumentIndexedEvent(Long documentId, Long userId, int totalChunks) {}
+
+    /**
+     * Evento publicado quando um documento e seus chunks foram removidos.
+     * storageKey é o arquivo da última ingestão (null se não houver).
+     */
+    public record DocumentDeletedEvent(Long documentId, Long userId, String storageKey) {}
 }
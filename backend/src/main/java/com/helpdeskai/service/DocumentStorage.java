@@ -0,0 +1,121 @@
+package com.helpdeskai.service;
+
+import com.helpdeskai.exception.DocumentProcessingException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.UUID;
+
+/**
+ * Armazena o arquivo original entre o upload e o processamento pelo IngestionWorker.
+ *
+ * O diretório precisa sobreviver a reinícios e, com workers em mais de um nó, ser compartilhado
+ * entre eles (volume montado em todos). Por isso o padrão fica no home do usuário e não em
+ * java.io.tmpdir, que o sistema limpa no boot e deixaria jobs PENDING sem arquivo. O arquivo é
+ * apagado quando o documento é indexado ou removido.
+ */
+@Component
+@Slf4j
+public class DocumentStorage {
+
+    private final Path directory;
+
+    public DocumentStorage(
+            @Value("${helpdesk.ingestion.storage-dir:${user.home}/.helpdesk-ai/uploads}") String directory) {
+        this.directory = Paths.get(directory).toAbsolutePath().normalize();
+        log.info("Arquivos de ingestão armazenados em {}", this.directory);
+    }
+
+    /**
+     * Grava o arquivo enviado, calculando o SHA-256 do conteúdo na mesma leitura.
+     *
+     * @param file Arquivo do upload
+     * @return Chave para open/delete e hash do conteúdo
+     */
+    public StoredFile store(MultipartFile file) {
+        String key = UUID.randomUUID().toString();
+        MessageDigest digest = sha256();
+        try (InputStream in = new DigestInputStream(file.getInputStream(), digest)) {
+            Files.createDirectories(directory);
+            Files.copy(in, resolve(key), StandardCopyOption.REPLACE_EXISTING);
+            String contentHash = HexFormat.of().formatHex(digest.digest());
+            log.debug("Arquivo {} armazenado com a chave {} (sha256 {})", file.getOriginalFilename(), key, contentHash);
+            return new StoredFile(key, contentHash);
+        } catch (IOException e) {
+            throw new DocumentProcessingException("Erro ao armazenar o arquivo enviado", e);
+        }
+    }
+
+    /**
+     * Abre o arquivo armazenado para leitura.
+     *
+     * @param key Chave devolvida por store
+     * @return Stream do arquivo (fechar após o uso)
+     */
+    public InputStream open(String key) {
+        try {
+            return Files.newInputStream(resolve(key));
+        } catch (IOException e) {
+            throw new DocumentProcessingException("Arquivo armazenado não encontrado: " + key, e);
+        }
+    }
+
+    /**
+     * Remove o arquivo armazenado (ignora chaves inexistentes).
+     *
+     * @param key Chave devolvida por store
+     */
+    public void delete(String key) {
+        if (key == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(resolve(key));
+        } catch (IOException e) {
+            log.warn("Não foi possível remover o arquivo armazenado {}: {}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * Remove o arquivo da última ingestão de um documento deletado, só depois do commit.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onDocumentDeleted(DocumentService.DocumentDeletedEvent event) {
+        delete(event.storageKey());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponível", e);
+        }
+    }
+
+    private Path resolve(String key) {
+        Path path = directory.resolve(key).normalize();
+        if (!path.startsWith(directory)) {
+            throw new DocumentProcessingException("Chave de armazenamento inválida: " + key);
+        }
+        return path;
+    }
+
+    /**
+     * Arquivo armazenado: chave no storage e SHA-256 (hex) do conteúdo.
+     */
+    public record StoredFile(String key, String contentHash) {}
+}
@@ -0,0 +1,115 @@
+package com.helpdeskai.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * Cache em memória dos embeddings de perguntas (retries, cliques duplos e macros repetem o mesmo texto).
+ *
+ * Chave: modelo de embedding + SHA-256 do texto normalizado (Unicode NFC, espaços colapsados),
+ * então trocar de modelo nunca reaproveita vetores antigos e o texto em si não fica retido na memória.
+ * Valor: float[] primitivo (~6 KB para 1536 dimensões), limitado por tamanho e TTL.
+ *
+ * Métricas no MeterRegistry com cache=embeddings (cache.gets com result=hit|miss, cache.evictions, cache.size).
+ *
+ * Os valores são futures: a chamada à OpenAI roda na thread de quem pediu, fora dos locks internos
+ * do mapa (Cache.get executaria o loader dentro de um bloco synchronized, prendendo a carrier thread
+ * quando a requisição roda em virtual thread).
+ */
+@Component
+public class EmbeddingCache {
+
+    static final String CACHE_NAME = "embeddings";
+
+    private final AsyncCache<String, float[]> cache;
+    private final String modelName;
+
+    public EmbeddingCache(MeterRegistry meterRegistry,
+                          @Value("${spring.ai.openai.embedding.options.model:text-embedding-3-small}") String modelName,
+                          @Value("${helpdesk.embedding-cache.max-size:5000}") long maxSize,
+                          @Value("${helpdesk.embedding-cache.ttl-minutes:60}") long ttlMinutes) {
+        this.modelName = modelName;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), CACHE_NAME);
+    }
+
+    /**
+     * Retorna o embedding em cache ou calcula com o loader (chamadas simultâneas para o mesmo
+     * texto esperam um único cálculo). Exceções do loader são propagadas e nada é armazenado.
+     *
+     * O array retornado é compartilhado com o cache e não deve ser alterado.
+     */
+    public float[] get(String text, Function<String, float[]> loader) {
+        String key = key(modelName, text);
+
+        // getIfPresent registra hit/miss; asMap não entra nas estatísticas
+        CompletableFuture<float[]> pending = cache.getIfPresent(key);
+        if (pending == null) {
+            CompletableFuture<float[]> created = new CompletableFuture<>();
+            pending = cache.asMap().putIfAbsent(key, created);
+            if (pending == null) {
+                return load(key, text, created, loader);
+            }
+        }
+
+        try {
+            return pending.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    public long size() {
+        cache.synchronous().cleanUp();
+        return cache.synchronous().estimatedSize();
+    }
+
+    private float[] load(String key, String text, CompletableFuture<float[]> created,
+                         Function<String, float[]> loader) {
+        try {
+            float[] embedding = loader.apply(text);
+            created.complete(embedding);
+            return embedding;
+        } catch (RuntimeException e) {
+            // Quem estava esperando recebe a mesma exceção; a entrada some para a próxima tentativa
+            cache.asMap().remove(key, created);
+            created.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    static String key(String modelName, String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(normalize(text).getBytes(StandardCharsets.UTF_8));
+            return modelName + ":" + HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponível", e);
+        }
+    }
+
+    static String normalize(String text) {
+        return Normalizer.normalize(text, Normalizer.Form.NFC).strip().replaceAll("\\s+", " ");
+    }
+}
@@ -3,29 +3,68 @@ package com.helpdeskai.service;
 import com.helpdeskai.exception.EmbeddingException;
 import lombok.extern.slf4j.Slf4j;
 import com.pgvector.PGvector;
-import org.springframework.ai.document.Document;
 import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.retry.annotation.Backoff;
 import org.springframework.retry.annotation.Retryable;
+import org.springframework.retry.support.RetryTemplate;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
 import java.util.stream.Collectors;
 
 /**
  * Serviço responsável por gerar embeddings usando a API OpenAI via Spring AI.
  * Inclui lógica de retry para resiliência a falhas temporárias da API.
+ * Embeddings de perguntas passam pelo EmbeddingCache (textos repetidos não chamam a API).
  */
 @Service
 @Slf4j
 public class EmbeddingService {
 
+    /**
+     * Dimensões do embedding curto (prefixo Matryoshka) gravado em chunks.embedding_short.
+     */
+    public static final int SHORT_DIMENSIONS = 256;
+
     private final EmbeddingModel embeddingModel;
+    private final EmbeddingCache embeddingCache;
+    private final TokenCounter tokenCounter;
+    private final Executor embeddingExecutor;
+
+    /**
+     * Limites por requisição do provedor (OpenAI: 2048 textos e 300k tokens), com folga.
+     */
+    @Value("${helpdesk.embedding.batch.max-inputs:64}")
+    private int maxInputs = 64;
+
+    @Value("${helpdesk.embedding.batch.max-tokens:100000}")
+    private int maxTokens = 100_000;
+
+    @Value("${helpdesk.embedding.batch.parallelism:4}")
+    private int parallelism = 4;
+
+    @Value("${helpdesk.embedding.batch.retry.max-attempts:3}")
+    private int retryMaxAttempts = 3;
 
-    public EmbeddingService(EmbeddingModel embeddingModel) {
+    @Value("${helpdesk.embedding.batch.retry.backoff-ms:1000}")
+    private long retryBackoffMs = 1000;
+
+    public EmbeddingService(EmbeddingModel embeddingModel,
+                            EmbeddingCache embeddingCache,
+                            TokenCounter tokenCounter,
+                            @Qualifier("embeddingExecutor") Executor embeddingExecutor) {
         this.embeddingModel = embeddingModel;
+        this.embeddingCache = embeddingCache;
+        this.tokenCounter = tokenCounter;
+        this.embeddingExecutor = embeddingExecutor;
     }
 
     /**
@@ -46,12 +85,17 @@ public class EmbeddingService {
             throw new EmbeddingException("Texto não pode ser vazio");
         }
 
+        // Cópia: o array em cache é compartilhado entre chamadas
+        return convertToPGvector(embeddingCache.get(text, this::requestEmbedding).clone());
+    }
+
+    /**
+     * Chama a API de embeddings para um único texto (cache miss).
+     */
+    private float[] requestEmbedding(String text) {
         try {
             log.debug("Gerando embedding para texto de {} caracteres", text.length());
 
-            // Cria um documento Spring AI
-            Document document = new Document(text);
-
             // Chama API OpenAI via Spring AI
             EmbeddingResponse response = embeddingModel.embedForResponse(List.of(text));
 
@@ -68,8 +112,7 @@ public class EmbeddingService {
 
             log.debug("Embedding gerado com sucesso. Dimensões: {}", embedding.length);
 
-            // Converte para PGvector
-            return convertToPGvector(embedding);
+            return embedding;
 
         } catch (Exception e) {
             log.error("Erro ao gerar embedding: {}", e.getMessage(), e);
@@ -80,15 +123,18 @@ public class EmbeddingService {
     /**
      * Gera embeddings para múltiplos textos em batch (mais eficiente).
      *
+     * Lotes grandes são divididos por número de textos e tokens estimados (TokenCounter) e os
+     * sub-lotes são enviados em paralelo (helpdesk.embedding.batch.parallelism); o resultado
+     * mantém a ordem dos textos.
+     *
+     * O retry é por sub-lote (helpdesk.embedding.batch.retry.*), dentro da tarefa que segura a
+     * permissão do semáforo: uma falha transitória reenvia só aquele sub-lote, sem repetir os que
+     * já tiveram sucesso nem ultrapassar o limite de requisições em voo.
+     *
      * @param texts Lista de textos
      * @return Lista de PGvectors correspondentes
-     * @throws EmbeddingException Se falhar após tentativas de retry
+     * @throws EmbeddingException Se um sub-lote falhar após as tentativas de retry
      */
-    @Retryable(
-        retryFor = {Exception.class},
-        maxAttempts = 3,
-        backoff = @Backoff(delay = 1000, multiplier = 2)
-    )
     public List<PGvector> generateEmbeddings(List<String> texts) {
         if (texts == null || texts.isEmpty()) {
             log.warn("Tentativa de gerar embeddings para lista vazia");
@@ -105,31 +151,152 @@ public class EmbeddingService {
             return new ArrayList<>();
         }
 
+        List<List<String>> subBatches = split(validTexts);
+        log.debug("Gerando embeddings em batch para {} textos ({} requisições)", validTexts.size(), subBatches.size());
+
+        if (subBatches.size() == 1) {
+            List<PGvector> pgvectors = requestEmbeddingsWithRetry(validTexts);
+            log.info("Embeddings em batch gerados com sucesso. Total: {}", pgvectors.size());
+            return pgvectors;
+        }
+
+        // Sub-lotes em paralelo, no máximo `parallelism` requisições em voo por chamada
+        Semaphore inFlight = new Semaphore(Math.max(1, parallelism));
+        List<CompletableFuture<List<PGvector>>> futures = new ArrayList<>(subBatches.size());
         try {
-            log.debug("Gerando embeddings em batch para {} textos", validTexts.size());
+            for (List<String> subBatch : subBatches) {
+                inFlight.acquire();
+                if (futures.stream().anyMatch(CompletableFuture::isCompletedExceptionally)) {
+                    inFlight.release();
+                    break;
+                }
+                futures.add(CompletableFuture.supplyAsync(() -> requestEmbeddingsWithRetry(subBatch), embeddingExecutor)
+                        .whenComplete((result, error) -> inFlight.release()));
+            }
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EmbeddingException("geração de embeddings em batch", e);
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof EmbeddingException cause
+                    ? cause
+                    : new EmbeddingException("geração de embeddings em batch", e.getCause());
+        }
+
+        // Remonta na ordem dos textos
+        List<PGvector> pgvectors = new ArrayList<>(validTexts.size());
+        futures.forEach(future -> pgvectors.addAll(future.join()));
+
+        log.info("Embeddings em batch gerados com sucesso. Total: {} em {} requisições",
+                 pgvectors.size(), subBatches.size());
+
+        return pgvectors;
+    }
 
+    /**
+     * Divide os textos em sub-lotes contíguos que respeitam os limites por requisição do provedor:
+     * no máximo helpdesk.embedding.batch.max-inputs textos e helpdesk.embedding.batch.max-tokens
+     * tokens. Um texto sozinho acima do limite de tokens vai em um sub-lote próprio.
+     */
+    List<List<String>> split(List<String> texts) {
+        List<List<String>> subBatches = new ArrayList<>();
+        List<String> current = new ArrayList<>();
+        int currentTokens = 0;
+
+        for (String text : texts) {
+            int tokens = tokenCounter.count(text);
+            if (!current.isEmpty() && (current.size() >= maxInputs || currentTokens + tokens > maxTokens)) {
+                subBatches.add(current);
+                current = new ArrayList<>();
+                currentTokens = 0;
+            }
+            current.add(text);
+            currentTokens += tokens;
+        }
+        if (!current.isEmpty()) {
+            subBatches.add(current);
+        }
+        return subBatches;
+    }
+
+    /**
+     * Uma requisição de embeddings em batch, repetida com backoff exponencial em caso de falha.
+     */
+    private List<PGvector> requestEmbeddingsWithRetry(List<String> texts) {
+        long backoffMs = Math.max(1, retryBackoffMs);
+        RetryTemplate retryTemplate = RetryTemplate.builder()
+                .maxAttempts(Math.max(1, retryMaxAttempts))
+                .exponentialBackoff(backoffMs, 2, backoffMs * 8)
+                .retryOn(EmbeddingException.class)
+                .build();
+        return retryTemplate.execute(context -> {
+            if (context.getRetryCount() > 0) {
+                log.warn("Reenviando sub-lote de {} textos (tentativa {})", texts.size(), context.getRetryCount() + 1);
+            }
+            return requestEmbeddings(texts);
+        });
+    }
+
+    /**
+     * Uma requisição de embeddings em batch à API.
+     */
+    private List<PGvector> requestEmbeddings(List<String> texts) {
+        try {
             // Chama API OpenAI em batch
-            EmbeddingResponse response = embeddingModel.embedForResponse(validTexts);
+            EmbeddingResponse response = embeddingModel.embedForResponse(texts);
 
             if (response == null || response.getResults().isEmpty()) {
                 throw new EmbeddingException("Resposta de embeddings em batch vazia");
             }
 
+            // Resposta truncada desalinharia os vetores dos textos na remontagem: falha e o sub-lote é reenviado
+            if (response.getResults().size() != texts.size()) {
+                throw new EmbeddingException(String.format(
+                        "Resposta de embeddings com %d vetores para %d textos",
+                        response.getResults().size(), texts.size()));
+            }
+
             // Converte todos os embeddings para PGvector
-            List<PGvector> pgvectors = response.getResults().stream()
+            return response.getResults().stream()
                     .map(result -> convertToPGvector(result.getOutput()))
                     .collect(Collectors.toList());
 
-            log.info("Embeddings em batch gerados com sucesso. Total: {}", pgvectors.size());
-
-            return pgvectors;
-
         } catch (Exception e) {
             log.error("Erro ao gerar embeddings em batch: {}", e.getMessage(), e);
             throw new EmbeddingException("geração de embeddings em batch", e);
         }
     }
 
+    /**
+     * Gera o embedding curto (Matryoshka) a partir do embedding completo.
+     * Os modelos text-embedding-3 concentram a informação nas primeiras dimensões, então o prefixo
+     * re-normalizado (norma L2 = 1) funciona como um embedding menor do mesmo texto, sem nova chamada à API.
+     *
+     * @param embedding Embedding completo (1536 dimensões)
+     * @return Prefixo de SHORT_DIMENSIONS dimensões normalizado, ou null se embedding for null
+     */
+    public static PGvector toShortEmbedding(PGvector embedding) {
+        if (embedding == null) {
+            return null;
+        }
+
+        float[] full = embedding.toArray();
+        int dimensions = Math.min(SHORT_DIMENSIONS, full.length);
+
+        double sumSquares = 0;
+        for (int i = 0; i < dimensions; i++) {
+            sumSquares += full[i] * full[i];
+        }
+        double norm = Math.sqrt(sumSquares);
+
+        float[] prefix = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            prefix[i] = norm > 0 ? (float) (full[i] / norm) : 0f;
+        }
+
+        return new PGvector(prefix);
+    }
+
     /**
      * Converte array de floats para PGvector.
      *
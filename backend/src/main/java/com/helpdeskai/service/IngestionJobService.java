@@ -0,0 +1,344 @@
+package com.helpdeskai.service;
+
+import com.helpdeskai.entity.Document;
+import com.helpdeskai.entity.Document.DocumentStatus;
+import com.helpdeskai.entity.IngestionJob;
+import com.helpdeskai.entity.IngestionJob.JobStatus;
+import com.helpdeskai.entity.IngestionJob.Stage;
+import com.helpdeskai.exception.DocumentProcessingException;
+import com.helpdeskai.repository.DocumentRepository;
+import com.helpdeskai.repository.IngestionJobRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Fila persistente de ingestão de documentos (tabela ingestion_jobs).
+ *
+ * Cada método roda em uma transação curta: o worker reivindica o job, reporta progresso por etapa
+ * e conclui ou falha, sem segurar conexão durante a extração ou as chamadas à OpenAI.
+ *
+ * Jobs reivindicados por um nó que parou de dar heartbeat (locked_at) por mais de
+ * helpdesk.ingestion.worker.stale-after-minutes voltam a ser reivindicáveis. Cada reivindicação
+ * conta uma tentativa; esgotadas helpdesk.ingestion.worker.max-attempts, job e documento ficam FAILED.
+ *
+ * Cada lote gravado avança o checkpoint do job (checkpoint_chunk_index) na mesma transação dos chunks.
+ * Novas tentativas, automáticas ou via retry, continuam do checkpoint: lotes já gravados não são
+ * embedados de novo.
+ */
+@Service
+@Slf4j
+public class IngestionJobService {
+
+    private static final int MAX_ERROR_LENGTH = 2000;
+
+    private final IngestionJobRepository jobRepository;
+    private final DocumentRepository documentRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${helpdesk.ingestion.worker.max-attempts:3}")
+    private int maxAttempts = 3;
+
+    @Value("${helpdesk.ingestion.worker.stale-after-minutes:10}")
+    private long staleAfterMinutes = 10;
+
+    public IngestionJobService(IngestionJobRepository jobRepository,
+                               DocumentRepository documentRepository,
+                               ApplicationEventPublisher eventPublisher) {
+        this.jobRepository = jobRepository;
+        this.documentRepository = documentRepository;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * Enfileira o processamento de um documento recém-salvo.
+     *
+     * @param document Documento (status PROCESSING)
+     * @param storageKey Chave do arquivo original no DocumentStorage
+     * @return Job criado
+     */
+    @Transactional
+    public IngestionJob enqueue(Document document, String storageKey) {
+        IngestionJob job = jobRepository.save(IngestionJob.builder()
+                .documentId(document.getId())
+                .userId(document.getUser().getId())
+                .storageKey(storageKey)
+                .status(JobStatus.QUEUED)
+                .stage(Stage.QUEUED)
+                .attempts(0)
+                .build());
+
+        log.info("Job de ingestão ID {} enfileirado para o documento ID {}", job.getId(), document.getId());
+
+        // Acorda os workers locais após o commit, sem esperar o próximo polling
+        eventPublisher.publishEvent(new IngestionJobQueuedEvent(job.getId()));
+        return job;
+    }
+
+    /**
+     * Reivindica o próximo job disponível (FOR UPDATE SKIP LOCKED).
+     *
+     * @param workerId Identificador do worker (nó + thread)
+     * @return Job marcado RUNNING para este worker, ou vazio se a fila estiver vazia
+     */
+    @Transactional
+    public Optional<IngestionJob> claimNext(String workerId) {
+        LocalDateTime now = LocalDateTime.now();
+
+        while (true) {
+            Optional<Long> nextId = jobRepository.findNextClaimableId(now.minusMinutes(staleAfterMinutes));
+            if (nextId.isEmpty()) {
+                return Optional.empty();
+            }
+
+            IngestionJob job = jobRepository.findById(nextId.get()).orElseThrow();
+
+            if (job.getAttempts() >= maxAttempts) {
+                // RUNNING abandonado que já usou todas as tentativas
+                failPermanently(job, "Tentativas esgotadas sem heartbeat do worker " + job.getLockedBy());
+                continue;
+            }
+
+            if (job.getStatus() == JobStatus.RUNNING) {
+                log.warn("Job ID {} abandonado pelo worker {}; reivindicado por {}",
+                         job.getId(), job.getLockedBy(), workerId);
+            }
+
+            job.setStatus(JobStatus.RUNNING);
+            job.setStage(Stage.QUEUED);
+            job.setAttempts(job.getAttempts() + 1);
+            job.setLockedBy(workerId);
+            job.setLockedAt(now);
+            job.setStartedAt(now);
+            job.setUpdatedAt(now);
+
+            log.info("Job ID {} (documento ID {}) reivindicado por {} - tentativa {}/{}",
+                     job.getId(), job.getDocumentId(), workerId, job.getAttempts(), maxAttempts);
+
+            return Optional.of(jobRepository.save(job));
+        }
+    }
+
+    /**
+     * Registra a etapa atual e os contadores de chunks (null mantém o valor anterior).
+     * Também renova o heartbeat do worker.
+     *
+     * @param job Job reivindicado por este worker
+     * @param stage Etapa atual
+     */
+    @Transactional
+    public void updateProgress(IngestionJob job, Stage stage,
+                               Integer chunksTotal, Integer chunksEmbedded, Integer chunksIndexed) {
+        IngestionJob current = findOwned(job);
+
+        current.setStage(stage);
+        if (chunksTotal != null) {
+            current.setChunksTotal(chunksTotal);
+        }
+        if (chunksEmbedded != null) {
+            current.setChunksEmbedded(chunksEmbedded);
+        }
+        if (chunksIndexed != null) {
+            current.setChunksIndexed(chunksIndexed);
+        }
+        current.setLockedAt(LocalDateTime.now());
+        current.setUpdatedAt(current.getLockedAt());
+
+        jobRepository.save(current);
+    }
+
+    /**
+     * Avança o checkpoint após gravar um lote. Deve rodar na mesma transação que grava os chunks,
+     * para que checkpoint e chunks gravados nunca divirjam. Também renova o heartbeat do worker.
+     *
+     * @param job Job reivindicado por este worker
+     * @param nextChunkIndex Próximo chunk_index a processar (todos os anteriores estão gravados)
+     */
+    @Transactional
+    public void checkpoint(IngestionJob job, int nextChunkIndex) {
+        IngestionJob current = findOwned(job);
+
+        current.setCheckpointChunkIndex(nextChunkIndex);
+        current.setChunksIndexed(nextChunkIndex);
+        current.setLockedAt(LocalDateTime.now());
+        current.setUpdatedAt(current.getLockedAt());
+
+        jobRepository.save(current);
+    }
+
+    /**
+     * Reenfileira o job de um documento que falhou definitivamente, com as tentativas zeradas.
+     * O processamento continua do checkpoint gravado pela última tentativa.
+     *
+     * @param documentId ID do documento (status FAILED)
+     * @return Job reenfileirado
+     */
+    @Transactional
+    public IngestionJob retry(Long documentId) {
+        IngestionJob job = jobRepository.findFirstByDocumentIdOrderByIdDesc(documentId)
+                .filter(found -> found.getStatus() == JobStatus.FAILED)
+                .orElseThrow(() -> new DocumentProcessingException(documentId,
+                        "Documento não tem job de ingestão com falha para reprocessar"));
+
+        job.setStatus(JobStatus.QUEUED);
+        job.setStage(Stage.QUEUED);
+        job.setAttempts(0);
+        job.setLockedBy(null);
+        job.setLockedAt(null);
+        job.setFinishedAt(null);
+        job.setUpdatedAt(LocalDateTime.now());
+        jobRepository.save(job);
+
+        documentRepository.findById(documentId).ifPresent(document -> {
+            document.setStatus(DocumentStatus.PROCESSING);
+            documentRepository.save(document);
+        });
+
+        log.info("Job ID {} (documento ID {}) reenfileirado manualmente a partir do chunk {}",
+                 job.getId(), documentId, job.getCheckpointChunkIndex());
+
+        eventPublisher.publishEvent(new IngestionJobQueuedEvent(job.getId()));
+        return job;
+    }
+
+    /**
+     * Marca o job como concluído. Deve rodar na mesma transação que grava os chunks:
+     * se outro worker reivindicou o job nesse meio tempo, a gravação inteira é desfeita.
+     *
+     * @param job Job reivindicado por este worker
+     * @param chunksIndexed Total de chunks gravados
+     */
+    @Transactional
+    public void markCompleted(IngestionJob job, int chunksIndexed) {
+        IngestionJob current = findOwned(job);
+        LocalDateTime now = LocalDateTime.now();
+
+        current.setStatus(JobStatus.COMPLETED);
+        current.setStage(Stage.DONE);
+        current.setChunksTotal(chunksIndexed);
+        current.setChunksIndexed(chunksIndexed);
+        current.setLastError(null);
+        current.setLockedBy(null);
+        current.setLockedAt(null);
+        current.setFinishedAt(now);
+        current.setUpdatedAt(now);
+
+        jobRepository.save(current);
+        log.info("Job ID {} concluído ({} chunks)", current.getId(), chunksIndexed);
+    }
+
+    /**
+     * Registra a falha de uma tentativa: o job volta para a fila enquanto houver tentativas;
+     * depois disso job e documento ficam FAILED. O arquivo original é mantido.
+     *
+     * @param job Job reivindicado por este worker
+     * @param error Causa da falha
+     */
+    @Transactional
+    public void markFailed(IngestionJob job, Throwable error) {
+        Optional<IngestionJob> found = jobRepository.findById(job.getId());
+        if (found.isEmpty() || !isOwnedBy(found.get(), job.getLockedBy())) {
+            log.warn("Job ID {} não pertence mais a {}; falha ignorada", job.getId(), job.getLockedBy());
+            return;
+        }
+
+        IngestionJob current = found.get();
+        current.setLastError(describe(error));
+
+        if (current.getAttempts() >= maxAttempts) {
+            failPermanently(current, current.getLastError());
+            return;
+        }
+
+        current.setStatus(JobStatus.QUEUED);
+        current.setLockedBy(null);
+        current.setLockedAt(null);
+        current.setUpdatedAt(LocalDateTime.now());
+        jobRepository.save(current);
+
+        log.warn("Job ID {} falhou na tentativa {}/{} (etapa {}); reenfileirado: {}",
+                 current.getId(), current.getAttempts(), maxAttempts, current.getStage(), current.getLastError());
+
+        eventPublisher.publishEvent(new IngestionJobQueuedEvent(current.getId()));
+    }
+
+    /**
+     * Job mais recente de um documento.
+     *
+     * @param documentId ID do documento
+     * @return Job
+     */
+    @Transactional(readOnly = true)
+    public Optional<IngestionJob> findLatest(Long documentId) {
+        return jobRepository.findFirstByDocumentIdOrderByIdDesc(documentId);
+    }
+
+    /**
+     * Remove os jobs de um documento.
+     *
+     * @param documentId ID do documento
+     */
+    @Transactional
+    public void deleteByDocument(Long documentId) {
+        jobRepository.deleteAll(jobRepository.findByDocumentId(documentId));
+    }
+
+    private void failPermanently(IngestionJob job, String error) {
+        LocalDateTime now = LocalDateTime.now();
+
+        job.setStatus(JobStatus.FAILED);
+        job.setLastError(error);
+        job.setLockedBy(null);
+        job.setLockedAt(null);
+        job.setFinishedAt(now);
+        job.setUpdatedAt(now);
+        // Flush: claimNext consulta a fila de novo na mesma transação
+        jobRepository.saveAndFlush(job);
+
+        documentRepository.findById(job.getDocumentId()).ifPresent(document -> {
+            document.setStatus(DocumentStatus.FAILED);
+            documentRepository.save(document);
+        });
+        // Lotes já gravados ficam como checkpoint para um retry (removidos se o documento for deletado)
+
+        log.error("Job ID {} (documento ID {}) falhou definitivamente após {} tentativas (checkpoint no chunk {}): {}",
+                  job.getId(), job.getDocumentId(), job.getAttempts(), job.getCheckpointChunkIndex(), error);
+    }
+
+    private IngestionJob findOwned(IngestionJob job) {
+        IngestionJob current = jobRepository.findById(job.getId())
+                .orElseThrow(() -> new DocumentProcessingException(job.getDocumentId(),
+                        "Job de ingestão " + job.getId() + " não existe mais"));
+
+        if (!isOwnedBy(current, job.getLockedBy())) {
+            throw new DocumentProcessingException(job.getDocumentId(),
+                    "Job de ingestão " + job.getId() + " foi reivindicado por outro worker");
+        }
+        return current;
+    }
+
+    private static boolean isOwnedBy(IngestionJob job, String workerId) {
+        return job.getStatus() == JobStatus.RUNNING && workerId != null && workerId.equals(job.getLockedBy());
+    }
+
+    private static String describe(Throwable error) {
+        Throwable root = error;
+        while (root.getCause() != null && root.getCause() != root) {
+            root = root.getCause();
+        }
+        String message = root == error
+                ? String.valueOf(error.getMessage())
+                : error.getMessage() + ": " + root.getMessage();
+        return message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message;
+    }
+
+    /**
+     * Evento publicado quando um job entra (ou volta) na fila.
+     */
+    public record IngestionJobQueuedEvent(Long jobId) {}
+}
@@ -0,0 +1,137 @@
+package com.helpdeskai.service;
+
+import com.helpdeskai.entity.IngestionJob;
+import com.helpdeskai.service.IngestionJobService.IngestionJobQueuedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.lang.management.ManagementFactory;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool de workers que consome a fila ingestion_jobs.
+ *
+ * Cada worker reivindica um job por vez (FOR UPDATE SKIP LOCKED, então vários nós podem rodar
+ * workers sobre o mesmo banco) e chama DocumentService.processDocument. Sem jobs, o worker
+ * espera até poll-interval-ms ou até um job ser enfileirado neste nó.
+ *
+ * Jobs não dependem da memória do processo: após um reinício os QUEUED são retomados e os
+ * RUNNING do nó anterior voltam à fila quando o heartbeat expira.
+ */
+@Component
+@Slf4j
+public class IngestionWorker implements SmartLifecycle {
+
+    private final IngestionJobService jobService;
+    private final DocumentService documentService;
+    private final String nodeId = ManagementFactory.getRuntimeMXBean().getName(); // pid@hostname
+    private final Semaphore wakeUp = new Semaphore(0);
+
+    @Value("${helpdesk.ingestion.worker.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${helpdesk.ingestion.worker.workers:2}")
+    private int workers = 2;
+
+    @Value("${helpdesk.ingestion.worker.poll-interval-ms:1000}")
+    private long pollIntervalMs = 1000;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    private volatile boolean running;
+    private SimpleAsyncTaskExecutor executor;
+
+    public IngestionWorker(IngestionJobService jobService, DocumentService documentService) {
+        this.jobService = jobService;
+        this.documentService = documentService;
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            log.info("Workers de ingestão desabilitados neste nó (helpdesk.ingestion.worker.enabled=false)");
+            return;
+        }
+
+        executor = new SimpleAsyncTaskExecutor("Ingestion-");
+        executor.setVirtualThreads(virtualThreads);
+        // Aguarda o job em andamento terminar (ou o heartbeat expirar e outro nó assumir)
+        executor.setTaskTerminationTimeout(30_000);
+
+        running = true;
+        for (int i = 0; i < workers; i++) {
+            executor.execute(this::pollLoop);
+        }
+
+        log.info("{} workers de ingestão iniciados no nó {}", workers, nodeId);
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        wakeUp.release(workers);
+        executor.close();
+        log.info("Workers de ingestão parados no nó {}", nodeId);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Acorda um worker ocioso assim que um job é enfileirado neste nó.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onJobQueued(IngestionJobQueuedEvent event) {
+        wakeUp.release();
+    }
+
+    private void pollLoop() {
+        String workerId = nodeId + "/" + Thread.currentThread().getName();
+
+        while (running) {
+            try {
+                Optional<IngestionJob> job = jobService.claimNext(workerId);
+                if (job.isPresent()) {
+                    process(job.get());
+                } else {
+                    wakeUp.tryAcquire(pollIntervalMs, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                // Banco indisponível, por exemplo: espera um ciclo antes de tentar de novo
+                log.error("Erro no worker de ingestão {}: {}", workerId, e.getMessage(), e);
+                try {
+                    Thread.sleep(pollIntervalMs);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void process(IngestionJob job) {
+        try {
+            documentService.processDocument(job);
+        } catch (Exception e) {
+            log.error("Erro ao processar job ID {} (documento ID {}): {}",
+                      job.getId(), job.getDocumentId(), e.getMessage());
+            jobService.markFailed(job, e);
+        }
+    }
+}
@@ -0,0 +1,642 @@
+package com.helpdeskai.service;
+
+import com.helpdeskai.config.PgVectorCodec;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Índice vetorial HNSW residente na JVM, alternativo ao pgvector
+ * (helpdesk.retrieval.engine=local).
+ *
+ * - Vetores ficam off-heap em segmentos mapeados em memória (MappedVectorStore)
+ * - O grafo HNSW (listas de vizinhos) fica no heap
+ * - Construído a partir da tabela chunks no startup e atualizado incrementalmente
+ *   pelos eventos de documento indexado/removido
+ * - Tenants pequenos são buscados de forma exata; tenants grandes via grafo com filtro
+ * - Remoções só marcam o nó; quando a fração removida passa de compact-deleted-ratio, o grafo
+ *   e os segmentos são reconstruídos apenas com os vetores ativos
+ *
+ * A busca devolve apenas ids e distâncias, sem ida ao banco. Enquanto o índice não está
+ * pronto, RetrievalService continua usando o pgvector.
+ */
+@Component
+@ConditionalOnProperty(prefix = "helpdesk.retrieval", name = "engine", havingValue = "local")
+@Slf4j
+public class LocalVectorIndex implements DisposableBean {
+
+    private static final String LOAD_CHUNKS_SQL = """
+        SELECT c.id, c.document_id, c.user_id, c.embedding
+        FROM chunks c
+        WHERE c.embedding IS NOT NULL AND c.user_id IS NOT NULL
+        """;
+
+    private static final String LOAD_DOCUMENT_SQL = LOAD_CHUNKS_SQL + " AND c.document_id = ?";
+
+    private static final int MAX_LEVEL = 16;
+
+    private static final Comparator<Candidate> NEAREST_FIRST = Comparator.comparingDouble(Candidate::distance);
+    private static final Comparator<Candidate> FARTHEST_FIRST = NEAREST_FIRST.reversed();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${helpdesk.retrieval.local-index.directory:${java.io.tmpdir}/helpdesk-ai-index}")
+    private String directory;
+
+    @Value("${helpdesk.retrieval.local-index.m:16}")
+    private int m;
+
+    @Value("${helpdesk.retrieval.local-index.ef-construction:100}")
+    private int efConstruction;
+
+    @Value("${helpdesk.retrieval.local-index.ef-search:64}")
+    private int efSearch;
+
+    @Value("${helpdesk.retrieval.local-index.exact-search-threshold:20000}")
+    private int exactSearchThreshold;
+
+    @Value("${helpdesk.retrieval.local-index.vectors-per-segment:65536}")
+    private int vectorsPerSegment;
+
+    @Value("${helpdesk.retrieval.local-index.compact-deleted-ratio:0.3}")
+    private double compactDeletedRatio;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Random random = new Random();
+    private volatile boolean ready;
+
+    // Estado do grafo (protegido pelo lock)
+    private MappedVectorStore store;
+    private int[][][] links = new int[1024][][];
+    private long[] chunkIds = new long[1024];
+    private long[] userIds = new long[1024];
+    private long[] documentIds = new long[1024];
+    private final BitSet deleted = new BitSet();
+    private int size;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private final Map<Long, Integer> ordinalByChunkId = new HashMap<>();
+    private final Map<Long, List<Integer>> ordinalsByDocument = new HashMap<>();
+    private final Map<Long, List<Integer>> ordinalsByUser = new HashMap<>();
+    // Documentos removidos: ids não são reutilizados (BIGSERIAL), então um add atrasado nunca os ressuscita
+    private final Set<Long> deletedDocuments = new HashSet<>();
+    // Chunks substituídos em reindexações incrementais (mesmo motivo: o snapshot do startup ainda pode trazê-los)
+    private final Set<Long> retiredChunks = new HashSet<>();
+    // Gerações de segmentos criadas pela compactação
+    private int generation;
+
+    public LocalVectorIndex(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * Constrói o índice a partir da tabela chunks quando a aplicação sobe.
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        long start = System.nanoTime();
+        log.info("Construindo índice vetorial local a partir da tabela chunks");
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(LOAD_CHUNKS_SQL);
+                ps.setFetchSize(1000); // Cursor no servidor (exige transação)
+                PgVectorCodec.forceBinaryTransfer(ps);
+                return ps;
+            }, chunkRowHandler()));
+
+            ready = true;
+
+            log.info("Índice vetorial local pronto: {} vetores em {} ms",
+                     size(), (System.nanoTime() - start) / 1_000_000);
+
+        } catch (Exception e) {
+            log.error("Erro ao construir índice vetorial local, busca continuará no pgvector: {}",
+                      e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Adiciona ao índice os chunks de um documento recém-processado. Em uma reindexação incremental
+     * os chunks mantidos já estão no índice (add os ignora) e os que saíram do documento são removidos.
+     *
+     * Síncrono, como onDocumentDeleted (roda na thread do IngestionWorker, depois do commit): um add
+     * enfileirado não pode rodar depois da remoção do mesmo documento. Se a remoção chega no meio da
+     * carga, deletedDocuments barra os chunks restantes.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onDocumentIndexed(DocumentService.DocumentIndexedEvent event) {
+        Set<Long> current = new HashSet<>();
+        RowCallbackHandler handler = chunkRowHandler();
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(LOAD_DOCUMENT_SQL);
+            PgVectorCodec.forceBinaryTransfer(ps);
+            ps.setLong(1, event.documentId());
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            current.add(rs.getLong(1));
+            handler.processRow(rs);
+        });
+        retainDocumentChunks(event.documentId(), current);
+        log.debug("Documento ID {} adicionado ao índice local", event.documentId());
+    }
+
+    /**
+     * Remove do índice os chunks de um documento deletado.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onDocumentDeleted(DocumentService.DocumentDeletedEvent event) {
+        removeDocument(event.documentId());
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Busca os top-K vizinhos mais próximos dentro do corpus do tenant.
+     *
+     * @param query Embedding da pergunta
+     * @param userId Dono dos documentos (tenant)
+     * @param topK Número máximo de resultados
+     * @param maxDistance Distância de cosine máxima aceita
+     * @return Hits ordenados por distância (menor primeiro)
+     */
+    public List<Hit> search(float[] query, Long userId, int topK, double maxDistance) {
+        float[] normalizedQuery = MappedVectorStore.normalize(query);
+
+        lock.readLock().lock();
+        try {
+            List<Integer> tenantOrdinals = ordinalsByUser.get(userId);
+            if (tenantOrdinals == null || tenantOrdinals.isEmpty() || topK <= 0) {
+                return List.of();
+            }
+
+            PriorityQueue<Candidate> matches = tenantOrdinals.size() <= exactSearchThreshold
+                    ? exactSearch(normalizedQuery, tenantOrdinals, topK)
+                    : graphSearch(normalizedQuery, userId, topK);
+
+            List<Candidate> sorted = new ArrayList<>(matches);
+            sorted.sort(NEAREST_FIRST);
+
+            List<Hit> hits = new ArrayList<>(sorted.size());
+            for (Candidate candidate : sorted) {
+                if (candidate.distance() <= maxDistance) {
+                    hits.add(new Hit(chunkIds[candidate.node()], candidate.distance()));
+                }
+            }
+            return hits;
+
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adiciona um chunk ao índice (ignora chunks já indexados).
+     */
+    public void add(long chunkId, long documentId, long userId, float[] embedding) {
+        lock.writeLock().lock();
+        try {
+            if (ordinalByChunkId.containsKey(chunkId) || deletedDocuments.contains(documentId)
+                    || retiredChunks.contains(chunkId)) {
+                return;
+            }
+            if (store == null) {
+                openStore(embedding.length);
+            }
+            insert(chunkId, documentId, userId, MappedVectorStore.normalize(embedding));
+        } catch (IOException e) {
+            throw new IllegalStateException("Erro ao gravar vetor no índice local", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Marca como removidos todos os chunks de um documento.
+     */
+    public void removeDocument(Long documentId) {
+        lock.writeLock().lock();
+        try {
+            // Linhas desse documento ainda podem chegar do snapshot do startup ou de um add em andamento
+            deletedDocuments.add(documentId);
+
+            List<Integer> ordinals = ordinalsByDocument.remove(documentId);
+            if (ordinals == null) {
+                return;
+            }
+
+            markDeleted(ordinals);
+            log.debug("Documento ID {} removido do índice local ({} vetores)", documentId, ordinals.size());
+            compactIfNeeded();
+
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Marca como removidos os chunks do documento que não estão em currentChunkIds (saíram do documento
+     * em uma reindexação incremental).
+     */
+    public void retainDocumentChunks(Long documentId, Set<Long> currentChunkIds) {
+        lock.writeLock().lock();
+        try {
+            List<Integer> ordinals = ordinalsByDocument.get(documentId);
+            if (ordinals == null) {
+                return;
+            }
+
+            List<Integer> removed = new ArrayList<>();
+            for (int ordinal : ordinals) {
+                if (!currentChunkIds.contains(chunkIds[ordinal])) {
+                    removed.add(ordinal);
+                }
+            }
+            if (removed.isEmpty()) {
+                return;
+            }
+
+            ordinals.removeAll(new HashSet<>(removed));
+            for (int ordinal : removed) {
+                retiredChunks.add(chunkIds[ordinal]);
+            }
+            markDeleted(removed);
+            log.debug("Documento ID {}: {} vetores substituídos removidos do índice local", documentId, removed.size());
+            compactIfNeeded();
+
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Chamado com o write lock
+    private void markDeleted(List<Integer> ordinals) {
+        Set<Integer> removed = new HashSet<>(ordinals);
+        Set<Long> affectedUsers = new HashSet<>();
+        for (int ordinal : ordinals) {
+            deleted.set(ordinal);
+            ordinalByChunkId.remove(chunkIds[ordinal]);
+            affectedUsers.add(userIds[ordinal]);
+        }
+        for (Long userId : affectedUsers) {
+            List<Integer> userOrdinals = ordinalsByUser.get(userId);
+            if (userOrdinals != null) {
+                userOrdinals.removeAll(removed);
+            }
+        }
+    }
+
+    /**
+     * Reconstrói grafo e segmentos só com os vetores ativos quando os removidos passam de
+     * compact-deleted-ratio. Nós removidos continuam ocupando segmento e servindo de caminho no
+     * grafo, então sem isso memória e custo de busca crescem com o histórico de remoções.
+     *
+     * Roda com o write lock; enquanto isso o índice fica como não pronto e o RetrievalService
+     * usa o pgvector.
+     */
+    private void compactIfNeeded() {
+        int removedCount = deleted.cardinality();
+        if (compactDeletedRatio <= 0 || removedCount == 0 || removedCount < size * compactDeletedRatio) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        boolean wasReady = ready;
+        ready = false;
+
+        MappedVectorStore previousStore = store;
+        long[] previousChunkIds = chunkIds;
+        long[] previousUserIds = userIds;
+        long[] previousDocumentIds = documentIds;
+        BitSet previousDeleted = (BitSet) deleted.clone();
+        int previousSize = size;
+
+        try {
+            store = new MappedVectorStore(Paths.get(directory), "segment-c" + (++generation),
+                                          previousStore.dimensions(), vectorsPerSegment);
+            links = new int[Math.max(1024, previousSize - removedCount)][][];
+            chunkIds = new long[links.length];
+            userIds = new long[links.length];
+            documentIds = new long[links.length];
+            deleted.clear();
+            size = 0;
+            entryPoint = -1;
+            maxLevel = -1;
+            ordinalByChunkId.clear();
+            ordinalsByDocument.clear();
+            ordinalsByUser.clear();
+
+            for (int node = 0; node < previousSize; node++) {
+                if (!previousDeleted.get(node)) {
+                    // Vetores do store já estão normalizados
+                    insert(previousChunkIds[node], previousDocumentIds[node], previousUserIds[node],
+                           previousStore.get(node));
+                }
+            }
+            previousStore.close();
+
+            log.info("Índice local compactado: {} vetores removidos descartados, {} ativos em {} ms",
+                     removedCount, size, (System.nanoTime() - start) / 1_000_000);
+
+        } catch (IOException e) {
+            // Grafo parcialmente reconstruído: o índice fica desativado e a busca continua no pgvector
+            log.error("Erro ao compactar índice local, busca continuará no pgvector: {}", e.getMessage(), e);
+            wasReady = false;
+        } finally {
+            ready = wasReady;
+        }
+    }
+
+    /**
+     * Número de vetores ativos no índice.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return ordinalByChunkId.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        lock.writeLock().lock();
+        try {
+            ready = false;
+            if (store != null) {
+                store.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private RowCallbackHandler chunkRowHandler() {
+        return rs -> add(
+                rs.getLong(1),
+                rs.getLong(2),
+                rs.getLong(3),
+                PgVectorCodec.toArray(rs.getObject(4)));
+    }
+
+    // ============================================
+    // HNSW
+    // ============================================
+
+    private void openStore(int dimensions) throws IOException {
+        // Diretório fixo por instância: o índice é reconstruído do banco a cada startup, então
+        // segmentos de uma execução anterior (inclusive de um processo morto) são descartados
+        Path base = Paths.get(directory);
+        Files.createDirectories(base);
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(base, "segment-*.vec")) {
+            for (Path file : stale) {
+                Files.deleteIfExists(file);
+            }
+        }
+        store = new MappedVectorStore(base, dimensions, vectorsPerSegment);
+    }
+
+    /**
+     * Insere no grafo um vetor já normalizado.
+     */
+    private void insert(long chunkId, long documentId, long userId, float[] vector) throws IOException {
+        int node = store.add(vector);
+        ensureCapacity(node + 1);
+
+        int level = randomLevel();
+        links[node] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            links[node][l] = new int[0];
+        }
+        chunkIds[node] = chunkId;
+        userIds[node] = userId;
+        documentIds[node] = documentId;
+        size = node + 1;
+
+        ordinalByChunkId.put(chunkId, node);
+        ordinalsByDocument.computeIfAbsent(documentId, id -> new ArrayList<>()).add(node);
+        ordinalsByUser.computeIfAbsent(userId, id -> new ArrayList<>()).add(node);
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        int entry = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            entry = greedyClosest(vector, entry, l);
+        }
+
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<Candidate> nearest = new ArrayList<>(searchLayer(vector, entry, efConstruction, l, null, null, 0));
+            nearest.sort(NEAREST_FIRST);
+
+            int maxLinks = l == 0 ? 2 * m : m;
+            int[] neighbors = nearest.stream()
+                    .filter(candidate -> candidate.node() != node)
+                    .limit(m)
+                    .mapToInt(Candidate::node)
+                    .toArray();
+
+            links[node][l] = neighbors;
+            for (int neighbor : neighbors) {
+                connect(neighbor, node, l, maxLinks);
+            }
+
+            entry = nearest.get(0).node();
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    /**
+     * Adiciona uma aresta e, se a lista estourar o limite, mantém apenas os vizinhos mais próximos.
+     */
+    private void connect(int from, int to, int level, int maxLinks) {
+        int[] current = links[from][level];
+        int[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = to;
+
+        if (updated.length > maxLinks) {
+            float[] base = store.get(from);
+            updated = Arrays.stream(updated)
+                    .boxed()
+                    .sorted(Comparator.comparingDouble(neighbor -> distance(base, neighbor)))
+                    .limit(maxLinks)
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+        }
+
+        links[from][level] = updated;
+    }
+
+    private int greedyClosest(float[] query, int entry, int level) {
+        int current = entry;
+        float currentDistance = distance(query, current);
+        boolean changed = true;
+
+        while (changed) {
+            changed = false;
+            for (int neighbor : links[current][level]) {
+                float d = distance(query, neighbor);
+                if (d < currentDistance) {
+                    currentDistance = d;
+                    current = neighbor;
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Busca em uma camada do grafo. Nós removidos e de outros tenants continuam sendo
+     * usados para navegação; apenas os que passam no filtro entram em matches.
+     */
+    private PriorityQueue<Candidate> searchLayer(float[] query, int entry, int ef, int level,
+                                                 Long userId, PriorityQueue<Candidate> matches, int topK) {
+        BitSet visited = new BitSet(size);
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(NEAREST_FIRST);
+        PriorityQueue<Candidate> nearest = new PriorityQueue<>(FARTHEST_FIRST);
+
+        Candidate start = new Candidate(entry, distance(query, entry));
+        visited.set(entry);
+        candidates.add(start);
+        nearest.add(start);
+        offerMatch(start, userId, matches, topK);
+
+        while (!candidates.isEmpty()) {
+            Candidate current = candidates.poll();
+            if (nearest.size() >= ef && current.distance() > nearest.peek().distance()) {
+                break;
+            }
+
+            for (int neighbor : links[current.node()][level]) {
+                if (visited.get(neighbor)) {
+                    continue;
+                }
+                visited.set(neighbor);
+
+                float d = distance(query, neighbor);
+                if (nearest.size() < ef || d < nearest.peek().distance()) {
+                    Candidate candidate = new Candidate(neighbor, d);
+                    candidates.add(candidate);
+                    nearest.add(candidate);
+                    offerMatch(candidate, userId, matches, topK);
+                    if (nearest.size() > ef) {
+                        nearest.poll();
+                    }
+                }
+            }
+        }
+
+        return nearest;
+    }
+
+    private PriorityQueue<Candidate> graphSearch(float[] query, Long userId, int topK) {
+        int entry = entryPoint;
+        for (int l = maxLevel; l > 0; l--) {
+            entry = greedyClosest(query, entry, l);
+        }
+
+        // Com filtro de tenant, amplia o ef até encontrar K resultados válidos
+        PriorityQueue<Candidate> matches = new PriorityQueue<>(FARTHEST_FIRST);
+        for (int ef = Math.max(efSearch, topK); ; ef *= 2) {
+            matches.clear();
+            searchLayer(query, entry, ef, 0, userId, matches, topK);
+            if (matches.size() >= topK || ef >= size) {
+                return matches;
+            }
+        }
+    }
+
+    private PriorityQueue<Candidate> exactSearch(float[] query, List<Integer> ordinals, int topK) {
+        PriorityQueue<Candidate> matches = new PriorityQueue<>(FARTHEST_FIRST);
+        for (int ordinal : ordinals) {
+            offerMatch(new Candidate(ordinal, distance(query, ordinal)), null, matches, topK);
+        }
+        return matches;
+    }
+
+    private void offerMatch(Candidate candidate, Long userId, PriorityQueue<Candidate> matches, int topK) {
+        if (matches == null || deleted.get(candidate.node())) {
+            return;
+        }
+        if (userId != null && userIds[candidate.node()] != userId) {
+            return;
+        }
+        if (matches.size() < topK) {
+            matches.add(candidate);
+        } else if (candidate.distance() < matches.peek().distance()) {
+            matches.poll();
+            matches.add(candidate);
+        }
+    }
+
+    private float distance(float[] normalizedQuery, int node) {
+        return 1f - store.dot(node, normalizedQuery);
+    }
+
+    private int randomLevel() {
+        double levelMultiplier = 1 / Math.log(m);
+        int level = (int) Math.floor(-Math.log(1 - random.nextDouble()) * levelMultiplier);
+        return Math.min(level, MAX_LEVEL);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= chunkIds.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, chunkIds.length * 2);
+        links = Arrays.copyOf(links, newCapacity);
+        chunkIds = Arrays.copyOf(chunkIds, newCapacity);
+        userIds = Arrays.copyOf(userIds, newCapacity);
+        documentIds = Arrays.copyOf(documentIds, newCapacity);
+    }
+
+    /**
+     * Resultado da busca: id do chunk e distância de cosine.
+     */
+    public record Hit(long chunkId, double distance) {}
+
+    private record Candidate(int node, float distance) {}
+}
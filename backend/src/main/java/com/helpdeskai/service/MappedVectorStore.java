@@ -0,0 +1,159 @@
+package com.helpdeskai.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Armazenamento off-heap de vetores em arquivos de segmento mapeados em memória.
+ * Cada segmento guarda um número fixo de vetores float32 já normalizados (L2),
+ * endereçados por um ordinal sequencial. Com vetores normalizados, a distância de
+ * cosine é simplesmente 1 - produto escalar.
+ *
+ * Não é thread-safe: o acesso é coordenado pelo lock do LocalVectorIndex.
+ */
+@Slf4j
+class MappedVectorStore implements Closeable {
+
+    private final Path directory;
+    private final String filePrefix;
+    private final int dimensions;
+    private final int vectorsPerSegment;
+    private final List<FloatBuffer> segments = new ArrayList<>();
+    private final List<Path> segmentFiles = new ArrayList<>();
+    private int size;
+
+    MappedVectorStore(Path directory, int dimensions, int vectorsPerSegment) throws IOException {
+        this(directory, "segment", dimensions, vectorsPerSegment);
+    }
+
+    /**
+     * @param filePrefix Prefixo dos arquivos de segmento, para dois stores coexistirem no mesmo diretório
+     */
+    MappedVectorStore(Path directory, String filePrefix, int dimensions, int vectorsPerSegment) throws IOException {
+        this.directory = directory;
+        this.filePrefix = filePrefix;
+        this.dimensions = dimensions;
+        // Um MappedByteBuffer é limitado a 2 GB
+        this.vectorsPerSegment = Math.min(vectorsPerSegment, Integer.MAX_VALUE / (dimensions * Float.BYTES));
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * Adiciona um vetor (normalizando-o) e retorna seu ordinal.
+     */
+    int add(float[] vector) throws IOException {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException(String.format(
+                    "Vetor com %d dimensões, esperado %d", vector.length, dimensions));
+        }
+
+        int segment = size / vectorsPerSegment;
+        if (segment == segments.size()) {
+            mapSegment(segment);
+        }
+
+        float[] normalized = normalize(vector);
+        FloatBuffer buffer = segments.get(segment);
+        int offset = (size % vectorsPerSegment) * dimensions;
+        for (int i = 0; i < dimensions; i++) {
+            buffer.put(offset + i, normalized[i]);
+        }
+
+        return size++;
+    }
+
+    /**
+     * Produto escalar entre o vetor armazenado e uma query já normalizada.
+     */
+    float dot(int ordinal, float[] normalizedQuery) {
+        FloatBuffer buffer = segments.get(ordinal / vectorsPerSegment);
+        int offset = (ordinal % vectorsPerSegment) * dimensions;
+        float sum = 0f;
+        for (int i = 0; i < dimensions; i++) {
+            sum += buffer.get(offset + i) * normalizedQuery[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Copia o vetor armazenado para o heap.
+     */
+    float[] get(int ordinal) {
+        FloatBuffer buffer = segments.get(ordinal / vectorsPerSegment);
+        int offset = (ordinal % vectorsPerSegment) * dimensions;
+        float[] vector = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = buffer.get(offset + i);
+        }
+        return vector;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int dimensions() {
+        return dimensions;
+    }
+
+    /**
+     * Normaliza um vetor (norma L2 = 1).
+     */
+    static float[] normalize(float[] vector) {
+        double sumSquares = 0;
+        for (float value : vector) {
+            sumSquares += value * value;
+        }
+        float norm = (float) Math.sqrt(sumSquares);
+        float[] normalized = new float[vector.length];
+        if (norm == 0f) {
+            return normalized;
+        }
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = vector[i] / norm;
+        }
+        return normalized;
+    }
+
+    private void mapSegment(int segment) throws IOException {
+        Path file = directory.resolve(String.format("%s-%05d.vec", filePrefix, segment));
+        long bytes = (long) vectorsPerSegment * dimensions * Float.BYTES;
+
+        // O mapeamento continua válido depois que o canal é fechado
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            segments.add(mapped.order(ByteOrder.nativeOrder()).asFloatBuffer());
+        }
+
+        segmentFiles.add(file);
+        log.debug("Segmento {} mapeado: {} ({} vetores)", segment, file, vectorsPerSegment);
+    }
+
+    @Override
+    public void close() {
+        segments.clear();
+        for (Path file : segmentFiles) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                // Em alguns SOs o arquivo só pode ser removido após o unmap (GC)
+                file.toFile().deleteOnExit();
+            }
+        }
+        segmentFiles.clear();
+        size = 0;
+    }
+}
@@ -0,0 +1,104 @@
+package com.helpdeskai.service;
+
+import com.helpdeskai.repository.VectorQuantization;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+/**
+ * Serviço responsável pelo índice HNSW quantizado (helpdesk.retrieval.quantization.mode).
+ *
+ * O índice é de expressão sobre chunks.embedding (halfvec ou binary_quantize), então não há
+ * coluna para preencher: criar o índice já indexa as linhas existentes (backfill) e os inserts
+ * seguintes são indexados automaticamente. Enquanto o índice não existe, a busca continua
+ * correta, apenas sem ANN no estágio quantizado.
+ *
+ * Com um modo quantizado ativo nenhuma query ordena pelo vector float32 via índice (o re-rank
+ * exato lê o heap), então o HNSW float32 (chunks_embedding_idx) só ocuparia shared_buffers e
+ * custaria escrita a cada insert: depois que o índice quantizado fica válido ele é removido
+ * (helpdesk.retrieval.quantization.drop-full-index). Voltando para o modo none, o índice
+ * float32 é recriado no startup.
+ */
+@Service
+@Slf4j
+public class QuantizedIndexService {
+
+    // CREATE INDEX CONCURRENTLY interrompido deixa o índice inválido (existe, mas não é usado)
+    private static final String INDEX_VALID_SQL = """
+        SELECT COALESCE(bool_and(x.indisvalid), false)
+        FROM pg_index x
+        JOIN pg_class i ON i.oid = x.indexrelid
+        WHERE i.relname = ?
+        """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${helpdesk.retrieval.quantization.mode:none}")
+    private String quantizationMode;
+
+    @Value("${helpdesk.retrieval.quantization.drop-full-index:true}")
+    private boolean dropFullIndex;
+
+    public QuantizedIndexService(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Cria o índice quantizado no startup, sem bloquear a subida da aplicação.
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        try {
+            ensureQuantizedIndex();
+        } catch (Exception e) {
+            log.error("Erro ao criar índice vetorial quantizado: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Cria o índice HNSW do modo configurado, se ainda não existir, e remove o índice float32
+     * quando ele deixa de ser usado. CREATE/DROP INDEX CONCURRENTLY não bloqueiam inserts
+     * durante o backfill, por isso precisam rodar fora de transação.
+     *
+     * @return true se um índice quantizado foi (ou já estava) criado
+     */
+    public boolean ensureQuantizedIndex() {
+        VectorQuantization quantization = VectorQuantization.fromConfig(quantizationMode);
+        if (quantization == VectorQuantization.NONE) {
+            // No-op quando o índice existe (init-db.sql); recria se um modo quantizado o removeu
+            createIndex(VectorQuantization.NONE);
+            return false;
+        }
+
+        log.info("Garantindo índice quantizado {} ({})", quantization.indexName(), quantization);
+        createIndex(quantization);
+
+        if (!isValid(quantization.indexName())) {
+            // Mantém o índice float32 até um DROP manual do índice inválido e novo startup
+            log.warn("Índice {} inválido (criação interrompida); índice float32 mantido", quantization.indexName());
+            return true;
+        }
+        log.info("Índice {} disponível", quantization.indexName());
+
+        if (dropFullIndex) {
+            jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS " + VectorQuantization.NONE.indexName());
+            log.info("Índice float32 {} removido (não usado com quantização {})",
+                     VectorQuantization.NONE.indexName(), quantization);
+        }
+        return true;
+    }
+
+    private void createIndex(VectorQuantization quantization) {
+        jdbcTemplate.execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS " + quantization.indexName()
+                + " ON chunks " + quantization.hnswDefinition());
+    }
+
+    private boolean isValid(String indexName) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(INDEX_VALID_SQL, Boolean.class, indexName));
+    }
+}
@@ -0,0 +1,375 @@
+package com.helpdeskai.service;
+
+import com.helpdeskai.entity.Chunk;
+import com.helpdeskai.entity.Document;
+import com.helpdeskai.repository.ChunkRepository;
+import com.pgvector.PGvector;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Serviço responsável pela etapa de retrieval do pipeline RAG.
+ *
+ * Dois engines vetoriais, escolhidos por helpdesk.retrieval.engine:
+ * - pgvector (padrão): busca ANN dentro do PostgreSQL (ChunkRepository.findTopKSimilarChunkIds)
+ * - local: índice HNSW em memória (LocalVectorIndex)
+ *
+ * Em ambos a busca devolve só ids + distâncias, e o conteúdo dos top-K finais é hidratado
+ * em lote pelo ChunkContentCache (LRU dos chunks mais recuperados).
+ *
+ * Com o engine local, enquanto o índice ainda está sendo construído a busca cai no pgvector.
+ *
+ * Com helpdesk.retrieval.mode=hybrid, uma busca full-text (ChunkRepository.findTopKLexicalChunks)
+ * roda em paralelo à vetorial e os rankings são combinados por Reciprocal Rank Fusion.
+ * Hits só do ramo full-text entram na fusão apenas se contêm um termo com dígito da pergunta
+ * (código de erro, SKU, versão); os demais já passaram pelo threshold no ramo vetorial.
+ * A latência de cada ramo é publicada no timer helpdesk.retrieval.branch (tag branch).
+ */
+@Service
+@Slf4j
+public class RetrievalService {
+
+    private static final String MODE_HYBRID = "hybrid";
+
+    // Termos como ERR-1042, SKU123 ou v2.1: letras/dígitos unidos por - _ . / com pelo menos um dígito
+    private static final Pattern CODE_TOKEN = Pattern.compile("[\\p{L}\\p{N}]+(?:[-_./][\\p{L}\\p{N}]+)*");
+
+    private final ChunkRepository chunkRepository;
+    private final ChunkContentCache chunkContentCache;
+    private final TenantIndexService tenantIndexService;
+    private final ObjectProvider<LocalVectorIndex> localVectorIndex;
+    private final Executor retrievalExecutor;
+    private final Timer vectorTimer;
+    private final Timer lexicalTimer;
+    private final Timer hybridTimer;
+
+    @Value("${helpdesk.retrieval.top-k:5}")
+    private int topK;
+
+    @Value("${helpdesk.retrieval.similarity-threshold:0.7}")
+    private double similarityThreshold;
+
+    @Value("${helpdesk.retrieval.iterative-scan:relaxed_order}")
+    private String iterativeScanMode;
+
+    @Value("${helpdesk.retrieval.mode:vector}")
+    private String mode;
+
+    @Value("${helpdesk.retrieval.hybrid.candidates:20}")
+    private int hybridCandidates;
+
+    @Value("${helpdesk.retrieval.hybrid.rrf-k:60}")
+    private int rrfK;
+
+    public RetrievalService(ChunkRepository chunkRepository,
+                            ChunkContentCache chunkContentCache,
+                            TenantIndexService tenantIndexService,
+                            ObjectProvider<LocalVectorIndex> localVectorIndex,
+                            @Qualifier("retrievalExecutor") Executor retrievalExecutor,
+                            MeterRegistry meterRegistry) {
+        this.chunkRepository = chunkRepository;
+        this.chunkContentCache = chunkContentCache;
+        this.tenantIndexService = tenantIndexService;
+        this.localVectorIndex = localVectorIndex;
+        this.retrievalExecutor = retrievalExecutor;
+        this.vectorTimer = branchTimer(meterRegistry, "vector");
+        this.lexicalTimer = branchTimer(meterRegistry, "lexical");
+        this.hybridTimer = branchTimer(meterRegistry, "hybrid");
+    }
+
+    /**
+     * Recupera chunks relevantes para a pergunta.
+     * O threshold de similaridade é aplicado dentro da busca ANN, então apenas chunks
+     * realmente relevantes chegam ao prompt (lista vazia = LLM não é chamado).
+     * A busca é sempre restrita aos documentos do próprio usuário.
+     *
+     * @param question Pergunta do usuário (usada pelo ramo full-text no modo híbrido)
+     * @param queryEmbedding Embedding da pergunta
+     * @param userId Dono dos documentos (tenant)
+     * @return Chunks ordenados por relevância (maior primeiro)
+     */
+    public List<ScoredChunk> retrieve(String question, PGvector queryEmbedding, Long userId) {
+        return retrieve(question, queryEmbedding, userId, topK);
+    }
+
+    /**
+     * Mesma busca com um limite explícito, usado para buscar mais candidatos que o top-K
+     * quando há uma etapa posterior de seleção (ver ContextPacker).
+     *
+     * @param limit Número máximo de chunks
+     */
+    public List<ScoredChunk> retrieve(String question, PGvector queryEmbedding, Long userId, int limit) {
+        if (!MODE_HYBRID.equalsIgnoreCase(mode)) {
+            return vectorTimer.record(() -> retrieveByVector(queryEmbedding, userId, limit));
+        }
+        return hybridTimer.record(() -> retrieveHybrid(question, queryEmbedding, userId, limit));
+    }
+
+    public int getTopK() {
+        return topK;
+    }
+
+    public double getSimilarityThreshold() {
+        return similarityThreshold;
+    }
+
+    /**
+     * Busca híbrida: o ramo full-text roda no retrievalExecutor enquanto o vetorial roda na
+     * thread da requisição (mantendo a transação/conexão e o set_config do chat), então o custo
+     * total é o do ramo mais lento mais a fusão.
+     */
+    private List<ScoredChunk> retrieveHybrid(String question, PGvector queryEmbedding, Long userId, int limit) {
+        int candidates = Math.max(hybridCandidates, limit);
+        CompletableFuture<List<ScoredChunk>> lexicalFuture = CompletableFuture.supplyAsync(
+                () -> lexicalTimer.record(() -> retrieveByText(question, userId, candidates)),
+                retrievalExecutor);
+
+        List<ScoredChunk> vectorResults = vectorTimer.record(
+                () -> retrieveByVector(queryEmbedding, userId, candidates));
+
+        List<ScoredChunk> lexicalResults;
+        try {
+            lexicalResults = lexicalFuture.join();
+        } catch (CompletionException e) {
+            // Sem o ramo full-text a resposta continua correta, só perde os matches exatos
+            log.error("Erro na busca full-text, usando apenas busca vetorial: {}",
+                      e.getCause() != null ? e.getCause().getMessage() : e.getMessage(), e);
+            lexicalResults = List.of();
+        }
+
+        List<ScoredChunk> gatedLexical = gateLexicalResults(question, vectorResults, lexicalResults);
+        List<ScoredChunk> fused = reciprocalRankFusion(List.of(vectorResults, gatedLexical), rrfK, limit);
+
+        log.debug("Busca híbrida: {} vetoriais, {} full-text ({} após filtro), {} após fusão",
+                  vectorResults.size(), lexicalResults.size(), gatedLexical.size(), fused.size());
+        return fused;
+    }
+
+    /**
+     * Filtra o ramo full-text antes da fusão. A configuração 'simple' não remove stopwords, então
+     * quase toda pergunta casa com algum chunk, e o RRF normaliza o primeiro lugar para 1.0: sem
+     * esse filtro, uma pergunta sem relação com os documentos nunca cairia na resposta sem contexto.
+     *
+     * Hits que também vieram do ramo vetorial já passaram pelo threshold de similaridade. Os que
+     * só o full-text encontrou são mantidos apenas se contêm um termo da pergunta com dígito
+     * (código de erro, SKU, versão), que é o caso que a busca lexical existe para cobrir.
+     */
+    static List<ScoredChunk> gateLexicalResults(String question, List<ScoredChunk> vectorResults,
+                                                List<ScoredChunk> lexicalResults) {
+        if (lexicalResults.isEmpty()) {
+            return lexicalResults;
+        }
+
+        Set<Long> vectorIds = vectorResults.stream()
+                .map(scored -> scored.getChunk().getId())
+                .collect(Collectors.toSet());
+        List<String> codeTokens = codeTokens(question);
+
+        return lexicalResults.stream()
+                .filter(scored -> vectorIds.contains(scored.getChunk().getId())
+                        || containsAny(scored.getChunk().getContent(), codeTokens))
+                .toList();
+    }
+
+    private static List<String> codeTokens(String question) {
+        if (question == null) {
+            return List.of();
+        }
+        List<String> tokens = new ArrayList<>();
+        Matcher matcher = CODE_TOKEN.matcher(question);
+        while (matcher.find()) {
+            String token = matcher.group();
+            if (token.length() >= 3 && token.chars().anyMatch(Character::isDigit)) {
+                tokens.add(token.toLowerCase(Locale.ROOT));
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean containsAny(String content, List<String> tokens) {
+        if (content == null || tokens.isEmpty()) {
+            return false;
+        }
+        String normalized = content.toLowerCase(Locale.ROOT);
+        return tokens.stream().anyMatch(normalized::contains);
+    }
+
+    private List<ScoredChunk> retrieveByVector(PGvector queryEmbedding, Long userId, int limit) {
+        LocalVectorIndex index = localVectorIndex.getIfAvailable();
+        if (index != null && index.isReady()) {
+            return retrieveFromLocalIndex(index, queryEmbedding, userId, limit);
+        }
+        return retrieveFromPgvector(queryEmbedding, userId, limit);
+    }
+
+    private List<ScoredChunk> retrieveFromPgvector(PGvector queryEmbedding, Long userId, int limit) {
+        chunkRepository.configureVectorSearch(iterativeScanMode);
+        if (!tenantIndexService.hasTenantIndex(userId)) {
+            // Tenant abaixo do threshold: user_id + ordenação exata, independente do resto da tabela
+            chunkRepository.forceExactTenantSearch();
+        }
+
+        double maxDistance = 1 - similarityThreshold;
+        Map<Long, Double> distancesById = new LinkedHashMap<>();
+        for (Object[] row : chunkRepository.findTopKSimilarChunkIds(queryEmbedding, userId, limit, maxDistance)) {
+            // [id, distance]
+            distancesById.put(((Number) row[0]).longValue(), ((Number) row[1]).doubleValue());
+        }
+
+        return hydrate(distancesById);
+    }
+
+    private List<ScoredChunk> retrieveFromLocalIndex(LocalVectorIndex index, PGvector queryEmbedding,
+                                                     Long userId, int limit) {
+        List<LocalVectorIndex.Hit> hits = index.search(
+                queryEmbedding.toArray(), userId, limit, 1 - similarityThreshold);
+
+        Map<Long, Double> distancesById = new LinkedHashMap<>();
+        for (LocalVectorIndex.Hit hit : hits) {
+            distancesById.put(hit.chunkId(), hit.distance());
+        }
+
+        List<ScoredChunk> chunksWithScore = hydrate(distancesById);
+        log.debug("Índice local retornou {} chunks para usuário ID {}", chunksWithScore.size(), userId);
+        return chunksWithScore;
+    }
+
+    /**
+     * Segunda fase: carrega o conteúdo dos ids encontrados (cache + uma query IN para os ausentes).
+     *
+     * @param distancesById Distâncias de cosine por id, na ordem da busca
+     * @return Chunks na mesma ordem, com score = 1 - distância
+     */
+    private List<ScoredChunk> hydrate(Map<Long, Double> distancesById) {
+        if (distancesById.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Long, Object[]> rowsById = chunkContentCache.getAll(distancesById.keySet());
+
+        // Mantém a ordem da busca; ids sem linha (chunk removido no meio do caminho) são descartados
+        List<ScoredChunk> chunksWithScore = new ArrayList<>();
+        for (Map.Entry<Long, Double> entry : distancesById.entrySet()) {
+            Object[] row = rowsById.get(entry.getKey());
+
+            // Score de similaridade real: 1 - distância de cosine. O threshold já foi aplicado na busca
+            // (distance <= 1 - threshold); refazer o teste aqui descartaria, por arredondamento, linhas
+            // exatamente na fronteira que a busca aceitou
+            if (row != null) {
+                chunksWithScore.add(new ScoredChunk(toChunk(row), 1 - entry.getValue()));
+            }
+        }
+
+        return chunksWithScore;
+    }
+
+    private List<ScoredChunk> retrieveByText(String question, Long userId, int limit) {
+        List<ScoredChunk> chunksWithScore = new ArrayList<>();
+        for (Object[] row : chunkRepository.findTopKLexicalChunks(question, userId, limit)) {
+            // [.., rank]: ts_rank_cd, só usado para ordenar dentro do ramo
+            chunksWithScore.add(new ScoredChunk(toChunk(row), ((Number) row[7]).doubleValue()));
+        }
+        return chunksWithScore;
+    }
+
+    /**
+     * Reciprocal Rank Fusion: score(d) = soma de 1 / (k + rank) em cada ranking (rank a partir de 1).
+     * Não depende da escala dos scores de cada ramo (cosine vs ts_rank_cd).
+     * O score final é normalizado para [0, 1] (1 = primeiro lugar em todos os rankings).
+     *
+     * @param rankings Rankings de cada ramo, em ordem de relevância
+     * @param k Constante de suavização (60 no artigo original)
+     * @param limit Número máximo de resultados
+     * @return Chunks ordenados pelo score fundido
+     */
+    static List<ScoredChunk> reciprocalRankFusion(List<List<ScoredChunk>> rankings, int k, int limit) {
+        Map<Long, Chunk> chunksById = new LinkedHashMap<>();
+        Map<Long, Double> fusedScores = new HashMap<>();
+
+        for (List<ScoredChunk> ranking : rankings) {
+            for (int i = 0; i < ranking.size(); i++) {
+                Chunk chunk = ranking.get(i).getChunk();
+                chunksById.putIfAbsent(chunk.getId(), chunk);
+                fusedScores.merge(chunk.getId(), 1.0 / (k + i + 1), Double::sum);
+            }
+        }
+
+        double maxScore = rankings.size() / (k + 1.0);
+
+        return chunksById.entrySet().stream()
+                .map(entry -> new ScoredChunk(entry.getValue(), fusedScores.get(entry.getKey()) / maxScore))
+                .sorted(Comparator.comparingDouble(ScoredChunk::getScore).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    /**
+     * Cria um chunk simplificado com as informações necessárias para prompt e citações.
+     * Linha no formato [id, content, metadata, chunk_index, document_id, created_at, document_filename, ...]
+     */
+    private Chunk toChunk(Object[] row) {
+        Chunk chunk = new Chunk();
+        chunk.setId(((Number) row[0]).longValue());
+        chunk.setContent((String) row[1]);
+        if (row[3] != null) {
+            chunk.setChunkIndex(((Number) row[3]).intValue());
+        }
+
+        Document doc = new Document();
+        doc.setId(((Number) row[4]).longValue());
+        doc.setFilename((String) row[6]);
+        chunk.setDocument(doc);
+
+        return chunk;
+    }
+
+    private static Timer branchTimer(MeterRegistry meterRegistry, String branch) {
+        return Timer.builder("helpdesk.retrieval.branch")
+                .description("Latência de cada ramo do retrieval")
+                .tag("branch", branch)
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Chunk recuperado com seu score de relevância
+     * (1 - distância de cosine na busca vetorial; RRF normalizado na busca híbrida).
+     */
+    public static class ScoredChunk {
+        private final Chunk chunk;
+        private final double score;
+
+        public ScoredChunk(Chunk chunk, double score) {
+            this.chunk = chunk;
+            this.score = score;
+        }
+
+        public Chunk getChunk() {
+            return chunk;
+        }
+
+        public double getScore() {
+            return score;
+        }
+    }
+}
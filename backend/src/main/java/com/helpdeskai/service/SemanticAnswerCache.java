@@ -0,0 +1,208 @@
+package com.helpdeskai.service;
+
+import com.helpdeskai.entity.Message.Citation;
+import com.pgvector.PGvector;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Cache semântico de respostas: perguntas quase iguais (embedding a até max-distance de
+ * distância de cosine) que recuperam exatamente os mesmos chunks recebem a resposta já gerada,
+ * sem nova chamada ao LLM.
+ *
+ * As entradas ficam em memória, separadas por usuário (tenant), e são invalidadas quando um
+ * documento citado é deletado ou reprocessado. A exigência do mesmo conjunto de chunks garante
+ * que a resposta continua ancorada no contexto que seria enviado ao LLM.
+ *
+ * Métricas:
+ * - helpdesk.answer.cache.requests (tag result=hit|miss): hit ratio = hit / (hit + miss)
+ * - helpdesk.answer.cache.saved: latência do LLM economizada em cada hit
+ * - helpdesk.answer.cache.size: entradas em memória
+ */
+@Component
+@Slf4j
+public class SemanticAnswerCache {
+
+    private final Map<Long, Deque<Entry>> entriesByUser = new ConcurrentHashMap<>();
+    private final Counter hits;
+    private final Counter misses;
+    private final Timer savedLatency;
+
+    @Value("${helpdesk.answer-cache.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${helpdesk.answer-cache.max-distance:0.05}")
+    private double maxDistance = 0.05;
+
+    @Value("${helpdesk.answer-cache.ttl-minutes:60}")
+    private long ttlMinutes = 60;
+
+    @Value("${helpdesk.answer-cache.max-entries-per-user:500}")
+    private int maxEntriesPerUser = 500;
+
+    public SemanticAnswerCache(MeterRegistry meterRegistry) {
+        this.hits = Counter.builder("helpdesk.answer.cache.requests")
+                .description("Consultas ao cache semântico de respostas")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("helpdesk.answer.cache.requests")
+                .description("Consultas ao cache semântico de respostas")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.savedLatency = Timer.builder("helpdesk.answer.cache.saved")
+                .description("Latência do LLM economizada por hits do cache semântico")
+                .register(meterRegistry);
+        Gauge.builder("helpdesk.answer.cache.size", this, SemanticAnswerCache::size)
+                .description("Entradas no cache semântico de respostas")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Procura uma resposta já gerada para uma pergunta equivalente.
+     *
+     * @param userId Dono dos documentos (tenant)
+     * @param queryEmbedding Embedding da pergunta
+     * @param chunkIds Ids dos chunks recuperados para a pergunta
+     * @return Resposta em cache, se houver
+     */
+    public Optional<CachedAnswer> lookup(Long userId, PGvector queryEmbedding, Set<Long> chunkIds) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+
+        Deque<Entry> entries = entriesByUser.get(userId);
+        if (entries != null) {
+            float[] query = MappedVectorStore.normalize(queryEmbedding.toArray());
+            long now = System.nanoTime();
+
+            Iterator<Entry> iterator = entries.iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (isExpired(entry, now)) {
+                    iterator.remove();
+                } else if (entry.chunkIds().equals(chunkIds)
+                        && 1 - dot(query, entry.embedding()) <= maxDistance) {
+                    hits.increment();
+                    savedLatency.record(entry.answer().llmNanos(), TimeUnit.NANOSECONDS);
+                    log.debug("Hit no cache semântico para usuário ID {}", userId);
+                    return Optional.of(entry.answer());
+                }
+            }
+        }
+
+        misses.increment();
+        return Optional.empty();
+    }
+
+    /**
+     * Guarda a resposta gerada pelo LLM para as próximas perguntas equivalentes.
+     *
+     * @param llmNanos Tempo gasto na chamada ao LLM (reportado como economia nos hits)
+     */
+    public void put(Long userId, PGvector queryEmbedding, Set<Long> chunkIds, Set<Long> documentIds,
+                    String answer, List<Citation> citations, long llmNanos) {
+        if (!enabled) {
+            return;
+        }
+
+        Deque<Entry> entries = entriesByUser.computeIfAbsent(userId, id -> new ConcurrentLinkedDeque<>());
+        entries.addFirst(new Entry(
+                MappedVectorStore.normalize(queryEmbedding.toArray()),
+                Set.copyOf(chunkIds),
+                Set.copyOf(documentIds),
+                new CachedAnswer(answer, List.copyOf(citations), llmNanos),
+                System.nanoTime()));
+
+        // Descarta as mais antigas acima do limite por usuário
+        while (entries.size() > maxEntriesPerUser) {
+            entries.pollLast();
+        }
+    }
+
+    /**
+     * Documento reprocessado: respostas baseadas na versão anterior deixam de valer.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onDocumentIndexed(DocumentService.DocumentIndexedEvent event) {
+        invalidateDocument(event.userId(), event.documentId());
+    }
+
+    /**
+     * Documento deletado: respostas que o citavam deixam de valer.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onDocumentDeleted(DocumentService.DocumentDeletedEvent event) {
+        invalidateDocument(event.userId(), event.documentId());
+    }
+
+    void invalidateDocument(Long userId, Long documentId) {
+        Deque<Entry> entries = entriesByUser.get(userId);
+        if (entries != null && entries.removeIf(entry -> entry.documentIds().contains(documentId))) {
+            log.debug("Cache semântico invalidado para documento ID {}", documentId);
+        }
+    }
+
+    public int size() {
+        return entriesByUser.values().stream().mapToInt(Deque::size).sum();
+    }
+
+    /**
+     * Ids dos chunks e documentos de uma lista de chunks recuperados.
+     */
+    public static Set<Long> chunkIds(List<RetrievalService.ScoredChunk> chunks) {
+        return chunks.stream().map(chunk -> chunk.getChunk().getId()).collect(Collectors.toSet());
+    }
+
+    public static Set<Long> documentIds(List<RetrievalService.ScoredChunk> chunks) {
+        return chunks.stream().map(chunk -> chunk.getChunk().getDocument().getId()).collect(Collectors.toSet());
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return now - entry.createdAtNanos() > Duration.ofMinutes(ttlMinutes).toNanos();
+    }
+
+    private static double dot(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return 0;
+        }
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Resposta em cache com as citações originais.
+     */
+    public record CachedAnswer(String answer, List<Citation> citations, long llmNanos) {
+
+        public List<Citation> copyCitations() {
+            return new ArrayList<>(citations);
+        }
+    }
+
+    private record Entry(float[] embedding, Set<Long> chunkIds, Set<Long> documentIds,
+                         CachedAnswer answer, long createdAtNanos) {
+    }
+}
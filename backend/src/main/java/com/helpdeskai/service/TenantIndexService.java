@@ -0,0 +1,173 @@
+package com.helpdeskai.service;
+
+import com.helpdeskai.repository.ChunkRepository;
+import com.helpdeskai.repository.VectorQuantization;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Serviço responsável pelos índices vetoriais por tenant.
+ *
+ * Tenants pequenos são atendidos pelo índice B-tree em chunks.user_id seguido de ordenação
+ * exata (custo proporcional ao corpus do tenant). Quando um tenant ultrapassa o limite
+ * configurado, ganha um índice HNSW parcial (WHERE user_id = X), usado pela busca graças ao
+ * plan_cache_mode = force_custom_plan configurado em ChunkRepository.configureVectorSearch.
+ *
+ * Para tenants sem índice parcial o RetrievalService desliga index scans na transação da busca
+ * (ChunkRepository.forceExactTenantSearch): sem isso o planner pode preferir o HNSW global com
+ * pós-filtro, cujo custo depende do tamanho dos outros tenants. Assim nenhum tenant paga pelo
+ * corpus de outro: o custo é limitado pelo threshold (busca exata) ou pelo próprio índice parcial.
+ */
+@Service
+@Slf4j
+public class TenantIndexService {
+
+    // Índices parciais válidos (CREATE INDEX CONCURRENTLY interrompido deixa o índice inválido)
+    private static final String VALID_TENANT_INDEXES_SQL = """
+        SELECT i.relname
+        FROM pg_index x
+        JOIN pg_class i ON i.oid = x.indexrelid
+        JOIN pg_class t ON t.oid = x.indrelid
+        WHERE t.relname = 'chunks' AND x.indisvalid AND i.relname LIKE ?
+        """;
+
+    private final ChunkRepository chunkRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${helpdesk.retrieval.tenant-index-threshold:50000}")
+    private long tenantIndexThreshold;
+
+    @Value("${helpdesk.retrieval.quantization.mode:none}")
+    private String quantizationMode;
+
+    // Tenants que já possuem índice parcial (evita COUNT a cada documento processado)
+    private final Set<Long> indexedTenants = ConcurrentHashMap.newKeySet();
+
+    public TenantIndexService(ChunkRepository chunkRepository, JdbcTemplate jdbcTemplate) {
+        this.chunkRepository = chunkRepository;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Recupera, no startup, os tenants que já possuem índice parcial para a quantização configurada.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadTenantIndexes() {
+        VectorQuantization quantization = VectorQuantization.fromConfig(quantizationMode);
+        String prefix = quantization.indexName().replace("_idx", "") + "_tenant_";
+        Pattern namePattern = Pattern.compile(Pattern.quote(prefix) + "(\\d+)_idx");
+
+        try {
+            for (String indexName : jdbcTemplate.queryForList(VALID_TENANT_INDEXES_SQL, String.class, prefix + "%")) {
+                Matcher matcher = namePattern.matcher(indexName);
+                if (matcher.matches()) {
+                    indexedTenants.add(Long.parseLong(matcher.group(1)));
+                }
+            }
+            log.info("{} tenants com índice vetorial próprio", indexedTenants.size());
+        } catch (Exception e) {
+            // Tenants sem entrada aqui usam a busca exata: correta, só mais lenta para tenants grandes
+            log.error("Erro ao carregar índices vetoriais por tenant: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Se a busca do tenant pode usar um índice HNSW parcial.
+     *
+     * @param userId ID do usuário (tenant)
+     * @return false para tenants atendidos pela busca exata
+     */
+    public boolean hasTenantIndex(Long userId) {
+        return userId != null && indexedTenants.contains(userId);
+    }
+
+    /**
+     * Após o commit dos chunks de um documento, verifica se o tenant precisa de índice próprio.
+     */
+    @Async
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onDocumentIndexed(DocumentService.DocumentIndexedEvent event) {
+        try {
+            ensureTenantIndex(event.userId());
+        } catch (Exception e) {
+            // Sem o índice parcial a busca continua correta (B-tree + ordenação exata)
+            log.error("Erro ao criar índice vetorial do tenant {}: {}", event.userId(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Cria o índice HNSW parcial do tenant se o corpus dele passou do limite.
+     * Usa CREATE INDEX CONCURRENTLY para não bloquear inserts de outros tenants,
+     * por isso precisa rodar fora de transação.
+     *
+     * Um build interrompido deixa um índice inválido com o mesmo nome, que o IF NOT EXISTS não
+     * refaz: nesse caso o índice é removido (DROP INDEX CONCURRENTLY) e criado de novo. O tenant
+     * só deixa a busca exata quando o índice está válido em pg_index.
+     *
+     * @param userId ID do usuário (tenant)
+     * @return true se o tenant possui índice parcial válido
+     */
+    public boolean ensureTenantIndex(Long userId) {
+        if (userId == null) {
+            return false;
+        }
+        if (indexedTenants.contains(userId)) {
+            return true;
+        }
+
+        long tenantChunks = chunkRepository.countByUserId(userId);
+        if (tenantChunks < tenantIndexThreshold) {
+            log.debug("Tenant {} com {} chunks, abaixo do limite de {} para índice próprio",
+                      userId, tenantChunks, tenantIndexThreshold);
+            return false;
+        }
+
+        // Com quantização, o índice parcial segue a mesma expressão usada pela busca
+        VectorQuantization quantization = VectorQuantization.fromConfig(quantizationMode);
+        String indexName = tenantIndexName(userId, quantization);
+        log.info("Criando índice HNSW parcial {} para tenant {} ({} chunks)", indexName, userId, tenantChunks);
+
+        String createIndex = "CREATE INDEX CONCURRENTLY IF NOT EXISTS " + indexName
+                + " ON chunks " + quantization.hnswDefinition() + " WHERE user_id = " + userId;
+        jdbcTemplate.execute(createIndex);
+
+        if (!isValid(indexName)) {
+            log.warn("Índice {} inválido (criação interrompida); recriando", indexName);
+            jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS " + indexName);
+            jdbcTemplate.execute(createIndex);
+            if (!isValid(indexName)) {
+                // Continua na busca exata; o próximo documento indexado tenta de novo
+                log.error("Índice {} continua inválido; tenant {} segue na busca exata", indexName, userId);
+                return false;
+            }
+        }
+
+        indexedTenants.add(userId);
+        log.info("Índice {} criado com sucesso", indexName);
+        return true;
+    }
+
+    private boolean isValid(String indexName) {
+        return jdbcTemplate.queryForList(VALID_TENANT_INDEXES_SQL, String.class, indexName).contains(indexName);
+    }
+
+    /**
+     * Nome do índice parcial de um tenant.
+     */
+    static String tenantIndexName(Long userId, VectorQuantization quantization) {
+        String prefix = quantization.indexName().replace("_idx", "");
+        return prefix + "_tenant_" + userId + "_idx";
+    }
+}
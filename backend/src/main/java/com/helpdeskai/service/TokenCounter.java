@@ -0,0 +1,48 @@
+package com.helpdeskai.service;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingRegistry;
+import com.knuddels.jtokkit.api.EncodingResult;
+import com.knuddels.jtokkit.api.EncodingType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Contagem de tokens em processo com o tokenizer BPE do modelo de chat (JTokkit).
+ * Modelos desconhecidos usam cl100k_base (GPT-4 / GPT-3.5 / text-embedding-3).
+ */
+@Component
+@Slf4j
+public class TokenCounter {
+
+    private final Encoding encoding;
+
+    public TokenCounter(@Value("${spring.ai.openai.chat.options.model:gpt-4-turbo-preview}") String modelName) {
+        EncodingRegistry registry = Encodings.newLazyEncodingRegistry();
+        this.encoding = registry.getEncodingForModel(modelName)
+                .orElseGet(() -> {
+                    log.warn("Tokenizer desconhecido para o modelo {}, usando cl100k_base", modelName);
+                    return registry.getEncoding(EncodingType.CL100K_BASE);
+                });
+    }
+
+    public int count(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        return encoding.countTokens(text);
+    }
+
+    /**
+     * Corta o texto nos primeiros maxTokens tokens.
+     */
+    public String truncate(String text, int maxTokens) {
+        if (text == null || text.isEmpty()) {
+            return text;
+        }
+        EncodingResult result = encoding.encode(text, Math.max(0, maxTokens));
+        return result.isTruncated() ? encoding.decode(result.getTokens()) : text;
+    }
+}
@@ -0,0 +1,216 @@
+package com.helpdeskai.benchmark;
+
+import com.helpdeskai.entity.Document;
+import com.helpdeskai.entity.User;
+import com.helpdeskai.repository.ChunkRepository;
+import com.helpdeskai.repository.DocumentRepository;
+import com.helpdeskai.repository.UserRepository;
+import com.helpdeskai.repository.VectorQuantization;
+import com.helpdeskai.service.EmbeddingService;
+import com.pgvector.PGvector;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Benchmark de recall e latência da busca quantizada (halfvec e binary) com re-rank exato.
+ *
+ * Para cada modo mede recall@K contra a busca exata (sem índice), p50/p99 da query e o
+ * tamanho do índice HNSW. Os vetores são agrupados em clusters para se parecerem mais com
+ * embeddings reais (vetores uniformes são o pior caso para binary quantization).
+ *
+ * Não roda no `mvn test` (não segue o padrão *Test). Execução manual:
+ * <pre>
+ * mvn test -Dtest=QuantizationRecallBenchmark -Dbenchmark.chunks=100000
+ * </pre>
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@Testcontainers
+class QuantizationRecallBenchmark {
+
+    private static final int DIMENSIONS = 1536;
+    private static final int TOP_K = 5;
+    private static final int CLUSTERS = 200;
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>(
+            DockerImageName.parse("pgvector/pgvector:pg16").asCompatibleSubstituteFor("postgres"))
+            .withDatabaseName("helpdesk_ai_benchmark")
+            .withUsername("postgres")
+            .withPassword("postgres")
+            .withInitScript("init-vector.sql");
+
+    @DynamicPropertySource
+    static void registerProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.jpa.hibernate.ddl-auto", () -> "create-drop");
+        registry.add("logging.level.org.hibernate.SQL", () -> "WARN");
+        registry.add("logging.level.org.hibernate.type.descriptor.sql.BasicBinder", () -> "WARN");
+    }
+
+    @Autowired
+    private ChunkRepository chunkRepository;
+
+    @Autowired
+    private DocumentRepository documentRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @MockBean
+    private EmbeddingService embeddingService;
+
+    @MockBean
+    private ChatClient.Builder chatClientBuilder;
+
+    private final Random random = new Random(42);
+
+    @Test
+    void quantizedSearchShouldKeepRecall() {
+        long chunks = Long.getLong("benchmark.chunks", 50_000);
+        int queries = Integer.getInteger("benchmark.queries", 200);
+        double minHalfvecRecall = Double.parseDouble(System.getProperty("benchmark.min-halfvec-recall", "0.95"));
+
+        User user = userRepository.save(User.builder()
+                .email("quantization@benchmark.com")
+                .passwordHash("benchmark")
+                .name("benchmark")
+                .build());
+        Document document = documentRepository.save(Document.builder()
+                .user(user)
+                .filename("quantization.pdf")
+                .status(Document.DocumentStatus.COMPLETED)
+                .totalChunks(0)
+                .build());
+
+        loadClusteredChunks(document.getId(), user.getId(), chunks);
+        for (VectorQuantization quantization : VectorQuantization.values()) {
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + quantization.indexName()
+                    + " ON chunks " + quantization.hnswDefinition());
+        }
+        jdbcTemplate.execute("ANALYZE chunks");
+
+        List<PGvector> queryVectors = new ArrayList<>();
+        List<Set<Long>> exact = new ArrayList<>();
+        for (int i = 0; i < queries; i++) {
+            PGvector query = clusteredVector();
+            queryVectors.add(query);
+            exact.add(exactTopK(query, user.getId()));
+        }
+
+        System.out.println("\n=== Quantization benchmark (" + chunks + " chunks, top-" + TOP_K + ") ===");
+        System.out.printf("%10s %10s %10s %10s %14s%n", "modo", "recall", "p50 (ms)", "p99 (ms)", "índice (MB)");
+
+        for (VectorQuantization quantization : VectorQuantization.values()) {
+            double[] latencies = new double[queries];
+            double recall = 0;
+            for (int i = 0; i < queries; i++) {
+                long start = System.nanoTime();
+                Set<Long> found = search(queryVectors.get(i), user.getId(), quantization);
+                latencies[i] = (System.nanoTime() - start) / 1_000_000.0;
+
+                found.retainAll(exact.get(i));
+                recall += (double) found.size() / exact.get(i).size();
+            }
+            recall /= queries;
+
+            Long indexBytes = jdbcTemplate.queryForObject(
+                    "SELECT pg_relation_size(?::regclass)", Long.class, quantization.indexName());
+
+            System.out.printf("%10s %10.3f %10.2f %10.2f %14.1f%n", quantization, recall,
+                    percentile(latencies, 50), percentile(latencies, 99), indexBytes / (1024.0 * 1024.0));
+
+            if (quantization == VectorQuantization.HALFVEC) {
+                assertThat(recall).isGreaterThanOrEqualTo(minHalfvecRecall);
+            }
+        }
+    }
+
+    private Set<Long> search(PGvector query, Long userId, VectorQuantization quantization) {
+        return transactionTemplate.execute(status -> {
+            chunkRepository.configureVectorSearch("relaxed_order");
+            return ids(chunkRepository.findTopKSimilarChunkIds(query, userId, TOP_K, 2.0, quantization));
+        });
+    }
+
+    private Set<Long> exactTopK(PGvector query, Long userId) {
+        return transactionTemplate.execute(status -> {
+            // Sem índices: ordenação exata sobre todas as linhas
+            jdbcTemplate.execute("SET LOCAL enable_indexscan = off");
+            jdbcTemplate.execute("SET LOCAL enable_bitmapscan = off");
+            return ids(chunkRepository.findTopKSimilarChunkIds(query, userId, TOP_K, 2.0, VectorQuantization.NONE));
+        });
+    }
+
+    private static Set<Long> ids(List<Object[]> rows) {
+        Set<Long> ids = new HashSet<>();
+        for (Object[] row : rows) {
+            ids.add(((Number) row[0]).longValue());
+        }
+        return ids;
+    }
+
+    private void loadClusteredChunks(Long documentId, Long userId, long count) {
+        // Centros fixos + ruído uniforme, gerados no próprio PostgreSQL
+        // Tabela comum (não TEMP): as queries seguintes podem usar outra conexão do pool
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS benchmark_centers AS "
+                + "SELECT k, array_agg(random() - 0.5) AS center "
+                + "FROM generate_series(1, " + CLUSTERS + ") k, generate_series(1, " + DIMENSIONS + ") d "
+                + "GROUP BY k");
+        jdbcTemplate.update("""
+                INSERT INTO chunks (document_id, user_id, content, embedding, chunk_index, created_at)
+                SELECT ?, ?, 'benchmark chunk ' || g,
+                       (SELECT array_agg(c.center[d] + (random() - 0.5) * 0.3)::vector
+                        FROM generate_series(1, ?) d),
+                       g, now()
+                FROM generate_series(1, ?) g
+                JOIN benchmark_centers c ON c.k = 1 + (g % ?)
+                """, documentId, userId, DIMENSIONS, count, CLUSTERS);
+    }
+
+    private PGvector clusteredVector() {
+        List<Double> center = jdbcTemplate.queryForList(
+                "SELECT unnest(center) FROM benchmark_centers WHERE k = ?", Double.class, 1 + random.nextInt(CLUSTERS));
+        float[] values = new float[DIMENSIONS];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (float) (center.get(i) + (random.nextDouble() - 0.5) * 0.3);
+        }
+        return new PGvector(values);
+    }
+
+    private static double percentile(double[] values, int percentile) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
@@ -0,0 +1,235 @@
+package com.helpdeskai.benchmark;
+
+import com.helpdeskai.entity.Document;
+import com.helpdeskai.entity.User;
+import com.helpdeskai.repository.DocumentRepository;
+import com.helpdeskai.repository.UserRepository;
+import com.helpdeskai.service.EmbeddingService;
+import com.helpdeskai.service.RetrievalService;
+import com.helpdeskai.service.TenantIndexService;
+import com.pgvector.PGvector;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Benchmark de latência da busca vetorial por tenant.
+ *
+ * Mantém dois tenants fixos e cresce o corpus dos outros tenants (padrão 10k, 100k e 1M
+ * chunks; 5M via propriedade), medindo p50/p99 de RetrievalService.retrieve a cada etapa,
+ * dentro de uma transação read-only como no ChatService. Cobre os dois caminhos de produção:
+ * - tenant pequeno (2.000 chunks, abaixo de tenant-index-threshold): busca exata forçada
+ * - tenant grande (acima do threshold): índice HNSW parcial criado por
+ *   TenantIndexService.ensureTenantIndex
+ *
+ * Não roda no `mvn test` (não segue o padrão *Test). Execução manual:
+ * <pre>
+ * mvn test -Dtest=TenantRetrievalBenchmark \
+ *     -Dbenchmark.other-tenant-sizes=10000,100000,1000000,5000000
+ * </pre>
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@Testcontainers
+class TenantRetrievalBenchmark {
+
+    private static final int DIMENSIONS = 1536;
+    private static final int TENANT_CHUNKS = 2_000;
+    private static final int TENANT_INDEX_THRESHOLD = 10_000;
+    private static final int LARGE_TENANT_CHUNKS = 20_000;
+    private static final int OTHER_TENANTS = 10;
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>(
+            DockerImageName.parse("pgvector/pgvector:pg16").asCompatibleSubstituteFor("postgres"))
+            .withDatabaseName("helpdesk_ai_benchmark")
+            .withUsername("postgres")
+            .withPassword("postgres")
+            .withInitScript("init-vector.sql");
+
+    @DynamicPropertySource
+    static void registerProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.jpa.hibernate.ddl-auto", () -> "create-drop");
+        registry.add("helpdesk.retrieval.tenant-index-threshold", () -> TENANT_INDEX_THRESHOLD);
+        // Vetores aleatórios ficam a ~1 de distância: sem threshold todo candidato é hidratado
+        registry.add("helpdesk.retrieval.similarity-threshold", () -> "-1.0");
+        registry.add("helpdesk.ingestion.worker.enabled", () -> "false");
+        registry.add("logging.level.org.hibernate.SQL", () -> "WARN");
+        registry.add("logging.level.org.hibernate.type.descriptor.sql.BasicBinder", () -> "WARN");
+    }
+
+    @Autowired
+    private RetrievalService retrievalService;
+
+    @Autowired
+    private TenantIndexService tenantIndexService;
+
+    @Autowired
+    private DocumentRepository documentRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @MockBean
+    private EmbeddingService embeddingService;
+
+    @MockBean
+    private ChatClient.Builder chatClientBuilder;
+
+    private final Random random = new Random(42);
+
+    @Test
+    void tenantP99ShouldStayFlatAsOtherTenantsGrow() {
+        List<Long> sizes = Arrays.stream(System.getProperty(
+                        "benchmark.other-tenant-sizes", "10000,100000,1000000").split(","))
+                .map(String::trim)
+                .map(Long::parseLong)
+                .toList();
+        int queries = Integer.getInteger("benchmark.queries", 300);
+        double maxP99Growth = Double.parseDouble(System.getProperty("benchmark.max-p99-growth", "3.0"));
+
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS chunks_embedding_idx ON chunks "
+                + "USING hnsw (embedding vector_cosine_ops)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_chunks_user_id ON chunks(user_id)");
+
+        User tenant = createUser("tenant@benchmark.com");
+        loadChunks(createDocument(tenant), tenant.getId(), TENANT_CHUNKS);
+        assertThat(tenantIndexService.ensureTenantIndex(tenant.getId())).isFalse();
+
+        User largeTenant = createUser("large-tenant@benchmark.com");
+        loadChunks(createDocument(largeTenant), largeTenant.getId(), LARGE_TENANT_CHUNKS);
+        assertThat(tenantIndexService.ensureTenantIndex(largeTenant.getId())).isTrue();
+        assertThat(tenantIndexService.hasTenantIndex(largeTenant.getId())).isTrue();
+
+        List<Document> otherDocuments = new ArrayList<>();
+        for (int i = 0; i < OTHER_TENANTS; i++) {
+            otherDocuments.add(createDocument(createUser("other" + i + "@benchmark.com")));
+        }
+
+        List<double[]> results = new ArrayList<>();
+        long otherChunks = 0;
+        for (long size : sizes) {
+            long perTenant = (size - otherChunks) / OTHER_TENANTS;
+            for (Document document : otherDocuments) {
+                loadChunks(document, document.getUser().getId(), perTenant);
+            }
+            otherChunks = size;
+            jdbcTemplate.execute("ANALYZE chunks");
+
+            double[] exact = measure(tenant.getId(), queries);
+            double[] partialIndex = measure(largeTenant.getId(), queries);
+            results.add(new double[]{size, percentile(exact, 50), percentile(exact, 99),
+                    percentile(partialIndex, 50), percentile(partialIndex, 99)});
+        }
+
+        System.out.println("\n=== Tenant retrieval benchmark (busca exata: " + TENANT_CHUNKS
+                + " chunks, índice parcial: " + LARGE_TENANT_CHUNKS + " chunks) ===");
+        System.out.printf("%15s %12s %12s %12s %12s%n", "outros chunks",
+                "exata p50", "exata p99", "parcial p50", "parcial p99");
+        for (double[] row : results) {
+            System.out.printf("%15d %12.2f %12.2f %12.2f %12.2f%n", (long) row[0], row[1], row[2], row[3], row[4]);
+        }
+
+        // p99 de cada caminho não pode crescer com o corpus dos outros tenants
+        double[] first = results.get(0);
+        double[] last = results.get(results.size() - 1);
+        assertThat(last[2]).isLessThanOrEqualTo(Math.max(first[2], 1.0) * maxP99Growth);
+        assertThat(last[4]).isLessThanOrEqualTo(Math.max(first[4], 1.0) * maxP99Growth);
+    }
+
+    private double[] measure(Long userId, int queries) {
+        // Aquecimento (plan cache, buffers)
+        for (int i = 0; i < 20; i++) {
+            search(userId, randomVector());
+        }
+
+        double[] latencies = new double[queries];
+        for (int i = 0; i < queries; i++) {
+            PGvector query = randomVector();
+            long start = System.nanoTime();
+            search(userId, query);
+            latencies[i] = (System.nanoTime() - start) / 1_000_000.0;
+        }
+        return latencies;
+    }
+
+    // Mesmo caminho do ChatService: set_config local à transação read-only da busca
+    private void search(Long userId, PGvector queryEmbedding) {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        readOnly.setReadOnly(true);
+        readOnly.executeWithoutResult(status -> retrievalService.retrieve(null, queryEmbedding, userId, 5));
+    }
+
+    private void loadChunks(Document document, Long userId, long count) {
+        if (count <= 0) {
+            return;
+        }
+        // Vetores aleatórios gerados no próprio PostgreSQL (WHERE g > 0 força um vetor por linha)
+        jdbcTemplate.update("""
+                INSERT INTO chunks (document_id, user_id, content, embedding, chunk_index, created_at)
+                SELECT ?, ?, 'benchmark chunk ' || g,
+                       (SELECT array_agg(random() - 0.5)::vector FROM generate_series(1, ?) WHERE g > 0),
+                       g, now()
+                FROM generate_series(1, ?) g
+                """, document.getId(), userId, DIMENSIONS, count);
+    }
+
+    private User createUser(String email) {
+        return userRepository.save(User.builder()
+                .email(email)
+                .passwordHash("benchmark")
+                .name(email)
+                .build());
+    }
+
+    private Document createDocument(User user) {
+        return documentRepository.save(Document.builder()
+                .user(user)
+                .filename("benchmark-" + user.getId() + ".pdf")
+                .status(Document.DocumentStatus.COMPLETED)
+                .totalChunks(0)
+                .build());
+    }
+
+    private PGvector randomVector() {
+        float[] values = new float[DIMENSIONS];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextFloat() - 0.5f;
+        }
+        return new PGvector(values);
+    }
+
+    private static double percentile(double[] values, int percentile) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
@@ -0,0 +1,84 @@
+package com.helpdeskai.benchmark;
+
+import com.helpdeskai.config.PgVectorCodec;
+import com.pgvector.PGvector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.sql.SQLException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH: codec texto (PGvector.toString / new PGvector(String)) vs. codec binário
+ * (PgVectorCodec) para vetores de 1536 dimensões.
+ *
+ * Execução manual:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.helpdeskai.benchmark.VectorCodecBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VectorCodecBenchmark {
+
+    private static final int DIMENSIONS = 1536;
+
+    private float[] vector;
+    private String text;
+    private byte[] binary;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = random.nextFloat() - 0.5f;
+        }
+        text = new PGvector(vector).toString();
+        binary = PgVectorCodec.encode(vector);
+    }
+
+    @Benchmark
+    public String textEncode() {
+        return new PGvector(vector).toString();
+    }
+
+    @Benchmark
+    public float[] textDecode() throws SQLException {
+        return new PGvector(text).toArray();
+    }
+
+    @Benchmark
+    public byte[] binaryEncode() {
+        return PgVectorCodec.encode(vector);
+    }
+
+    @Benchmark
+    public float[] binaryDecode() {
+        return PgVectorCodec.decode(binary, 0);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(VectorCodecBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
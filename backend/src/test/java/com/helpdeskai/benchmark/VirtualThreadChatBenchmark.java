@@ -0,0 +1,243 @@
+package com.helpdeskai.benchmark;
+
+import com.helpdeskai.HelpdeskAiApplication;
+import com.helpdeskai.entity.Document;
+import com.helpdeskai.entity.User;
+import com.helpdeskai.repository.DocumentRepository;
+import com.helpdeskai.repository.UserRepository;
+import com.helpdeskai.security.JwtTokenProvider;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Benchmark de carga do chat com Tomcat em platform threads vs virtual threads.
+ *
+ * Sobe a aplicação duas vezes (spring.threads.virtual.enabled=false e true) apontando o cliente
+ * OpenAI para um servidor stub local que responde embeddings e chat completions com latência fixa,
+ * dispara N requisições POST /api/chat simultâneas (padrão 1.000) e compara vazão e p50/p99.
+ *
+ * Não roda no `mvn test` (não segue o padrão *Test). Execução manual (runtime Java 21):
+ * <pre>
+ * mvn test -Dtest=VirtualThreadChatBenchmark \
+ *     -Dbenchmark.concurrent-requests=1000 -Dbenchmark.model-latency-ms=500
+ * </pre>
+ */
+@Testcontainers
+class VirtualThreadChatBenchmark {
+
+    private static final int DIMENSIONS = 1536;
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>(
+            DockerImageName.parse("pgvector/pgvector:pg16").asCompatibleSubstituteFor("postgres"))
+            .withDatabaseName("helpdesk_ai_benchmark")
+            .withUsername("postgres")
+            .withPassword("postgres")
+            .withInitScript("init-vector.sql");
+
+    private static HttpServer modelServer;
+
+    @BeforeAll
+    static void startModelServer() throws IOException {
+        long latencyMs = Long.getLong("benchmark.model-latency-ms", 500);
+        String embedding = IntStream.range(0, DIMENSIONS)
+                .mapToObj(i -> i == 0 ? "1.0" : "0.0")
+                .collect(Collectors.joining(",", "[", "]"));
+
+        modelServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        modelServer.setExecutor(Executors.newCachedThreadPool());
+        modelServer.createContext("/v1/embeddings", exchange -> respond(exchange, latencyMs, """
+                {"object":"list","model":"text-embedding-3-small",
+                 "data":[{"object":"embedding","index":0,"embedding":%s}],
+                 "usage":{"prompt_tokens":8,"total_tokens":8}}
+                """.formatted(embedding)));
+        modelServer.createContext("/v1/chat/completions", exchange -> respond(exchange, latencyMs, """
+                {"id":"chatcmpl-benchmark","object":"chat.completion","created":1,"model":"gpt-4-turbo-preview",
+                 "choices":[{"index":0,"message":{"role":"assistant","content":"Resposta do modelo stub."},
+                             "finish_reason":"stop"}],
+                 "usage":{"prompt_tokens":100,"completion_tokens":5,"total_tokens":105}}
+                """));
+        modelServer.start();
+    }
+
+    @AfterAll
+    static void stopModelServer() {
+        modelServer.stop(0);
+    }
+
+    @Test
+    void virtualThreadsShouldSustainMoreConcurrentChats() throws Exception {
+        assumeTrue(Runtime.version().feature() >= 21, "Virtual threads exigem runtime Java 21");
+
+        int requests = Integer.getInteger("benchmark.concurrent-requests", 1000);
+        double minSpeedup = Double.parseDouble(System.getProperty("benchmark.min-speedup", "1.0"));
+
+        Result platform = run(false, requests);
+        Result virtual = run(true, requests);
+
+        System.out.println("\n=== Chat load benchmark (" + requests + " requisições simultâneas) ===");
+        System.out.printf("%10s %10s %12s %10s %10s %8s%n", "threads", "total (s)", "req/s", "p50 (ms)", "p99 (ms)", "falhas");
+        for (Result result : List.of(platform, virtual)) {
+            System.out.printf("%10s %10.2f %12.1f %10.1f %10.1f %8d%n", result.mode(), result.totalSeconds(),
+                    requests / result.totalSeconds(), percentile(result.latencies(), 50),
+                    percentile(result.latencies(), 99), result.failures());
+        }
+
+        assertThat(platform.failures()).isZero();
+        assertThat(virtual.failures()).isZero();
+        assertThat(requests / virtual.totalSeconds()).isGreaterThanOrEqualTo(minSpeedup * requests / platform.totalSeconds());
+    }
+
+    private Result run(boolean virtualThreads, int requests) throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(HelpdeskAiApplication.class)
+                .properties(
+                        "server.port=0",
+                        "spring.datasource.url=" + postgres.getJdbcUrl(),
+                        "spring.datasource.username=" + postgres.getUsername(),
+                        "spring.datasource.password=" + postgres.getPassword(),
+                        "spring.jpa.hibernate.ddl-auto=create-drop",
+                        "spring.threads.virtual.enabled=" + virtualThreads,
+                        "spring.ai.openai.base-url=http://localhost:" + modelServer.getAddress().getPort(),
+                        "spring.ai.openai.api-key=benchmark",
+                        // Todas as perguntas caem nos mesmos chunks: sem cache, todas vão ao LLM
+                        "helpdesk.answer-cache.enabled=false",
+                        "logging.level.com.helpdeskai=WARN")
+                .run()) {
+
+            String token = prepareTenant(context);
+            int port = Integer.parseInt(context.getEnvironment().getProperty("local.server.port"));
+
+            ExecutorService clientExecutor = Executors.newCachedThreadPool();
+            try {
+                HttpClient client = HttpClient.newBuilder()
+                        .version(HttpClient.Version.HTTP_1_1)
+                        .executor(clientExecutor)
+                        .build();
+
+                // Aquecimento (JIT, pool de conexões, tokenizer)
+                for (int i = 0; i < 5; i++) {
+                    send(client, port, token, "aquecimento " + i).join();
+                }
+
+                double[] latencies = new double[requests];
+                List<CompletableFuture<Integer>> responses = new ArrayList<>();
+                long start = System.nanoTime();
+                for (int i = 0; i < requests; i++) {
+                    int index = i;
+                    long requestStart = System.nanoTime();
+                    // Pergunta distinta por requisição: o cache de embeddings não encurta o caminho
+                    responses.add(send(client, port, token, "Como configurar a VPN? #" + i)
+                            .whenComplete((status, error) ->
+                                    latencies[index] = (System.nanoTime() - requestStart) / 1_000_000.0));
+                }
+
+                int failures = 0;
+                for (CompletableFuture<Integer> response : responses) {
+                    try {
+                        if (response.join() != 200) {
+                            failures++;
+                        }
+                    } catch (RuntimeException e) {
+                        failures++;
+                    }
+                }
+                double totalSeconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+                return new Result(virtualThreads ? "virtual" : "platform", totalSeconds, latencies, failures);
+            } finally {
+                clientExecutor.shutdownNow();
+            }
+        }
+    }
+
+    private String prepareTenant(ConfigurableApplicationContext context) {
+        User user = context.getBean(UserRepository.class).save(User.builder()
+                .email("load@benchmark.com")
+                .passwordHash("benchmark")
+                .name("Load Benchmark")
+                .build());
+        Document document = context.getBean(DocumentRepository.class).save(Document.builder()
+                .user(user)
+                .filename("vpn.pdf")
+                .status(Document.DocumentStatus.COMPLETED)
+                .totalChunks(5)
+                .build());
+
+        // Mesmo vetor devolvido pelo stub de embeddings: todos os chunks passam no threshold
+        String embedding = IntStream.range(0, DIMENSIONS)
+                .mapToObj(i -> i == 0 ? "1" : "0")
+                .collect(Collectors.joining(",", "[", "]"));
+        context.getBean(JdbcTemplate.class).update("""
+                INSERT INTO chunks (document_id, user_id, content, embedding, chunk_index, created_at)
+                SELECT ?, ?, 'Para configurar a VPN abra o cliente e informe o servidor ' || g, ?::vector, g, now()
+                FROM generate_series(0, 4) g
+                """, document.getId(), user.getId(), embedding);
+
+        return context.getBean(JwtTokenProvider.class).generateToken(user.getId(), user.getEmail());
+    }
+
+    private static CompletableFuture<Integer> send(HttpClient client, int port, String token, String question) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/chat"))
+                .header("Authorization", "Bearer " + token)
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofMinutes(2))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"message\":\"" + question + "\"}"))
+                .build();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).thenApply(HttpResponse::statusCode);
+    }
+
+    private static void respond(HttpExchange exchange, long latencyMs, String body) throws IOException {
+        try {
+            Thread.sleep(latencyMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static double percentile(double[] values, int percentile) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private record Result(String mode, double totalSeconds, double[] latencies, int failures) {
+    }
+}
@@ -0,0 +1,77 @@
+package com.helpdeskai.config;
+
+import com.pgvector.PGvector;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.postgresql.util.PGobject;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for PgVectorCodec and BinaryVector.
+ * Tests the pgvector binary wire format and the text fallbacks.
+ */
+@DisplayName("PgVectorCodec Unit Tests")
+class PgVectorCodecTest {
+
+    @Test
+    @DisplayName("Should encode header and big-endian float4 values")
+    void testEncode_WireFormat() {
+        byte[] bytes = PgVectorCodec.encode(new float[]{1.5f, -2f, 0f});
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        assertThat(bytes).hasSize(4 + 3 * 4);
+        assertThat(buffer.getShort()).isEqualTo((short) 3);
+        assertThat(buffer.getShort()).isEqualTo((short) 0);
+        assertThat(buffer.getFloat()).isEqualTo(1.5f);
+        assertThat(buffer.getFloat()).isEqualTo(-2f);
+        assertThat(buffer.getFloat()).isEqualTo(0f);
+    }
+
+    @Test
+    @DisplayName("Should round-trip 1536-dim vectors exactly")
+    void testRoundTrip_1536Dimensions() {
+        float[] vector = new float[1536];
+        Random random = new Random(1);
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = random.nextFloat() - 0.5f;
+        }
+
+        byte[] bytes = new byte[PgVectorCodec.encodedLength(vector.length) + 8];
+        PgVectorCodec.encode(vector, bytes, 8);
+
+        assertThat(PgVectorCodec.decode(bytes, 8)).containsExactly(vector);
+    }
+
+    @Test
+    @DisplayName("BinaryVector should read binary and text values")
+    void testBinaryVector() throws Exception {
+        BinaryVector fromBinary = new BinaryVector();
+        fromBinary.setByteValue(PgVectorCodec.encode(new float[]{1f, 2f}), 0);
+
+        BinaryVector fromText = new BinaryVector();
+        fromText.setValue("[1,2]");
+
+        assertThat(fromBinary).isEqualTo(fromText);
+        assertThat(fromBinary.getType()).isEqualTo("vector");
+        assertThat(fromBinary.lengthInBytes()).isEqualTo(12);
+        assertThat(new BinaryVector().isNull()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Should convert any JDBC vector representation to float array")
+    void testToArray() throws Exception {
+        PGobject textObject = new PGobject();
+        textObject.setType("vector");
+        textObject.setValue("[0.5,1]");
+
+        assertThat(PgVectorCodec.toArray(new BinaryVector(new float[]{0.5f, 1f}))).containsExactly(0.5f, 1f);
+        assertThat(PgVectorCodec.toArray(new PGvector(new float[]{0.5f, 1f}))).containsExactly(0.5f, 1f);
+        assertThat(PgVectorCodec.toArray(textObject)).containsExactly(0.5f, 1f);
+        assertThat(PgVectorCodec.toArray("[0.5,1]")).containsExactly(0.5f, 1f);
+        assertThat(PgVectorCodec.toArray(null)).isNull();
+    }
+}
@@ -42,6 +42,7 @@ import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyDouble;
 import static org.mockito.ArgumentMatchers.anyInt;
@@ -135,13 +136,15 @@ class DocumentUploadChatE2ETest {
 
         AtomicLong savedChunkId = new AtomicLong(1L);
         AtomicReference<com.helpdeskai.entity.Chunk> currentChunk = new AtomicReference<>();
-        when(chunkRepository.save(any(com.helpdeskai.entity.Chunk.class))).thenAnswer(invocation -> {
-            com.helpdeskai.entity.Chunk chunk = invocation.getArgument(0);
-            if (chunk.getId() == null) {
-                chunk.setId(savedChunkId.getAndIncrement());
+        when(chunkRepository.copyChunks(anyList())).thenAnswer(invocation -> {
+            List<com.helpdeskai.entity.Chunk> chunks = invocation.getArgument(0);
+            for (com.helpdeskai.entity.Chunk chunk : chunks) {
+                if (chunk.getId() == null) {
+                    chunk.setId(savedChunkId.getAndIncrement());
+                }
+                currentChunk.set(chunk);
             }
-            currentChunk.set(chunk);
-            return chunk;
+            return chunks.size();
         });
 
         // Stub LLM via ChatClient
@@ -172,9 +175,10 @@ class DocumentUploadChatE2ETest {
         assertThat(processed.getTotalChunks()).isGreaterThan(0);
 
         // Executa chat usando os chunks persistidos
-        when(chunkRepository.findSimilarChunks(any(PGvector.class), anyInt(), anyDouble()))
-                .thenAnswer(invocation -> List.<Object[]>of(
-                        new Object[]{currentChunk.get(), java.math.BigDecimal.valueOf(0.99)}));
+        when(chunkRepository.findTopKSimilarChunkIds(any(PGvector.class), any(), anyInt(), anyDouble()))
+                .thenAnswer(invocation -> List.<Object[]>of(new Object[]{currentChunk.get().getId(), 0.01}));
+        when(chunkRepository.findChunkRowsByIds(anyCollection()))
+                .thenAnswer(invocation -> List.<Object[]>of(toRow(currentChunk.get())));
 
         ChatRequest request = ChatRequest.builder()
                 .message("Qual o conteúdo do documento?")
@@ -203,18 +207,21 @@ class DocumentUploadChatE2ETest {
 
         AtomicLong savedChunkId = new AtomicLong(100L);
         AtomicReference<com.helpdeskai.entity.Chunk> currentChunk = new AtomicReference<>();
-        when(chunkRepository.save(any(com.helpdeskai.entity.Chunk.class))).thenAnswer(invocation -> {
-            com.helpdeskai.entity.Chunk chunk = invocation.getArgument(0);
-            if (chunk.getId() == null) {
-                chunk.setId(savedChunkId.getAndIncrement());
+        when(chunkRepository.copyChunks(anyList())).thenAnswer(invocation -> {
+            List<com.helpdeskai.entity.Chunk> chunks = invocation.getArgument(0);
+            for (com.helpdeskai.entity.Chunk chunk : chunks) {
+                if (chunk.getId() == null) {
+                    chunk.setId(savedChunkId.getAndIncrement());
+                }
+                currentChunk.set(chunk);
             }
-            currentChunk.set(chunk);
-            return chunk;
+            return chunks.size();
         });
 
-        when(chunkRepository.findSimilarChunks(any(PGvector.class), anyInt(), anyDouble()))
-                .thenAnswer(invocation -> List.<Object[]>of(
-                        new Object[]{currentChunk.get(), java.math.BigDecimal.valueOf(0.97)}));
+        when(chunkRepository.findTopKSimilarChunkIds(any(PGvector.class), any(), anyInt(), anyDouble()))
+                .thenAnswer(invocation -> List.<Object[]>of(new Object[]{currentChunk.get().getId(), 0.03}));
+        when(chunkRepository.findChunkRowsByIds(anyCollection()))
+                .thenAnswer(invocation -> List.<Object[]>of(toRow(currentChunk.get())));
 
         AssistantMessage assistantMessage = new AssistantMessage("Resposta E2E simulada");
         Generation generation = new Generation(assistantMessage);
@@ -287,9 +294,10 @@ class DocumentUploadChatE2ETest {
                 .chunkIndex(0)
                 .build();
         currentChunk.set(chunk);
-        when(chunkRepository.findSimilarChunks(any(PGvector.class), anyInt(), anyDouble()))
-                .thenAnswer(invocation -> List.<Object[]>of(
-                        new Object[]{currentChunk.get(), java.math.BigDecimal.valueOf(0.9)}));
+        when(chunkRepository.findTopKSimilarChunkIds(any(PGvector.class), any(), anyInt(), anyDouble()))
+                .thenAnswer(invocation -> List.<Object[]>of(new Object[]{currentChunk.get().getId(), 0.10}));
+        when(chunkRepository.findChunkRowsByIds(anyCollection()))
+                .thenAnswer(invocation -> List.<Object[]>of(toRow(currentChunk.get())));
 
         AssistantMessage assistantMessage = new AssistantMessage("Mensagem 1");
         Generation generation = new Generation(assistantMessage);
@@ -317,6 +325,12 @@ class DocumentUploadChatE2ETest {
         assertThat(messageRepository.countByConversationId(first.getConversationId())).isEqualTo(4);
     }
 
+    private static Object[] toRow(com.helpdeskai.entity.Chunk chunk) {
+        // [id, content, metadata, chunk_index, document_id, created_at, document_filename]
+        return new Object[]{chunk.getId(), chunk.getContent(), null, chunk.getChunkIndex(),
+                chunk.getDocument().getId(), null, chunk.getDocument().getFilename()};
+    }
+
     private Document waitForDocumentCompletion(Long documentId) throws InterruptedException {
         Document doc = null;
         for (int i = 0; i < 50; i++) { // ~10s total
@@ -0,0 +1,170 @@
+package com.helpdeskai.integration;
+
+import com.helpdeskai.dto.ChatRequest;
+import com.helpdeskai.dto.ChatResponse;
+import com.helpdeskai.entity.Document;
+import com.helpdeskai.entity.User;
+import com.helpdeskai.repository.ChunkRepository;
+import com.helpdeskai.repository.MessageRepository;
+import com.helpdeskai.repository.UserRepository;
+import com.helpdeskai.service.ChatService;
+import com.helpdeskai.service.EmbeddingService;
+import com.pgvector.PGvector;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.when;
+
+/**
+ * Chats simultâneos com embedding e LLM lentos não podem esgotar o pool de conexões:
+ * nenhuma transação deve atravessar as chamadas remotas.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@Testcontainers
+class ChatConcurrencyIntegrationTest {
+
+    private static final int CONCURRENT_CHATS = 200;
+    private static final int POOL_SIZE = 10;
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>(
+            DockerImageName.parse("pgvector/pgvector:pg16").asCompatibleSubstituteFor("postgres"))
+            .withDatabaseName("helpdesk_ai_test")
+            .withUsername("postgres")
+            .withPassword("postgres")
+            .withInitScript("init-vector.sql");
+
+    @DynamicPropertySource
+    static void registerProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.jpa.hibernate.ddl-auto", () -> "create-drop");
+        registry.add("spring.jpa.show-sql", () -> "false");
+        registry.add("spring.datasource.hikari.maximum-pool-size", () -> POOL_SIZE);
+        // Falha rápido se alguma requisição ficar esperando conexão
+        registry.add("spring.datasource.hikari.connection-timeout", () -> 2000);
+        // Todas as perguntas recuperam o mesmo chunk: sem cache todas passam pelo LLM
+        registry.add("helpdesk.answer-cache.enabled", () -> "false");
+    }
+
+    @Autowired
+    private ChatService chatService;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @MockBean
+    private EmbeddingService embeddingService;
+
+    @MockBean
+    private ChatClient.Builder chatClientBuilder;
+
+    @MockBean
+    private ChatClient chatClient;
+
+    @MockBean
+    private ChunkRepository chunkRepository;
+
+    @Test
+    @DisplayName("200 simultaneous chats should complete with a 10-connection pool")
+    void shouldServeConcurrentChatsWithSmallPool() throws Exception {
+        assertThat(dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize()).isEqualTo(POOL_SIZE);
+
+        User user = userRepository.save(User.builder()
+                .email("concurrency@test.com")
+                .passwordHash("pwd")
+                .name("Concurrency User")
+                .build());
+
+        // Chamadas remotas lentas: 200 ms de embedding + 500 ms de LLM por chat
+        when(embeddingService.generateEmbedding(any())).thenAnswer(invocation -> {
+            Thread.sleep(200);
+            return new PGvector(new float[]{1.0f, 0.0f});
+        });
+
+        com.helpdeskai.entity.Chunk chunk = com.helpdeskai.entity.Chunk.builder()
+                .id(100L)
+                .document(Document.builder().id(33L).filename("concurrency.pdf").build())
+                .content("conteúdo relevante do documento")
+                .chunkIndex(0)
+                .build();
+        when(chunkRepository.findTopKSimilarChunkIds(any(PGvector.class), any(), anyInt(), anyDouble()))
+                .thenReturn(List.<Object[]>of(new Object[]{chunk.getId(), 0.05}));
+        when(chunkRepository.findChunkRowsByIds(anyCollection()))
+                .thenReturn(List.<Object[]>of(new Object[]{chunk.getId(), chunk.getContent(), null,
+                        chunk.getChunkIndex(), 33L, null, "concurrency.pdf"}));
+
+        org.springframework.ai.chat.model.ChatResponse aiResponse = new org.springframework.ai.chat.model.ChatResponse(
+                List.of(new Generation(new AssistantMessage("Resposta gerada pelo LLM"))));
+        ChatClient.ChatClientRequestSpec requestSpec =
+                Mockito.mock(ChatClient.ChatClientRequestSpec.class, Mockito.RETURNS_DEEP_STUBS);
+        ReflectionTestUtils.setField(chatService, "chatClient", chatClient);
+        when(chatClient.prompt(any(Prompt.class))).thenReturn(requestSpec);
+        when(requestSpec.call().chatResponse()).thenAnswer(invocation -> {
+            Thread.sleep(500);
+            return aiResponse;
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_CHATS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<ChatResponse>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < CONCURRENT_CHATS; i++) {
+                // Perguntas distintas: cada chat faz suas próprias chamadas lentas (sem single-flight)
+                String question = "Qual o conteúdo? #" + i;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return chatService.chat(ChatRequest.builder().message(question).build(), user);
+                }));
+            }
+            start.countDown();
+
+            for (Future<ChatResponse> future : futures) {
+                ChatResponse response = future.get(60, TimeUnit.SECONDS);
+                assertThat(response.getMessage()).isEqualTo("Resposta gerada pelo LLM");
+                assertThat(messageRepository.countByConversationId(response.getConversationId())).isEqualTo(2);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
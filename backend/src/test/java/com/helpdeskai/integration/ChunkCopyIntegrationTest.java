@@ -0,0 +1,174 @@
+package com.helpdeskai.integration;
+
+import com.helpdeskai.entity.Chunk;
+import com.helpdeskai.entity.Document;
+import com.helpdeskai.entity.User;
+import com.helpdeskai.repository.ChunkRepository;
+import com.helpdeskai.repository.DocumentRepository;
+import com.helpdeskai.repository.UserRepository;
+import com.helpdeskai.service.EmbeddingService;
+import com.pgvector.PGvector;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Gravação de chunks via COPY binário sobre o PostgreSQL real: cada coluna (vetores, jsonb,
+ * timestamp) precisa voltar idêntica ao que foi gravado.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@Testcontainers
+class ChunkCopyIntegrationTest {
+
+    private static final int DIMENSIONS = 1536;
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>(
+            DockerImageName.parse("pgvector/pgvector:pg16").asCompatibleSubstituteFor("postgres"))
+            .withDatabaseName("helpdesk_ai_test")
+            .withUsername("postgres")
+            .withPassword("postgres")
+            .withInitScript("init-vector.sql");
+
+    @DynamicPropertySource
+    static void registerProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.jpa.hibernate.ddl-auto", () -> "create-drop");
+        registry.add("spring.jpa.show-sql", () -> "false");
+        registry.add("helpdesk.ingestion.worker.enabled", () -> "false");
+    }
+
+    @Autowired
+    private ChunkRepository chunkRepository;
+
+    @Autowired
+    private DocumentRepository documentRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @MockBean
+    private EmbeddingService embeddingService;
+
+    @MockBean
+    private ChatClient.Builder chatClientBuilder;
+
+    @Test
+    @DisplayName("COPY should persist every column of the chunk batch")
+    void copyChunksShouldRoundTripAllColumns() {
+        User user = userRepository.save(User.builder()
+                .email("copy@test.com")
+                .passwordHash("pwd")
+                .name("Copy User")
+                .build());
+        Document document = documentRepository.save(Document.builder()
+                .user(user)
+                .filename("manual.pdf")
+                .status(Document.DocumentStatus.PROCESSING)
+                .build());
+
+        LocalDateTime createdAt = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        List<Chunk> chunks = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Chunk.ChunkMetadata metadata = new Chunk.ChunkMetadata();
+            metadata.setStartChar(i * 100);
+            metadata.setEndChar(i * 100 + 99);
+            metadata.setDocumentType("PDF");
+            PGvector embedding = vector(i);
+            chunks.add(Chunk.builder()
+                    .document(document)
+                    .userId(user.getId())
+                    .content("Trecho " + i + " com acentuação")
+                    .embedding(embedding)
+                    .embeddingShort(EmbeddingService.toShortEmbedding(embedding))
+                    .contentHash("hash-" + i)
+                    .chunkIndex(i)
+                    .metadata(metadata)
+                    .createdAt(createdAt)
+                    .build());
+        }
+
+        Integer copied = transactionTemplate.execute(status -> chunkRepository.copyChunks(chunks));
+        assertThat(copied).isEqualTo(3);
+
+        List<Chunk> stored = transactionTemplate.execute(status -> chunkRepository.findByDocumentId(document.getId()));
+        stored.sort(Comparator.comparing(Chunk::getChunkIndex));
+        assertThat(stored).hasSize(3);
+        for (int i = 0; i < 3; i++) {
+            Chunk chunk = stored.get(i);
+            assertThat(chunk.getId()).isNotNull();
+            assertThat(chunk.getUserId()).isEqualTo(user.getId());
+            assertThat(chunk.getContent()).isEqualTo("Trecho " + i + " com acentuação");
+            assertThat(chunk.getEmbedding().toArray()).containsExactly(vector(i).toArray());
+            assertThat(chunk.getEmbeddingShort().toArray()).hasSize(256);
+            assertThat(chunk.getContentHash()).isEqualTo("hash-" + i);
+            assertThat(chunk.getMetadata().getStartChar()).isEqualTo(i * 100);
+            assertThat(chunk.getMetadata().getDocumentType()).isEqualTo("PDF");
+            assertThat(chunk.getCreatedAt()).isEqualTo(createdAt);
+        }
+
+        // Aspas e operadores de tsquery na pergunta não podem quebrar a busca lexical
+        List<Object[]> lexical = transactionTemplate.execute(status ->
+                chunkRepository.findTopKLexicalChunks("trecho O'Reilly & !( \\ 1:*", user.getId(), 5));
+        assertThat(lexical).hasSize(3);
+        assertThat(transactionTemplate.execute(status ->
+                chunkRepository.findTopKLexicalChunks("&& !!", user.getId(), 5))).isEmpty();
+
+        Map<String, PGvector> reused = transactionTemplate.execute(status ->
+                chunkRepository.findEmbeddingsByContentHash(user.getId(), List.of("hash-1", "hash-unknown")));
+        assertThat(reused).containsOnlyKeys("hash-1");
+        assertThat(reused.get("hash-1").toArray()).containsExactly(vector(1).toArray());
+        // Outro tenant não reaproveita os embeddings deste
+        assertThat(transactionTemplate.execute(status ->
+                chunkRepository.findEmbeddingsByContentHash(user.getId() + 1, List.of("hash-1")))).isEmpty();
+
+        // Reindexação incremental: só posição e metadata mudam, conteúdo e vetor ficam
+        Chunk moved = stored.get(2);
+        Chunk.ChunkMetadata movedMetadata = new Chunk.ChunkMetadata();
+        movedMetadata.setStartChar(500);
+        movedMetadata.setEndChar(599);
+        movedMetadata.setDocumentType("PDF");
+        Integer updated = transactionTemplate.execute(status -> chunkRepository.updateChunkPositions(List.of(
+                Chunk.builder().id(moved.getId()).chunkIndex(5).metadata(movedMetadata).build())));
+        assertThat(updated).isEqualTo(1);
+
+        Chunk reloaded = transactionTemplate.execute(status -> chunkRepository.findById(moved.getId()).orElseThrow());
+        assertThat(reloaded.getChunkIndex()).isEqualTo(5);
+        assertThat(reloaded.getMetadata().getStartChar()).isEqualTo(500);
+        assertThat(reloaded.getContent()).isEqualTo(moved.getContent());
+        assertThat(reloaded.getEmbedding().toArray()).containsExactly(vector(2).toArray());
+    }
+
+    private static PGvector vector(int seed) {
+        float[] values = new float[DIMENSIONS];
+        values[seed] = 0.6f;
+        values[seed + 1] = 0.8f;
+        return new PGvector(values);
+    }
+}
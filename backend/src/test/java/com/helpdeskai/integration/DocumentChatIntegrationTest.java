@@ -33,6 +33,7 @@ import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.ArgumentMatchers.anyDouble;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.when;
@@ -110,8 +111,10 @@ class DocumentChatIntegrationTest {
                 .chunkIndex(0)
                 .build();
 
-        when(chunkRepository.findSimilarChunks(any(PGvector.class), anyInt(), anyDouble()))
-                .thenReturn(List.<Object[]>of(new Object[]{chunk, java.math.BigDecimal.valueOf(0.95)}));
+        when(chunkRepository.findTopKSimilarChunkIds(any(PGvector.class), any(), anyInt(), anyDouble()))
+                .thenReturn(List.<Object[]>of(new Object[]{chunk.getId(), 0.05}));
+        when(chunkRepository.findChunkRowsByIds(anyCollection()))
+                .thenReturn(List.<Object[]>of(toRow(chunk)));
 
         // Stub LLM
         AssistantMessage assistantMessage = new AssistantMessage("Resposta gerada pelo LLM");
@@ -140,4 +143,10 @@ class DocumentChatIntegrationTest {
         assertThat(conversation.getUser().getId()).isEqualTo(user.getId());
         assertThat(messageRepository.countByConversationId(conversation.getId())).isEqualTo(2);
     }
+
+    private static Object[] toRow(com.helpdeskai.entity.Chunk chunk) {
+        // [id, content, metadata, chunk_index, document_id, created_at, document_filename]
+        return new Object[]{chunk.getId(), chunk.getContent(), null, chunk.getChunkIndex(),
+                chunk.getDocument().getId(), null, chunk.getDocument().getFilename()};
+    }
 }
@@ -0,0 +1,167 @@
+package com.helpdeskai.integration;
+
+import com.helpdeskai.entity.Document;
+import com.helpdeskai.entity.IngestionJob;
+import com.helpdeskai.entity.IngestionJob.JobStatus;
+import com.helpdeskai.entity.User;
+import com.helpdeskai.repository.DocumentRepository;
+import com.helpdeskai.repository.IngestionJobRepository;
+import com.helpdeskai.repository.UserRepository;
+import com.helpdeskai.service.EmbeddingService;
+import com.helpdeskai.service.IngestionJobService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Fila de ingestão sobre o PostgreSQL real: workers concorrentes (como em vários nós) nunca
+ * reivindicam o mesmo job, e jobs RUNNING sem heartbeat voltam a ser reivindicáveis.
+ * Os workers da aplicação ficam desligados para o teste controlar as reivindicações.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@Testcontainers
+class IngestionQueueIntegrationTest {
+
+    private static final int JOBS = 40;
+    private static final int WORKERS = 8;
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>(
+            DockerImageName.parse("pgvector/pgvector:pg16").asCompatibleSubstituteFor("postgres"))
+            .withDatabaseName("helpdesk_ai_test")
+            .withUsername("postgres")
+            .withPassword("postgres")
+            .withInitScript("init-vector.sql");
+
+    @DynamicPropertySource
+    static void registerProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.jpa.hibernate.ddl-auto", () -> "create-drop");
+        registry.add("spring.jpa.show-sql", () -> "false");
+        registry.add("helpdesk.ingestion.worker.enabled", () -> "false");
+    }
+
+    @Autowired
+    private IngestionJobService jobService;
+
+    @Autowired
+    private IngestionJobRepository jobRepository;
+
+    @Autowired
+    private DocumentRepository documentRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @MockBean
+    private EmbeddingService embeddingService;
+
+    @MockBean
+    private ChatClient.Builder chatClientBuilder;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        jobRepository.deleteAll();
+        user = userRepository.findByEmail("queue@test.com").orElseGet(() -> userRepository.save(User.builder()
+                .email("queue@test.com")
+                .passwordHash("pwd")
+                .name("Queue User")
+                .build()));
+    }
+
+    @Test
+    @DisplayName("Concurrent workers should claim every job exactly once")
+    void concurrentWorkersShouldNotClaimTheSameJob() throws Exception {
+        for (int i = 0; i < JOBS; i++) {
+            jobService.enqueue(saveDocument("doc-" + i + ".pdf"), "key-" + i);
+        }
+
+        ConcurrentLinkedQueue<Long> claimed = new ConcurrentLinkedQueue<>();
+        ExecutorService executor = Executors.newFixedThreadPool(WORKERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int w = 0; w < WORKERS; w++) {
+                String workerId = "node-" + (w % 2) + "/Ingestion-" + w;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    Optional<IngestionJob> job;
+                    while ((job = jobService.claimNext(workerId)).isPresent()) {
+                        claimed.add(job.get().getId());
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(claimed).hasSize(JOBS).doesNotHaveDuplicates();
+        assertThat(jobRepository.findAll()).allMatch(job -> job.getStatus() == JobStatus.RUNNING
+                && job.getAttempts() == 1 && job.getLockedBy() != null);
+    }
+
+    @Test
+    @DisplayName("A running job without heartbeat should be reclaimed after a restart")
+    void staleRunningJobShouldBeReclaimed() {
+        IngestionJob job = jobService.enqueue(saveDocument("stale.pdf"), "stale-key");
+        IngestionJob claimed = jobService.claimNext("node-dead/Ingestion-1").orElseThrow();
+        assertThat(claimed.getId()).isEqualTo(job.getId());
+
+        // Nó morreu no meio do processamento: heartbeat parado há uma hora
+        IngestionJob running = jobRepository.findById(job.getId()).orElseThrow();
+        running.setLockedAt(LocalDateTime.now().minusHours(1));
+        jobRepository.save(running);
+
+        IngestionJob reclaimed = jobService.claimNext("node-new/Ingestion-1").orElseThrow();
+
+        assertThat(reclaimed.getId()).isEqualTo(job.getId());
+        assertThat(reclaimed.getAttempts()).isEqualTo(2);
+        assertThat(reclaimed.getLockedBy()).isEqualTo("node-new/Ingestion-1");
+        // Heartbeat recente: ninguém mais pega o job
+        assertThat(jobService.claimNext("node-other/Ingestion-1")).isEmpty();
+    }
+
+    private Document saveDocument(String filename) {
+        return documentRepository.save(Document.builder()
+                .user(user)
+                .filename(filename)
+                .status(Document.DocumentStatus.PROCESSING)
+                .totalChunks(0)
+                .build());
+    }
+}
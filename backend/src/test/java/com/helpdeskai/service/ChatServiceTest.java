@@ -12,6 +12,7 @@ import com.helpdeskai.repository.ChunkRepository;
 import com.helpdeskai.repository.ConversationRepository;
 import com.helpdeskai.repository.MessageRepository;
 import com.pgvector.PGvector;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -21,19 +22,25 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Flux;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyDouble;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -50,14 +57,20 @@ class ChatServiceTest {
     private MessageRepository messageRepository;
 
     @Mock
-    private ChunkRepository chunkRepository;
+    private RetrievalService retrievalService;
 
     @Mock
     private EmbeddingService embeddingService;
 
+    @Mock
+    private SemanticAnswerCache answerCache;
+
     @Mock(answer = Answers.RETURNS_SELF)
     private ChatClient.Builder chatClientBuilder;
 
+    private final TransactionTemplate transactionTemplate =
+            new TransactionTemplate(mock(PlatformTransactionManager.class));
+
     private ChatService chatService;
 
     private User user;
@@ -79,14 +92,14 @@ class ChatServiceTest {
         chatService = new ChatService(
                 conversationRepository,
                 messageRepository,
-                chunkRepository,
+                retrievalService,
                 embeddingService,
+                new ContextPacker(new TokenCounter("gpt-4-turbo-preview"), new SimpleMeterRegistry()),
+                answerCache,
+                new ChatSingleFlight(new SimpleMeterRegistry()),
+                transactionTemplate,
                 chatClientBuilder
         );
-        ReflectionTestUtils.setField(chatService, "topK", 5);
-        ReflectionTestUtils.setField(chatService, "similarityThreshold", 0.5);
-        ReflectionTestUtils.setField(chatService, "topK", 5);
-        ReflectionTestUtils.setField(chatService, "similarityThreshold", 0.5);
 
         // nova conversa
         Conversation conversation = Conversation.builder()
@@ -98,8 +111,8 @@ class ChatServiceTest {
         when(conversationRepository.save(any(Conversation.class))).thenReturn(conversation);
 
         when(embeddingService.generateEmbedding(any())).thenReturn(new PGvector(new float[]{0.1f, 0.2f}));
-        when(chunkRepository.findSimilarChunks(any(PGvector.class), anyInt(), anyDouble()))
-                .thenReturn(new ArrayList<>());
+        when(retrievalService.getTopK()).thenReturn(5);
+        when(retrievalService.retrieve(any(), any(), eq(1L), anyInt())).thenReturn(new ArrayList<>());
 
         // salvar mensagens (user e assistant)
         when(messageRepository.save(any(Message.class))).thenAnswer(inv -> {
@@ -123,6 +136,68 @@ class ChatServiceTest {
         verify(chatClient, never()).prompt(any(Prompt.class));
     }
 
+    @Test
+    void chat_hybridModeShouldReturnFallbackForUnrelatedQuestion() {
+        ChatClient chatClient = mock(ChatClient.class, RETURNS_DEEP_STUBS);
+        when(chatClientBuilder.build()).thenReturn(chatClient);
+
+        // Retrieval real em modo híbrido: o ramo vetorial não encontra nada acima do threshold e o
+        // full-text só casa stopwords ("de", "o"), então nenhum chunk pode chegar ao prompt
+        ChunkRepository chunkRepository = mock(ChunkRepository.class);
+        @SuppressWarnings("unchecked")
+        ObjectProvider<LocalVectorIndex> localVectorIndex = mock(ObjectProvider.class);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        RetrievalService hybridRetrieval = new RetrievalService(chunkRepository,
+                new ChunkContentCache(chunkRepository, meterRegistry, 100),
+                mock(TenantIndexService.class), localVectorIndex, Runnable::run, meterRegistry);
+        ReflectionTestUtils.setField(hybridRetrieval, "topK", 5);
+        ReflectionTestUtils.setField(hybridRetrieval, "similarityThreshold", 0.7);
+        ReflectionTestUtils.setField(hybridRetrieval, "iterativeScanMode", "relaxed_order");
+        ReflectionTestUtils.setField(hybridRetrieval, "mode", "hybrid");
+        ReflectionTestUtils.setField(hybridRetrieval, "hybridCandidates", 20);
+        ReflectionTestUtils.setField(hybridRetrieval, "rrfK", 60);
+
+        String question = "Qual é a capital de Portugal?";
+        when(chunkRepository.findTopKLexicalChunks(eq(question), eq(1L), anyInt()))
+                .thenReturn(List.<Object[]>of(new Object[]{
+                        7L, "Como redefinir a senha de acesso ao portal", null, 0, 33L, null, "faq.pdf", 0.1}));
+
+        chatService = new ChatService(
+                conversationRepository,
+                messageRepository,
+                hybridRetrieval,
+                embeddingService,
+                new ContextPacker(new TokenCounter("gpt-4-turbo-preview"), new SimpleMeterRegistry()),
+                answerCache,
+                new ChatSingleFlight(new SimpleMeterRegistry()),
+                transactionTemplate,
+                chatClientBuilder
+        );
+
+        Conversation conversation = Conversation.builder()
+                .id(10L)
+                .user(user)
+                .title("Nova Conversa")
+                .createdAt(LocalDateTime.now())
+                .build();
+        when(conversationRepository.save(any(Conversation.class))).thenReturn(conversation);
+        when(embeddingService.generateEmbedding(any())).thenReturn(new PGvector(new float[]{0.1f, 0.2f}));
+        when(messageRepository.save(any(Message.class))).thenAnswer(inv -> {
+            Message m = inv.getArgument(0);
+            if (m.getCreatedAt() == null) {
+                m.setCreatedAt(LocalDateTime.now());
+            }
+            return m;
+        });
+
+        ChatResponse response = chatService.chat(ChatRequest.builder().message(question).build(), user);
+
+        assertThat(response.getCitations()).isEmpty();
+        assertThat(response.getMessage())
+                .contains("não encontrei informações relevantes");
+        verify(chatClient, never()).prompt(any(Prompt.class));
+    }
+
     @Test
     void chat_shouldThrowWhenConversationNotFound() {
         when(conversationRepository.findById(999L)).thenReturn(Optional.empty());
@@ -130,8 +205,12 @@ class ChatServiceTest {
         chatService = new ChatService(
                 conversationRepository,
                 messageRepository,
-                chunkRepository,
+                retrievalService,
                 embeddingService,
+                new ContextPacker(new TokenCounter("gpt-4-turbo-preview"), new SimpleMeterRegistry()),
+                answerCache,
+                new ChatSingleFlight(new SimpleMeterRegistry()),
+                transactionTemplate,
                 chatClientBuilder
         );
 
@@ -152,12 +231,14 @@ class ChatServiceTest {
         chatService = new ChatService(
                 conversationRepository,
                 messageRepository,
-                chunkRepository,
+                retrievalService,
                 embeddingService,
+                new ContextPacker(new TokenCounter("gpt-4-turbo-preview"), new SimpleMeterRegistry()),
+                answerCache,
+                new ChatSingleFlight(new SimpleMeterRegistry()),
+                transactionTemplate,
                 chatClientBuilder
         );
-        ReflectionTestUtils.setField(chatService, "topK", 5);
-        ReflectionTestUtils.setField(chatService, "similarityThreshold", 0.5);
 
         var aiResponse = mock(org.springframework.ai.chat.model.ChatResponse.class);
         var generation = mock(org.springframework.ai.chat.model.Generation.class, RETURNS_DEEP_STUBS);
@@ -183,13 +264,12 @@ class ChatServiceTest {
                 .id(100L)
                 .document(document)
                 .content("conteúdo relevante do documento")
-                .metadata(Chunk.ChunkMetadata.builder().page(1).section("Intro").build())
+                .chunkIndex(0)
                 .build();
-
-        List<Object[]> similar = List.<Object[]>of(new Object[]{chunk, BigDecimal.valueOf(0.9)});
         when(embeddingService.generateEmbedding(any())).thenReturn(new PGvector(new float[]{0.2f, 0.8f}));
-        when(chunkRepository.findSimilarChunks(any(PGvector.class), anyInt(), anyDouble()))
-                .thenReturn(similar);
+        when(retrievalService.getTopK()).thenReturn(5);
+        when(retrievalService.retrieve(any(), any(), eq(1L), anyInt()))
+                .thenReturn(List.of(new RetrievalService.ScoredChunk(chunk, 0.9)));
 
         when(messageRepository.save(any(Message.class))).thenAnswer(inv -> {
             Message m = inv.getArgument(0);
@@ -208,5 +288,153 @@ class ChatServiceTest {
         assertThat(response.getMessage()).isEqualTo("Resposta gerada pelo LLM");
         assertThat(response.getCitations()).hasSize(1);
         assertThat(response.getCitations().get(0).getMetadata().getDocumentId()).isEqualTo(33L);
+        assertThat(response.getCitations().get(0).getSimilarityScore()).isCloseTo(0.9, within(1e-9));
+    }
+
+    @Test
+    void chat_shouldReuseCachedAnswerWithoutCallingLlm() {
+        ChatClient chatClient = mock(ChatClient.class, RETURNS_DEEP_STUBS);
+        when(chatClientBuilder.build()).thenReturn(chatClient);
+
+        chatService = new ChatService(
+                conversationRepository,
+                messageRepository,
+                retrievalService,
+                embeddingService,
+                new ContextPacker(new TokenCounter("gpt-4-turbo-preview"), new SimpleMeterRegistry()),
+                answerCache,
+                new ChatSingleFlight(new SimpleMeterRegistry()),
+                transactionTemplate,
+                chatClientBuilder
+        );
+
+        Conversation conversation = Conversation.builder()
+                .id(30L)
+                .user(user)
+                .title("Nova Conversa")
+                .createdAt(LocalDateTime.now())
+                .build();
+        when(conversationRepository.save(any(Conversation.class))).thenReturn(conversation);
+
+        Chunk chunk = Chunk.builder()
+                .id(100L)
+                .document(Document.builder().id(33L).filename("doc.pdf").build())
+                .content("conteúdo relevante do documento")
+                .chunkIndex(0)
+                .build();
+        PGvector queryEmbedding = new PGvector(new float[]{0.2f, 0.8f});
+        when(embeddingService.generateEmbedding(any())).thenReturn(queryEmbedding);
+        when(retrievalService.getTopK()).thenReturn(5);
+        when(retrievalService.retrieve(any(), any(), eq(1L), anyInt()))
+                .thenReturn(List.of(new RetrievalService.ScoredChunk(chunk, 0.9)));
+
+        Message.Citation citation = Message.Citation.builder()
+                .chunkId(100L)
+                .content("conteúdo relevante do documento")
+                .similarityScore(0.9)
+                .metadata(new Message.ChunkMetadataDTO(33L, "doc.pdf", null, null))
+                .build();
+        when(answerCache.lookup(eq(1L), eq(queryEmbedding), eq(Set.of(100L))))
+                .thenReturn(Optional.of(new SemanticAnswerCache.CachedAnswer(
+                        "Resposta em cache", List.of(citation), 1_000_000L)));
+
+        when(messageRepository.save(any(Message.class))).thenAnswer(inv -> {
+            Message m = inv.getArgument(0);
+            if (m.getCreatedAt() == null) {
+                m.setCreatedAt(LocalDateTime.now());
+            }
+            return m;
+        });
+
+        ChatResponse response = chatService.chat(ChatRequest.builder().message("Como resetar a senha?").build(), user);
+
+        assertThat(response.getMessage()).isEqualTo("Resposta em cache");
+        assertThat(response.getCitations()).hasSize(1);
+        assertThat(response.getCitations().get(0).getChunkId()).isEqualTo(100L);
+        verify(chatClient, never()).prompt(any(Prompt.class));
+        verify(answerCache, never()).put(anyLong(), any(), any(), any(), any(), any(), anyLong());
+    }
+
+    @Test
+    void streamChat_shouldEmitCitationsThenDeltasThenPersistedMessage() {
+        ChatClient chatClient = mock(ChatClient.class, RETURNS_DEEP_STUBS);
+        when(chatClientBuilder.build()).thenReturn(chatClient);
+
+        chatService = new ChatService(
+                conversationRepository,
+                messageRepository,
+                retrievalService,
+                embeddingService,
+                new ContextPacker(new TokenCounter("gpt-4-turbo-preview"), new SimpleMeterRegistry()),
+                answerCache,
+                new ChatSingleFlight(new SimpleMeterRegistry()),
+                transactionTemplate,
+                chatClientBuilder
+        );
+
+        when(chatClient.prompt(any(Prompt.class)).stream().content())
+                .thenReturn(Flux.just("Resposta ", "gerada ", "em streaming"));
+
+        Conversation conversation = Conversation.builder()
+                .id(40L)
+                .user(user)
+                .title("Nova Conversa")
+                .createdAt(LocalDateTime.now())
+                .build();
+        when(conversationRepository.save(any(Conversation.class))).thenReturn(conversation);
+
+        Chunk chunk = Chunk.builder()
+                .id(100L)
+                .document(Document.builder().id(33L).filename("doc.pdf").build())
+                .content("conteúdo relevante do documento")
+                .chunkIndex(0)
+                .build();
+        when(embeddingService.generateEmbedding(any())).thenReturn(new PGvector(new float[]{0.2f, 0.8f}));
+        when(retrievalService.getTopK()).thenReturn(5);
+        when(retrievalService.retrieve(any(), any(), eq(1L), anyInt()))
+                .thenReturn(List.of(new RetrievalService.ScoredChunk(chunk, 0.9)));
+
+        List<Message> saved = new ArrayList<>();
+        when(messageRepository.save(any(Message.class))).thenAnswer(inv -> {
+            Message m = inv.getArgument(0);
+            m.setId(500L + saved.size());
+            saved.add(m);
+            return m;
+        });
+
+        List<String> events = new ArrayList<>();
+        chatService.streamChat(ChatRequest.builder().message("Qual o conteúdo?").build(), user,
+                new ChatStreamListener() {
+                    @Override
+                    public void onCitations(Long conversationId, List<ChatResponse.CitationDTO> citations) {
+                        events.add("citations:" + conversationId + ":" + citations.get(0).getChunkId());
+                    }
+
+                    @Override
+                    public void onDelta(String delta) {
+                        events.add("delta:" + delta);
+                    }
+
+                    @Override
+                    public void onComplete(Long conversationId, Long messageId) {
+                        events.add("done:" + conversationId + ":" + messageId);
+                    }
+
+                    @Override
+                    public void onError(Throwable error) {
+                        events.add("error:" + error.getMessage());
+                    }
+                });
+
+        assertThat(events).containsExactly(
+                "citations:40:100",
+                "delta:Resposta ",
+                "delta:gerada ",
+                "delta:em streaming",
+                "done:40:501");
+        assertThat(saved).hasSize(2);
+        assertThat(saved.get(1).getRole()).isEqualTo(Message.MessageRole.ASSISTANT);
+        assertThat(saved.get(1).getContent()).isEqualTo("Resposta gerada em streaming");
+        assertThat(saved.get(1).getCitations()).extracting(Message.Citation::getChunkId).containsExactly(100L);
     }
 }
@@ -0,0 +1,168 @@
+package com.helpdeskai.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("ChatSingleFlight Unit Tests")
+class ChatSingleFlightTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ChatSingleFlight singleFlight = new ChatSingleFlight(meterRegistry);
+
+    @Test
+    @DisplayName("Concurrent identical questions should share a single execution")
+    void testExecute_CoalescesConcurrentCalls() throws Exception {
+        int followers = 20;
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        String key = ChatSingleFlight.key(1L, "Como resetar a senha?");
+
+        ExecutorService executor = Executors.newFixedThreadPool(followers + 1);
+        try {
+            Future<String> leader = executor.submit(() -> singleFlight.execute(key, () -> {
+                executions.incrementAndGet();
+                started.countDown();
+                await(release);
+                return "resposta";
+            }));
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < followers; i++) {
+                results.add(executor.submit(() -> singleFlight.execute(
+                        ChatSingleFlight.key(1L, "  Como resetar   a senha? "), () -> {
+                            executions.incrementAndGet();
+                            return "outra";
+                        })));
+            }
+            waitForCoalesced(followers);
+            release.countDown();
+
+            assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("resposta");
+            for (Future<String> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("resposta");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(executions.get()).isEqualTo(1);
+        assertThat(singleFlight.inFlightCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should keep different users and finished executions apart")
+    void testExecute_KeyScopeAndCompletion() {
+        assertThat(ChatSingleFlight.key(1L, "Pergunta")).isNotEqualTo(ChatSingleFlight.key(2L, "Pergunta"));
+
+        assertThat(singleFlight.execute("1:Pergunta", () -> "primeira")).isEqualTo("primeira");
+        // A execução anterior já terminou: não há nada em andamento para compartilhar
+        assertThat(singleFlight.execute("1:Pergunta", () -> "segunda")).isEqualTo("segunda");
+        assertThat(meterRegistry.get("helpdesk.chat.singleflight.requests").tag("result", "coalesced")
+                .counter().count()).isZero();
+    }
+
+    @Test
+    @DisplayName("Failures should propagate and not stay in flight")
+    void testExecute_FailureReleasesKey() {
+        assertThatThrownBy(() -> singleFlight.execute("1:Pergunta", () -> {
+            throw new IllegalStateException("LLM indisponível");
+        })).isInstanceOf(IllegalStateException.class).hasMessage("LLM indisponível");
+
+        assertThat(singleFlight.inFlightCount()).isZero();
+        assertThat(singleFlight.execute("1:Pergunta", () -> "ok")).isEqualTo("ok");
+    }
+
+    @Test
+    @DisplayName("An Error in the leader should reach waiting followers without the wait timeout")
+    void testExecute_LeaderErrorReleasesFollowers() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> leader = executor.submit(() -> singleFlight.<String>execute("1:Pergunta", () -> {
+                started.countDown();
+                await(release);
+                throw new NoClassDefFoundError("com/helpdeskai/Ausente");
+            }));
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+            Future<String> follower = executor.submit(() -> singleFlight.execute("1:Pergunta", () -> "própria"));
+            waitForCoalesced(1);
+            release.countDown();
+
+            // waitTimeoutMs padrão é 120 s: o follower só termina a tempo se o future foi completado
+            assertThatThrownBy(() -> follower.get(5, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class)
+                    .hasCauseInstanceOf(NoClassDefFoundError.class);
+            assertThatThrownBy(() -> leader.get(5, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class)
+                    .hasCauseInstanceOf(NoClassDefFoundError.class);
+            assertThat(singleFlight.inFlightCount()).isZero();
+            assertThat(meterRegistry.get("helpdesk.chat.singleflight.requests").tag("result", "timeout")
+                    .counter().count()).isZero();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Followers should run their own execution when the leader exceeds the wait timeout")
+    void testExecute_FollowerTimeoutFallsBack() throws Exception {
+        ReflectionTestUtils.setField(singleFlight, "waitTimeoutMs", 50L);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> leader = executor.submit(() -> singleFlight.execute("1:Pergunta", () -> {
+                started.countDown();
+                await(release);
+                return "lenta";
+            }));
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+            assertThat(singleFlight.execute("1:Pergunta", () -> "própria")).isEqualTo("própria");
+            assertThat(meterRegistry.get("helpdesk.chat.singleflight.requests").tag("result", "timeout")
+                    .counter().count()).isEqualTo(1.0);
+
+            release.countDown();
+            assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("lenta");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void waitForCoalesced(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (meterRegistry.get("helpdesk.chat.singleflight.requests").tag("result", "coalesced")
+                .counter().count() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -334,6 +334,93 @@ class ChunkingServiceTest {
         assertThat(chunks.size()).isGreaterThan(2);
     }
 
+    // ===========================
+    // Incremental Chunker Tests
+    // ===========================
+
+    @Test
+    @DisplayName("Incremental chunker should emit the same chunks as chunkText regardless of slicing")
+    void testIncrementalChunker_MatchesChunkText() {
+        // Arrange - sentenças, parágrafos e espaços nas pontas
+        StringBuilder sb = new StringBuilder("  \n ");
+        for (int i = 0; i < 40; i++) {
+            sb.append(generateParagraph(900 + i * 37)).append(i % 3 == 0 ? "\n\n" : "");
+            sb.append(generateTextWithoutDelimiters(500 + i * 11)).append("! ");
+        }
+        sb.append(" \n\n  ");
+        String text = sb.toString();
+
+        List<ChunkMetadata> expected = chunkingService.chunkText(text, "PDF");
+
+        for (int sliceSize : new int[]{1, 7, 333, 4096}) {
+            // Act
+            List<ChunkMetadata> streamed = new java.util.ArrayList<>();
+            ChunkingService.IncrementalChunker chunker = chunkingService.newChunker("PDF", streamed::add);
+            for (int i = 0; i < text.length(); i += sliceSize) {
+                chunker.write(text, i, Math.min(sliceSize, text.length() - i));
+            }
+            chunker.finish();
+
+            // Assert
+            assertThat(streamed).hasSameSizeAs(expected);
+            for (int i = 0; i < expected.size(); i++) {
+                assertThat(streamed.get(i).getContent()).isEqualTo(expected.get(i).getContent());
+                assertThat(streamed.get(i).getChunkIndex()).isEqualTo(expected.get(i).getChunkIndex());
+                assertThat(streamed.get(i).getStartChar()).isEqualTo(expected.get(i).getStartChar());
+                assertThat(streamed.get(i).getEndChar()).isEqualTo(expected.get(i).getEndChar());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Incremental chunker should emit chunks before the end of the text")
+    void testIncrementalChunker_EmitsEarly() {
+        // Arrange
+        List<ChunkMetadata> emitted = new java.util.ArrayList<>();
+        ChunkingService.IncrementalChunker chunker = chunkingService.newChunker("PDF", emitted::add);
+        String paragraph = generateParagraph(1000);
+
+        // Act - ~20 chunks de texto, sem finish()
+        for (int i = 0; i < 60; i++) {
+            chunker.write(paragraph, 0, paragraph.length());
+        }
+
+        // Assert - só a janela do próximo chunk fica pendente
+        assertThat(emitted).hasSizeGreaterThan(15);
+
+        chunker.finish();
+        assertThat(emitted.get(emitted.size() - 1).getEndChar()).isEqualTo(paragraph.length() * 60 - 1);
+    }
+
+    // ===========================
+    // Content-Defined Boundary Tests
+    // ===========================
+
+    @Test
+    @DisplayName("A local edit should only change the chunks around it")
+    void testChunkText_LocalEditKeepsOtherChunks() {
+        // Arrange - ~140k chars de sentenças variadas; uma sentença nova no meio
+        String original = generateVariedText(1500, new java.util.Random(42));
+        int insertAt = original.indexOf(". ", original.length() / 2) + 2;
+        String edited = original.substring(0, insertAt)
+                + "Inserted brand new sentence about VPN tokens. "
+                + original.substring(insertAt);
+
+        // Act
+        List<ChunkMetadata> before = chunkingService.chunkText(original, "PDF");
+        List<ChunkMetadata> after = chunkingService.chunkText(edited, "PDF");
+
+        // Assert - as fronteiras voltam a coincidir logo depois da edição
+        java.util.Set<String> previous = new java.util.HashSet<>();
+        before.forEach(chunk -> previous.add(chunk.getContent()));
+        long changed = after.stream().filter(chunk -> !previous.contains(chunk.getContent())).count();
+
+        assertThat(before).hasSizeGreaterThan(50);
+        assertThat(changed).isBetween(1L, 3L);
+        assertThat(after).extracting(ChunkMetadata::getContent)
+                .anyMatch(content -> content.contains("VPN tokens"));
+    }
+
     // ===========================
     // Helper Methods
     // ===========================
@@ -349,6 +436,21 @@ class ChunkingServiceTest {
         return sb.toString();
     }
 
+    private String generateVariedText(int sentences, java.util.Random random) {
+        String[] words = "the of manual printer network server configure user password reset device cable port firmware update log error"
+                .split(" ");
+        StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < sentences; i++) {
+            int length = 5 + random.nextInt(20);
+            for (int w = 0; w < length; w++) {
+                sb.append(words[random.nextInt(words.length)]).append(w == length - 1 ? ". " : " ");
+            }
+        }
+
+        return sb.toString();
+    }
+
     private String generateTextWithoutDelimiters(int approximateLength) {
         StringBuilder sb = new StringBuilder();
         String fragment = "word another word some more words ";
@@ -0,0 +1,121 @@
+package com.helpdeskai.service;
+
+import com.helpdeskai.entity.Chunk;
+import com.helpdeskai.entity.Document;
+import com.helpdeskai.service.RetrievalService.ScoredChunk;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("ContextPacker Unit Tests")
+class ContextPackerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final TokenCounter tokenCounter = new TokenCounter("gpt-4-turbo-preview");
+    private final ContextPacker contextPacker = new ContextPacker(tokenCounter, meterRegistry);
+
+    @Test
+    @DisplayName("Should merge adjacent chunks of the same document without repeating the overlap")
+    void testPack_MergesAdjacentChunks() {
+        String first = "Para redefinir a senha acesse o portal. Clique em esqueci minha senha e informe o e-mail.";
+        String second = "Clique em esqueci minha senha e informe o e-mail. Você receberá um link válido por 24 horas.";
+
+        List<ScoredChunk> packed = contextPacker.select(List.of(
+                scored(11L, 1L, 4, second, 0.8),
+                scored(10L, 1L, 3, first, 0.9)), 5);
+
+        assertThat(packed).hasSize(1);
+        assertThat(packed.get(0).getChunk().getId()).isEqualTo(10L);
+        assertThat(packed.get(0).getScore()).isEqualTo(0.9);
+        assertThat(packed.get(0).getChunk().getContent()).isEqualTo(
+                "Para redefinir a senha acesse o portal. Clique em esqueci minha senha e informe o e-mail."
+                        + " Você receberá um link válido por 24 horas.");
+    }
+
+    @Test
+    @DisplayName("Should keep non-adjacent chunks and chunks of other documents apart")
+    void testPack_KeepsNonAdjacentChunks() {
+        List<ScoredChunk> packed = contextPacker.select(List.of(
+                scored(1L, 1L, 0, "instalação do agente no windows", 0.9),
+                scored(2L, 1L, 2, "configuração de proxy corporativo", 0.8),
+                scored(3L, 2L, 1, "política de reembolso de licenças", 0.7)), 5);
+
+        assertThat(packed).extracting(scored -> scored.getChunk().getId()).containsExactly(1L, 2L, 3L);
+    }
+
+    @Test
+    @DisplayName("MMR should prefer a diverse passage over a near-duplicate one")
+    void testPack_MmrDropsRedundantPassage() {
+        String faq = "para redefinir a senha acesse o portal e clique em esqueci minha senha";
+
+        List<ScoredChunk> packed = contextPacker.select(List.of(
+                scored(1L, 1L, 0, faq, 0.90),
+                scored(2L, 2L, 7, faq + " agora", 0.88),
+                scored(3L, 3L, 2, "a senha expira a cada 90 dias por política de segurança", 0.80)), 2);
+
+        assertThat(packed).extracting(scored -> scored.getChunk().getId()).containsExactly(1L, 3L);
+    }
+
+    @Test
+    @DisplayName("Should fill the token budget greedily and report tokens per stage")
+    void testPack_FillsTokenBudget() {
+        String passage = "O agente de suporte sincroniza os tickets com o servidor central a cada cinco minutos. ";
+        String longPassage = passage.repeat(20);
+        String shortPassage = "A senha expira a cada noventa dias.";
+        int systemTokens = tokenCounter.count("Você é um assistente.");
+        int questionTokens = tokenCounter.count("Quando a senha expira?") + ContextPacker.PASSAGE_OVERHEAD_TOKENS;
+        int shortTokens = tokenCounter.count(shortPassage) + ContextPacker.PASSAGE_OVERHEAD_TOKENS;
+        // Cabe o trecho curto, mas não o longo
+        ReflectionTestUtils.setField(contextPacker, "tokenBudget", systemTokens + questionTokens + shortTokens + 10);
+
+        ContextPacker.PackedContext packed = contextPacker.pack(List.of(
+                scored(1L, 1L, 0, longPassage, 0.9),
+                scored(2L, 2L, 0, shortPassage, 0.8)), "Você é um assistente.", "Quando a senha expira?");
+
+        assertThat(packed.chunks()).extracting(scored -> scored.getChunk().getId()).containsExactly(2L);
+        assertThat(packed.promptTokens()).isEqualTo(systemTokens + questionTokens + shortTokens);
+        assertThat(meterRegistry.get("helpdesk.prompt.tokens").tag("stage", "context").summary().totalAmount())
+                .isEqualTo(shortTokens);
+        assertThat(meterRegistry.get("helpdesk.prompt.tokens").tag("stage", "retrieved").summary().totalAmount())
+                .isGreaterThan(shortTokens);
+    }
+
+    @Test
+    @DisplayName("Should truncate the best passage when nothing fits the budget")
+    void testPack_TruncatesWhenNothingFits() {
+        // ASCII: o corte por token nunca divide um caractere multibyte
+        String longPassage = "Reinstall the support agent on Windows and Linux workstations. ".repeat(50);
+        int fixedTokens = tokenCounter.count("sistema") + tokenCounter.count("pergunta")
+                + ContextPacker.PASSAGE_OVERHEAD_TOKENS;
+        ReflectionTestUtils.setField(contextPacker, "tokenBudget", fixedTokens + 116);
+
+        ContextPacker.PackedContext packed = contextPacker.pack(
+                List.of(scored(1L, 1L, 0, longPassage, 0.9)), "sistema", "pergunta");
+
+        assertThat(packed.chunks()).hasSize(1);
+        assertThat(tokenCounter.count(packed.chunks().get(0).getChunk().getContent())).isBetween(90, 100);
+        assertThat(longPassage).startsWith(packed.chunks().get(0).getChunk().getContent());
+    }
+
+    @Test
+    @DisplayName("Should concatenate texts that do not overlap")
+    void testMergeOverlapping_NoOverlap() {
+        assertThat(ContextPacker.mergeOverlapping("primeiro trecho.", "segundo trecho."))
+                .isEqualTo("primeiro trecho.\nsegundo trecho.");
+    }
+
+    private static ScoredChunk scored(Long chunkId, Long documentId, int chunkIndex, String content, double score) {
+        Chunk chunk = Chunk.builder()
+                .id(chunkId)
+                .document(Document.builder().id(documentId).filename("doc-" + documentId + ".pdf").build())
+                .chunkIndex(chunkIndex)
+                .content(content)
+                .build();
+        return new ScoredChunk(chunk, score);
+    }
+}
@@ -1,14 +1,19 @@
 package com.helpdeskai.service;
 
 import com.helpdeskai.dto.DocumentUploadResponse;
+import com.helpdeskai.dto.IngestionJobDTO;
+import com.helpdeskai.entity.Chunk;
 import com.helpdeskai.entity.Document;
 import com.helpdeskai.entity.Document.DocumentStatus;
+import com.helpdeskai.entity.IngestionJob;
 import com.helpdeskai.entity.User;
 import com.helpdeskai.exception.DocumentProcessingException;
 import com.helpdeskai.exception.ResourceNotFoundException;
 import com.helpdeskai.repository.ChunkRepository;
 import com.helpdeskai.repository.DocumentRepository;
 import com.pgvector.PGvector;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -17,27 +22,45 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.mock.web.MockMultipartFile;
 
+import java.io.ByteArrayInputStream;
+import java.io.Writer;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
-import static org.mockito.Mockito.doNothing;
-import static org.mockito.Mockito.spy;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 class DocumentServiceTest {
 
+    private static final String EMBEDDING_MODEL = "text-embedding-3-small";
+
     @Mock
     private DocumentRepository documentRepository;
 
@@ -50,6 +73,24 @@ class DocumentServiceTest {
     @Mock
     private EmbeddingService embeddingService;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private DocumentStorage documentStorage;
+
+    @Mock
+    private IngestionJobService ingestionJobService;
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+
+    @Spy
+    private Executor pipelineExecutor = new SimpleAsyncTaskExecutor("Pipeline-test-");
+
     @Spy
     @InjectMocks
     private DocumentService documentService;
@@ -70,7 +111,7 @@ class DocumentServiceTest {
     }
 
     @Test
-    void uploadDocument_shouldValidateAndTriggerAsyncProcess() {
+    void uploadDocument_shouldStoreFileAndEnqueueJob() {
         MultipartFile file = new MockMultipartFile(
                 "file",
                 "sample.pdf",
@@ -88,15 +129,39 @@ class DocumentServiceTest {
                 .uploadedAt(LocalDateTime.now())
                 .build();
 
+        when(documentStorage.store(file)).thenReturn(new DocumentStorage.StoredFile("storage-key", "a1b2c3"));
         when(documentRepository.save(any(Document.class))).thenReturn(persisted);
-        doNothing().when(documentService).processDocumentAsync(anyLong(), any());
+        when(ingestionJobService.enqueue(persisted, "storage-key"))
+                .thenReturn(IngestionJob.builder().id(20L).documentId(10L).build());
 
         DocumentUploadResponse response = documentService.uploadDocument(file, user);
 
         assertThat(response.getDocumentId()).isEqualTo(10L);
+        assertThat(response.getJobId()).isEqualTo(20L);
         assertThat(response.getStatus()).isEqualTo(DocumentStatus.PROCESSING.name());
-        verify(documentService).processDocumentAsync(org.mockito.ArgumentMatchers.eq(10L), any());
-        verify(documentRepository, times(1)).save(any(Document.class));
+        ArgumentCaptor<Document> documentCaptor = ArgumentCaptor.forClass(Document.class);
+        verify(documentRepository, times(1)).save(documentCaptor.capture());
+        assertThat(documentCaptor.getValue().getContentHash()).isEqualTo("a1b2c3");
+        // Upload não processa o documento: isso é feito pelo IngestionWorker
+        verifyNoInteractions(chunkingService, embeddingService, chunkRepository);
+    }
+
+    @Test
+    void uploadDocument_shouldDeleteStoredFileWhenEnqueueFails() {
+        MultipartFile file = new MockMultipartFile(
+                "file",
+                "sample.pdf",
+                "application/pdf",
+                "Hello World PDF".getBytes()
+        );
+
+        when(documentStorage.store(file)).thenReturn(new DocumentStorage.StoredFile("storage-key", "a1b2c3"));
+        when(documentRepository.save(any(Document.class))).thenThrow(new IllegalStateException("db down"));
+
+        assertThatThrownBy(() -> documentService.uploadDocument(file, user))
+                .isInstanceOf(DocumentProcessingException.class);
+
+        verify(documentStorage).delete("storage-key");
     }
 
     @Test
@@ -129,7 +194,167 @@ class DocumentServiceTest {
     }
 
     @Test
-    void processDocumentAsync_shouldPersistChunksAndMarkCompleted() {
+    void updateDocument_shouldEnqueueIncrementalReindex() {
+        MultipartFile file = new MockMultipartFile(
+                "file",
+                "manual-v2.pdf",
+                "application/pdf",
+                "Hello World PDF v2".getBytes()
+        );
+        Document document = Document.builder()
+                .id(15L)
+                .user(user)
+                .filename("manual.pdf")
+                .contentHash("a1b2c3")
+                .status(DocumentStatus.COMPLETED)
+                .totalChunks(40)
+                .build();
+
+        when(documentRepository.findById(15L)).thenReturn(Optional.of(document));
+        when(documentRepository.findByIdForUpdate(15L)).thenReturn(Optional.of(document));
+        when(documentStorage.store(file)).thenReturn(new DocumentStorage.StoredFile("storage-key", "d4e5f6"));
+        when(documentRepository.save(any(Document.class))).thenAnswer(inv -> inv.getArgument(0));
+        when(ingestionJobService.findLatest(15L))
+                .thenReturn(Optional.of(IngestionJob.builder().id(29L).storageKey("previous-key").build()));
+        when(ingestionJobService.enqueue(document, "storage-key"))
+                .thenReturn(IngestionJob.builder().id(30L).documentId(15L).build());
+
+        DocumentUploadResponse response = documentService.updateDocument(15L, file, user);
+
+        assertThat(response.getDocumentId()).isEqualTo(15L);
+        assertThat(response.getJobId()).isEqualTo(30L);
+        assertThat(response.getStatus()).isEqualTo(DocumentStatus.PROCESSING.name());
+        assertThat(document.getFilename()).isEqualTo("manual-v2.pdf");
+        assertThat(document.getContentHash()).isEqualTo("d4e5f6");
+        // Chunks da versão anterior continuam lá até o worker reindexar
+        verifyNoInteractions(chunkingService, embeddingService, chunkRepository);
+        verify(documentStorage, never()).delete("storage-key");
+        // Arquivo da ingestão anterior removido depois do commit
+        verify(documentStorage).delete("previous-key");
+    }
+
+    @Test
+    void updateDocument_shouldKeepPreviousFileWhenTransactionFails() {
+        MultipartFile file = new MockMultipartFile(
+                "file",
+                "manual-v2.pdf",
+                "application/pdf",
+                "Hello World PDF v2".getBytes()
+        );
+        Document document = Document.builder()
+                .id(19L)
+                .user(user)
+                .filename("manual.pdf")
+                .contentHash("a1b2c3")
+                .status(DocumentStatus.FAILED)
+                .build();
+
+        when(documentRepository.findById(19L)).thenReturn(Optional.of(document));
+        when(documentRepository.findByIdForUpdate(19L)).thenReturn(Optional.of(document));
+        when(documentStorage.store(file)).thenReturn(new DocumentStorage.StoredFile("storage-key", "d4e5f6"));
+        when(documentRepository.save(any(Document.class))).thenAnswer(inv -> inv.getArgument(0));
+        when(ingestionJobService.findLatest(19L))
+                .thenReturn(Optional.of(IngestionJob.builder().id(39L).storageKey("previous-key").build()));
+        when(ingestionJobService.enqueue(document, "storage-key")).thenThrow(new IllegalStateException("deadlock"));
+
+        assertThatThrownBy(() -> documentService.updateDocument(19L, file, user))
+                .isInstanceOf(DocumentProcessingException.class);
+
+        // Rollback: o job anterior ainda aponta para o arquivo dele
+        verify(documentStorage, never()).delete("previous-key");
+        verify(documentStorage).delete("storage-key");
+    }
+
+    @Test
+    void updateDocument_shouldSkipReindexWhenContentIsUnchanged() {
+        MultipartFile file = new MockMultipartFile(
+                "file",
+                "manual.pdf",
+                "application/pdf",
+                "Hello World PDF".getBytes()
+        );
+        Document document = Document.builder()
+                .id(16L)
+                .user(user)
+                .filename("manual.pdf")
+                .contentHash("a1b2c3")
+                .status(DocumentStatus.COMPLETED)
+                .totalChunks(40)
+                .build();
+
+        when(documentRepository.findById(16L)).thenReturn(Optional.of(document));
+        when(documentStorage.store(file)).thenReturn(new DocumentStorage.StoredFile("storage-key", "a1b2c3"));
+
+        DocumentUploadResponse response = documentService.updateDocument(16L, file, user);
+
+        assertThat(response.getJobId()).isNull();
+        assertThat(response.getStatus()).isEqualTo(DocumentStatus.COMPLETED.name());
+        assertThat(response.getTotalChunks()).isEqualTo(40);
+        verify(documentStorage).delete("storage-key");
+        verify(ingestionJobService, never()).enqueue(any(), any());
+        verify(documentRepository, never()).save(any());
+    }
+
+    @Test
+    void updateDocument_shouldRejectDocumentStillProcessing() {
+        MultipartFile file = new MockMultipartFile(
+                "file",
+                "manual.pdf",
+                "application/pdf",
+                "Hello World PDF".getBytes()
+        );
+        Document document = Document.builder()
+                .id(17L)
+                .user(user)
+                .filename("manual.pdf")
+                .status(DocumentStatus.PROCESSING)
+                .build();
+
+        when(documentRepository.findById(17L)).thenReturn(Optional.of(document));
+
+        assertThatThrownBy(() -> documentService.updateDocument(17L, file, user))
+                .isInstanceOf(DocumentProcessingException.class)
+                .hasMessageContaining("processamento");
+        verify(documentStorage, never()).store(any());
+    }
+
+    @Test
+    void updateDocument_shouldRejectWhenConcurrentUpdateWonTheLock() {
+        MultipartFile file = new MockMultipartFile(
+                "file",
+                "manual-v2.pdf",
+                "application/pdf",
+                "Hello World PDF v2".getBytes()
+        );
+        Document document = Document.builder()
+                .id(18L)
+                .user(user)
+                .filename("manual.pdf")
+                .contentHash("a1b2c3")
+                .status(DocumentStatus.COMPLETED)
+                .build();
+        // Outro PUT fez commit enquanto este esperava o lock
+        Document locked = Document.builder()
+                .id(18L)
+                .user(user)
+                .filename("manual-v3.pdf")
+                .contentHash("f0f0f0")
+                .status(DocumentStatus.PROCESSING)
+                .build();
+
+        when(documentRepository.findById(18L)).thenReturn(Optional.of(document));
+        when(documentRepository.findByIdForUpdate(18L)).thenReturn(Optional.of(locked));
+        when(documentStorage.store(file)).thenReturn(new DocumentStorage.StoredFile("storage-key", "d4e5f6"));
+
+        assertThatThrownBy(() -> documentService.updateDocument(18L, file, user))
+                .isInstanceOf(DocumentProcessingException.class)
+                .hasMessageContaining("processamento");
+        verify(ingestionJobService, never()).enqueue(any(), any());
+        verify(documentStorage).delete("storage-key");
+    }
+
+    @Test
+    void processDocument_shouldPersistChunksAndMarkCompleted() {
         long documentId = 5L;
         Document document = Document.builder()
                 .id(documentId)
@@ -137,55 +362,349 @@ class DocumentServiceTest {
                 .filename("doc.pdf")
                 .status(DocumentStatus.PROCESSING)
                 .build();
+        IngestionJob job = claimedJob(documentId);
 
         when(documentRepository.findById(documentId)).thenReturn(Optional.of(document));
         when(documentRepository.save(any(Document.class))).thenAnswer(inv -> inv.getArgument(0));
+        stubExtraction("Primeiro trecho aqui. Segundo trecho aqui.");
+
+        when(embeddingService.generateEmbeddings(any())).thenAnswer(inv -> {
+            List<String> texts = inv.getArgument(0);
+            return texts.stream().map(text -> new PGvector(new float[]{1f, 0f})).toList();
+        });
+        when(chunkRepository.copyChunks(any())).thenAnswer(inv -> inv.<List<Chunk>>getArgument(0).size());
+
+        documentService.processDocument(job);
+
+        List<Chunk> saved = copiedChunks(1);
+        assertThat(saved).extracting(Chunk::getContent)
+                .containsExactly("Primeiro trecho aqui.", "Segundo trecho aqui.");
+        assertThat(saved).allMatch(chunk -> user.getId().equals(chunk.getUserId()));
+        verify(chunkRepository, never()).publishChunks(anyLong(), anyLong());
+        assertThat(saved).allMatch(chunk -> chunk.getEmbeddingShort() != null);
+        verify(chunkRepository, never()).save(any());
+        assertThat(meterRegistry.get("helpdesk.ingestion.persist.rows").counter().count()).isEqualTo(2.0);
+        assertThat(meterRegistry.get("helpdesk.ingestion.persist").timer().count()).isEqualTo(1);
+        assertThat(document.getStatus()).isEqualTo(DocumentStatus.COMPLETED);
+        assertThat(document.getTotalChunks()).isEqualTo(2);
+        verify(chunkRepository).deleteByDocumentIdFromChunkIndex(documentId, 0);
+        verify(ingestionJobService).checkpoint(job, 2);
+        verify(ingestionJobService).markCompleted(job, 2);
+        verify(documentStorage).delete("storage-key");
+        verify(eventPublisher).publishEvent(new DocumentService.DocumentIndexedEvent(documentId, user.getId(), 2));
+    }
 
-        List<ChunkingService.ChunkMetadata> chunks = List.of(
-                new ChunkingService.ChunkMetadata("chunk-1 content", 0, 0, 12),
-                new ChunkingService.ChunkMetadata("chunk-2 content", 1, 13, 25)
-        );
-        when(chunkingService.chunkText(any(), any())).thenReturn(chunks);
+    @Test
+    void processDocument_shouldResumeFromCheckpoint() {
+        long documentId = 6L;
+        Document document = Document.builder()
+                .id(documentId)
+                .user(user)
+                .filename("doc.pdf")
+                .status(DocumentStatus.PROCESSING)
+                .build();
+        // Tentativa anterior gravou o chunk 0 antes de cair
+        IngestionJob job = claimedJob(documentId);
+        job.setCheckpointChunkIndex(1);
 
-        List<PGvector> embeddings = List.of(
-                new PGvector(new float[]{1f, 0f}),
-                new PGvector(new float[]{0f, 1f})
-        );
-        when(embeddingService.generateEmbeddings(any())).thenReturn(embeddings);
-        when(chunkRepository.save(any())).thenAnswer(inv -> inv.getArgument(0));
+        when(documentRepository.findById(documentId)).thenReturn(Optional.of(document));
+        when(documentRepository.save(any(Document.class))).thenAnswer(inv -> inv.getArgument(0));
+        stubExtraction("Primeiro trecho aqui. Segundo trecho aqui.");
+
+        List<String> embedded = new java.util.ArrayList<>();
+        when(embeddingService.generateEmbeddings(any())).thenAnswer(inv -> {
+            List<String> texts = inv.getArgument(0);
+            embedded.addAll(texts);
+            return texts.stream().map(text -> new PGvector(new float[]{1f, 0f})).toList();
+        });
+        when(chunkRepository.copyChunks(any())).thenAnswer(inv -> inv.<List<Chunk>>getArgument(0).size());
+
+        documentService.processDocument(job);
+
+        // Só o que vem depois do checkpoint volta à OpenAI e ao banco
+        assertThat(embedded).containsExactly("Segundo trecho aqui.");
+        assertThat(copiedChunks(1)).extracting(Chunk::getChunkIndex).containsExactly(1);
+        assertThat(meterRegistry.get("helpdesk.ingestion.resume.skipped").counter().count()).isEqualTo(1.0);
+        verify(chunkRepository).deleteByDocumentIdFromChunkIndex(documentId, 1);
+        verify(ingestionJobService).checkpoint(job, 2);
+        verify(ingestionJobService).markCompleted(job, 2);
+        assertThat(document.getTotalChunks()).isEqualTo(2);
+    }
 
-        documentService.processDocumentAsync(documentId, "chunk-1 content chunk-2 content");
+    @Test
+    void processDocument_shouldEmbedAndIndexInBatches() {
+        long documentId = 7L;
+        Document document = Document.builder()
+                .id(documentId)
+                .user(user)
+                .filename("doc.pdf")
+                .status(DocumentStatus.PROCESSING)
+                .build();
+        IngestionJob job = claimedJob(documentId);
+        ReflectionTestUtils.setField(documentService, "batchSize", 2);
+
+        when(documentRepository.findById(documentId)).thenReturn(Optional.of(document));
+        when(documentRepository.save(any(Document.class))).thenAnswer(inv -> inv.getArgument(0));
+        stubExtraction("Primeiro trecho aqui. Segundo trecho aqui. Terceiro trecho aqui. Quarto trecho aqui. ");
+
+        List<Integer> batchSizes = new java.util.ArrayList<>();
+        when(embeddingService.generateEmbeddings(any())).thenAnswer(inv -> {
+            List<String> texts = inv.getArgument(0);
+            batchSizes.add(texts.size());
+            return texts.stream().map(text -> new PGvector(new float[]{1f, 0f})).toList();
+        });
+
+        documentService.processDocument(job);
+
+        // Lotes de no máximo batchSize chunks, o último com o restante
+        assertThat(batchSizes).allMatch(size -> size <= 2);
+        assertThat(batchSizes.stream().mapToInt(Integer::intValue).sum()).isEqualTo(document.getTotalChunks());
+        assertThat(batchSizes).hasSizeGreaterThan(1);
+        // Um COPY por lote
+        assertThat(copiedChunks(batchSizes.size())).hasSize(document.getTotalChunks());
+        verify(ingestionJobService).markCompleted(job, document.getTotalChunks());
+    }
+
+    @Test
+    void processDocument_shouldEmbedNextBatchWhilePreviousIsPersisted() {
+        long documentId = 12L;
+        Document document = Document.builder()
+                .id(documentId)
+                .user(user)
+                .filename("doc.pdf")
+                .status(DocumentStatus.PROCESSING)
+                .build();
+        IngestionJob job = claimedJob(documentId);
+        ReflectionTestUtils.setField(documentService, "batchSize", 2);
+
+        when(documentRepository.findById(documentId)).thenReturn(Optional.of(document));
+        when(documentRepository.save(any(Document.class))).thenAnswer(inv -> inv.getArgument(0));
+        stubExtraction("Primeiro trecho aqui. Segundo trecho aqui. Terceiro trecho aqui. Quarto trecho aqui. ");
+
+        AtomicInteger embeddingCalls = new AtomicInteger();
+        CountDownLatch secondBatchEmbedding = new CountDownLatch(1);
+        when(embeddingService.generateEmbeddings(any())).thenAnswer(inv -> {
+            if (embeddingCalls.incrementAndGet() == 2) {
+                secondBatchEmbedding.countDown();
+            }
+            List<String> texts = inv.getArgument(0);
+            return texts.stream().map(text -> new PGvector(new float[]{1f, 0f})).toList();
+        });
+        // Em um fluxo sequencial o segundo lote só seria embedado depois desta gravação terminar
+        AtomicBoolean overlapped = new AtomicBoolean();
+        when(chunkRepository.copyChunks(any())).thenAnswer(inv -> {
+            if (overlapped.compareAndSet(false, true)) {
+                assertThat(secondBatchEmbedding.await(5, TimeUnit.SECONDS)).isTrue();
+            }
+            return inv.<List<Chunk>>getArgument(0).size();
+        });
+
+        documentService.processDocument(job);
+
+        assertThat(embeddingCalls.get()).isGreaterThan(1);
+        assertThat(copiedChunks(embeddingCalls.get())).extracting(Chunk::getChunkIndex)
+                .isSorted()
+                .hasSize(document.getTotalChunks());
+        assertThat(meterRegistry.get("helpdesk.ingestion.first-searchable").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("helpdesk.ingestion.pipeline.queue.depth").tag("queue", "embedding")
+                .gauge().value()).isZero();
+    }
+
+    @Test
+    void processDocument_shouldStopPipelineWhenPersistenceFails() {
+        long documentId = 13L;
+        Document document = Document.builder()
+                .id(documentId)
+                .user(user)
+                .filename("doc.pdf")
+                .status(DocumentStatus.PROCESSING)
+                .build();
+        IngestionJob job = claimedJob(documentId);
+        ReflectionTestUtils.setField(documentService, "batchSize", 1);
+
+        when(documentRepository.findById(documentId)).thenReturn(Optional.of(document));
+        stubExtraction("Primeiro trecho aqui. Segundo trecho aqui. Terceiro trecho aqui. Quarto trecho aqui. ");
+        when(embeddingService.generateEmbeddings(any())).thenAnswer(inv -> {
+            List<String> texts = inv.getArgument(0);
+            return texts.stream().map(text -> new PGvector(new float[]{1f, 0f})).toList();
+        });
+        when(chunkRepository.copyChunks(any())).thenThrow(new IllegalStateException("disk full"));
+
+        assertThatThrownBy(() -> documentService.processDocument(job))
+                .isInstanceOf(DocumentProcessingException.class)
+                .hasRootCauseMessage("disk full");
+
+        verify(chunkRepository, times(1)).copyChunks(any());
+        verify(ingestionJobService, never()).markCompleted(any(), anyInt());
+        verify(documentStorage, never()).delete(any());
+        assertThat(meterRegistry.get("helpdesk.ingestion.pipeline.queue.depth").tag("queue", "embedding")
+                .gauge().value()).isZero();
+        assertThat(meterRegistry.get("helpdesk.ingestion.pipeline.queue.depth").tag("queue", "persistence")
+                .gauge().value()).isZero();
+    }
+
+    @Test
+    void processDocument_shouldReuseEmbeddingsOfIdenticalChunks() {
+        long documentId = 9L;
+        Document document = Document.builder()
+                .id(documentId)
+                .user(user)
+                .filename("doc.pdf")
+                .status(DocumentStatus.PROCESSING)
+                .build();
+        IngestionJob job = claimedJob(documentId);
+        PGvector stored = new PGvector(new float[]{0f, 1f});
+        String knownHash = DocumentService.contentHash(EMBEDDING_MODEL, "Primeiro trecho aqui.");
+
+        when(documentRepository.findById(documentId)).thenReturn(Optional.of(document));
+        when(documentRepository.save(any(Document.class))).thenAnswer(inv -> inv.getArgument(0));
+        stubExtraction("Primeiro trecho aqui. Segundo trecho aqui.");
+        when(chunkRepository.findEmbeddingsByContentHash(eq(user.getId()), any())).thenReturn(Map.of(knownHash, stored));
+        when(embeddingService.generateEmbeddings(any())).thenAnswer(inv -> {
+            List<String> texts = inv.getArgument(0);
+            return texts.stream().map(text -> new PGvector(new float[]{1f, 0f})).toList();
+        });
+
+        documentService.processDocument(job);
+
+        // Só o trecho inédito vai para o modelo
+        verify(embeddingService).generateEmbeddings(List.of("Segundo trecho aqui."));
+        List<Chunk> saved = copiedChunks(1);
+        Chunk reused = saved.get(0);
+        assertThat(reused.getEmbedding()).isEqualTo(stored);
+        assertThat(reused.getContentHash()).isEqualTo(knownHash);
+        assertThat(saved.get(1).getContentHash())
+                .isEqualTo(DocumentService.contentHash(EMBEDDING_MODEL, "Segundo trecho aqui."));
+        // Outro modelo de embedding nunca reaproveita o vetor salvo
+        assertThat(DocumentService.contentHash("text-embedding-3-large", "Primeiro trecho aqui."))
+                .isNotEqualTo(knownHash);
+        assertThat(meterRegistry.get("helpdesk.ingestion.embedding.reuse").tag("result", "hit").counter().count())
+                .isEqualTo(1.0);
+        assertThat(meterRegistry.get("helpdesk.ingestion.embedding.reuse").tag("result", "miss").counter().count())
+                .isEqualTo(1.0);
+        verify(ingestionJobService).markCompleted(job, 2);
+    }
+
+    @Test
+    void processDocument_shouldCloneChunksOfIdenticalDocument() {
+        long documentId = 8L;
+        Document document = Document.builder()
+                .id(documentId)
+                .user(user)
+                .filename("vendor.pdf")
+                .contentHash("a1b2c3")
+                .status(DocumentStatus.PROCESSING)
+                .build();
+        Document indexed = Document.builder()
+                .id(3L)
+                .filename("vendor-copy.pdf")
+                .contentHash("a1b2c3")
+                .status(DocumentStatus.COMPLETED)
+                .build();
+        IngestionJob job = claimedJob(documentId);
+
+        when(documentRepository.findById(documentId)).thenReturn(Optional.of(document));
+        when(documentRepository.save(any(Document.class))).thenAnswer(inv -> inv.getArgument(0));
+        when(documentRepository.findFirstByUserIdAndContentHashAndStatusAndIdNotOrderByIdAsc(
+                user.getId(), "a1b2c3", DocumentStatus.COMPLETED, documentId)).thenReturn(Optional.of(indexed));
+        when(chunkRepository.cloneChunks(3L, documentId, user.getId())).thenReturn(4);
+
+        documentService.processDocument(job);
 
-        verify(chunkRepository, times(2)).save(any());
         assertThat(document.getStatus()).isEqualTo(DocumentStatus.COMPLETED);
-        assertThat(document.getTotalChunks()).isEqualTo(2);
+        assertThat(document.getTotalChunks()).isEqualTo(4);
+        verify(ingestionJobService).markCompleted(job, 4);
+        verify(documentStorage).delete("storage-key");
+        verify(eventPublisher).publishEvent(new DocumentService.DocumentIndexedEvent(documentId, user.getId(), 4));
+        // Sem Tika nem OpenAI
+        verify(documentService, never()).extractText(any(), any());
+        verifyNoInteractions(chunkingService, embeddingService);
+        assertThat(meterRegistry.get("helpdesk.ingestion.dedup.requests").tag("result", "hit").counter().count())
+                .isEqualTo(1.0);
+        assertThat(meterRegistry.get("helpdesk.ingestion.dedup.chunks").counter().count()).isEqualTo(4.0);
     }
 
     @Test
-    void processDocumentAsync_shouldFailWhenEmbeddingsMismatch() {
-        long documentId = 6L;
+    void processDocument_shouldReindexOnlyChangedChunks() {
+        long documentId = 10L;
         Document document = Document.builder()
                 .id(documentId)
                 .user(user)
                 .filename("doc.pdf")
                 .status(DocumentStatus.PROCESSING)
                 .build();
+        IngestionJob job = claimedJob(documentId);
 
+        // Versão anterior: "Primeiro trecho aqui. Trecho antigo removido. Segundo trecho aqui."
+        when(chunkRepository.findByDocumentId(documentId)).thenReturn(List.of(
+                indexedChunk(100L, "Primeiro trecho aqui.", 0, 0, 22),
+                indexedChunk(101L, "Trecho antigo removido.", 1, 22, 46),
+                indexedChunk(102L, "Segundo trecho aqui.", 2, 46, 66)));
         when(documentRepository.findById(documentId)).thenReturn(Optional.of(document));
         when(documentRepository.save(any(Document.class))).thenAnswer(inv -> inv.getArgument(0));
+        stubExtraction("Primeiro trecho aqui. Segundo trecho aqui. Terceiro trecho.");
+        when(embeddingService.generateEmbeddings(any())).thenAnswer(inv -> {
+            List<String> texts = inv.getArgument(0);
+            return texts.stream().map(text -> new PGvector(new float[]{1f, 0f})).toList();
+        });
+        when(chunkRepository.copyChunks(any())).thenAnswer(inv -> inv.<List<Chunk>>getArgument(0).size());
+
+        documentService.processDocument(job);
+
+        // Só o trecho novo vai para a OpenAI e para o banco
+        verify(embeddingService).generateEmbeddings(List.of("Terceiro trecho."));
+        assertThat(copiedChunks(1)).singleElement().satisfies(chunk -> {
+            assertThat(chunk.getChunkIndex()).isEqualTo(2);
+            // Oculto da busca até a troca de versão
+            assertThat(chunk.getUserId()).isNull();
+        });
+        verify(chunkRepository).publishChunks(documentId, user.getId());
+
+        // O chunk mantido que mudou de posição é renumerado; o que sumiu é removido
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Chunk>> moved = ArgumentCaptor.forClass(List.class);
+        verify(chunkRepository).updateChunkPositions(moved.capture());
+        assertThat(moved.getValue()).singleElement().satisfies(chunk -> {
+            assertThat(chunk.getId()).isEqualTo(102L);
+            assertThat(chunk.getChunkIndex()).isEqualTo(1);
+            assertThat(chunk.getMetadata().getStartChar()).isEqualTo(22);
+        });
+        verify(chunkRepository).deleteAllByIdInBatch(List.of(101L));
+        verify(chunkRepository, never()).deleteByDocumentIdFromChunkIndex(anyLong(), anyInt());
+        verify(ingestionJobService, never()).checkpoint(any(), anyInt());
+
+        verify(ingestionJobService).markCompleted(job, 3);
+        assertThat(document.getTotalChunks()).isEqualTo(3);
+        assertThat(meterRegistry.get("helpdesk.ingestion.reindex.chunks").tag("result", "kept").counter().count())
+                .isEqualTo(2.0);
+        assertThat(meterRegistry.get("helpdesk.ingestion.reindex.chunks").tag("result", "removed").counter().count())
+                .isEqualTo(1.0);
+    }
 
-        List<ChunkingService.ChunkMetadata> chunks = List.of(
-                new ChunkingService.ChunkMetadata("only chunk", 0, 0, 10)
-        );
-        when(chunkingService.chunkText(any(), any())).thenReturn(chunks);
+    @Test
+    void processDocument_shouldFailWhenEmbeddingsMismatch() {
+        long documentId = 6L;
+        Document document = Document.builder()
+                .id(documentId)
+                .user(user)
+                .filename("doc.pdf")
+                .status(DocumentStatus.PROCESSING)
+                .build();
+        IngestionJob job = claimedJob(documentId);
+
+        when(documentRepository.findById(documentId)).thenReturn(Optional.of(document));
+        stubExtraction("only chunk");
 
         when(embeddingService.generateEmbeddings(any()))
                 .thenReturn(List.of()); // mismatch size
 
-        assertThatThrownBy(() -> documentService.processDocumentAsync(documentId, "only chunk"))
+        assertThatThrownBy(() -> documentService.processDocument(job))
                 .isInstanceOf(DocumentProcessingException.class);
 
-        assertThat(document.getStatus()).isEqualTo(DocumentStatus.FAILED);
+        // Retentativa ou FAILED definitivo ficam com o IngestionJobService
+        verify(chunkRepository, never()).copyChunks(any());
+        verify(ingestionJobService, never()).markCompleted(any(), anyInt());
+        verify(documentStorage, never()).delete(any());
     }
 
     @Test
@@ -198,11 +717,18 @@ class DocumentServiceTest {
                 .build();
 
         when(documentRepository.findById(11L)).thenReturn(Optional.of(document));
+        when(ingestionJobService.findLatest(11L))
+                .thenReturn(Optional.of(IngestionJob.builder().id(21L).storageKey("pending-key").build()));
 
         documentService.deleteDocument(11L, user.getId());
 
+        verify(ingestionJobService).deleteByDocument(11L);
         verify(chunkRepository).deleteByDocumentId(11L);
         verify(documentRepository).delete(document);
+        // O arquivo só é apagado pelo listener AFTER_COMMIT do DocumentStorage
+        verify(documentStorage, never()).delete(any());
+        verify(eventPublisher).publishEvent(
+                new DocumentService.DocumentDeletedEvent(11L, user.getId(), "pending-key"));
     }
 
     @Test
@@ -222,10 +748,109 @@ class DocumentServiceTest {
     }
 
     @Test
-    void processDocumentAsync_shouldRaiseWhenDocumentNotFound() {
+    void retryDocument_shouldRequeueFailedDocument() {
+        Document document = Document.builder()
+                .id(13L)
+                .user(user)
+                .filename("doc.pdf")
+                .status(DocumentStatus.FAILED)
+                .build();
+        IngestionJob job = claimedJob(13L);
+        job.setStatus(IngestionJob.JobStatus.QUEUED);
+        job.setCheckpointChunkIndex(100);
+
+        when(documentRepository.findById(13L)).thenReturn(Optional.of(document));
+        when(ingestionJobService.retry(13L)).thenReturn(job);
+
+        IngestionJobDTO dto = documentService.retryDocument(13L, user.getId());
+
+        assertThat(dto.getStatus()).isEqualTo("QUEUED");
+        assertThat(dto.getCheckpointChunkIndex()).isEqualTo(100);
+    }
+
+    @Test
+    void retryDocument_shouldRejectDocumentThatHasNotFailed() {
+        Document document = Document.builder()
+                .id(14L)
+                .user(user)
+                .filename("doc.pdf")
+                .status(DocumentStatus.COMPLETED)
+                .build();
+
+        when(documentRepository.findById(14L)).thenReturn(Optional.of(document));
+
+        assertThatThrownBy(() -> documentService.retryDocument(14L, user.getId()))
+                .isInstanceOf(DocumentProcessingException.class)
+                .hasMessageContaining("falha");
+        verify(ingestionJobService, never()).retry(any());
+    }
+
+    @Test
+    void processDocument_shouldRaiseWhenDocumentNotFound() {
         when(documentRepository.findById(anyLong())).thenReturn(Optional.empty());
 
-        assertThatThrownBy(() -> documentService.processDocumentAsync(999L, "text"))
+        assertThatThrownBy(() -> documentService.processDocument(claimedJob(999L)))
                 .isInstanceOf(DocumentProcessingException.class);
     }
+
+    /**
+     * Chunking real com chunks de ~20 chars; o "PDF" entrega o texto ao chunker em pedaços pequenos,
+     * como o handler SAX do Tika.
+     */
+    private void stubExtraction(String text) {
+        ChunkingService chunking = new ChunkingService();
+        ReflectionTestUtils.setField(chunking, "defaultChunkSize", 5);
+        ReflectionTestUtils.setField(chunking, "overlapSize", 0);
+        ReflectionTestUtils.setField(chunking, "minChunkSize", 1);
+        ReflectionTestUtils.setField(chunking, "maxChunkSize", 10);
+        ReflectionTestUtils.setField(chunking, "tokensPerChar", 4);
+        when(chunkingService.newChunker(any(), any()))
+                .thenAnswer(inv -> chunking.newChunker(inv.getArgument(0), inv.getArgument(1)));
+
+        when(documentStorage.open("storage-key")).thenReturn(new ByteArrayInputStream(new byte[0]));
+        doAnswer(inv -> {
+            Writer out = inv.getArgument(1);
+            for (int i = 0; i < text.length(); i += 7) {
+                out.write(text, i, Math.min(7, text.length() - i));
+            }
+            return null;
+        }).when(documentService).extractText(any(), any());
+    }
+
+    private static Chunk indexedChunk(Long id, String content, int chunkIndex, int startChar, int endChar) {
+        Chunk.ChunkMetadata metadata = new Chunk.ChunkMetadata();
+        metadata.setStartChar(startChar);
+        metadata.setEndChar(endChar);
+        metadata.setDocumentType("PDF");
+        return Chunk.builder()
+                .id(id)
+                .content(content)
+                .contentHash(DocumentService.contentHash(EMBEDDING_MODEL, content))
+                .chunkIndex(chunkIndex)
+                .metadata(metadata)
+                .build();
+    }
+
+    /**
+     * Chunks gravados via copyChunks, na ordem, conferindo o número de lotes.
+     */
+    @SuppressWarnings("unchecked")
+    private List<Chunk> copiedChunks(int batches) {
+        ArgumentCaptor<List<Chunk>> captor = ArgumentCaptor.forClass(List.class);
+        verify(chunkRepository, times(batches)).copyChunks(captor.capture());
+        return captor.getAllValues().stream().flatMap(List::stream).toList();
+    }
+
+    private IngestionJob claimedJob(Long documentId) {
+        return IngestionJob.builder()
+                .id(documentId * 10)
+                .documentId(documentId)
+                .userId(user.getId())
+                .storageKey("storage-key")
+                .status(IngestionJob.JobStatus.RUNNING)
+                .stage(IngestionJob.Stage.QUEUED)
+                .attempts(1)
+                .lockedBy("node/Ingestion-1")
+                .build();
+    }
 }
@@ -0,0 +1,63 @@
+package com.helpdeskai.service;
+
+import com.helpdeskai.exception.DocumentProcessingException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("DocumentStorage Unit Tests")
+class DocumentStorageTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("Should store the file and compute its SHA-256 in the same pass")
+    void testStore_ComputesSha256() throws Exception {
+        DocumentStorage storage = new DocumentStorage(directory.toString());
+        byte[] content = "abc".getBytes(StandardCharsets.UTF_8);
+
+        DocumentStorage.StoredFile stored = storage.store(
+                new MockMultipartFile("file", "abc.pdf", "application/pdf", content));
+
+        assertThat(stored.contentHash())
+                .isEqualTo("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad");
+        try (InputStream in = storage.open(stored.key())) {
+            assertThat(in.readAllBytes()).isEqualTo(content);
+        }
+
+        storage.delete(stored.key());
+        assertThatThrownBy(() -> storage.open(stored.key())).isInstanceOf(DocumentProcessingException.class);
+    }
+
+    @Test
+    @DisplayName("Should delete the stored file of a deleted document")
+    void testOnDocumentDeleted_DeletesFile() throws Exception {
+        DocumentStorage storage = new DocumentStorage(directory.toString());
+        DocumentStorage.StoredFile stored = storage.store(
+                new MockMultipartFile("file", "abc.pdf", "application/pdf", "abc".getBytes(StandardCharsets.UTF_8)));
+
+        storage.onDocumentDeleted(new DocumentService.DocumentDeletedEvent(1L, 1L, stored.key()));
+        storage.onDocumentDeleted(new DocumentService.DocumentDeletedEvent(2L, 1L, null));
+
+        assertThatThrownBy(() -> storage.open(stored.key())).isInstanceOf(DocumentProcessingException.class);
+    }
+
+    @Test
+    @DisplayName("Should reject keys outside the storage directory")
+    void testOpen_RejectsPathTraversal() {
+        DocumentStorage storage = new DocumentStorage(directory.resolve("uploads").toString());
+
+        assertThatThrownBy(() -> storage.open("../secret.pdf"))
+                .isInstanceOf(DocumentProcessingException.class)
+                .hasMessageContaining("inválida");
+    }
+}
@@ -2,20 +2,26 @@ package com.helpdeskai.service;
 
 import com.helpdeskai.exception.EmbeddingException;
 import com.pgvector.PGvector;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.ai.embedding.Embedding;
 import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -32,7 +38,10 @@ class EmbeddingServiceTest {
     @Mock
     private EmbeddingModel embeddingModel;
 
-    @InjectMocks
+    private SimpleMeterRegistry meterRegistry;
+
+    private final TokenCounter tokenCounter = new TokenCounter("text-embedding-3-small");
+
     private EmbeddingService embeddingService;
 
     private float[] mockEmbedding;
@@ -40,6 +49,12 @@ class EmbeddingServiceTest {
 
     @BeforeEach
     void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        embeddingService = new EmbeddingService(embeddingModel,
+                new EmbeddingCache(meterRegistry, "text-embedding-3-small", 100, 60),
+                tokenCounter, Runnable::run);
+        ReflectionTestUtils.setField(embeddingService, "retryBackoffMs", 1L);
+
         // Create a mock embedding vector (1536 dimensions for text-embedding-3-small)
         mockEmbedding = new float[1536];
         for (int i = 0; i < mockEmbedding.length; i++) {
@@ -274,7 +289,8 @@ class EmbeddingServiceTest {
                 .isInstanceOf(EmbeddingException.class)
                 .hasMessageContaining("geração de embeddings em batch");
 
-        verify(embeddingModel).embedForResponse(anyList());
+        // Cada tentativa do sub-lote chama a API
+        verify(embeddingModel, times(3)).embedForResponse(anyList());
     }
 
     @Test
@@ -290,7 +306,43 @@ class EmbeddingServiceTest {
                 .isInstanceOf(EmbeddingException.class)
                 .hasMessageContaining("geração de embeddings em batch");
 
-        verify(embeddingModel).embedForResponse(anyList());
+        // Cada tentativa do sub-lote chama a API
+        verify(embeddingModel, times(3)).embedForResponse(anyList());
+    }
+
+    @Test
+    @DisplayName("Should retry a sub-batch when the API returns fewer embeddings than texts")
+    void testGenerateEmbeddings_ResultCountMismatch() {
+        // Arrange
+        List<String> texts = Arrays.asList("Text 1", "Text 2");
+        EmbeddingResponse truncated = new EmbeddingResponse(List.of(new Embedding(mockEmbedding, 0)));
+        EmbeddingResponse complete = new EmbeddingResponse(List.of(
+                new Embedding(mockEmbedding, 0), new Embedding(mockEmbedding, 1)));
+        when(embeddingModel.embedForResponse(anyList())).thenReturn(truncated, complete);
+
+        // Act
+        List<PGvector> results = embeddingService.generateEmbeddings(texts);
+
+        // Assert
+        assertThat(results).hasSize(2);
+        verify(embeddingModel, times(2)).embedForResponse(anyList());
+    }
+
+    @Test
+    @DisplayName("Should fail when every attempt returns fewer embeddings than texts")
+    void testGenerateEmbeddings_ResultCountMismatchExhaustsRetries() {
+        // Arrange
+        List<String> texts = Arrays.asList("Text 1", "Text 2");
+        mockResponse = new EmbeddingResponse(List.of(new Embedding(mockEmbedding, 0)));
+        when(embeddingModel.embedForResponse(anyList())).thenReturn(mockResponse);
+
+        // Act & Assert
+        assertThatThrownBy(() -> embeddingService.generateEmbeddings(texts))
+                .isInstanceOf(EmbeddingException.class)
+                .hasMessageContaining("geração de embeddings em batch")
+                .hasRootCauseMessage("Resposta de embeddings com 1 vetores para 2 textos");
+
+        verify(embeddingModel, times(3)).embedForResponse(anyList());
     }
 
     // ===========================
@@ -386,4 +438,177 @@ class EmbeddingServiceTest {
         assertThat(results).hasSize(10);
         verify(embeddingModel).embedForResponse(anyList());
     }
+
+    @Test
+    @DisplayName("Should truncate embedding to a renormalized Matryoshka prefix")
+    void testToShortEmbedding() {
+        // Arrange
+        float[] full = new float[1536];
+        full[0] = 3f;
+        full[1] = 4f;
+        full[1000] = 100f; // Fora do prefixo: não entra na norma
+
+        // Act
+        float[] shortEmbedding = EmbeddingService.toShortEmbedding(new PGvector(full)).toArray();
+
+        // Assert
+        assertThat(shortEmbedding).hasSize(EmbeddingService.SHORT_DIMENSIONS);
+        assertThat(shortEmbedding[0]).isCloseTo(0.6f, within(1e-6f));
+        assertThat(shortEmbedding[1]).isCloseTo(0.8f, within(1e-6f));
+        assertThat(EmbeddingService.toShortEmbedding(null)).isNull();
+    }
+
+    // ===========================
+    // Sub-batch Tests
+    // ===========================
+
+    @Test
+    @DisplayName("Should split batches by input count and token budget")
+    void testSplit_RespectsInputAndTokenLimits() {
+        // Arrange
+        ReflectionTestUtils.setField(embeddingService, "maxInputs", 3);
+        String longText = "O agente de suporte sincroniza os tickets com o servidor central. ".repeat(10);
+        ReflectionTestUtils.setField(embeddingService, "maxTokens", tokenCounter.count(longText));
+
+        // Act
+        List<List<String>> subBatches = embeddingService.split(
+                List.of("a", "b", "c", "d", longText, "e", "f", longText));
+
+        // Assert
+        assertThat(subBatches).containsExactly(
+                List.of("a", "b", "c"),
+                List.of("d"),
+                List.of(longText),
+                List.of("e", "f"),
+                List.of(longText));
+    }
+
+    @Test
+    @DisplayName("Should dispatch sub-batches concurrently and keep results in input order")
+    void testGenerateEmbeddings_ParallelSubBatchesKeepOrder() throws Exception {
+        // Arrange
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            EmbeddingService parallelService = new EmbeddingService(embeddingModel,
+                    new EmbeddingCache(meterRegistry, "text-embedding-3-small", 100, 60), tokenCounter, executor);
+            ReflectionTestUtils.setField(parallelService, "maxInputs", 2);
+            ReflectionTestUtils.setField(parallelService, "parallelism", 3);
+
+            AtomicInteger inFlight = new AtomicInteger();
+            AtomicInteger maxInFlight = new AtomicInteger();
+            when(embeddingModel.embedForResponse(anyList())).thenAnswer(invocation -> {
+                List<String> batch = invocation.getArgument(0);
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                // Sub-lotes iniciais terminam por último
+                Thread.sleep(80L - 10L * Integer.parseInt(batch.get(0)));
+                inFlight.decrementAndGet();
+                List<Embedding> results = new ArrayList<>();
+                for (int i = 0; i < batch.size(); i++) {
+                    results.add(new Embedding(new float[]{Float.parseFloat(batch.get(i)), 1f}, i));
+                }
+                return new EmbeddingResponse(results);
+            });
+
+            List<String> texts = IntStream.range(0, 7).mapToObj(String::valueOf).toList();
+
+            // Act
+            List<PGvector> results = parallelService.generateEmbeddings(texts);
+
+            // Assert
+            assertThat(results).extracting(vector -> (int) vector.toArray()[0]).containsExactly(0, 1, 2, 3, 4, 5, 6);
+            verify(embeddingModel, times(4)).embedForResponse(anyList());
+            assertThat(maxInFlight.get()).isBetween(2, 3);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Should fail the whole batch when one sub-batch fails")
+    void testGenerateEmbeddings_SubBatchFailure() {
+        // Arrange
+        ReflectionTestUtils.setField(embeddingService, "maxInputs", 1);
+        when(embeddingModel.embedForResponse(anyList()))
+                .thenReturn(new EmbeddingResponse(List.of(new Embedding(mockEmbedding, 0))))
+                .thenThrow(new RuntimeException("502 Bad Gateway"));
+
+        // Act & Assert
+        assertThatThrownBy(() -> embeddingService.generateEmbeddings(List.of("Text 1", "Text 2", "Text 3")))
+                .isInstanceOf(EmbeddingException.class)
+                .hasMessageContaining("geração de embeddings em batch");
+    }
+
+    @Test
+    @DisplayName("Should retry only the sub-batch that failed")
+    void testGenerateEmbeddings_RetriesFailedSubBatchOnly() {
+        // Arrange
+        ReflectionTestUtils.setField(embeddingService, "maxInputs", 1);
+        AtomicInteger secondBatchCalls = new AtomicInteger();
+        when(embeddingModel.embedForResponse(anyList())).thenAnswer(invocation -> {
+            List<String> batch = invocation.getArgument(0);
+            if (batch.get(0).equals("Text 2") && secondBatchCalls.incrementAndGet() == 1) {
+                throw new RuntimeException("502 Bad Gateway");
+            }
+            return new EmbeddingResponse(List.of(new Embedding(mockEmbedding, 0)));
+        });
+
+        // Act
+        List<PGvector> results = embeddingService.generateEmbeddings(List.of("Text 1", "Text 2", "Text 3"));
+
+        // Assert
+        assertThat(results).hasSize(3);
+        assertThat(secondBatchCalls.get()).isEqualTo(2);
+        verify(embeddingModel, times(4)).embedForResponse(anyList());
+    }
+
+    // ===========================
+    // Cache Tests
+    // ===========================
+
+    @Test
+    @DisplayName("Should serve repeated question from cache without calling the model")
+    void testGenerateEmbedding_CacheHit() {
+        // Arrange
+        Embedding embedding = new Embedding(mockEmbedding, 0);
+        mockResponse = new EmbeddingResponse(Collections.singletonList(embedding));
+        when(embeddingModel.embedForResponse(anyList())).thenReturn(mockResponse);
+
+        // Act
+        PGvector first = embeddingService.generateEmbedding("Como resetar minha senha?");
+        PGvector second = embeddingService.generateEmbedding("  Como resetar   minha senha? ");
+
+        // Assert
+        assertThat(second.toArray()).containsExactly(first.toArray());
+        verify(embeddingModel, times(1)).embedForResponse(anyList());
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "embeddings").tag("result", "hit")
+                .functionCounter().count()).isEqualTo(1.0);
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "embeddings").tag("result", "miss")
+                .functionCounter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    @DisplayName("Should not cache failed embedding requests")
+    void testGenerateEmbedding_FailureNotCached() {
+        // Arrange
+        Embedding embedding = new Embedding(mockEmbedding, 0);
+        when(embeddingModel.embedForResponse(anyList()))
+                .thenThrow(new RuntimeException("API timeout"))
+                .thenReturn(new EmbeddingResponse(Collections.singletonList(embedding)));
+
+        // Act & Assert
+        assertThatThrownBy(() -> embeddingService.generateEmbedding("Pergunta"))
+                .isInstanceOf(EmbeddingException.class);
+        assertThat(embeddingService.generateEmbedding("Pergunta").toArray()).hasSize(1536);
+        verify(embeddingModel, times(2)).embedForResponse(anyList());
+    }
+
+    @Test
+    @DisplayName("Should key cache entries by model and normalized text hash")
+    void testCacheKey() {
+        String key = EmbeddingCache.key("text-embedding-3-small", "Olá\n  mundo ");
+
+        assertThat(key).isEqualTo(EmbeddingCache.key("text-embedding-3-small", "Olá mundo"));
+        assertThat(key).startsWith("text-embedding-3-small:").doesNotContain("mundo");
+        assertThat(key).isNotEqualTo(EmbeddingCache.key("text-embedding-3-large", "Olá mundo"));
+    }
 }
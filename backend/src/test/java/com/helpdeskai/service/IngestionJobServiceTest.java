@@ -0,0 +1,177 @@
+package com.helpdeskai.service;
+
+import com.helpdeskai.entity.Document;
+import com.helpdeskai.entity.Document.DocumentStatus;
+import com.helpdeskai.entity.IngestionJob;
+import com.helpdeskai.entity.IngestionJob.JobStatus;
+import com.helpdeskai.entity.IngestionJob.Stage;
+import com.helpdeskai.exception.DocumentProcessingException;
+import com.helpdeskai.repository.DocumentRepository;
+import com.helpdeskai.repository.IngestionJobRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("IngestionJobService Unit Tests")
+class IngestionJobServiceTest {
+
+    @Mock
+    private IngestionJobRepository jobRepository;
+
+    @Mock
+    private DocumentRepository documentRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @InjectMocks
+    private IngestionJobService jobService;
+
+    @Test
+    @DisplayName("Should claim the next queued job and count the attempt")
+    void testClaimNext_MarksRunning() {
+        IngestionJob job = job(JobStatus.QUEUED, 0, null);
+        when(jobRepository.findNextClaimableId(any())).thenReturn(Optional.of(1L));
+        when(jobRepository.findById(1L)).thenReturn(Optional.of(job));
+        when(jobRepository.save(job)).thenReturn(job);
+
+        Optional<IngestionJob> claimed = jobService.claimNext("node-a/Ingestion-1");
+
+        assertThat(claimed).containsSame(job);
+        assertThat(job.getStatus()).isEqualTo(JobStatus.RUNNING);
+        assertThat(job.getAttempts()).isEqualTo(1);
+        assertThat(job.getLockedBy()).isEqualTo("node-a/Ingestion-1");
+        assertThat(job.getLockedAt()).isNotNull();
+    }
+
+    @Test
+    @DisplayName("Should requeue a failed job while attempts remain")
+    void testMarkFailed_Requeues() {
+        IngestionJob job = job(JobStatus.RUNNING, 1, "node-a/Ingestion-1");
+        when(jobRepository.findById(1L)).thenReturn(Optional.of(job));
+
+        jobService.markFailed(snapshot(job), new DocumentProcessingException(7L, "Erro no processamento",
+                new IllegalStateException("timeout da OpenAI")));
+
+        assertThat(job.getStatus()).isEqualTo(JobStatus.QUEUED);
+        assertThat(job.getLockedBy()).isNull();
+        assertThat(job.getLastError()).contains("timeout da OpenAI");
+        verify(eventPublisher).publishEvent(new IngestionJobService.IngestionJobQueuedEvent(1L));
+        verify(documentRepository, never()).save(any());
+    }
+
+    @Test
+    @DisplayName("Should fail job and document once attempts are exhausted")
+    void testMarkFailed_ExhaustedAttempts() {
+        IngestionJob job = job(JobStatus.RUNNING, 3, "node-a/Ingestion-1");
+        job.setCheckpointChunkIndex(200);
+        Document document = Document.builder().id(7L).status(DocumentStatus.PROCESSING).build();
+        when(jobRepository.findById(1L)).thenReturn(Optional.of(job));
+        when(documentRepository.findById(7L)).thenReturn(Optional.of(document));
+
+        jobService.markFailed(snapshot(job), new IllegalStateException("PDF corrompido"));
+
+        assertThat(job.getStatus()).isEqualTo(JobStatus.FAILED);
+        assertThat(job.getFinishedAt()).isNotNull();
+        assertThat(document.getStatus()).isEqualTo(DocumentStatus.FAILED);
+        // Lotes gravados ficam para o retry continuar do checkpoint
+        assertThat(job.getCheckpointChunkIndex()).isEqualTo(200);
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    @DisplayName("Should advance the checkpoint together with the indexed counter")
+    void testCheckpoint_AdvancesIndexedChunks() {
+        IngestionJob job = job(JobStatus.RUNNING, 1, "node-a/Ingestion-1");
+        when(jobRepository.findById(1L)).thenReturn(Optional.of(job));
+
+        jobService.checkpoint(snapshot(job), 300);
+
+        assertThat(job.getCheckpointChunkIndex()).isEqualTo(300);
+        assertThat(job.getChunksIndexed()).isEqualTo(300);
+        assertThat(job.getLockedAt()).isNotNull();
+        verify(jobRepository).save(job);
+    }
+
+    @Test
+    @DisplayName("Retry should requeue a failed job with fresh attempts and keep its checkpoint")
+    void testRetry_RequeuesFailedJob() {
+        IngestionJob job = job(JobStatus.FAILED, 3, null);
+        job.setCheckpointChunkIndex(200);
+        Document document = Document.builder().id(7L).status(DocumentStatus.FAILED).build();
+        when(jobRepository.findFirstByDocumentIdOrderByIdDesc(7L)).thenReturn(Optional.of(job));
+        when(documentRepository.findById(7L)).thenReturn(Optional.of(document));
+
+        IngestionJob retried = jobService.retry(7L);
+
+        assertThat(retried.getStatus()).isEqualTo(JobStatus.QUEUED);
+        assertThat(retried.getAttempts()).isZero();
+        assertThat(retried.getFinishedAt()).isNull();
+        assertThat(retried.getCheckpointChunkIndex()).isEqualTo(200);
+        assertThat(document.getStatus()).isEqualTo(DocumentStatus.PROCESSING);
+        verify(eventPublisher).publishEvent(new IngestionJobService.IngestionJobQueuedEvent(1L));
+    }
+
+    @Test
+    @DisplayName("Retry should reject a job that has not failed")
+    void testRetry_RejectsRunningJob() {
+        IngestionJob job = job(JobStatus.RUNNING, 1, "node-a/Ingestion-1");
+        when(jobRepository.findFirstByDocumentIdOrderByIdDesc(7L)).thenReturn(Optional.of(job));
+
+        assertThatThrownBy(() -> jobService.retry(7L))
+                .isInstanceOf(DocumentProcessingException.class);
+
+        assertThat(job.getStatus()).isEqualTo(JobStatus.RUNNING);
+        verify(jobRepository, never()).save(any());
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    @DisplayName("A worker whose job was reclaimed must not change it")
+    void testReclaimedJob_IsNotTouched() {
+        IngestionJob job = job(JobStatus.RUNNING, 2, "node-b/Ingestion-1");
+        when(jobRepository.findById(1L)).thenReturn(Optional.of(job));
+        IngestionJob staleSnapshot = snapshot(job);
+        staleSnapshot.setLockedBy("node-a/Ingestion-1");
+
+        jobService.markFailed(staleSnapshot, new IllegalStateException("falha"));
+        assertThatThrownBy(() -> jobService.markCompleted(staleSnapshot, 3))
+                .isInstanceOf(DocumentProcessingException.class)
+                .hasMessageContaining("outro worker");
+
+        assertThat(job.getStatus()).isEqualTo(JobStatus.RUNNING);
+        assertThat(job.getStage()).isEqualTo(Stage.EMBEDDING);
+        verify(jobRepository, never()).save(any());
+    }
+
+    private static IngestionJob job(JobStatus status, int attempts, String lockedBy) {
+        return IngestionJob.builder()
+                .id(1L)
+                .documentId(7L)
+                .userId(3L)
+                .storageKey("storage-key")
+                .status(status)
+                .stage(status == JobStatus.QUEUED ? Stage.QUEUED : Stage.EMBEDDING)
+                .attempts(attempts)
+                .lockedBy(lockedBy)
+                .build();
+    }
+
+    private static IngestionJob snapshot(IngestionJob job) {
+        return job(job.getStatus(), job.getAttempts(), job.getLockedBy());
+    }
+}
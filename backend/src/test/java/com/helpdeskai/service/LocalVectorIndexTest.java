@@ -0,0 +1,225 @@
+package com.helpdeskai.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Unit tests for LocalVectorIndex.
+ * Tests exact and graph search, tenant filtering and deletes.
+ */
+@DisplayName("LocalVectorIndex Unit Tests")
+class LocalVectorIndexTest {
+
+    private static final int DIMENSIONS = 16;
+
+    @TempDir
+    Path tempDir;
+
+    private LocalVectorIndex index;
+
+    private final Random random = new Random(7);
+
+    @BeforeEach
+    void setUp() {
+        index = new LocalVectorIndex(null, null);
+        ReflectionTestUtils.setField(index, "directory", tempDir.toString());
+        ReflectionTestUtils.setField(index, "m", 8);
+        ReflectionTestUtils.setField(index, "efConstruction", 64);
+        ReflectionTestUtils.setField(index, "efSearch", 32);
+        ReflectionTestUtils.setField(index, "exactSearchThreshold", 100);
+        ReflectionTestUtils.setField(index, "vectorsPerSegment", 256);
+        ReflectionTestUtils.setField(index, "compactDeletedRatio", 0.3);
+    }
+
+    @AfterEach
+    void tearDown() {
+        index.destroy();
+    }
+
+    @Test
+    @DisplayName("Should return cosine distance and respect max distance")
+    void testSearch_ExactDistances() {
+        index.add(1L, 10L, 1L, new float[]{1f, 0f});
+        index.add(2L, 10L, 1L, new float[]{1f, 1f});
+        index.add(3L, 10L, 1L, new float[]{0f, 1f});
+
+        List<LocalVectorIndex.Hit> hits = index.search(new float[]{2f, 0f}, 1L, 5, 0.5);
+
+        assertThat(hits).extracting(LocalVectorIndex.Hit::chunkId).containsExactly(1L, 2L);
+        assertThat(hits.get(0).distance()).isCloseTo(0.0, within(1e-6));
+        assertThat(hits.get(1).distance()).isCloseTo(1 - Math.sqrt(0.5), within(1e-6));
+    }
+
+    @Test
+    @DisplayName("Should only return chunks from the requested tenant")
+    void testSearch_TenantIsolation() {
+        for (long id = 1; id <= 500; id++) {
+            index.add(id, id % 5, id % 2 == 0 ? 1L : 2L, randomVector());
+        }
+
+        List<LocalVectorIndex.Hit> hits = index.search(randomVector(), 1L, 10, 2.0);
+
+        assertThat(hits).hasSize(10);
+        assertThat(hits).allMatch(hit -> hit.chunkId() % 2 == 0);
+    }
+
+    @Test
+    @DisplayName("Graph search should find most of the exact nearest neighbors")
+    void testSearch_GraphRecall() {
+        List<float[]> vectors = new ArrayList<>();
+        for (long id = 0; id < 1000; id++) {
+            float[] vector = randomVector();
+            vectors.add(vector);
+            index.add(id, 1L, 1L, vector);
+        }
+
+        float[] query = randomVector();
+        List<Long> exact = new ArrayList<>();
+        for (long id = 0; id < vectors.size(); id++) {
+            exact.add(id);
+        }
+        exact.sort(Comparator.comparingDouble(id -> cosineDistance(query, vectors.get(id.intValue()))));
+
+        List<Long> found = index.search(query, 1L, 10, 2.0).stream()
+                .map(LocalVectorIndex.Hit::chunkId)
+                .toList();
+
+        long matches = found.stream().filter(exact.subList(0, 10)::contains).count();
+        assertThat(matches).isGreaterThanOrEqualTo(8);
+    }
+
+    @Test
+    @DisplayName("Should stop returning chunks of deleted documents")
+    void testRemoveDocument() {
+        index.add(1L, 10L, 1L, new float[]{1f, 0f});
+        index.add(2L, 20L, 1L, new float[]{0.9f, 0.1f});
+
+        index.removeDocument(10L);
+
+        assertThat(index.search(new float[]{1f, 0f}, 1L, 5, 2.0))
+                .extracting(LocalVectorIndex.Hit::chunkId)
+                .containsExactly(2L);
+        assertThat(index.size()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("A late add must not bring back a deleted document")
+    void testAddAfterRemoveDocument() {
+        index.add(1L, 10L, 1L, new float[]{1f, 0f});
+
+        index.removeDocument(10L);
+        index.add(2L, 10L, 1L, new float[]{0.9f, 0.1f});
+
+        assertThat(index.search(new float[]{1f, 0f}, 1L, 5, 2.0)).isEmpty();
+        assertThat(index.size()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should reuse the index directory and discard segments of a previous run")
+    void testReusesDirectory() throws Exception {
+        Path stale = Files.writeString(tempDir.resolve("segment-00042.vec"), "stale");
+
+        index.add(1L, 10L, 1L, new float[]{1f, 0f});
+
+        assertThat(stale).doesNotExist();
+        assertThat(tempDir.resolve("segment-00000.vec")).exists();
+        try (var entries = Files.list(tempDir)) {
+            assertThat(entries.filter(Files::isDirectory)).isEmpty();
+        }
+    }
+
+    @Test
+    @DisplayName("Incremental reindex should drop only the chunks no longer in the document")
+    void testRetainDocumentChunks() {
+        index.add(1L, 10L, 1L, new float[]{1f, 0f});
+        index.add(2L, 10L, 1L, new float[]{0.9f, 0.1f});
+        index.add(3L, 10L, 1L, new float[]{0.8f, 0.2f});
+
+        index.retainDocumentChunks(10L, Set.of(1L, 3L));
+
+        assertThat(index.search(new float[]{1f, 0f}, 1L, 5, 2.0))
+                .extracting(LocalVectorIndex.Hit::chunkId)
+                .containsExactly(1L, 3L);
+        assertThat(index.size()).isEqualTo(2);
+
+        index.removeDocument(10L);
+        assertThat(index.size()).isZero();
+    }
+
+    @Test
+    @DisplayName("A late add must not bring back a chunk replaced by an incremental reindex")
+    void testAddAfterRetainDocumentChunks() {
+        index.add(1L, 10L, 1L, new float[]{1f, 0f});
+        index.add(2L, 10L, 1L, new float[]{0.9f, 0.1f});
+
+        index.retainDocumentChunks(10L, Set.of(1L));
+        // Linha antiga ainda no snapshot do startup
+        index.add(2L, 10L, 1L, new float[]{0.9f, 0.1f});
+
+        assertThat(index.search(new float[]{1f, 0f}, 1L, 5, 2.0))
+                .extracting(LocalVectorIndex.Hit::chunkId)
+                .containsExactly(1L);
+        assertThat(index.size()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should rebuild graph and segments once the deleted fraction passes the threshold")
+    void testCompaction() throws Exception {
+        for (long id = 1; id <= 10; id++) {
+            index.add(id, id, 1L, randomVector());
+        }
+
+        index.removeDocument(1L);
+        index.removeDocument(2L);
+        // 20% removidos: abaixo do threshold, os nós continuam ocupando o segmento
+        assertThat(ReflectionTestUtils.getField(index, "size")).isEqualTo(10);
+        assertThat(tempDir.resolve("segment-00000.vec")).exists();
+
+        index.removeDocument(3L);
+
+        assertThat(ReflectionTestUtils.getField(index, "size")).isEqualTo(7);
+        assertThat(tempDir.resolve("segment-00000.vec")).doesNotExist();
+        assertThat(tempDir.resolve("segment-c1-00000.vec")).exists();
+        assertThat(index.size()).isEqualTo(7);
+        assertThat(index.search(randomVector(), 1L, 10, 2.0))
+                .extracting(LocalVectorIndex.Hit::chunkId)
+                .containsExactlyInAnyOrder(4L, 5L, 6L, 7L, 8L, 9L, 10L);
+
+        // Compactação não ressuscita nada removido antes dela
+        index.add(2L, 2L, 1L, randomVector());
+        assertThat(index.size()).isEqualTo(7);
+    }
+
+    private float[] randomVector() {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = random.nextFloat() - 0.5f;
+        }
+        return vector;
+    }
+
+    private static double cosineDistance(float[] a, float[] b) {
+        double dot = 0, normA = 0, normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return 1 - dot / (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+}
@@ -0,0 +1,115 @@
+package com.helpdeskai.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for QuantizedIndexService.
+ * Tests creation of the quantized HNSW expression index.
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("QuantizedIndexService Unit Tests")
+class QuantizedIndexServiceTest {
+
+    private static final String DROP_FULL_INDEX = "DROP INDEX CONCURRENTLY IF EXISTS chunks_embedding_idx";
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private QuantizedIndexService quantizedIndexService;
+
+    @BeforeEach
+    void setUp() {
+        quantizedIndexService = new QuantizedIndexService(jdbcTemplate);
+        ReflectionTestUtils.setField(quantizedIndexService, "dropFullIndex", true);
+    }
+
+    @Test
+    @DisplayName("Should only ensure the float32 index without quantization")
+    void testEnsureQuantizedIndex_None() {
+        ReflectionTestUtils.setField(quantizedIndexService, "quantizationMode", "none");
+
+        assertThat(quantizedIndexService.ensureQuantizedIndex()).isFalse();
+
+        verify(jdbcTemplate).execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS chunks_embedding_idx"
+                + " ON chunks USING hnsw (embedding vector_cosine_ops)");
+        verify(jdbcTemplate, never()).execute(DROP_FULL_INDEX);
+    }
+
+    @Test
+    @DisplayName("Should create halfvec expression index")
+    void testEnsureQuantizedIndex_Halfvec() {
+        ReflectionTestUtils.setField(quantizedIndexService, "quantizationMode", "halfvec");
+        indexValid("chunks_embedding_halfvec_idx", true);
+
+        assertThat(quantizedIndexService.ensureQuantizedIndex()).isTrue();
+
+        verify(jdbcTemplate).execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS chunks_embedding_halfvec_idx"
+                + " ON chunks USING hnsw (((embedding)::halfvec(1536)) halfvec_cosine_ops)");
+        verify(jdbcTemplate).execute(DROP_FULL_INDEX);
+    }
+
+    @Test
+    @DisplayName("Should keep the float32 index while the quantized index is invalid")
+    void testEnsureQuantizedIndex_InvalidKeepsFullIndex() {
+        ReflectionTestUtils.setField(quantizedIndexService, "quantizationMode", "halfvec");
+        indexValid("chunks_embedding_halfvec_idx", false);
+
+        assertThat(quantizedIndexService.ensureQuantizedIndex()).isTrue();
+
+        verify(jdbcTemplate, never()).execute(DROP_FULL_INDEX);
+    }
+
+    @Test
+    @DisplayName("Should keep the float32 index when dropping is disabled")
+    void testEnsureQuantizedIndex_DropDisabled() {
+        ReflectionTestUtils.setField(quantizedIndexService, "quantizationMode", "binary");
+        ReflectionTestUtils.setField(quantizedIndexService, "dropFullIndex", false);
+        indexValid("chunks_embedding_bit_idx", true);
+
+        assertThat(quantizedIndexService.ensureQuantizedIndex()).isTrue();
+
+        verify(jdbcTemplate, never()).execute(DROP_FULL_INDEX);
+    }
+
+    @Test
+    @DisplayName("Should create binary-quantized Hamming index")
+    void testEnsureQuantizedIndex_Binary() {
+        ReflectionTestUtils.setField(quantizedIndexService, "quantizationMode", "BINARY");
+        indexValid("chunks_embedding_bit_idx", true);
+
+        assertThat(quantizedIndexService.ensureQuantizedIndex()).isTrue();
+
+        verify(jdbcTemplate).execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS chunks_embedding_bit_idx"
+                + " ON chunks USING hnsw ((binary_quantize(embedding)::bit(1536)) bit_hamming_ops)");
+    }
+
+    @Test
+    @DisplayName("Should create HNSW index on the Matryoshka prefix column")
+    void testEnsureQuantizedIndex_Matryoshka() {
+        ReflectionTestUtils.setField(quantizedIndexService, "quantizationMode", "matryoshka");
+        indexValid("chunks_embedding_short_idx", true);
+
+        assertThat(quantizedIndexService.ensureQuantizedIndex()).isTrue();
+
+        verify(jdbcTemplate).execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS chunks_embedding_short_idx"
+                + " ON chunks USING hnsw (embedding_short vector_cosine_ops)");
+    }
+
+    private void indexValid(String indexName, boolean valid) {
+        when(jdbcTemplate.queryForObject(anyString(), eq(Boolean.class), eq(indexName))).thenReturn(valid);
+    }
+}
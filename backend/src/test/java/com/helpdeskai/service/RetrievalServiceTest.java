@@ -0,0 +1,283 @@
+package com.helpdeskai.service;
+
+import com.helpdeskai.entity.Chunk;
+import com.helpdeskai.repository.ChunkRepository;
+import com.pgvector.PGvector;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.doubleThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for RetrievalService.
+ * Tests the pgvector path, the local index path and content hydration.
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("RetrievalService Unit Tests")
+class RetrievalServiceTest {
+
+    @Mock
+    private ChunkRepository chunkRepository;
+
+    @Mock
+    private ObjectProvider<LocalVectorIndex> localVectorIndexProvider;
+
+    @Mock
+    private LocalVectorIndex localVectorIndex;
+
+    @Mock
+    private TenantIndexService tenantIndexService;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private RetrievalService retrievalService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        // Executor síncrono: o ramo full-text roda na própria thread do teste
+        retrievalService = new RetrievalService(chunkRepository, new ChunkContentCache(chunkRepository, meterRegistry, 100),
+                tenantIndexService, localVectorIndexProvider, Runnable::run, meterRegistry);
+        ReflectionTestUtils.setField(retrievalService, "topK", 5);
+        ReflectionTestUtils.setField(retrievalService, "similarityThreshold", 0.3);
+        ReflectionTestUtils.setField(retrievalService, "iterativeScanMode", "relaxed_order");
+        ReflectionTestUtils.setField(retrievalService, "mode", "vector");
+        ReflectionTestUtils.setField(retrievalService, "hybridCandidates", 20);
+        ReflectionTestUtils.setField(retrievalService, "rrfK", 60);
+    }
+
+    @Test
+    @DisplayName("Should push similarity threshold into the ANN query as max distance")
+    void testRetrieve_PgvectorPushesThreshold() {
+        when(chunkRepository.findTopKSimilarChunkIds(any(PGvector.class), any(), anyInt(), anyDouble()))
+                .thenReturn(List.<Object[]>of(hit(100L, 0.1)));
+        when(chunkRepository.findChunkRowsByIds(anyCollection()))
+                .thenReturn(List.<Object[]>of(row(100L, "conteúdo", 33L, "doc.pdf", null)));
+
+        List<RetrievalService.ScoredChunk> result =
+                retrievalService.retrieve("pergunta", new PGvector(new float[]{0.3f, 0.7f}), 1L);
+
+        verify(chunkRepository).configureVectorSearch("relaxed_order");
+        // Tenant sem índice parcial: nunca o HNSW global com pós-filtro
+        verify(chunkRepository).forceExactTenantSearch();
+        verify(chunkRepository).findTopKSimilarChunkIds(
+                any(PGvector.class), eq(1L), eq(5), doubleThat(d -> Math.abs(d - 0.7) < 1e-9));
+        assertThat(result).hasSize(1);
+        assertThat(result.get(0).getScore()).isCloseTo(0.9, within(1e-9));
+        assertThat(result.get(0).getChunk().getDocument().getFilename()).isEqualTo("doc.pdf");
+    }
+
+    @Test
+    @DisplayName("Tenants with a partial HNSW index should keep index scans enabled")
+    void testRetrieve_IndexedTenantUsesPartialIndex() {
+        when(tenantIndexService.hasTenantIndex(1L)).thenReturn(true);
+        when(chunkRepository.findTopKSimilarChunkIds(any(PGvector.class), any(), anyInt(), anyDouble()))
+                .thenReturn(List.of());
+
+        retrievalService.retrieve("pergunta", new PGvector(new float[]{1f, 0f}), 1L);
+
+        verify(chunkRepository).configureVectorSearch("relaxed_order");
+        verify(chunkRepository, never()).forceExactTenantSearch();
+    }
+
+    @Test
+    @DisplayName("Should keep rows the ANN query accepted exactly at the threshold")
+    void testRetrieve_KeepsBoundaryDistance() {
+        ReflectionTestUtils.setField(retrievalService, "similarityThreshold", 0.1);
+        // 1 - (1 - 0.1) < 0.1 em double
+        when(chunkRepository.findTopKSimilarChunkIds(any(PGvector.class), any(), anyInt(), anyDouble()))
+                .thenReturn(List.<Object[]>of(hit(100L, 1 - 0.1)));
+        when(chunkRepository.findChunkRowsByIds(anyCollection()))
+                .thenReturn(List.<Object[]>of(row(100L, "conteúdo", 33L, "doc.pdf", null)));
+
+        List<RetrievalService.ScoredChunk> result =
+                retrievalService.retrieve("pergunta", new PGvector(new float[]{0.3f, 0.7f}), 1L);
+
+        assertThat(result).extracting(scored -> scored.getChunk().getId()).containsExactly(100L);
+    }
+
+    @Test
+    @DisplayName("Should fall back to pgvector while the local index is building")
+    void testRetrieve_LocalIndexNotReady() {
+        when(localVectorIndexProvider.getIfAvailable()).thenReturn(localVectorIndex);
+        when(localVectorIndex.isReady()).thenReturn(false);
+        when(chunkRepository.findTopKSimilarChunkIds(any(PGvector.class), any(), anyInt(), anyDouble()))
+                .thenReturn(List.of());
+
+        assertThat(retrievalService.retrieve("pergunta", new PGvector(new float[]{1f, 0f}), 1L)).isEmpty();
+
+        verify(localVectorIndex, never()).search(any(), any(), anyInt(), anyDouble());
+    }
+
+    @Test
+    @DisplayName("Should hydrate local index hits keeping index order")
+    void testRetrieve_LocalIndex() {
+        when(localVectorIndexProvider.getIfAvailable()).thenReturn(localVectorIndex);
+        when(localVectorIndex.isReady()).thenReturn(true);
+        when(localVectorIndex.search(any(), eq(1L), eq(5), doubleThat(d -> Math.abs(d - 0.7) < 1e-9)))
+                .thenReturn(List.of(
+                        new LocalVectorIndex.Hit(200L, 0.05),
+                        new LocalVectorIndex.Hit(100L, 0.2),
+                        new LocalVectorIndex.Hit(300L, 0.3)));
+        // Chunk 300 removido entre a busca e a hidratação
+        when(chunkRepository.findChunkRowsByIds(argThat(ids -> ids.containsAll(List.of(200L, 100L, 300L)))))
+                .thenReturn(List.of(
+                        row(100L, "segundo", 33L, "a.pdf", null),
+                        row(200L, "primeiro", 34L, "b.pdf", null)));
+
+        List<RetrievalService.ScoredChunk> result =
+                retrievalService.retrieve("pergunta", new PGvector(new float[]{1f, 0f}), 1L);
+
+        assertThat(result).extracting(scored -> scored.getChunk().getId()).containsExactly(200L, 100L);
+        assertThat(result.get(0).getScore()).isCloseTo(0.95, within(1e-9));
+        verify(chunkRepository, never()).findTopKSimilarChunkIds(any(PGvector.class), any(), anyInt(), anyDouble());
+    }
+
+    @Test
+    @DisplayName("Hybrid mode should fuse vector and lexical rankings with RRF")
+    void testRetrieve_HybridFusion() {
+        ReflectionTestUtils.setField(retrievalService, "mode", "hybrid");
+        when(chunkRepository.findTopKSimilarChunkIds(any(PGvector.class), eq(1L), eq(20), anyDouble()))
+                .thenReturn(List.of(hit(1L, 0.1), hit(2L, 0.2)));
+        when(chunkRepository.findChunkRowsByIds(anyCollection()))
+                .thenReturn(List.of(
+                        row(1L, "vetorial 1", 33L, "a.pdf", null),
+                        row(2L, "vetorial e lexical", 33L, "a.pdf", null)));
+        when(chunkRepository.findTopKLexicalChunks("erro ERR-1042", 1L, 20))
+                .thenReturn(List.of(
+                        row(3L, "ERR-1042 exato", 34L, "b.pdf", 0.8),
+                        row(2L, "vetorial e lexical", 33L, "a.pdf", 0.5)));
+
+        List<RetrievalService.ScoredChunk> result =
+                retrievalService.retrieve("erro ERR-1042", new PGvector(new float[]{1f, 0f}), 1L);
+
+        // Chunk 2 aparece nos dois rankings e sobe para o topo
+        assertThat(result).extracting(scored -> scored.getChunk().getId()).containsExactly(2L, 1L, 3L);
+        assertThat(meterRegistry.get("helpdesk.retrieval.branch").tag("branch", "vector").timer().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("helpdesk.retrieval.branch").tag("branch", "lexical").timer().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("helpdesk.retrieval.branch").tag("branch", "hybrid").timer().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Hybrid mode should drop lexical-only hits that match no code-like term")
+    void testRetrieve_HybridGatesLexicalOnlyHits() {
+        ReflectionTestUtils.setField(retrievalService, "mode", "hybrid");
+        when(chunkRepository.findTopKSimilarChunkIds(any(PGvector.class), eq(1L), eq(20), anyDouble()))
+                .thenReturn(List.of());
+        when(chunkRepository.findTopKLexicalChunks("como faço o login de novo", 1L, 20))
+                .thenReturn(List.of(
+                        row(3L, "o manual de instalação", 34L, "b.pdf", 0.3),
+                        row(4L, "tabela de preços do SKU-77", 34L, "b.pdf", 0.2)));
+
+        List<RetrievalService.ScoredChunk> result =
+                retrievalService.retrieve("como faço o login de novo", new PGvector(new float[]{1f, 0f}), 1L);
+
+        // Só stopwords em comum e nada acima do threshold vetorial: nenhum contexto
+        assertThat(result).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Lexical gate should keep hits confirmed by the vector branch or matching a code")
+    void testGateLexicalResults() {
+        List<RetrievalService.ScoredChunk> vector = List.of(scored(1L, "qualquer"));
+        List<RetrievalService.ScoredChunk> lexical = List.of(
+                scored(1L, "texto sem código"),
+                scored(2L, "Falha err-1042 no boot"),
+                scored(3L, "falha no boot"));
+
+        List<RetrievalService.ScoredChunk> gated =
+                RetrievalService.gateLexicalResults("falha ERR-1042 no boot", vector, lexical);
+
+        assertThat(gated).extracting(scored -> scored.getChunk().getId()).containsExactly(1L, 2L);
+    }
+
+    @Test
+    @DisplayName("Hybrid mode should degrade to vector results when lexical branch fails")
+    void testRetrieve_HybridLexicalFailure() {
+        ReflectionTestUtils.setField(retrievalService, "mode", "hybrid");
+        when(chunkRepository.findTopKSimilarChunkIds(any(PGvector.class), any(), anyInt(), anyDouble()))
+                .thenReturn(List.<Object[]>of(hit(1L, 0.1)));
+        when(chunkRepository.findChunkRowsByIds(anyCollection()))
+                .thenReturn(List.<Object[]>of(row(1L, "vetorial", 33L, "a.pdf", null)));
+        when(chunkRepository.findTopKLexicalChunks(any(), any(), anyInt()))
+                .thenThrow(new IllegalStateException("falha"));
+
+        List<RetrievalService.ScoredChunk> result =
+                retrievalService.retrieve("pergunta", new PGvector(new float[]{1f, 0f}), 1L);
+
+        assertThat(result).extracting(scored -> scored.getChunk().getId()).containsExactly(1L);
+    }
+
+    @Test
+    @DisplayName("Should hydrate hot chunks from the content cache without querying again")
+    void testRetrieve_ContentCacheHit() {
+        when(chunkRepository.findTopKSimilarChunkIds(any(PGvector.class), any(), anyInt(), anyDouble()))
+                .thenReturn(List.<Object[]>of(hit(100L, 0.1)))
+                .thenReturn(List.of(hit(100L, 0.1), hit(101L, 0.2)));
+        when(chunkRepository.findChunkRowsByIds(anyCollection()))
+                .thenReturn(List.<Object[]>of(row(100L, "faq", 33L, "faq.pdf", null)))
+                .thenReturn(List.<Object[]>of(row(101L, "outro", 33L, "faq.pdf", null)));
+
+        retrievalService.retrieve("pergunta", new PGvector(new float[]{1f, 0f}), 1L);
+        List<RetrievalService.ScoredChunk> result =
+                retrievalService.retrieve("pergunta", new PGvector(new float[]{1f, 0f}), 1L);
+
+        assertThat(result).extracting(scored -> scored.getChunk().getId()).containsExactly(100L, 101L);
+        // Segunda hidratação só busca o id que ainda não estava em cache
+        verify(chunkRepository).findChunkRowsByIds(List.of(101L));
+    }
+
+    @Test
+    @DisplayName("RRF should normalize scores and respect the limit")
+    void testReciprocalRankFusion() {
+        List<RetrievalService.ScoredChunk> first = List.of(scored(1L), scored(2L), scored(3L));
+        List<RetrievalService.ScoredChunk> second = List.of(scored(1L), scored(4L));
+
+        List<RetrievalService.ScoredChunk> fused =
+                RetrievalService.reciprocalRankFusion(List.of(first, second), 60, 2);
+
+        assertThat(fused).extracting(scored -> scored.getChunk().getId()).containsExactly(1L, 2L);
+        assertThat(fused.get(0).getScore()).isCloseTo(1.0, within(1e-9));
+    }
+
+    private static RetrievalService.ScoredChunk scored(Long chunkId) {
+        return new RetrievalService.ScoredChunk(Chunk.builder().id(chunkId).build(), 0.0);
+    }
+
+    private static RetrievalService.ScoredChunk scored(Long chunkId, String content) {
+        return new RetrievalService.ScoredChunk(Chunk.builder().id(chunkId).content(content).build(), 0.0);
+    }
+
+    private static Object[] hit(Long chunkId, double distance) {
+        // [id, distance]
+        return new Object[]{chunkId, distance};
+    }
+
+    private static Object[] row(Long chunkId, String content, Long documentId, String filename, Double distance) {
+        // [id, content, metadata, chunk_index, document_id, created_at, document_filename, distance]
+        return new Object[]{chunkId, content, null, 0, documentId, null, filename, distance};
+    }
+}
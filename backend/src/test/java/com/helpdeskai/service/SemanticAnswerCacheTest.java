@@ -0,0 +1,79 @@
+package com.helpdeskai.service;
+
+import com.helpdeskai.entity.Message.Citation;
+import com.pgvector.PGvector;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SemanticAnswerCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private SemanticAnswerCache cache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new SemanticAnswerCache(meterRegistry);
+    }
+
+    @Test
+    @DisplayName("Should return cached answer for a near-duplicate question with the same chunks")
+    void testLookup_NearDuplicateHit() {
+        cache.put(1L, new PGvector(new float[]{1f, 0f, 0f}), Set.of(10L, 11L), Set.of(5L),
+                "Resposta", List.of(citation(10L)), TimeUnit.MILLISECONDS.toNanos(800));
+
+        var cached = cache.lookup(1L, new PGvector(new float[]{0.99f, 0.05f, 0f}), Set.of(11L, 10L));
+
+        assertThat(cached).isPresent();
+        assertThat(cached.get().answer()).isEqualTo("Resposta");
+        assertThat(cached.get().citations()).extracting(Citation::getChunkId).containsExactly(10L);
+        assertThat(meterRegistry.get("helpdesk.answer.cache.requests").tag("result", "hit").counter().count())
+                .isEqualTo(1.0);
+        assertThat(meterRegistry.get("helpdesk.answer.cache.saved").timer().totalTime(TimeUnit.MILLISECONDS))
+                .isEqualTo(800.0);
+    }
+
+    @Test
+    @DisplayName("Should miss when the question is too far or retrieves different chunks")
+    void testLookup_Miss() {
+        cache.put(1L, new PGvector(new float[]{1f, 0f, 0f}), Set.of(10L), Set.of(5L),
+                "Resposta", List.of(citation(10L)), 1L);
+
+        assertThat(cache.lookup(1L, new PGvector(new float[]{0f, 1f, 0f}), Set.of(10L))).isEmpty();
+        assertThat(cache.lookup(1L, new PGvector(new float[]{1f, 0f, 0f}), Set.of(10L, 12L))).isEmpty();
+        // Outro tenant não enxerga a entrada
+        assertThat(cache.lookup(2L, new PGvector(new float[]{1f, 0f, 0f}), Set.of(10L))).isEmpty();
+
+        assertThat(meterRegistry.get("helpdesk.answer.cache.requests").tag("result", "miss").counter().count())
+                .isEqualTo(3.0);
+    }
+
+    @Test
+    @DisplayName("Should invalidate entries citing a deleted or re-indexed document")
+    void testInvalidation() {
+        PGvector embedding = new PGvector(new float[]{1f, 0f, 0f});
+        cache.put(1L, embedding, Set.of(10L), Set.of(5L), "A", List.of(citation(10L)), 1L);
+        cache.put(1L, embedding, Set.of(20L), Set.of(6L), "B", List.of(citation(20L)), 1L);
+
+        cache.onDocumentDeleted(new DocumentService.DocumentDeletedEvent(5L, 1L, null));
+
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.lookup(1L, embedding, Set.of(10L))).isEmpty();
+
+        cache.onDocumentIndexed(new DocumentService.DocumentIndexedEvent(6L, 1L, 3));
+
+        assertThat(cache.size()).isZero();
+    }
+
+    private static Citation citation(Long chunkId) {
+        return Citation.builder().chunkId(chunkId).content("trecho").similarityScore(0.9).build();
+    }
+}
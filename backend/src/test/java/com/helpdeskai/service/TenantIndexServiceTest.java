@@ -0,0 +1,145 @@
+package com.helpdeskai.service;
+
+import com.helpdeskai.repository.ChunkRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for TenantIndexService.
+ * Tests creation of per-tenant partial HNSW indexes.
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("TenantIndexService Unit Tests")
+class TenantIndexServiceTest {
+
+    @Mock
+    private ChunkRepository chunkRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private TenantIndexService tenantIndexService;
+
+    @BeforeEach
+    void setUp() {
+        tenantIndexService = new TenantIndexService(chunkRepository, jdbcTemplate);
+        ReflectionTestUtils.setField(tenantIndexService, "tenantIndexThreshold", 1000L);
+    }
+
+    @Test
+    @DisplayName("Should not create index for small tenants")
+    void testEnsureTenantIndex_BelowThreshold() {
+        when(chunkRepository.countByUserId(7L)).thenReturn(999L);
+
+        boolean indexed = tenantIndexService.ensureTenantIndex(7L);
+
+        assertThat(indexed).isFalse();
+        verify(jdbcTemplate, never()).execute(anyString());
+    }
+
+    @Test
+    @DisplayName("Should create partial HNSW index once for large tenants")
+    void testEnsureTenantIndex_AboveThreshold() {
+        when(chunkRepository.countByUserId(42L)).thenReturn(1000L);
+        indexValid("chunks_embedding_tenant_42_idx", true);
+
+        assertThat(tenantIndexService.ensureTenantIndex(42L)).isTrue();
+        assertThat(tenantIndexService.ensureTenantIndex(42L)).isTrue();
+
+        verify(chunkRepository, times(1)).countByUserId(42L);
+        verify(jdbcTemplate, times(1)).execute(
+                "CREATE INDEX CONCURRENTLY IF NOT EXISTS chunks_embedding_tenant_42_idx"
+                        + " ON chunks USING hnsw (embedding vector_cosine_ops) WHERE user_id = 42");
+    }
+
+    @Test
+    @DisplayName("Should create partial index on the quantized expression when quantization is enabled")
+    void testEnsureTenantIndex_BinaryQuantization() {
+        ReflectionTestUtils.setField(tenantIndexService, "quantizationMode", "binary");
+        when(chunkRepository.countByUserId(42L)).thenReturn(5000L);
+        indexValid("chunks_embedding_bit_tenant_42_idx", true);
+
+        assertThat(tenantIndexService.ensureTenantIndex(42L)).isTrue();
+
+        verify(jdbcTemplate).execute(
+                "CREATE INDEX CONCURRENTLY IF NOT EXISTS chunks_embedding_bit_tenant_42_idx"
+                        + " ON chunks USING hnsw ((binary_quantize(embedding)::bit(1536)) bit_hamming_ops)"
+                        + " WHERE user_id = 42");
+    }
+
+    @Test
+    @DisplayName("Should drop and rebuild a partial index left invalid by an interrupted build")
+    void testEnsureTenantIndex_RebuildsInvalidIndex() {
+        String create = "CREATE INDEX CONCURRENTLY IF NOT EXISTS chunks_embedding_tenant_42_idx"
+                + " ON chunks USING hnsw (embedding vector_cosine_ops) WHERE user_id = 42";
+        when(chunkRepository.countByUserId(42L)).thenReturn(1000L);
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class), eq("chunks_embedding_tenant_42_idx")))
+                .thenReturn(List.of())
+                .thenReturn(List.of("chunks_embedding_tenant_42_idx"));
+
+        assertThat(tenantIndexService.ensureTenantIndex(42L)).isTrue();
+
+        InOrder inOrder = inOrder(jdbcTemplate);
+        inOrder.verify(jdbcTemplate).execute(create);
+        inOrder.verify(jdbcTemplate).execute("DROP INDEX CONCURRENTLY IF EXISTS chunks_embedding_tenant_42_idx");
+        inOrder.verify(jdbcTemplate).execute(create);
+        assertThat(tenantIndexService.hasTenantIndex(42L)).isTrue();
+    }
+
+    @Test
+    @DisplayName("Should keep the tenant on exact search while its index stays invalid")
+    void testEnsureTenantIndex_StillInvalid() {
+        when(chunkRepository.countByUserId(42L)).thenReturn(1000L);
+        indexValid("chunks_embedding_tenant_42_idx", false);
+
+        assertThat(tenantIndexService.ensureTenantIndex(42L)).isFalse();
+
+        assertThat(tenantIndexService.hasTenantIndex(42L)).isFalse();
+    }
+
+    @Test
+    @DisplayName("Should recover tenants with a valid partial index on startup")
+    void testLoadTenantIndexes() {
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class), eq("chunks_embedding_tenant_%")))
+                .thenReturn(List.of("chunks_embedding_tenant_42_idx", "chunks_embedding_tenant_x_idx"));
+
+        tenantIndexService.loadTenantIndexes();
+
+        assertThat(tenantIndexService.hasTenantIndex(42L)).isTrue();
+        assertThat(tenantIndexService.hasTenantIndex(7L)).isFalse();
+        // Já indexado: nem conta os chunks de novo
+        assertThat(tenantIndexService.ensureTenantIndex(42L)).isTrue();
+        verify(chunkRepository, never()).countByUserId(42L);
+    }
+
+    @Test
+    @DisplayName("Should ignore events without tenant")
+    void testEnsureTenantIndex_NullTenant() {
+        assertThat(tenantIndexService.ensureTenantIndex(null)).isFalse();
+
+        verify(chunkRepository, never()).countByUserId(org.mockito.ArgumentMatchers.any());
+    }
+
+    private void indexValid(String indexName, boolean valid) {
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class), eq(indexName)))
+                .thenReturn(valid ? List.of(indexName) : List.of());
+    }
+}
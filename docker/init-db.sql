@@ -31,6 +31,7 @@ CREATE TABLE IF NOT EXISTS documents (
     file_size BIGINT,
     mime_type VARCHAR(100),
     total_chunks INT,
+    content_hash VARCHAR(64), -- SHA-256 do arquivo (uploads idênticos copiam os chunks já indexados)
     status VARCHAR(50), -- 'processing', 'completed', 'failed'
     uploaded_at TIMESTAMP DEFAULT NOW()
 );
@@ -38,14 +39,23 @@ CREATE TABLE IF NOT EXISTS documents (
 CREATE INDEX IF NOT EXISTS idx_documents_user_id ON documents(user_id);
 CREATE INDEX IF NOT EXISTS idx_documents_status ON documents(status);
 
+-- Bancos criados antes da deduplicação por conteúdo
+ALTER TABLE documents ADD COLUMN IF NOT EXISTS content_hash VARCHAR(64);
+-- A deduplicação só procura documentos do mesmo tenant
+DROP INDEX IF EXISTS idx_documents_content_hash;
+CREATE INDEX IF NOT EXISTS idx_documents_user_content_hash ON documents(user_id, content_hash);
+
 -- ============================================
 -- Tabela de chunks com vector embeddings
 -- ============================================
 CREATE TABLE IF NOT EXISTS chunks (
     id BIGSERIAL PRIMARY KEY,
     document_id BIGINT REFERENCES documents(id) ON DELETE CASCADE,
+    user_id BIGINT REFERENCES users(id), -- dono (desnormalizado de documents.user_id)
     content TEXT NOT NULL,
     embedding vector(1536), -- OpenAI text-embedding-3-small
+    embedding_short vector(256), -- prefixo Matryoshka re-normalizado (primeiro estágio da ANN)
+    content_hash VARCHAR(64), -- SHA-256 de 'modelo:content' (chunks idênticos do tenant reaproveitam o embedding)
     chunk_index INT,
     metadata JSONB, -- {page: 5, section: "API Reference"}
     created_at TIMESTAMP DEFAULT NOW()
@@ -57,6 +67,93 @@ USING hnsw (embedding vector_cosine_ops);
 
 CREATE INDEX IF NOT EXISTS idx_chunks_document_id ON chunks(document_id);
 
+-- Espaço livre nas páginas: a reindexação incremental renumera chunk_index e atualiza metadata
+-- (colunas sem índice) dos chunks mantidos, o que vira HOT update sem tocar no HNSW
+ALTER TABLE chunks SET (fillfactor = 90);
+
+-- Busca quantizada (helpdesk.retrieval.quantization.mode): índices de expressão criados pela
+-- aplicação no startup (QuantizedIndexService), indexando as linhas existentes:
+--   halfvec: CREATE INDEX CONCURRENTLY chunks_embedding_halfvec_idx ON chunks
+--            USING hnsw ((embedding::halfvec(1536)) halfvec_cosine_ops);
+--   binary:  CREATE INDEX CONCURRENTLY chunks_embedding_bit_idx ON chunks
+--            USING hnsw ((binary_quantize(embedding)::bit(1536)) bit_hamming_ops);
+--   matryoshka: CREATE INDEX CONCURRENTLY chunks_embedding_short_idx ON chunks
+--            USING hnsw (embedding_short vector_cosine_ops);
+-- Com um modo quantizado ativo, chunks_embedding_idx deixa de ser usado (o re-rank exato lê o
+-- vector float32 do heap): a aplicação o remove com DROP INDEX CONCURRENTLY assim que o índice
+-- quantizado fica válido (helpdesk.retrieval.quantization.drop-full-index) e o recria no
+-- startup ao voltar para o modo none.
+
+-- Busca vetorial por tenant: tenants pequenos usam este índice + ordenação exata.
+-- Tenants acima de helpdesk.retrieval.tenant-index-threshold ganham um índice HNSW
+-- parcial criado pela aplicação (TenantIndexService), por exemplo:
+--   CREATE INDEX CONCURRENTLY chunks_embedding_tenant_42_idx ON chunks
+--   USING hnsw (embedding vector_cosine_ops) WHERE user_id = 42;
+ALTER TABLE chunks ADD COLUMN IF NOT EXISTS user_id BIGINT REFERENCES users(id);
+
+UPDATE chunks c SET user_id = d.user_id
+FROM documents d
+WHERE c.document_id = d.id AND c.user_id IS NULL;
+
+CREATE INDEX IF NOT EXISTS idx_chunks_user_id ON chunks(user_id);
+
+-- Embedding curto (Matryoshka) para bancos criados antes da coluna: backfill a partir do
+-- embedding completo, igual ao que EmbeddingService.toShortEmbedding faz na ingestão
+ALTER TABLE chunks ADD COLUMN IF NOT EXISTS embedding_short vector(256);
+
+UPDATE chunks SET embedding_short = l2_normalize(subvector(embedding, 1, 256))
+WHERE embedding_short IS NULL AND embedding IS NOT NULL;
+
+-- Busca full-text do modo híbrido (helpdesk.retrieval.mode=hybrid).
+-- Configuração 'simple' (sem stemming/stopwords) preserva códigos de erro e SKUs.
+CREATE INDEX IF NOT EXISTS idx_chunks_content_fts ON chunks
+USING gin (to_tsvector('simple', content));
+
+-- Reaproveitamento de embeddings por chunk: backfill com o mesmo hash calculado na ingestão
+-- (SHA-256 hex de 'modelo:content' em UTF-8; chunks antigos foram embedados com o modelo padrão)
+ALTER TABLE chunks ADD COLUMN IF NOT EXISTS content_hash VARCHAR(64);
+
+UPDATE chunks SET content_hash = encode(sha256(convert_to('text-embedding-3-small:' || content, 'UTF8')), 'hex')
+WHERE content_hash IS NULL;
+
+-- O reaproveitamento só procura chunks do mesmo tenant
+DROP INDEX IF EXISTS idx_chunks_content_hash;
+CREATE INDEX IF NOT EXISTS idx_chunks_user_content_hash ON chunks(user_id, content_hash);
+
+-- ============================================
+-- Fila de ingestão de documentos
+-- ============================================
+-- Workers reivindicam jobs com SELECT ... FOR UPDATE SKIP LOCKED; locked_at é o heartbeat
+-- do worker (RUNNING sem heartbeat recente volta a ser reivindicável)
+CREATE TABLE IF NOT EXISTS ingestion_jobs (
+    id BIGSERIAL PRIMARY KEY,
+    document_id BIGINT NOT NULL REFERENCES documents(id) ON DELETE CASCADE,
+    user_id BIGINT REFERENCES users(id),
+    storage_key VARCHAR(255) NOT NULL,
+    status VARCHAR(20) NOT NULL, -- 'QUEUED', 'RUNNING', 'COMPLETED', 'FAILED'
+    stage VARCHAR(20) NOT NULL,  -- 'QUEUED', 'EXTRACTING', 'CHUNKING', 'EMBEDDING', 'INDEXING', 'DONE'
+    attempts INT NOT NULL DEFAULT 0,
+    chunks_total INT,
+    chunks_embedded INT,
+    chunks_indexed INT,
+    checkpoint_chunk_index INT NOT NULL DEFAULT 0, -- próximo chunk a processar (anteriores já gravados)
+    last_error TEXT,
+    locked_by VARCHAR(255),
+    locked_at TIMESTAMP,
+    created_at TIMESTAMP DEFAULT NOW(),
+    started_at TIMESTAMP,
+    finished_at TIMESTAMP,
+    updated_at TIMESTAMP
+);
+
+-- Só jobs pendentes entram no índice da fila
+CREATE INDEX IF NOT EXISTS idx_ingestion_jobs_pending ON ingestion_jobs(id)
+WHERE status IN ('QUEUED', 'RUNNING');
+CREATE INDEX IF NOT EXISTS idx_ingestion_jobs_document_id ON ingestion_jobs(document_id);
+
+-- Bancos criados antes da retomada por checkpoint
+ALTER TABLE ingestion_jobs ADD COLUMN IF NOT EXISTS checkpoint_chunk_index INT NOT NULL DEFAULT 0;
+
 -- ============================================
 -- Tabela de conversas
 -- ============================================